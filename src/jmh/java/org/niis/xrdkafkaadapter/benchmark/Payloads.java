@@ -0,0 +1,86 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class generates the payloads of the benchmarks. A payload shape is defined as "<records>x<value size>",
+ * e.g., "1000x1024" is 1000 records whose values are 1 KB JSON objects.
+ */
+public final class Payloads {
+
+    private Payloads() { }
+
+    /**
+     * Get the number of records of a payload shape.
+     * @param shape payload shape
+     * @return number of records
+     */
+    public static int records(String shape) {
+        return Integer.parseInt(shape.substring(0, shape.indexOf('x')));
+    }
+
+    /**
+     * Get the value size of a payload shape.
+     * @param shape payload shape
+     * @return value size in bytes
+     */
+    public static int valueSize(String shape) {
+        return Integer.parseInt(shape.substring(shape.indexOf('x') + 1));
+    }
+
+    /**
+     * Generate a JSON object whose serialized size is the given size.
+     * @param size size in bytes
+     * @return JSON object
+     */
+    public static String value(int size) {
+        String prefix = "{\"data\":\"";
+        String suffix = "\"}";
+        char[] data = new char[Math.max(size - prefix.length() - suffix.length(), 0)];
+        Arrays.fill(data, 'x');
+        return prefix + new String(data) + suffix;
+    }
+
+    /**
+     * Generate the body of a publish request.
+     * @param shape payload shape
+     * @return request body in UTF-8
+     */
+    public static byte[] publishRequest(String shape) {
+        int records = records(shape);
+        String value = value(valueSize(shape));
+        StringBuilder sb = new StringBuilder("{\"records\":[");
+        for (int i = 0; i < records; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"key\":\"key-").append(i).append("\",\"value\":").append(value).append('}');
+        }
+        sb.append("]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.benchmark.Payloads;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading records through a ConsumerWorker. Records are polled from MockConsumer, so no broker is
+ * needed, and the results include the hand-off to the worker's thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConsumerWorkerBenchmark {
+
+    private static final String TOPIC = "BenchmarkTopic";
+
+    @Param({"1x1024", "1000x1024", "1x65536", "100x65536", "1x1048576", "10x1048576"})
+    String shape;
+
+    private MockConsumer<String, String> consumer;
+
+    private ScheduledExecutorService scheduler;
+
+    private ConsumerWorker worker;
+
+    private int records;
+
+    private String value;
+
+    private long offset;
+
+    @Setup
+    public void setup() {
+        records = Payloads.records(shape);
+        value = Payloads.value(Payloads.valueSize(shape));
+        TopicPartition partition = new TopicPartition(TOPIC, 0);
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(Collections.singletonList(partition));
+        consumer.updateBeginningOffsets(Collections.singletonMap(partition, 0L));
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        worker = new ConsumerWorker("benchmark_group", consumer, new RecordBuffer(records, Long.MAX_VALUE), scheduler);
+    }
+
+    @TearDown
+    public void tearDown() {
+        worker.close();
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public List<ConsumerRecord<String, String>> read() throws ExecutionException, InterruptedException {
+        for (int i = 0; i < records; i++) {
+            consumer.addRecord(new ConsumerRecord<>(TOPIC, 0, offset++, "key-" + i, value));
+        }
+        return worker.read(0, records, records, Long.MAX_VALUE).get();
+    }
+}
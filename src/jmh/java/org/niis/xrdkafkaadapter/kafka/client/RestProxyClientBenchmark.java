@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.util.Constants;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the REST Proxy URLs that are built for every request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RestProxyClientBenchmark {
+
+    private static final String GROUP_NAME = "PLAYGROUND_ORG_2908758-4_TestClient_BenchmarkTopic_group";
+
+    private static final String INSTANCE_NAME = "PLAYGROUND_ORG_2908758-4_TestClient_instance";
+
+    private RestProxyClient restProxyClient;
+
+    @Setup
+    public void setup() {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("benchmark",
+                Collections.singletonMap(Constants.KAFKA_REST_PROXY_URL_PROPERTY_KEY, "http://rest-proxy:8082")));
+        restProxyClient = new RestProxyClient(new HelperService(environment));
+    }
+
+    @Benchmark
+    public String buildConsumerGroupUrl() {
+        return restProxyClient.buildConsumerGroupUrl(GROUP_NAME);
+    }
+
+    @Benchmark
+    public String buildSubscriptionsUrl() {
+        return restProxyClient.buildSubscriptionsUrl(GROUP_NAME, INSTANCE_NAME);
+    }
+
+    @Benchmark
+    public String buildConsumerInstanceRecordsUrl() {
+        return restProxyClient.buildConsumerInstanceRecordsUrl(GROUP_NAME, INSTANCE_NAME);
+    }
+
+    @Benchmark
+    public String buildTopicUrl() {
+        return restProxyClient.buildTopicUrl("BenchmarkTopic");
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.benchmark.Payloads;
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.model.PublishRecord;
+import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.util.JsonRecordsReader;
+
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.json.JSONArray;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the publish path of TcpClient. Records are sent to MockProducer, so no broker is needed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TcpClientBenchmark {
+
+    private static final String TOPIC = "BenchmarkTopic";
+
+    @Param({"1x1024", "1000x1024", "1x65536", "100x65536", "1x1048576", "10x1048576"})
+    String shape;
+
+    private TcpClient tcpClient;
+
+    private MockProducer<byte[], byte[]> producer;
+
+    private byte[] publishRequest;
+
+    private List<PublishRecord> records;
+
+    @Setup
+    public void setup() throws BadRequestException {
+        tcpClient = new TcpClient(new HelperService(new StandardEnvironment()));
+        producer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        publishRequest = Payloads.publishRequest(shape);
+        records = JsonRecordsReader.readPublishRecords(publishRequest);
+    }
+
+    /**
+     * MockProducer keeps the sent records in memory, so they're cleared after each iteration.
+     */
+    @TearDown(Level.Iteration)
+    public void clearProducer() {
+        producer.clear();
+    }
+
+    @TearDown
+    public void tearDown() {
+        tcpClient.destroy();
+    }
+
+    /**
+     * Read the records of a publish request and send them, like TcpClient.publishAsync does.
+     */
+    @Benchmark
+    public JSONArray publish() throws BadRequestException, ExecutionException, InterruptedException {
+        return tcpClient.publishRecords(producer, TOPIC, JsonRecordsReader.readPublishRecords(publishRequest)).get();
+    }
+
+    /**
+     * Send records that have already been read.
+     */
+    @Benchmark
+    public JSONArray publishRecords() throws ExecutionException, InterruptedException {
+        return tcpClient.publishRecords(producer, TOPIC, records).get();
+    }
+}
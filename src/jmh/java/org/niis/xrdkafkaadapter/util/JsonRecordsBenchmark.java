@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.util;
+
+import org.niis.xrdkafkaadapter.benchmark.CountingOutputStream;
+import org.niis.xrdkafkaadapter.benchmark.Payloads;
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.model.PublishRecord;
+import org.niis.xrdkafkaadapter.model.RecordsFormat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading publish requests and writing read responses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonRecordsBenchmark {
+
+    @Param({"1x1024", "1000x1024", "1x65536", "100x65536", "1x1048576", "10x1048576"})
+    String shape;
+
+    private byte[] publishRequest;
+
+    private int records;
+
+    private String value;
+
+    @Setup
+    public void setup() {
+        publishRequest = Payloads.publishRequest(shape);
+        records = Payloads.records(shape);
+        value = Payloads.value(Payloads.valueSize(shape));
+    }
+
+    @Benchmark
+    public List<PublishRecord> readPublishRecords() throws BadRequestException {
+        return JsonRecordsReader.readPublishRecords(publishRequest);
+    }
+
+    @Benchmark
+    public long writeJson() throws IOException {
+        return write(RecordsFormat.JSON);
+    }
+
+    @Benchmark
+    public long writeNdjson() throws IOException {
+        return write(RecordsFormat.NDJSON);
+    }
+
+    private long write(RecordsFormat format) throws IOException {
+        CountingOutputStream out = new CountingOutputStream();
+        JsonRecordsWriter writer = new JsonRecordsWriter(out, format);
+        for (int i = 0; i < records; i++) {
+            writer.write(0, i, "BenchmarkTopic", "key-" + i, value);
+        }
+        writer.finish();
+        return out.getCount();
+    }
+}
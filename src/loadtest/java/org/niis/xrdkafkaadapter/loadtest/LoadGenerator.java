@@ -0,0 +1,244 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.loadtest;
+
+import org.niis.xrdkafkaadapter.util.Constants;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives concurrent publish and read traffic to the adapter API. Each reader has its own subscription, so every
+ * reader receives all the published records. Requests that are sent during the warm-up aren't included in the
+ * results.
+ */
+public class LoadGenerator {
+
+    public static final String ENDPOINT_SUBSCRIBE = "subscribe";
+
+    public static final String ENDPOINT_PUBLISH = "publish";
+
+    public static final String ENDPOINT_READ = "read";
+
+    public static final String ENDPOINT_UNSUBSCRIBE = "unsubscribe";
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final int STATUS_OK = 200;
+
+    private static final int STATUS_NO_CONTENT = 204;
+
+    // Reads are held for wait_ms, so the socket timeout must be longer than that
+    private static final int TIMEOUT_MARGIN_MS = 30000;
+
+    private static final int SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    private final String baseUrl;
+
+    private final String clientQualifier;
+
+    private final String topicName;
+
+    private final LoadTestOptions options;
+
+    private final Map<String, LatencyStats> stats = new LinkedHashMap<>();
+
+    private final CloseableHttpClient httpClient;
+
+    private final String publishRequest;
+
+    private volatile long measureStartNanos;
+
+    private volatile long measureEndNanos;
+
+    /**
+     * Initialize new LoadGenerator object.
+     *
+     * @param baseUrl the base URL of the adapter
+     * @param clientQualifier
+     * @param topicName
+     * @param options
+     */
+    public LoadGenerator(String baseUrl, String clientQualifier, String topicName, LoadTestOptions options) {
+        this.baseUrl = baseUrl + Constants.API_BASE_PATH + "/" + topicName;
+        this.clientQualifier = clientQualifier;
+        this.topicName = topicName;
+        this.options = options;
+        for (String endpoint : new String[] {ENDPOINT_SUBSCRIBE, ENDPOINT_PUBLISH, ENDPOINT_READ, ENDPOINT_UNSUBSCRIBE}) {
+            stats.put(endpoint, new LatencyStats());
+        }
+        int timeout = options.getWaitMs() + TIMEOUT_MARGIN_MS;
+        int connections = options.getPublishers() + options.getReaders();
+        httpClient = HttpClients.custom()
+                .setMaxConnTotal(Math.max(1, connections))
+                .setMaxConnPerRoute(Math.max(1, connections))
+                .setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(timeout).setSocketTimeout(timeout).build())
+                .build();
+        publishRequest = buildPublishRequest(options.getRecords(), options.getValueSize());
+    }
+
+    /**
+     * Subscribe the readers, run the publishers and readers for the warm-up and measurement periods, and
+     * unsubscribe the readers.
+     *
+     * @return the statistics of each endpoint
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    public Map<String, LatencyStats> run() throws InterruptedException, IOException {
+        try {
+            // Subscriptions and unsubscriptions are sent once per reader, so they're always measured
+            measureStartNanos = Long.MIN_VALUE;
+            List<String> readers = new ArrayList<>();
+            for (int i = 0; i < options.getReaders(); i++) {
+                String xrdClientId = "LOADTEST/ORG/" + clientQualifier + "/reader-" + i;
+                HttpPost subscribe = new HttpPost(baseUrl + "/subscriptions?offsetResetPolicy=earliest");
+                if (send(ENDPOINT_SUBSCRIBE, subscribe, xrdClientId, STATUS_NO_CONTENT) != null) {
+                    readers.add(xrdClientId);
+                }
+            }
+            LOG.info("{}: {} readers subscribed to topic \"{}\"", clientQualifier, readers.size(), topicName);
+
+            long start = System.nanoTime();
+            measureStartNanos = start + TimeUnit.SECONDS.toNanos(options.getWarmupSeconds());
+            measureEndNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(options.getDurationSeconds());
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, options.getPublishers() + readers.size()));
+            for (int i = 0; i < options.getPublishers(); i++) {
+                String xrdClientId = "LOADTEST/ORG/" + clientQualifier + "/publisher-" + i;
+                executor.execute(() -> publishLoop(xrdClientId));
+            }
+            readers.forEach(xrdClientId -> executor.execute(() -> readLoop(xrdClientId)));
+            executor.shutdown();
+            if (!executor.awaitTermination(options.getWarmupSeconds() + options.getDurationSeconds() + SHUTDOWN_TIMEOUT_SECONDS,
+                    TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+
+            measureStartNanos = Long.MIN_VALUE;
+            for (String xrdClientId : readers) {
+                send(ENDPOINT_UNSUBSCRIBE, new HttpDelete(baseUrl + "/subscriptions"), xrdClientId, STATUS_NO_CONTENT);
+            }
+            return stats;
+        } finally {
+            httpClient.close();
+        }
+    }
+
+    private void publishLoop(String xrdClientId) {
+        while (System.nanoTime() < measureEndNanos) {
+            HttpPost publish = new HttpPost(baseUrl + "/records");
+            publish.setEntity(new StringEntity(publishRequest, ContentType.APPLICATION_JSON));
+            send(ENDPOINT_PUBLISH, publish, xrdClientId, STATUS_OK);
+        }
+    }
+
+    private void readLoop(String xrdClientId) {
+        String url = baseUrl + "/records?wait_ms=" + options.getWaitMs() + "&max_records=" + options.getMaxRecords();
+        while (System.nanoTime() < measureEndNanos) {
+            HttpGet read = new HttpGet(url);
+            read.setHeader("Accept", ContentType.APPLICATION_JSON.getMimeType());
+            send(ENDPOINT_READ, read, xrdClientId, STATUS_OK);
+        }
+    }
+
+    /**
+     * Send the request and record its latency. The number of records is counted from the response of a read
+     * request and from the request of a publish request.
+     *
+     * @return the response body, or null if the request failed
+     */
+    private String send(String endpoint, HttpUriRequest request, String xrdClientId, int expectedStatus) {
+        request.setHeader(Constants.XRD_CLIENT_ID, xrdClientId);
+        long start = System.nanoTime();
+        boolean measured = start >= measureStartNanos;
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            String body = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity());
+            long nanos = System.nanoTime() - start;
+            if (response.getStatusLine().getStatusCode() != expectedStatus) {
+                LOG.debug("{} {} failed with status {}: {}", clientQualifier, endpoint, response.getStatusLine().getStatusCode(), body);
+                if (measured) {
+                    stats.get(endpoint).recordError();
+                }
+                return null;
+            }
+            if (measured) {
+                stats.get(endpoint).recordSuccess(nanos, countRecords(endpoint, body));
+            }
+            return body == null ? "" : body;
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("{} {} failed: {}", clientQualifier, endpoint, e.getMessage());
+            if (measured) {
+                stats.get(endpoint).recordError();
+            }
+            return null;
+        }
+    }
+
+    private int countRecords(String endpoint, String body) {
+        if (ENDPOINT_PUBLISH.equals(endpoint)) {
+            return options.getRecords();
+        }
+        if (ENDPOINT_READ.equals(endpoint) && body != null && !body.isEmpty()) {
+            return new JSONArray(body).length();
+        }
+        return 0;
+    }
+
+    private static String buildPublishRequest(int records, int valueSize) {
+        StringBuilder data = new StringBuilder(valueSize);
+        for (int i = 0; i < valueSize; i++) {
+            data.append('x');
+        }
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < records; i++) {
+            JSONObject record = new JSONObject();
+            record.put("key", "key-" + i);
+            record.put("value", new JSONObject().put("data", data.toString()));
+            array.put(record);
+        }
+        return new JSONObject().put("records", array).toString();
+    }
+}
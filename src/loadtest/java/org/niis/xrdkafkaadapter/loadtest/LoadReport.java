@@ -0,0 +1,114 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Throughput and latency percentiles of each endpoint per client qualifier.
+ */
+public class LoadReport {
+
+    private static final double P50 = 50.0;
+
+    private static final double P99 = 99.0;
+
+    private static final double P999 = 99.9;
+
+    private static final String TABLE_FORMAT = "%-16s %-12s %10s %8s %12s %12s %10s %10s %10s %10s%n";
+
+    private static final String TABLE_ROW_FORMAT = "%-16s %-12s %10d %8d %12.1f %12.1f %10.2f %10.2f %10.2f %10.2f%n";
+
+    private static final String CSV_HEADER = "client,endpoint,requests,errors,requests_per_second,records_per_second,"
+            + "p50_ms,p99_ms,p999_ms,max_ms";
+
+    private static final String CSV_ROW_FORMAT = "%s,%s,%d,%d,%.1f,%.1f,%.3f,%.3f,%.3f,%.3f%n";
+
+    private final Map<String, Map<String, LatencyStats>> results;
+
+    private final int durationSeconds;
+
+    /**
+     * Initialize new LoadReport object.
+     *
+     * @param results the statistics of each endpoint per client qualifier
+     * @param durationSeconds the length of the measurement period
+     */
+    public LoadReport(Map<String, Map<String, LatencyStats>> results, int durationSeconds) {
+        this.results = results;
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * Print the results as a table.
+     *
+     * @param out
+     */
+    public void print(PrintStream out) {
+        out.printf(Locale.ROOT, TABLE_FORMAT, "client", "endpoint", "requests", "errors", "requests/s", "records/s", "p50 ms",
+                "p99 ms", "p99.9 ms", "max ms");
+        results.forEach((client, endpoints) -> endpoints.forEach((endpoint, stats) -> out.printf(Locale.ROOT, TABLE_ROW_FORMAT,
+                client, endpoint, stats.getRequests(), stats.getErrors(), perSecond(endpoint, stats.getRequests()),
+                perSecond(endpoint, stats.getRecords()), stats.getLatencyMillis(P50), stats.getLatencyMillis(P99),
+                stats.getLatencyMillis(P999), stats.getMaxLatencyMillis())));
+    }
+
+    /**
+     * Write the results as CSV.
+     *
+     * @param path
+     * @throws IOException
+     */
+    public void writeCsv(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8); PrintWriter out = new PrintWriter(writer)) {
+            out.println(CSV_HEADER);
+            results.forEach((client, endpoints) -> endpoints.forEach((endpoint, stats) -> out.printf(Locale.ROOT, CSV_ROW_FORMAT,
+                    client, endpoint, stats.getRequests(), stats.getErrors(), perSecond(endpoint, stats.getRequests()),
+                    perSecond(endpoint, stats.getRecords()), stats.getLatencyMillis(P50), stats.getLatencyMillis(P99),
+                    stats.getLatencyMillis(P999), stats.getMaxLatencyMillis())));
+        }
+    }
+
+    /**
+     * Subscriptions and unsubscriptions are sent once per reader outside the measurement period, so no rate is
+     * calculated for them.
+     */
+    private double perSecond(String endpoint, long count) {
+        if (LoadGenerator.ENDPOINT_PUBLISH.equals(endpoint) || LoadGenerator.ENDPOINT_READ.equals(endpoint)) {
+            return (double) count / durationSeconds;
+        }
+        return 0;
+    }
+}
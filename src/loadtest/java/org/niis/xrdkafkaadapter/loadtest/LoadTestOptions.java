@@ -0,0 +1,191 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.loadtest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Options of a load test run. The options are given as "name=value" arguments, e.g., "clients=tcpClient readers=8".
+ */
+public final class LoadTestOptions {
+
+    private static final int DEFAULT_PUBLISHERS = 4;
+
+    private static final int DEFAULT_READERS = 4;
+
+    private static final int DEFAULT_WARMUP_SECONDS = 10;
+
+    private static final int DEFAULT_DURATION_SECONDS = 60;
+
+    private static final int DEFAULT_RECORDS = 10;
+
+    private static final int DEFAULT_VALUE_SIZE = 1024;
+
+    private static final int DEFAULT_PARTITIONS = 4;
+
+    private static final int DEFAULT_WAIT_MS = 1000;
+
+    private static final int DEFAULT_MAX_RECORDS = 500;
+
+    private List<String> clientQualifiers = Collections.unmodifiableList(Arrays.asList("tcpClient", "restProxyClient"));
+
+    private int publishers = DEFAULT_PUBLISHERS;
+
+    private int readers = DEFAULT_READERS;
+
+    private int warmupSeconds = DEFAULT_WARMUP_SECONDS;
+
+    private int durationSeconds = DEFAULT_DURATION_SECONDS;
+
+    private int records = DEFAULT_RECORDS;
+
+    private int valueSize = DEFAULT_VALUE_SIZE;
+
+    private int partitions = DEFAULT_PARTITIONS;
+
+    private int waitMs = DEFAULT_WAIT_MS;
+
+    private int maxRecords = DEFAULT_MAX_RECORDS;
+
+    private String output = "target/loadtest-result.csv";
+
+    private LoadTestOptions() { }
+
+    /**
+     * Parse "name=value" arguments. Options that aren't given use the default values.
+     *
+     * @param args
+     * @return
+     * @throws IllegalArgumentException if an argument is invalid
+     */
+    public static LoadTestOptions parse(String... args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 1) {
+                throw new IllegalArgumentException("Invalid argument \"" + arg + "\", expected name=value");
+            }
+            options.set(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "clients":
+                clientQualifiers = Collections.unmodifiableList(Arrays.asList(value.split(",")));
+                break;
+            case "publishers":
+                publishers = parseInt(name, value, 0);
+                break;
+            case "readers":
+                readers = parseInt(name, value, 0);
+                break;
+            case "warmup":
+                warmupSeconds = parseInt(name, value, 0);
+                break;
+            case "duration":
+                durationSeconds = parseInt(name, value, 1);
+                break;
+            case "records":
+                records = parseInt(name, value, 1);
+                break;
+            case "value-size":
+                valueSize = parseInt(name, value, 1);
+                break;
+            case "partitions":
+                partitions = parseInt(name, value, 1);
+                break;
+            case "wait-ms":
+                waitMs = parseInt(name, value, 0);
+                break;
+            case "max-records":
+                maxRecords = parseInt(name, value, 1);
+                break;
+            case "output":
+                output = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option \"" + name + "\"");
+        }
+    }
+
+    private static int parseInt(String name, String value, int min) {
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed >= min) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below
+        }
+        throw new IllegalArgumentException("Option \"" + name + "\" must be an integer not less than " + min);
+    }
+
+    public List<String> getClientQualifiers() {
+        return clientQualifiers;
+    }
+
+    public int getPublishers() {
+        return publishers;
+    }
+
+    public int getReaders() {
+        return readers;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getRecords() {
+        return records;
+    }
+
+    public int getValueSize() {
+        return valueSize;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public int getWaitMs() {
+        return waitMs;
+    }
+
+    public int getMaxRecords() {
+        return maxRecords;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.loadtest;
+
+import org.niis.xrdkafkaadapter.Application;
+import org.niis.xrdkafkaadapter.util.Constants;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Load test of the adapter. The adapter is started against an in-process Kafka broker for each client qualifier, and
+ * restProxyClient uses a local REST Proxy stand-in that's connected to the same broker. Run using the loadtest
+ * Maven profile:
+ *
+ * mvn -Ploadtest test-compile exec:exec -Dloadtest.args="clients=tcpClient,restProxyClient duration=60"
+ */
+public final class LoadTestRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTestRunner.class);
+
+    private static final String TOPIC_PREFIX = "LoadTest-";
+
+    private LoadTestRunner() { }
+
+    /**
+     * Run the load test and print the results.
+     *
+     * @param args options as "name=value" arguments, see LoadTestOptions
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        EmbeddedKafkaBroker broker = new EmbeddedKafkaBroker(1, false);
+        broker.afterPropertiesSet();
+        RestProxyStub restProxy = new RestProxyStub(broker.getBrokersAsString());
+        Map<String, Map<String, LatencyStats>> results = new LinkedHashMap<>();
+        try {
+            String restProxyUrl = restProxy.start();
+            for (String clientQualifier : options.getClientQualifiers()) {
+                // Each client uses its own topic, so that the readers don't receive records of the previous runs
+                String topicName = TOPIC_PREFIX + clientQualifier;
+                broker.addTopics(new NewTopic(topicName, options.getPartitions(), (short) 1));
+                results.put(clientQualifier, run(clientQualifier, topicName, broker.getBrokersAsString(), restProxyUrl, options));
+            }
+        } finally {
+            restProxy.stop();
+            broker.destroy();
+        }
+        LoadReport report = new LoadReport(results, options.getDurationSeconds());
+        report.print(System.out);
+        report.writeCsv(Paths.get(options.getOutput()));
+    }
+
+    private static Map<String, LatencyStats> run(String clientQualifier, String topicName, String brokerAddress, String restProxyUrl,
+                                                 LoadTestOptions options) throws Exception {
+        LOG.info("Start load test of {}", clientQualifier);
+        // Request logging is turned down, so that it doesn't dominate the results
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(Application.class)
+                .properties("server.port=0",
+                        Constants.KAFKA_BROKER_ADDRESS_PROPERTY_KEY + "=" + brokerAddress,
+                        Constants.KAFKA_REST_PROXY_URL_PROPERTY_KEY + "=" + restProxyUrl,
+                        "app.kafka.client-qualifier=" + clientQualifier,
+                        "logging.level.org.niis.xrdkafkaadapter=WARN")
+                .run()) {
+            String port = context.getEnvironment().getProperty("local.server.port");
+            return new LoadGenerator("http://localhost:" + port, clientQualifier, topicName, options).run();
+        }
+    }
+}
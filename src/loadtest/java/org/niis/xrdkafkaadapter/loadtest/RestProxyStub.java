@@ -0,0 +1,370 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal stand-in for the Kafka REST Proxy v2 API. It implements the consumer instance, subscription, records,
+ * positions and topic resources that RestProxyClient uses with the JSON embedded format, and it's backed by Kafka
+ * clients that are connected to the given brokers.
+ *
+ * N.B. The "max_bytes" parameter of the records resource is ignored, and consumers return at most max.poll.records
+ * records per request.
+ */
+public class RestProxyStub {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RestProxyStub.class);
+
+    private static final String CONTENT_TYPE = "application/vnd.kafka.v2+json";
+
+    private static final Pattern CONSUMER_GROUP_PATH = Pattern.compile("^/consumers/([^/]+)$");
+
+    private static final Pattern CONSUMER_INSTANCE_PATH = Pattern.compile("^/consumers/([^/]+)/instances/([^/]+)(/[a-z]+)?$");
+
+    private static final Pattern TOPIC_PATH = Pattern.compile("^/topics/([^/]+)$");
+
+    private static final int STATUS_OK = 200;
+
+    private static final int STATUS_NO_CONTENT = 204;
+
+    private static final int STATUS_BAD_REQUEST = 400;
+
+    private static final int STATUS_NOT_FOUND = 404;
+
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+
+    private static final int STATUS_CONFLICT = 409;
+
+    private static final int STATUS_ERROR = 500;
+
+    private static final int ERROR_CODE_INSTANCE_NOT_FOUND = 40403;
+
+    private static final int ERROR_CODE_INSTANCE_EXISTS = 40902;
+
+    private static final int ERROR_CODE_REQUEST_FAILED = 50002;
+
+    // REST Proxy default consumer.request.timeout.ms
+    private static final long DEFAULT_POLL_TIMEOUT_MS = 1000;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String bootstrapServers;
+
+    private final Map<String, KafkaConsumer<String, String>> consumers = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+
+    private ExecutorService executor;
+
+    private KafkaProducer<String, String> producer;
+
+    /**
+     * Initialize new RestProxyStub object.
+     *
+     * @param bootstrapServers
+     */
+    public RestProxyStub(String bootstrapServers) {
+        this.bootstrapServers = bootstrapServers;
+    }
+
+    /**
+     * Start the stub on a free local port.
+     *
+     * @return the base URL of the stub
+     * @throws IOException
+     */
+    public String start() throws IOException {
+        Properties props = new Properties();
+        props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        producer = new KafkaProducer<>(props);
+
+        // Reads are held for the poll timeout, so a thread is used per request like in REST Proxy
+        executor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the stub and close the Kafka clients.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+        consumers.values().forEach(consumer -> {
+            synchronized (consumer) {
+                consumer.close();
+            }
+        });
+        consumers.clear();
+        if (producer != null) {
+            producer.close();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        try {
+            Matcher matcher = CONSUMER_GROUP_PATH.matcher(path);
+            if (matcher.matches() && "POST".equals(method)) {
+                createConsumer(exchange, matcher.group(1), readJson(exchange));
+                return;
+            }
+            matcher = CONSUMER_INSTANCE_PATH.matcher(path);
+            if (matcher.matches()) {
+                handleConsumer(exchange, method, matcher.group(1) + "/" + matcher.group(2), matcher.group(3));
+                return;
+            }
+            matcher = TOPIC_PATH.matcher(path);
+            if (matcher.matches() && "POST".equals(method)) {
+                publish(exchange, matcher.group(1), readJson(exchange));
+                return;
+            }
+            send(exchange, STATUS_METHOD_NOT_ALLOWED, null);
+        } catch (JSONException e) {
+            send(exchange, STATUS_BAD_REQUEST, error(STATUS_BAD_REQUEST, e.getMessage()));
+        } catch (RuntimeException | ExecutionException e) {
+            LOG.warn("Request {} {} failed: {}", method, path, e.getMessage());
+            send(exchange, STATUS_ERROR, error(ERROR_CODE_REQUEST_FAILED, e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, STATUS_ERROR, error(ERROR_CODE_REQUEST_FAILED, e.getMessage()));
+        }
+    }
+
+    private void handleConsumer(HttpExchange exchange, String method, String key, String resource) throws IOException {
+        KafkaConsumer<String, String> consumer = consumers.get(key);
+        if (consumer == null) {
+            send(exchange, STATUS_NOT_FOUND, error(ERROR_CODE_INSTANCE_NOT_FOUND, "Consumer instance not found."));
+            return;
+        }
+        String request = method + " " + (resource == null ? "" : resource);
+        switch (request) {
+            case "DELETE ":
+                consumers.remove(key);
+                synchronized (consumer) {
+                    consumer.close();
+                }
+                send(exchange, STATUS_NO_CONTENT, null);
+                break;
+            case "POST /subscription":
+                List<String> topics = new ArrayList<>();
+                readJson(exchange).getJSONArray("topics").forEach(topic -> topics.add(topic.toString()));
+                synchronized (consumer) {
+                    consumer.subscribe(topics);
+                }
+                send(exchange, STATUS_NO_CONTENT, null);
+                break;
+            case "DELETE /subscription":
+                synchronized (consumer) {
+                    consumer.unsubscribe();
+                }
+                send(exchange, STATUS_NO_CONTENT, null);
+                break;
+            case "GET /records":
+                send(exchange, STATUS_OK, read(consumer, exchange.getRequestURI()).toString());
+                break;
+            case "POST /positions":
+                JSONArray offsets = readJson(exchange).getJSONArray("offsets");
+                synchronized (consumer) {
+                    for (int i = 0; i < offsets.length(); i++) {
+                        JSONObject offset = offsets.getJSONObject(i);
+                        consumer.seek(new TopicPartition(offset.getString("topic"), offset.getInt("partition")), offset.getLong("offset"));
+                    }
+                }
+                send(exchange, STATUS_NO_CONTENT, null);
+                break;
+            default:
+                send(exchange, STATUS_METHOD_NOT_ALLOWED, null);
+        }
+    }
+
+    private void createConsumer(HttpExchange exchange, String groupName, JSONObject request) throws IOException {
+        String key = groupName + "/" + request.getString("name");
+        if (consumers.containsKey(key)) {
+            send(exchange, STATUS_CONFLICT, error(ERROR_CODE_INSTANCE_EXISTS,
+                    "Consumer with specified consumer ID already exists in the specified consumer group."));
+            return;
+        }
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        props.put(ConsumerConfig.GROUP_ID_CONFIG, groupName);
+        props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, request.optString("auto.offset.reset", "latest"));
+        if (request.has(ConsumerConfig.FETCH_MIN_BYTES_CONFIG)) {
+            props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, request.get(ConsumerConfig.FETCH_MIN_BYTES_CONFIG).toString());
+        }
+        if (consumers.putIfAbsent(key, new KafkaConsumer<>(props)) != null) {
+            send(exchange, STATUS_CONFLICT, error(ERROR_CODE_INSTANCE_EXISTS,
+                    "Consumer with specified consumer ID already exists in the specified consumer group."));
+            return;
+        }
+        JSONObject response = new JSONObject();
+        response.put("instance_id", request.getString("name"));
+        response.put("base_uri", exchange.getRequestURI().getPath() + "/instances/" + request.getString("name"));
+        send(exchange, STATUS_OK, response.toString());
+    }
+
+    private static JSONArray read(KafkaConsumer<String, String> consumer, URI uri) {
+        long timeout = DEFAULT_POLL_TIMEOUT_MS;
+        String query = uri.getQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("timeout=")) {
+                    timeout = Long.parseLong(param.substring("timeout=".length()));
+                }
+            }
+        }
+        JSONArray records = new JSONArray();
+        synchronized (consumer) {
+            for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(timeout))) {
+                JSONObject json = new JSONObject();
+                json.put("topic", record.topic());
+                json.put("key", toJson(record.key()));
+                json.put("value", toJson(record.value()));
+                json.put("partition", record.partition());
+                json.put("offset", record.offset());
+                records.put(json);
+            }
+        }
+        return records;
+    }
+
+    private void publish(HttpExchange exchange, String topicName, JSONObject request) throws IOException, ExecutionException,
+            InterruptedException {
+        JSONArray records = request.getJSONArray("records");
+        List<Future<RecordMetadata>> futures = new ArrayList<>(records.length());
+        for (int i = 0; i < records.length(); i++) {
+            JSONObject record = records.getJSONObject(i);
+            Integer partition = record.has("partition") ? record.getInt("partition") : null;
+            String recordKey = record.isNull("key") ? null : JSONObject.valueToString(record.get("key"));
+            String value = record.isNull("value") ? null : JSONObject.valueToString(record.get("value"));
+            futures.add(producer.send(new ProducerRecord<>(topicName, partition, recordKey, value)));
+        }
+        JSONArray offsets = new JSONArray();
+        for (Future<RecordMetadata> future : futures) {
+            RecordMetadata metadata = future.get();
+            Map<String, Object> offset = new HashMap<>();
+            offset.put("partition", metadata.partition());
+            offset.put("offset", metadata.offset());
+            offsets.put(new JSONObject(offset));
+        }
+        JSONObject response = new JSONObject();
+        response.put("key_schema_id", JSONObject.NULL);
+        response.put("value_schema_id", JSONObject.NULL);
+        response.put("offsets", offsets);
+        send(exchange, STATUS_OK, response.toString());
+    }
+
+    private static Object toJson(String data) {
+        if (data == null) {
+            return JSONObject.NULL;
+        }
+        try {
+            return new JSONTokener(data).nextValue();
+        } catch (JSONException e) {
+            return data;
+        }
+    }
+
+    private static JSONObject readJson(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            return new JSONObject(new String(body.toByteArray(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String error(int errorCode, String message) {
+        JSONObject json = new JSONObject();
+        json.put("error_code", errorCode);
+        json.put("message", message);
+        return json.toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
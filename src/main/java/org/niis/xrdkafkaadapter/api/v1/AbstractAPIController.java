@@ -23,31 +23,187 @@
  */
 package org.niis.xrdkafkaadapter.api.v1;
 
+import org.niis.xrdkafkaadapter.cluster.ClusterService;
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.kafka.client.ClusteredKafkaClient;
 import org.niis.xrdkafkaadapter.kafka.client.KafkaClient;
+import org.niis.xrdkafkaadapter.kafka.client.KafkaClientFutures;
+import org.niis.xrdkafkaadapter.kafka.client.MeteredKafkaClient;
+import org.niis.xrdkafkaadapter.model.CommitMode;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
+import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.service.MetricsService;
+import org.niis.xrdkafkaadapter.util.Constants;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContext;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
 /**
  * This abstract class implements a base class for API controllers.
  *
+ * Requests are completed asynchronously: the servlet container thread is released while a request is waiting for
+ * Kafka, and the response is written when the returned future is completed.
  */
 @Controller
 public abstract class AbstractAPIController {
 
+    private static final Logger LOG = LoggerFactory.getLogger(AbstractAPIController.class);
+
+    private static final String INTERNAL_ERROR = "Internal server error.";
+
+    // Default (can be overridden in props)
+    private static final int MAX_POLL_RECORDS_LIMIT = 1000;
+
+    // Default (can be overridden in props): 1048576 bytes = 1MB
+    private static final int FETCH_MIN_BYTES_LIMIT = 1048576;
+
+    // Default (can be overridden in props): 5000ms = 5s
+    private static final int FETCH_MAX_WAIT_MS_LIMIT = 5000;
+
+    // Default (can be overridden in props): 20000ms = 20s
+    private static final int READ_MAX_WAIT_MS = 20000;
+
     @Value("${app.kafka.client-qualifier}")
     private String kafkaClientQualifier;
 
     protected KafkaClient kafkaClient;
 
+    // Handles requests on this node also when the subscription is owned by another cluster node
+    protected KafkaClient localKafkaClient;
+
+    @Autowired
+    protected HelperService helperService;
+
     /**
-     * Set Kafka client value.
+     * Set Kafka client value. The duration and outcome of the client's operations are recorded. If the cluster is
+     * enabled, requests of subscriptions that are owned by other nodes are forwarded to the owners.
      * @param context
      */
     @Autowired
     public void setKafkaClient(ApplicationContext context) {
-        kafkaClient = (KafkaClient) context.getBean(kafkaClientQualifier);
+        KafkaClient client = (KafkaClient) context.getBean(kafkaClientQualifier);
+        MetricsService metricsService = context.getBean(MetricsService.class);
+        ClusterService clusterService = context.getBean(ClusterService.class);
+        if (clusterService.isEnabled()) {
+            ClusteredKafkaClient clusteredClient = clusterService.getKafkaClient(client);
+            kafkaClient = new MeteredKafkaClient(clusteredClient, kafkaClientQualifier, metricsService);
+            localKafkaClient = new MeteredKafkaClient(clusteredClient.getLocalClient(), kafkaClientQualifier, metricsService);
+        } else {
+            kafkaClient = new MeteredKafkaClient(client, kafkaClientQualifier, metricsService);
+            localKafkaClient = kafkaClient;
+        }
+    }
+
+    /**
+     * Convert the result of an asynchronous Kafka client call to a response. Exceptions that the call is completed
+     * with are converted to error responses.
+     *
+     * @param stage result of an asynchronous Kafka client call
+     * @param onSuccess function that builds the response from a successful result
+     * @return future that is completed with the response
+     */
+    protected CompletableFuture<ResponseEntity<String>> toResponse(CompletionStage<KafkaClientResponse> stage,
+                                                                   Function<KafkaClientResponse, ResponseEntity<String>> onSuccess) {
+        return stage.handle((response, error) -> error == null ? onSuccess.apply(response) : toErrorResponse(error))
+                .toCompletableFuture();
+    }
+
+    /**
+     * Convert an exception that a Kafka client call has been completed with to an error response.
+     * @param error exception
+     * @return error response
+     */
+    protected ResponseEntity<String> toErrorResponse(Throwable error) {
+        Throwable cause = KafkaClientFutures.unwrap(error);
+        HttpStatus status = KafkaClientFutures.getErrorStatus(cause);
+        if (status != HttpStatus.INTERNAL_SERVER_ERROR) {
+            return errorResponse(status, cause.getMessage());
+        }
+        LOG.error(cause.getMessage(), cause);
+        return errorResponse(HttpStatus.INTERNAL_SERVER_ERROR, INTERNAL_ERROR);
+    }
+
+    /**
+     * Build an error response with the given status and message.
+     * @param status HTTP status
+     * @param message error message
+     * @return error response
+     */
+    protected ResponseEntity<String> errorResponse(HttpStatus status, String message) {
+        return ResponseEntity.status(status).body(helperService.wrapErrorMessageInJson(status.value(), message));
+    }
+
+    /**
+     * Validate the consumer properties of a subscription request and limit them to the configured maximum values.
+     * @param format
+     * @param maxPollRecords
+     * @param fetchMinBytes
+     * @param fetchMaxWaitMs
+     * @param commitMode
+     * @return
+     * @throws BadRequestException if a property value is invalid
+     */
+    protected SubscriptionOptions buildSubscriptionOptions(EmbeddedFormat format, Integer maxPollRecords, Integer fetchMinBytes,
+                                                           Integer fetchMaxWaitMs, CommitMode commitMode) throws BadRequestException {
+        if (maxPollRecords != null && maxPollRecords < 1) {
+            throw new BadRequestException("Parameter \"max_poll_records\" must be greater than zero");
+        }
+        if ((fetchMinBytes != null && fetchMinBytes < 0) || (fetchMaxWaitMs != null && fetchMaxWaitMs < 0)) {
+            throw new BadRequestException("Parameters \"fetch_min_bytes\" and \"fetch_max_wait_ms\" must not be negative");
+        }
+        Map<String, String> consumerProperties = new HashMap<>();
+        if (maxPollRecords != null) {
+            int limit = helperService.getConsumerMaxPollRecordsLimit(MAX_POLL_RECORDS_LIMIT);
+            consumerProperties.put(Constants.KAFKA_MAX_POLL_RECORDS, String.valueOf(Math.min(maxPollRecords, limit)));
+        }
+        if (fetchMinBytes != null) {
+            int limit = helperService.getConsumerFetchMinBytesLimit(FETCH_MIN_BYTES_LIMIT);
+            consumerProperties.put(Constants.KAFKA_FETCH_MIN_BYTES, String.valueOf(Math.min(fetchMinBytes, limit)));
+        }
+        if (fetchMaxWaitMs != null) {
+            int limit = helperService.getConsumerFetchMaxWaitLimit(FETCH_MAX_WAIT_MS_LIMIT);
+            consumerProperties.put(Constants.KAFKA_FETCH_MAX_WAIT_MS, String.valueOf(Math.min(fetchMaxWaitMs, limit)));
+        }
+        return new SubscriptionOptions(format, consumerProperties, commitMode);
+    }
+
+    /**
+     * Validate read request parameters and build read options.
+     * @param waitMs
+     * @param minRecords
+     * @param maxRecords
+     * @return
+     * @throws BadRequestException if a parameter value is invalid
+     */
+    protected ReadOptions buildReadOptions(Long waitMs, Integer minRecords, Integer maxRecords) throws BadRequestException {
+        if ((waitMs != null && waitMs < 0) || (minRecords != null && minRecords < 0)) {
+            throw new BadRequestException("Parameters \"wait_ms\" and \"min_records\" must not be negative");
+        }
+        if (maxRecords != null && maxRecords < 1) {
+            throw new BadRequestException("Parameter \"max_records\" must be greater than zero");
+        }
+        if (minRecords != null && maxRecords != null && minRecords > maxRecords) {
+            throw new BadRequestException("Parameter \"min_records\" must not be greater than \"max_records\"");
+        }
+        Long wait = waitMs;
+        if (wait != null) {
+            wait = Math.min(wait, helperService.getReadMaxWait(READ_MAX_WAIT_MS));
+        }
+        return new ReadOptions(wait, minRecords, maxRecords);
     }
 }
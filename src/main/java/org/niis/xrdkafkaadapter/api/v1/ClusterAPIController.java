@@ -0,0 +1,272 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.api.v1;
+
+import org.niis.xrdkafkaadapter.cluster.ClusterService;
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.model.CommitMode;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
+import org.niis.xrdkafkaadapter.util.Constants;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
+import static org.springframework.web.bind.annotation.RequestMethod.GET;
+import static org.springframework.web.bind.annotation.RequestMethod.POST;
+
+/**
+ * This class implements the internal API that cluster nodes use to forward requests to the owners of
+ * subscriptions. Only requests that contain the shared secret of the cluster are accepted, and their parameters are
+ * validated and limited in the same way as the parameters of the public API. The requests are always handled on
+ * this node without forwarding them again.
+ */
+@RestController
+public class ClusterAPIController extends AbstractAPIController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterAPIController.class);
+
+    private static final String CLUSTER_NOT_ENABLED_ERROR = "Cluster is not enabled.";
+
+    private static final String INVALID_CLUSTER_SECRET_ERROR = "Invalid cluster secret.";
+
+    @Autowired
+    private ClusterService clusterService;
+
+    /**
+     * Subscribe to a Kafka topic on this node. The request body contains the consumer properties of the
+     * subscription.
+     * @return
+     */
+    @RequestMapping(method = POST, path = Constants.CLUSTER_API_BASE_PATH + "/{topicName}/subscriptions",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> subscribe(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                            @RequestHeader(name = Constants.HTTP_HEADER_CLUSTER_SECRET, required = false) String clusterSecret,
+                                            @PathVariable String topicName,
+                                            @RequestParam(name = "offset_reset_policy") OffsetResetPolicy offsetResetPolicy,
+                                            @RequestParam EmbeddedFormat format,
+                                            @RequestParam(name = "commit_mode", defaultValue = "auto") CommitMode commitMode,
+                                            @RequestBody(required = false) Map<String, String> consumerProperties) {
+        LOG.info("Subscribe to topic \"{}\" forwarded by cluster node", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+        ResponseEntity<String> rejected = checkRequest(clusterSecret);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        // Only the fetch and poll properties of the public API are accepted, and they're limited in the same way
+        Map<String, String> properties = consumerProperties == null ? Collections.emptyMap() : consumerProperties;
+        SubscriptionOptions options;
+        try {
+            options = buildSubscriptionOptions(format, getIntProperty(properties, Constants.KAFKA_MAX_POLL_RECORDS),
+                    getIntProperty(properties, Constants.KAFKA_FETCH_MIN_BYTES), getIntProperty(properties, Constants.KAFKA_FETCH_MAX_WAIT_MS),
+                    commitMode);
+        } catch (BadRequestException e) {
+            return CompletableFuture.completedFuture(errorResponse(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+        return toResponse(localKafkaClient.subscribeAsync(xrdClientId, topicName, offsetResetPolicy, options),
+                response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
+    }
+
+    /**
+     * Unsubscribe from a Kafka topic on this node.
+     * @return
+     */
+    @RequestMapping(method = DELETE, path = Constants.CLUSTER_API_BASE_PATH + "/{topicName}/subscriptions",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> unsubscribe(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                              @RequestHeader(name = Constants.HTTP_HEADER_CLUSTER_SECRET, required = false) String clusterSecret,
+                                              @PathVariable String topicName) {
+        LOG.info("Unsubscribe from topic \"{}\" forwarded by cluster node", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+        ResponseEntity<String> rejected = checkRequest(clusterSecret);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        return toResponse(localKafkaClient.unsubscribeAsync(xrdClientId, topicName),
+                response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
+    }
+
+    /**
+     * Read records of a subscription on this node. The records are returned as a JSON array, and the commit token
+     * of the records, if any, in a response header.
+     * @return
+     */
+    @RequestMapping(method = GET, path = Constants.CLUSTER_API_BASE_PATH + "/{topicName}/records",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> read(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                       @RequestHeader(name = Constants.HTTP_HEADER_CLUSTER_SECRET, required = false) String clusterSecret,
+                                       @PathVariable String topicName,
+                                       @RequestParam(name = "wait_ms", required = false) Long waitMs,
+                                       @RequestParam(name = "min_records", required = false) Integer minRecords,
+                                       @RequestParam(name = "max_records", required = false) Integer maxRecords) {
+        LOG.info("Read records from topic \"{}\" forwarded by cluster node", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+        ResponseEntity<String> rejected = checkRequest(clusterSecret);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        ReadOptions readOptions;
+        try {
+            readOptions = buildReadOptions(waitMs, minRecords, maxRecords);
+        } catch (BadRequestException e) {
+            return CompletableFuture.completedFuture(errorResponse(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+        return toResponse(localKafkaClient.readAsync(xrdClientId, topicName, readOptions),
+                response -> {
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.OK);
+                    if (response.getCommitToken() != null) {
+                        builder.header(Constants.HTTP_HEADER_COMMIT_TOKEN, response.getCommitToken());
+                    }
+                    return builder.body(response.getValue());
+                });
+    }
+
+    /**
+     * Move the consumer of a subscription on this node to the given offsets. The request body contains the offsets
+     * by partition.
+     * @return
+     */
+    @RequestMapping(method = POST, path = Constants.CLUSTER_API_BASE_PATH + "/{topicName}/positions",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> seek(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                       @RequestHeader(name = Constants.HTTP_HEADER_CLUSTER_SECRET, required = false) String clusterSecret,
+                                       @PathVariable String topicName,
+                                       @RequestBody Map<Integer, Long> offsets) {
+        LOG.info("Seek topic \"{}\" forwarded by cluster node", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+        ResponseEntity<String> rejected = checkRequest(clusterSecret);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        return toResponse(localKafkaClient.seekAsync(xrdClientId, topicName, offsets),
+                response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
+    }
+
+    /**
+     * Move the consumer of a subscription on this node to the first records whose timestamps are equal to or
+     * greater than the given timestamp.
+     * @return
+     */
+    @RequestMapping(method = POST, path = Constants.CLUSTER_API_BASE_PATH + "/{topicName}/positions/timestamp",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> seekToTimestamp(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                                  @RequestHeader(name = Constants.HTTP_HEADER_CLUSTER_SECRET, required = false) String clusterSecret,
+                                                  @PathVariable String topicName,
+                                                  @RequestParam long timestamp) {
+        LOG.info("Seek topic \"{}\" to timestamp forwarded by cluster node", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+        ResponseEntity<String> rejected = checkRequest(clusterSecret);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        return toResponse(localKafkaClient.seekToTimestampAsync(xrdClientId, topicName, timestamp),
+                response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
+    }
+
+    /**
+     * Move the consumer of a subscription on this node to the beginning or to the end of the topic's partitions.
+     * @return
+     */
+    @RequestMapping(method = POST, path = Constants.CLUSTER_API_BASE_PATH + "/{topicName}/positions/reset",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> resetPositions(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                                 @RequestHeader(name = Constants.HTTP_HEADER_CLUSTER_SECRET, required = false) String clusterSecret,
+                                                 @PathVariable String topicName,
+                                                 @RequestParam OffsetResetPolicy position) {
+        LOG.info("Reset positions of topic \"{}\" forwarded by cluster node", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+        ResponseEntity<String> rejected = checkRequest(clusterSecret);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        return toResponse(localKafkaClient.resetPositionsAsync(xrdClientId, topicName, position),
+                response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
+    }
+
+    /**
+     * Acknowledge records of a subscription on this node. The request body contains the offsets of the next records
+     * to consume by partition.
+     * @return
+     */
+    @RequestMapping(method = POST, path = Constants.CLUSTER_API_BASE_PATH + "/{topicName}/offsets",
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> commit(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                         @RequestHeader(name = Constants.HTTP_HEADER_CLUSTER_SECRET, required = false) String clusterSecret,
+                                         @PathVariable String topicName,
+                                         @RequestBody Map<Integer, Long> offsets) {
+        LOG.info("Commit offsets of topic \"{}\" forwarded by cluster node", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+        ResponseEntity<String> rejected = checkRequest(clusterSecret);
+        if (rejected != null) {
+            return CompletableFuture.completedFuture(rejected);
+        }
+        return toResponse(localKafkaClient.commitAsync(xrdClientId, topicName, offsets),
+                response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
+    }
+
+    /**
+     * Check that the cluster is enabled and that the request contains the shared secret of the cluster.
+     * @param clusterSecret shared secret of the request or null if the request doesn't have one
+     * @return error response or null if the request is accepted
+     */
+    private ResponseEntity<String> checkRequest(String clusterSecret) {
+        if (!clusterService.isEnabled()) {
+            return errorResponse(HttpStatus.NOT_FOUND, CLUSTER_NOT_ENABLED_ERROR);
+        }
+        if (!clusterService.isAuthorized(clusterSecret)) {
+            LOG.warn("Reject internal API request without a valid cluster secret");
+            return errorResponse(HttpStatus.FORBIDDEN, INVALID_CLUSTER_SECRET_ERROR);
+        }
+        return null;
+    }
+
+    private static Integer getIntProperty(Map<String, String> properties, String name) throws BadRequestException {
+        String value = properties.get(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(String.format("Consumer property \"%s\" must be an integer", name));
+        }
+    }
+}
@@ -24,15 +24,22 @@
 package org.niis.xrdkafkaadapter.api.v1;
 
 import org.niis.xrdkafkaadapter.exception.BadRequestException;
-import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
-import org.niis.xrdkafkaadapter.exception.RequestFailedException;
+import org.niis.xrdkafkaadapter.exception.ServiceUnavailableException;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
 import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
-import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.RecordsFormat;
+import org.niis.xrdkafkaadapter.service.RecordStreamService;
 import org.niis.xrdkafkaadapter.util.Constants;
+import org.niis.xrdkafkaadapter.util.PartitionOffsets;
 
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -40,7 +47,18 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
@@ -54,53 +72,307 @@ public class RecordsAPIController extends AbstractAPIController {
 
     private static final Logger LOG = LoggerFactory.getLogger(RecordsAPIController.class);
 
+    private static final String INVALID_COMMIT_TOKEN_ERROR = "Invalid commit token.";
+
+    private static final String INVALID_CURSOR_ERROR = "Invalid cursor.";
+
+    private static final String INVALID_SEEK_REQUEST_ERROR = "Invalid seek request.";
+
+    private static final List<String> SEEK_TARGETS = Arrays.asList("timestamp", "offsets", "position");
+
     @Autowired
-    private HelperService helperService;
+    private RecordStreamService recordStreamService;
 
     /**
-     * Read records from Kafka topic.
+     * Read records from Kafka topic. If the wait time is defined, the request is held until at least the minimum
+     * number of records are available or the wait time elapses. The wait time is limited to the configured
+     * maximum wait time.
+     *
+     * The records are streamed to the response as a JSON array, or as newline delimited JSON if the client accepts
+     * "application/x-ndjson". If the subscription uses the manual commit mode, the response contains the commit
+     * token of the records in the X-Commit-Token header.
      * @return
      */
     @RequestMapping(method = GET, path = Constants.API_BASE_PATH + "/{topicName}/records",
-            produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> read(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
-                                       @PathVariable String topicName) {
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> read(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                       @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                       @PathVariable String topicName,
+                                       @RequestParam(name = "wait_ms", required = false) Long waitMs,
+                                       @RequestParam(name = "min_records", required = false) Integer minRecords,
+                                       @RequestParam(name = "max_records", required = false) Integer maxRecords) {
         LOG.info("Read records from topic \"{}\"", topicName);
         LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
 
+        ReadOptions readOptions;
         try {
-            KafkaClientResponse response = kafkaClient.read(xrdClientId, topicName);
-            return ResponseEntity.status(HttpStatus.OK).body(response.getValue());
-        } catch (RequestFailedException e) {
-            String msg = helperService.wrapErrorMessageInJson(HttpStatus.GATEWAY_TIMEOUT.value(), e.getMessage());
-            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(msg);
-        } catch (ForbiddenRequestException e) {
-            String msg = helperService.wrapErrorMessageInJson(HttpStatus.FORBIDDEN.value(), e.getMessage());
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(msg);
+            readOptions = buildReadOptions(waitMs, minRecords, maxRecords);
+        } catch (BadRequestException e) {
+            return CompletableFuture.completedFuture(toStreamingResponse(errorResponse(HttpStatus.BAD_REQUEST, e.getMessage())));
         }
+        RecordsFormat format = RecordsFormat.fromAcceptHeader(accept);
+        return kafkaClient.readAsync(xrdClientId, topicName, readOptions).handle((response, error) -> {
+            if (error != null) {
+                return toStreamingResponse(toErrorResponse(error));
+            }
+            StreamingResponseBody body = out -> response.writeTo(out, format);
+            ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.OK).contentType(format.getMediaType());
+            if (response.getCommitToken() != null) {
+                builder.header(Constants.HTTP_HEADER_COMMIT_TOKEN, response.getCommitToken());
+            }
+            return builder.body(body);
+        }).toCompletableFuture();
+    }
+
+    /**
+     * Read records of Kafka topic's partitions starting from the given offsets without a subscription. The start
+     * position is given using the "partition" and "offset" parameters, or using the cursor of the previous response
+     * that is returned in the X-Cursor header. No consumer group is used and no offsets are committed, so the client
+     * keeps track of its position using the cursor.
+     * @return
+     */
+    @RequestMapping(method = GET, path = Constants.API_BASE_PATH + "/{topicName}/records/fetch",
+            produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> fetch(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                        @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                        @PathVariable String topicName,
+                                        @RequestParam(required = false) Integer partition,
+                                        @RequestParam(required = false) Long offset,
+                                        @RequestParam(required = false) String cursor,
+                                        @RequestParam(defaultValue = "json") EmbeddedFormat format,
+                                        @RequestParam(name = "wait_ms", required = false) Long waitMs,
+                                        @RequestParam(name = "min_records", required = false) Integer minRecords,
+                                        @RequestParam(name = "max_records", required = false) Integer maxRecords) {
+        LOG.info("Fetch records from topic \"{}\"", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+
+        Map<Integer, Long> positions;
+        ReadOptions readOptions;
+        try {
+            positions = buildFetchPositions(partition, offset, cursor);
+            readOptions = buildReadOptions(waitMs, minRecords, maxRecords);
+        } catch (BadRequestException e) {
+            return CompletableFuture.completedFuture(toStreamingResponse(errorResponse(HttpStatus.BAD_REQUEST, e.getMessage())));
+        }
+        LOG.debug("Fetch positions: {}", positions);
+        RecordsFormat recordsFormat = RecordsFormat.fromAcceptHeader(accept);
+        return kafkaClient.fetchAsync(xrdClientId, topicName, positions, format, readOptions).handle((response, error) -> {
+            if (error != null) {
+                return toStreamingResponse(toErrorResponse(error));
+            }
+            StreamingResponseBody body = out -> response.writeTo(out, recordsFormat);
+            return ResponseEntity.status(HttpStatus.OK).contentType(recordsFormat.getMediaType())
+                    .header(Constants.HTTP_HEADER_CURSOR, response.getCursor()).body(body);
+        }).toCompletableFuture();
+    }
+
+    /**
+     * Stream records from Kafka topic as Server-Sent Events. A client that reconnects with the Last-Event-ID header
+     * continues from the records that follow the last received records.
+     * @return
+     * @throws BadRequestException if the Last-Event-ID header value is invalid
+     * @throws ServiceUnavailableException if the maximum number of streams are already open
+     */
+    @RequestMapping(method = GET, path = Constants.API_BASE_PATH + "/{topicName}/records/stream",
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                             @RequestHeader(value = Constants.HTTP_HEADER_LAST_EVENT_ID, required = false) String lastEventId,
+                             @PathVariable String topicName) throws BadRequestException, ServiceUnavailableException {
+        LOG.info("Stream records from topic \"{}\"", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+
+        return recordStreamService.open(kafkaClient, xrdClientId, topicName, lastEventId);
     }
 
     /**
-     * Publish records to Kafka topic.
+     * Publish records to Kafka topic. The keys and values of the records are in the given format.
      * @return
      */
     @RequestMapping(method = POST, path = Constants.API_BASE_PATH +  "/{topicName}/records",
             produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> publish(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+    public CompletableFuture<ResponseEntity<String>> publish(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
                                           @PathVariable String topicName,
-                                          @RequestBody String messageBody) {
+                                          @RequestParam(defaultValue = "json") EmbeddedFormat format,
+                                          @RequestBody byte[] messageBody) {
         LOG.info("Publish records to topic \"{}\"", topicName);
         LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+        LOG.debug("Format: \"{}\"", format);
+
+        return toResponse(kafkaClient.publishAsync(xrdClientId, topicName, messageBody, format),
+                response -> ResponseEntity.status(HttpStatus.OK).body(response.getValue()));
+    }
+
+    /**
+     * Publish the request body to Kafka topic as a single record without any conversions.
+     * @return
+     */
+    @RequestMapping(method = POST, path = Constants.API_BASE_PATH +  "/{topicName}/records",
+            produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public CompletableFuture<ResponseEntity<String>> publishBinary(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                                @PathVariable String topicName,
+                                                @RequestParam(required = false) String key,
+                                                @RequestBody byte[] value) {
+        LOG.info("Publish binary record to topic \"{}\"", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+
+        return toResponse(kafkaClient.publishBinaryAsync(xrdClientId, topicName, key, value),
+                response -> ResponseEntity.status(HttpStatus.OK).body(response.getValue()));
+    }
+
+    /**
+     * Acknowledge the records of a subscription that uses the manual commit mode. The request body contains the
+     * commit token of a read response or the id of a record stream event, and the offsets of the acknowledged
+     * records are committed in the background.
+     * @return
+     */
+    @RequestMapping(method = POST, path = Constants.API_BASE_PATH + "/{topicName}/offsets",
+            produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> commit(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                         @PathVariable String topicName,
+                                         @RequestBody String requestBody) {
+        LOG.info("Commit offsets of topic \"{}\"", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
 
+        Map<Integer, Long> positions = new TreeMap<>();
         try {
-            KafkaClientResponse response = kafkaClient.publish(xrdClientId, topicName, messageBody);
-            return ResponseEntity.status(HttpStatus.OK).body(response.getValue());
-        } catch (RequestFailedException e) {
-            String msg = helperService.wrapErrorMessageInJson(HttpStatus.GATEWAY_TIMEOUT.value(), e.getMessage());
-            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(msg);
+            parseCommitToken(requestBody).forEach((partition, offset) -> positions.put(partition, offset + 1));
         } catch (BadRequestException e) {
-            String msg = helperService.wrapErrorMessageInJson(HttpStatus.BAD_REQUEST.value(), e.getMessage());
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(msg);
+            return CompletableFuture.completedFuture(errorResponse(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+        LOG.debug("Commit positions: {}", positions);
+        return toResponse(kafkaClient.commitAsync(xrdClientId, topicName, positions),
+                response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
+    }
+
+    /**
+     * Move the consumer of a subscription, so that the next read returns records starting from the new position.
+     * The request body contains either a timestamp in milliseconds since the epoch, the offsets of the next records
+     * to read by partition, or the position "earliest" or "latest", e.g., {"timestamp": 1634300000000},
+     * {"offsets": {"0": 15, "1": 27}} or {"position": "earliest"}.
+     * @return
+     */
+    @RequestMapping(method = POST, path = Constants.API_BASE_PATH + "/{topicName}/positions",
+            produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<ResponseEntity<String>> seek(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+                                       @PathVariable String topicName,
+                                       @RequestBody String requestBody) {
+        LOG.info("Seek topic \"{}\"", topicName);
+        LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
+
+        CompletionStage<KafkaClientResponse> seek;
+        try {
+            seek = sendSeekRequest(xrdClientId, topicName, requestBody);
+        } catch (BadRequestException e) {
+            return CompletableFuture.completedFuture(errorResponse(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+        return toResponse(seek, response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
+    }
+
+    /**
+     * Validate a seek request and send it to the Kafka client.
+     * @param xrdClientId
+     * @param topicName
+     * @param requestBody
+     * @return
+     * @throws BadRequestException if the request body is invalid
+     */
+    protected CompletionStage<KafkaClientResponse> sendSeekRequest(String xrdClientId, String topicName, String requestBody)
+            throws BadRequestException {
+        JSONObject request;
+        try {
+            request = new JSONObject(requestBody);
+        } catch (JSONException e) {
+            throw new BadRequestException(INVALID_SEEK_REQUEST_ERROR);
         }
+        if (SEEK_TARGETS.stream().filter(request::has).count() != 1) {
+            throw new BadRequestException("Exactly one of \"timestamp\", \"offsets\" and \"position\" must be defined");
+        }
+        try {
+            if (request.has("timestamp")) {
+                long timestamp = request.getLong("timestamp");
+                if (timestamp < 0) {
+                    throw new BadRequestException(INVALID_SEEK_REQUEST_ERROR);
+                }
+                LOG.debug("Seek timestamp: {}", timestamp);
+                return kafkaClient.seekToTimestampAsync(xrdClientId, topicName, timestamp);
+            } else if (request.has("offsets")) {
+                JSONObject json = request.getJSONObject("offsets");
+                Map<Integer, Long> offsets = new TreeMap<>();
+                for (String partition : json.keySet()) {
+                    offsets.put(Integer.parseInt(partition), json.getLong(partition));
+                }
+                if (offsets.isEmpty() || offsets.entrySet().stream().anyMatch(e -> e.getKey() < 0 || e.getValue() < 0)) {
+                    throw new BadRequestException(INVALID_SEEK_REQUEST_ERROR);
+                }
+                LOG.debug("Seek offsets: {}", offsets);
+                return kafkaClient.seekAsync(xrdClientId, topicName, offsets);
+            }
+            OffsetResetPolicy position = OffsetResetPolicy.valueOf(request.getString("position").toUpperCase());
+            LOG.debug("Seek position: {}", position);
+            return kafkaClient.resetPositionsAsync(xrdClientId, topicName, position);
+        } catch (JSONException | IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException
+            throw new BadRequestException(INVALID_SEEK_REQUEST_ERROR);
+        }
+    }
+
+    /**
+     * Parse the offsets of the acknowledged records from the "commit_token" field of a commit request.
+     * @param requestBody
+     * @return offsets of the last acknowledged records by partition
+     * @throws BadRequestException if the request body or the commit token is invalid
+     */
+    protected Map<Integer, Long> parseCommitToken(String requestBody) throws BadRequestException {
+        String commitToken;
+        try {
+            commitToken = new JSONObject(requestBody).getString("commit_token");
+        } catch (JSONException e) {
+            throw new BadRequestException(INVALID_COMMIT_TOKEN_ERROR);
+        }
+        Map<Integer, Long> offsets = PartitionOffsets.parse(commitToken, INVALID_COMMIT_TOKEN_ERROR);
+        if (offsets.isEmpty()) {
+            throw new BadRequestException(INVALID_COMMIT_TOKEN_ERROR);
+        }
+        return offsets;
+    }
+
+    /**
+     * Get the start positions of a fetch request either from the cursor or from the partition and offset parameters.
+     * @param partition
+     * @param offset
+     * @param cursor
+     * @return offsets of the next records to read by partition
+     * @throws BadRequestException if the parameters are missing or invalid
+     */
+    protected Map<Integer, Long> buildFetchPositions(Integer partition, Long offset, String cursor) throws BadRequestException {
+        if (cursor != null) {
+            if (partition != null || offset != null) {
+                throw new BadRequestException("Parameter \"cursor\" must not be used with \"partition\" and \"offset\"");
+            }
+            Map<Integer, Long> positions = PartitionOffsets.parse(cursor, INVALID_CURSOR_ERROR);
+            for (Map.Entry<Integer, Long> position : positions.entrySet()) {
+                if (position.getKey() < 0 || position.getValue() < 0) {
+                    throw new BadRequestException(INVALID_CURSOR_ERROR);
+                }
+            }
+            if (positions.isEmpty()) {
+                throw new BadRequestException(INVALID_CURSOR_ERROR);
+            }
+            return positions;
+        }
+        if (partition == null || offset == null) {
+            throw new BadRequestException("Parameters \"partition\" and \"offset\" or parameter \"cursor\" must be defined");
+        }
+        if (partition < 0 || offset < 0) {
+            throw new BadRequestException("Parameters \"partition\" and \"offset\" must not be negative");
+        }
+        Map<Integer, Long> positions = new TreeMap<>();
+        positions.put(partition, offset);
+        return positions;
+    }
+
+    private static ResponseEntity<StreamingResponseBody> toStreamingResponse(ResponseEntity<String> response) {
+        byte[] body = response.getBody().getBytes(StandardCharsets.UTF_8);
+        return ResponseEntity.status(response.getStatusCode()).contentType(MediaType.APPLICATION_JSON).body(out -> out.write(body));
     }
 }
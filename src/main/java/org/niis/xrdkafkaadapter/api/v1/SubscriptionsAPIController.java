@@ -23,16 +23,15 @@
  */
 package org.niis.xrdkafkaadapter.api.v1;
 
-import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
-import org.niis.xrdkafkaadapter.exception.RequestFailedException;
-import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.model.CommitMode;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
 import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
-import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
 import org.niis.xrdkafkaadapter.util.Constants;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -42,6 +41,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.concurrent.CompletableFuture;
+
 import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
@@ -54,28 +55,37 @@ public class SubscriptionsAPIController extends AbstractAPIController {
 
     private static final Logger LOG = LoggerFactory.getLogger(SubscriptionsAPIController.class);
 
-    @Autowired
-    private HelperService helperService;
-
     /**
-     * Subscribe to a Kafka topic.
+     * Subscribe to a Kafka topic. The consumer fetch and poll properties of the request override the configured
+     * properties of the topic, and they are limited to the configured maximum values. In the manual commit mode,
+     * the offsets are committed only after the client has acknowledged the records.
      * @return
      */
     @RequestMapping(method = POST, path = Constants.API_BASE_PATH + "/{topicName}/subscriptions",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> subscribe(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+    public CompletableFuture<ResponseEntity<String>> subscribe(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
                                             @PathVariable String topicName,
-                                            @RequestParam(defaultValue = "earliest") OffsetResetPolicy offsetResetPolicy) {
+                                            @RequestParam(defaultValue = "earliest") OffsetResetPolicy offsetResetPolicy,
+                                            @RequestParam(defaultValue = "json") EmbeddedFormat format,
+                                            @RequestParam(name = "max_poll_records", required = false) Integer maxPollRecords,
+                                            @RequestParam(name = "fetch_min_bytes", required = false) Integer fetchMinBytes,
+                                            @RequestParam(name = "fetch_max_wait_ms", required = false) Integer fetchMaxWaitMs,
+                                            @RequestParam(name = "commit_mode", defaultValue = "auto") CommitMode commitMode) {
         LOG.info("Subscribe to topic \"{}\"", topicName);
         LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
         LOG.debug("Offset reset policy: \"{}\"", offsetResetPolicy);
+        LOG.debug("Format: \"{}\"", format);
+        LOG.debug("Commit mode: \"{}\"", commitMode);
+
+        SubscriptionOptions options;
         try {
-            KafkaClientResponse response = kafkaClient.subscribe(xrdClientId, topicName, offsetResetPolicy);
-            return ResponseEntity.status(HttpStatus.NO_CONTENT).body("");
-        } catch (RequestFailedException e) {
-            String msg = helperService.wrapErrorMessageInJson(HttpStatus.GATEWAY_TIMEOUT.value(), e.getMessage());
-            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(msg);
+            options = buildSubscriptionOptions(format, maxPollRecords, fetchMinBytes, fetchMaxWaitMs, commitMode);
+        } catch (BadRequestException e) {
+            return CompletableFuture.completedFuture(errorResponse(HttpStatus.BAD_REQUEST, e.getMessage()));
         }
+        LOG.debug("Consumer properties: {}", options.getConsumerProperties());
+        return toResponse(kafkaClient.subscribeAsync(xrdClientId, topicName, offsetResetPolicy, options),
+                response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
     }
 
     /**
@@ -84,19 +94,11 @@ public class SubscriptionsAPIController extends AbstractAPIController {
      */
     @RequestMapping(method = DELETE, path = Constants.API_BASE_PATH + "/{topicName}/subscriptions",
             produces = MediaType.APPLICATION_JSON_VALUE)
-    public ResponseEntity<String> unsubscribe(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
+    public CompletableFuture<ResponseEntity<String>> unsubscribe(@RequestHeader(Constants.XRD_CLIENT_ID) String xrdClientId,
                                               @PathVariable String topicName) {
         LOG.info("Unsubscribe from topic \"{}\"", topicName);
         LOG.debug("X-Road-Client: \"{}\"", xrdClientId);
-        try {
-            KafkaClientResponse response = kafkaClient.unsubscribe(xrdClientId, topicName);
-            return ResponseEntity.status(HttpStatus.NO_CONTENT).body("");
-        } catch (RequestFailedException e) {
-            String msg = helperService.wrapErrorMessageInJson(HttpStatus.GATEWAY_TIMEOUT.value(), e.getMessage());
-            return ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).body(msg);
-        } catch (ForbiddenRequestException e) {
-            String msg = helperService.wrapErrorMessageInJson(HttpStatus.FORBIDDEN.value(), e.getMessage());
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(msg);
-        }
+        return toResponse(kafkaClient.unsubscribeAsync(xrdClientId, topicName),
+                response -> ResponseEntity.status(HttpStatus.NO_CONTENT).body(""));
     }
 }
@@ -0,0 +1,346 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.cluster;
+
+import org.niis.xrdkafkaadapter.http.HttpClientResponse;
+import org.niis.xrdkafkaadapter.http.PooledHttpClient;
+import org.niis.xrdkafkaadapter.kafka.client.ClusteredKafkaClient;
+import org.niis.xrdkafkaadapter.kafka.client.KafkaClient;
+import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.util.Constants;
+
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * This class keeps track of the live nodes of an adapter cluster. Subscriptions are owned by the nodes using
+ * consistent hashing of the consumer group names, and requests of subscriptions that are owned by other nodes are
+ * forwarded to the owners using the internal cluster API.
+ *
+ * The nodes are configured statically, and a node is live if its health endpoint responds with status 200. A node
+ * is considered down or up again only after a number of consecutive failed or successful health checks, so that
+ * a single missed check doesn't move the subscriptions back and forth. When the live nodes change, the membership
+ * listeners are notified, so that the subscriptions can be handed over to their new owners.
+ */
+@Service
+public class ClusterService implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterService.class);
+
+    // Default (can be overridden in props)
+    private static final int VIRTUAL_NODES = 100;
+
+    // Default (can be overridden in props): 2000ms = 2s
+    private static final int HEALTH_CHECK_TIMEOUT_MS = 2000;
+
+    // Default (can be overridden in props)
+    private static final int HEALTH_CHECK_THRESHOLD = 3;
+
+    // Default (can be overridden in props): 55000ms = 55s
+    private static final int FORWARD_TIMEOUT_MS = 55000;
+
+    private static final String HEALTH_PATH = "/actuator/health";
+
+    private static final Map<String, String> NO_PARAMS = Collections.emptyMap();
+
+    private final HelperService helperService;
+
+    private final boolean enabled;
+
+    private final String nodeUrl;
+
+    private final List<String> nodes;
+
+    private final int virtualNodes;
+
+    private final int healthCheckTimeout;
+
+    private final int healthCheckThreshold;
+
+    private final int forwardTimeout;
+
+    // Number of consecutive health check results that differ from the current state by node
+    private final Map<String, Integer> stateChanges = new HashMap<>();
+
+    // Set while the health checks are in progress, so that a slow check doesn't overlap the next one
+    private final AtomicBoolean checking = new AtomicBoolean();
+
+    // Shared secret of the internal API requests
+    private final String secret;
+
+    private final List<Consumer<ConsistentHashRing>> membershipListeners = new CopyOnWriteArrayList<>();
+
+    private final PooledHttpClient httpClient;
+
+    private volatile ConsistentHashRing ring;
+
+    private ClusteredKafkaClient clusteredKafkaClient;
+
+    /**
+     * Initialize new ClusterService object. If the cluster is enabled, all the configured nodes are considered live
+     * until the first health check has been completed.
+     *
+     * @param helperService
+     */
+    @Autowired
+    public ClusterService(HelperService helperService) {
+        this(helperService, helperService.isClusterEnabled() ? new PooledHttpClient(helperService) : null);
+    }
+
+    /**
+     * Initialize new ClusterService object that uses the given HTTP client.
+     *
+     * @param helperService
+     * @param httpClient HTTP client for health checks and forwarded requests
+     */
+    public ClusterService(HelperService helperService, PooledHttpClient httpClient) {
+        this.helperService = helperService;
+        this.httpClient = httpClient;
+        enabled = helperService.isClusterEnabled();
+        nodeUrl = helperService.getClusterNodeUrl();
+        virtualNodes = helperService.getClusterVirtualNodes(VIRTUAL_NODES);
+        healthCheckTimeout = helperService.getClusterHealthCheckTimeout(HEALTH_CHECK_TIMEOUT_MS);
+        healthCheckThreshold = helperService.getClusterHealthCheckThreshold(HEALTH_CHECK_THRESHOLD);
+        forwardTimeout = helperService.getClusterForwardTimeout(FORWARD_TIMEOUT_MS);
+        secret = helperService.getClusterSecret();
+        List<String> configuredNodes = new ArrayList<>(helperService.getClusterNodes());
+        if (enabled) {
+            if (nodeUrl == null) {
+                throw new IllegalStateException("Property " + Constants.CLUSTER_NODE_URL + " must be defined when the cluster is enabled");
+            }
+            if (secret == null) {
+                throw new IllegalStateException("Property " + Constants.CLUSTER_SECRET + " must be defined when the cluster is enabled");
+            }
+            if (!configuredNodes.contains(nodeUrl)) {
+                configuredNodes.add(nodeUrl);
+            }
+            LOG.info("Cluster enabled, node \"{}\" of {}", nodeUrl, configuredNodes);
+        }
+        nodes = Collections.unmodifiableList(configuredNodes);
+        ring = new ConsistentHashRing(nodes, virtualNodes);
+    }
+
+    /**
+     * Check whether the adapter is run as a cluster.
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Check whether a request of the internal API has been sent by a cluster node. The shared secrets are compared
+     * in constant time, so that the secret can't be guessed from the response times.
+     * @param requestSecret shared secret of the request or null if the request doesn't have one
+     * @return true if the cluster is enabled and the secret matches the secret of this node
+     */
+    public boolean isAuthorized(String requestSecret) {
+        return enabled && requestSecret != null && MessageDigest.isEqual(secret.getBytes(StandardCharsets.UTF_8),
+                requestSecret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the base URL of this node.
+     * @return
+     */
+    public String getNodeUrl() {
+        return nodeUrl;
+    }
+
+    /**
+     * Get the current hash ring of the live nodes.
+     * @return
+     */
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    /**
+     * Get the live node that owns the given consumer group.
+     * @param groupName consumer group name
+     * @return base URL of the owner node
+     */
+    public String getOwner(String groupName) {
+        String owner = ring.getOwner(groupName);
+        return owner == null ? nodeUrl : owner;
+    }
+
+    /**
+     * Check whether the given node is this node.
+     * @param node base URL of a node
+     * @return
+     */
+    public boolean isLocal(String node) {
+        return !enabled || nodeUrl.equals(node);
+    }
+
+    /**
+     * Add a listener that is notified with the new hash ring when the live nodes change.
+     * @param listener membership listener
+     */
+    public void addMembershipListener(Consumer<ConsistentHashRing> listener) {
+        membershipListeners.add(listener);
+    }
+
+    /**
+     * Get the Kafka client that forwards the requests of subscriptions that are owned by other nodes. The same
+     * client is returned for all the callers, so that the subscriptions of this node are handed over only once.
+     * @param delegate Kafka client that handles the requests of this node's subscriptions
+     * @return clustered Kafka client
+     */
+    public synchronized ClusteredKafkaClient getKafkaClient(KafkaClient delegate) {
+        if (clusteredKafkaClient == null) {
+            clusteredKafkaClient = new ClusteredKafkaClient(delegate, this, helperService);
+        }
+        return clusteredKafkaClient;
+    }
+
+    /**
+     * Send a request to the internal cluster API of the given node. The request uses the forward timeout instead of
+     * the HTTP client read timeout, because the owner may wait for records and for its turn to use the consumer.
+     *
+     * @param method HTTP method
+     * @param node base URL of the target node
+     * @param path path relative to the cluster API base path
+     * @param body JSON request body or null
+     * @param params request parameters
+     * @param xrdClientId X-Road client identifier of the original request
+     * @return future that is completed with the response or null if sending the request fails
+     */
+    public CompletableFuture<HttpClientResponse> forward(HttpMethod method, String node, String path, String body, Map<String, String> params,
+                                                         String xrdClientId) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(Constants.XRD_CLIENT_ID, xrdClientId);
+        headers.put(Constants.HTTP_HEADER_CLUSTER_SECRET, secret);
+        if (body != null) {
+            headers.put(Constants.HTTP_HEADER_CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        }
+        LOG.debug("Forward {} request to node \"{}\"", method, node);
+        return httpClient.sendAsync(method, node + Constants.CLUSTER_API_BASE_PATH + path, body, params, headers, forwardTimeout);
+    }
+
+    /**
+     * Check the health of the other nodes and update the hash ring if the live nodes have changed. The checks are
+     * completed asynchronously, so the scheduler thread isn't blocked while waiting for the responses.
+     */
+    @Scheduled(fixedDelayString = "${app.cluster.health-check-interval:5000}")
+    public void checkMembership() {
+        if (!enabled || !checking.compareAndSet(false, true)) {
+            return;
+        }
+        Map<String, CompletableFuture<Boolean>> checks = new HashMap<>();
+        for (String node : nodes) {
+            if (!node.equals(nodeUrl)) {
+                checks.put(node, httpClient.sendAsync(HttpMethod.GET, node + HEALTH_PATH, null, NO_PARAMS, NO_PARAMS, healthCheckTimeout)
+                        .thenApply(response -> response != null && response.getStatusCode() == HttpStatus.SC_OK));
+            }
+        }
+        CompletableFuture.allOf(checks.values().toArray(new CompletableFuture[0])).thenAccept(v -> {
+            Map<String, Boolean> results = new HashMap<>();
+            checks.forEach((node, check) -> results.put(node, check.join()));
+            updateHealth(results);
+        }).whenComplete((result, error) -> {
+            if (error != null) {
+                LOG.error("Cluster health check failed", error);
+            }
+            // The client isn't a bean, so its idle connections aren't closed by the scheduler
+            httpClient.closeIdleConnections();
+            checking.set(false);
+        });
+    }
+
+    /**
+     * Update the live nodes using the results of the health checks. The state of a node is changed only after
+     * the configured number of consecutive results that differ from the current state.
+     * @param results health check results by node, true if the node is healthy
+     */
+    protected synchronized void updateHealth(Map<String, Boolean> results) {
+        Set<String> liveNodes = new TreeSet<>(ring.getNodes());
+        liveNodes.add(nodeUrl);
+        results.forEach((node, healthy) -> {
+            if (healthy == liveNodes.contains(node)) {
+                stateChanges.remove(node);
+                return;
+            }
+            int count = stateChanges.merge(node, 1, Integer::sum);
+            if (count < healthCheckThreshold) {
+                LOG.debug("Node \"{}\" is {} ({}/{})", node, healthy ? "up" : "down", count, healthCheckThreshold);
+                return;
+            }
+            stateChanges.remove(node);
+            if (healthy) {
+                liveNodes.add(node);
+            } else {
+                liveNodes.remove(node);
+            }
+        });
+        updateMembership(liveNodes);
+    }
+
+    /**
+     * Replace the hash ring and notify the membership listeners if the live nodes have changed.
+     * @param liveNodes base URLs of the live nodes
+     */
+    protected synchronized void updateMembership(Set<String> liveNodes) {
+        if (ring.getNodes().equals(liveNodes)) {
+            return;
+        }
+        LOG.info("Cluster membership changed, live nodes: {}", liveNodes);
+        ConsistentHashRing updated = new ConsistentHashRing(liveNodes, virtualNodes);
+        ring = updated;
+        membershipListeners.forEach(listener -> listener.accept(updated));
+    }
+
+    /**
+     * Close the HTTP client when the application is shut down.
+     */
+    @Override
+    public void destroy() throws IOException {
+        if (httpClient != null) {
+            httpClient.destroy();
+        }
+    }
+}
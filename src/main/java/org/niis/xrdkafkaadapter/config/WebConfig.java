@@ -23,10 +23,17 @@
  */
 package org.niis.xrdkafkaadapter.config;
 
+import org.niis.xrdkafkaadapter.converter.StringToCommitModeConverter;
+import org.niis.xrdkafkaadapter.converter.StringToEmbeddedFormatConverter;
 import org.niis.xrdkafkaadapter.converter.StringToOffsetResetPolicyConverter;
+import org.niis.xrdkafkaadapter.service.HelperService;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.format.FormatterRegistry;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
@@ -35,8 +42,25 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
 
+    private static final Logger LOG = LoggerFactory.getLogger(WebConfig.class);
+
+    // Default (can be overridden in props): 60000ms = 1min
+    private static final int ASYNC_REQUEST_TIMEOUT_MS = 60000;
+
+    @Autowired
+    private HelperService helperService;
+
     @Override
     public void addFormatters(FormatterRegistry registry) {
         registry.addConverter(new StringToOffsetResetPolicyConverter());
+        registry.addConverter(new StringToEmbeddedFormatConverter());
+        registry.addConverter(new StringToCommitModeConverter());
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        int requestTimeout = helperService.getAsyncRequestTimeout(ASYNC_REQUEST_TIMEOUT_MS);
+        LOG.debug("Async request timeout is {}ms", requestTimeout);
+        configurer.setDefaultTimeout(requestTimeout);
     }
 }
@@ -23,6 +23,8 @@
  */
 package org.niis.xrdkafkaadapter.controller;
 
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.exception.ServiceUnavailableException;
 import org.niis.xrdkafkaadapter.service.HelperService;
 
 import org.slf4j.Logger;
@@ -37,6 +39,8 @@ import org.springframework.web.HttpRequestMethodNotSupportedException;
 import org.springframework.web.bind.MissingRequestHeaderException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 /**
  * This is a global exception handler class.
@@ -91,10 +95,46 @@ public class GlobalControllerExceptionHandler {
      * @param ex
      * @return
      */
-    @ExceptionHandler(ConversionFailedException.class)
+    @ExceptionHandler({ConversionFailedException.class, MethodArgumentTypeMismatchException.class})
     public ResponseEntity<String> handleConversionFailedException(RuntimeException ex) {
         LOG.warn(ex.getMessage());
         String msg = helperService.wrapErrorMessageInJson(HttpStatus.BAD_REQUEST.value(), "Invalid request parameter value");
         return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON).body(msg);
     }
+
+    /**
+     * Handle BadRequestException exceptions.
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<String> handleBadRequestException(BadRequestException ex) {
+        LOG.warn(ex.getMessage());
+        String msg = helperService.wrapErrorMessageInJson(HttpStatus.BAD_REQUEST.value(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.APPLICATION_JSON).body(msg);
+    }
+
+    /**
+     * Handle ServiceUnavailableException exceptions.
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<String> handleServiceUnavailableException(ServiceUnavailableException ex) {
+        LOG.warn(ex.getMessage());
+        String msg = helperService.wrapErrorMessageInJson(HttpStatus.SERVICE_UNAVAILABLE.value(), ex.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(MediaType.APPLICATION_JSON).body(msg);
+    }
+
+    /**
+     * Handle AsyncRequestTimeoutException exceptions.
+     * @param ex
+     * @return
+     */
+    @ExceptionHandler(AsyncRequestTimeoutException.class)
+    public ResponseEntity<String> handleAsyncRequestTimeoutException(AsyncRequestTimeoutException ex) {
+        LOG.warn("Async request timed out");
+        String msg = helperService.wrapErrorMessageInJson(HttpStatus.SERVICE_UNAVAILABLE.value(), "Request timed out");
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(MediaType.APPLICATION_JSON).body(msg);
+    }
 }
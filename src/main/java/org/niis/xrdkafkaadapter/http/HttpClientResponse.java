@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class represents a response received by PooledHttpClient.
+ */
+public class HttpClientResponse {
+
+    private final int statusCode;
+
+    private final String data;
+
+    private final Map<String, String> headers;
+
+    /**
+     * Initialize new HttpClientResponse object without headers.
+     * @param statusCode HTTP status code
+     * @param data response body or null if the response doesn't have a body
+     */
+    public HttpClientResponse(int statusCode, String data) {
+        this(statusCode, data, Collections.emptyMap());
+    }
+
+    /**
+     * Initialize new HttpClientResponse object.
+     * @param statusCode HTTP status code
+     * @param data response body or null if the response doesn't have a body
+     * @param headers response headers by name
+     */
+    public HttpClientResponse(int statusCode, String data, Map<String, String> headers) {
+        this.statusCode = statusCode;
+        this.data = data;
+        // Header names are case-insensitive
+        this.headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        this.headers.putAll(headers);
+    }
+
+    /**
+     * Get HTTP status code.
+     * @return
+     */
+    public int getStatusCode() {
+        return this.statusCode;
+    }
+
+    /**
+     * Get response body.
+     * @return
+     */
+    public String getData() {
+        return this.data;
+    }
+
+    /**
+     * Get the value of a response header. If the header occurs several times, the first value is returned.
+     * @param name header name
+     * @return header value or null if the response doesn't have the header
+     */
+    public String getHeader(String name) {
+        return this.headers.get(name);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.http;
+
+import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.service.MetricsService;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements a HTTP client that keeps a pool of persistent (keep-alive) connections. The same client
+ * instance is shared by all the requests, so that the connections to the same host are reused instead of opening
+ * a new connection for every request.
+ *
+ * Requests are sent asynchronously using non-blocking I/O, so waiting for a response doesn't reserve a thread.
+ */
+@Component
+public class PooledHttpClient implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledHttpClient.class);
+
+    // Default (can be overridden in props)
+    private static final int MAX_CONNECTIONS = 100;
+
+    // Default (can be overridden in props)
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 20;
+
+    // Default (can be overridden in props): 5000ms = 5s
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    // Default (can be overridden in props): 30000ms = 30s
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    // Default (can be overridden in props): 60s
+    private static final int IDLE_TIMEOUT_S = 60;
+
+    // 5000ms = 5s
+    private static final int IDLE_CONNECTION_CHECK_INTERVAL_MS = 5000;
+
+    private final PoolingNHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    private final int idleTimeout;
+
+    private final RequestConfig requestConfig;
+
+    private MetricsService metricsService = MetricsService.noop();
+
+    /**
+     * Initialize new PooledHttpClient object.
+     *
+     * @param helperService
+     */
+    public PooledHttpClient(HelperService helperService) {
+        int maxConnections = helperService.getHttpClientMaxConnections(MAX_CONNECTIONS);
+        int maxConnectionsPerRoute = helperService.getHttpClientMaxConnectionsPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        int connectTimeout = helperService.getHttpClientConnectTimeout(CONNECT_TIMEOUT_MS);
+        int readTimeout = helperService.getHttpClientReadTimeout(READ_TIMEOUT_MS);
+        idleTimeout = helperService.getHttpClientIdleTimeout(IDLE_TIMEOUT_S);
+
+        LOG.debug("HTTP client max connections is {}", maxConnections);
+        LOG.debug("HTTP client max connections per route is {}", maxConnectionsPerRoute);
+        LOG.debug("HTTP client connect timeout is {}ms", connectTimeout);
+        LOG.debug("HTTP client read timeout is {}ms", readTimeout);
+        LOG.debug("HTTP client idle timeout is {}s", idleTimeout);
+
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSoTimeout(readTimeout)
+                .build();
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Unable to create HTTP client I/O reactor", e);
+        }
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setConnectionRequestTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .build();
+
+        // Connections are kept alive as long as the server allows, and closed after they have been idle
+        // for the idle timeout
+        httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+        httpClient.start();
+    }
+
+    /**
+     * Set the metrics service that records the round-trip latency of the requests.
+     * @param metricsService
+     */
+    @Autowired(required = false)
+    public void setMetricsService(MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * Close expired connections and connections that have been idle for the idle timeout.
+     */
+    @Scheduled(fixedRate = IDLE_CONNECTION_CHECK_INTERVAL_MS)
+    public void closeIdleConnections() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeout, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Send a HTTP request to the given URL and wait for the response. If sending the request fails, null is returned.
+     *
+     * @param method HTTP method
+     * @param url target URL
+     * @param body request body or null
+     * @param params request parameters that are added to the URL
+     * @param headers request headers
+     * @return response or null
+     */
+    public HttpClientResponse send(HttpMethod method, String url, String body, Map<String, String> params,
+                                   Map<String, String> headers) {
+        return sendAsync(method, url, body, params, headers).join();
+    }
+
+    /**
+     * Send a HTTP request to the given URL asynchronously. The returned future is completed when the response
+     * has been received. If sending the request fails, the future is completed with null.
+     *
+     * @param method HTTP method
+     * @param url target URL
+     * @param body request body or null
+     * @param params request parameters that are added to the URL
+     * @param headers request headers
+     * @return future that is completed with the response or null
+     */
+    public CompletableFuture<HttpClientResponse> sendAsync(HttpMethod method, String url, String body, Map<String, String> params,
+                                                           Map<String, String> headers) {
+        return sendAsync(method, url, body, params, headers, requestConfig);
+    }
+
+    /**
+     * Send a HTTP request to the given URL asynchronously using the given read timeout instead of the default read
+     * timeout. The returned future is completed when the response has been received. If sending the request fails
+     * or the response isn't received in time, the future is completed with null.
+     *
+     * @param method HTTP method
+     * @param url target URL
+     * @param body request body or null
+     * @param params request parameters that are added to the URL
+     * @param headers request headers
+     * @param readTimeout read (socket) timeout of the request in milliseconds
+     * @return future that is completed with the response or null
+     */
+    public CompletableFuture<HttpClientResponse> sendAsync(HttpMethod method, String url, String body, Map<String, String> params,
+                                                           Map<String, String> headers, int readTimeout) {
+        return sendAsync(method, url, body, params, headers, RequestConfig.copy(requestConfig).setSocketTimeout(readTimeout).build());
+    }
+
+    private CompletableFuture<HttpClientResponse> sendAsync(HttpMethod method, String url, String body, Map<String, String> params,
+                                                            Map<String, String> headers, RequestConfig config) {
+        CompletableFuture<HttpClientResponse> future = new CompletableFuture<>();
+        URI uri;
+        try {
+            URIBuilder uriBuilder = new URIBuilder(url);
+            params.forEach(uriBuilder::addParameter);
+            uri = uriBuilder.build();
+        } catch (URISyntaxException e) {
+            LOG.error("Sending request to \"{}\" failed", url);
+            LOG.error(e.getMessage(), e);
+            future.complete(null);
+            return future;
+        }
+
+        RequestBuilder requestBuilder = RequestBuilder.create(method.name()).setUri(uri).setConfig(config);
+        headers.forEach(requestBuilder::addHeader);
+        if (body != null) {
+            requestBuilder.setEntity(new StringEntity(body, StandardCharsets.UTF_8));
+        }
+
+        LOG.debug("Send {} request to \"{}\"", method, uri);
+        long start = System.nanoTime();
+        future.whenComplete((response, error) -> metricsService.recordRestProxyRequest(method.name(),
+                response == null ? null : response.getStatusCode(), System.nanoTime() - start));
+        httpClient.execute(requestBuilder.build(), new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                // The response entity has already been read into memory, so reading it doesn't block
+                try {
+                    HttpEntity entity = response.getEntity();
+                    String data = entity == null ? null : EntityUtils.toString(entity, StandardCharsets.UTF_8);
+                    Map<String, String> responseHeaders = new HashMap<>();
+                    for (Header header : response.getAllHeaders()) {
+                        responseHeaders.putIfAbsent(header.getName(), header.getValue());
+                    }
+                    future.complete(new HttpClientResponse(response.getStatusLine().getStatusCode(), data, responseHeaders));
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                LOG.error("Sending request to \"{}\" failed", url);
+                LOG.error(e.getMessage(), e);
+                future.complete(null);
+            }
+
+            @Override
+            public void cancelled() {
+                LOG.error("Sending request to \"{}\" was cancelled", url);
+                future.complete(null);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Close the client and all the pooled connections when the application is shut down.
+     */
+    @Override
+    public void destroy() throws IOException {
+        LOG.debug("Close HTTP client");
+        httpClient.close();
+    }
+}
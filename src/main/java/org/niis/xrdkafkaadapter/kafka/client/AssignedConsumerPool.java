@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * This class implements a shared pool of consumers that read partitions from given offsets without consumer group
+ * membership. The partitions are assigned to the consumers explicitly, so there's no group coordination, no
+ * rebalances and no client specific state, and any number of clients can share the same consumers. The consumers
+ * are created when they're needed the first time.
+ *
+ * Reads are spread over the consumers by the partitions they read. The reads that wait for records on the same
+ * consumer share its polls, and a consumer is moved only when a read starts from another offset than where the
+ * consumer is. Records that a read doesn't return are not kept for the next read.
+ */
+public class AssignedConsumerPool implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AssignedConsumerPool.class);
+
+    private final int size;
+
+    // Creates the consumer worker of the given format and pool index
+    private final BiFunction<EmbeddedFormat, Integer, ConsumerWorker> workerFactory;
+
+    // Consumer workers by format. A slot is null until the worker is needed the first time.
+    private final Map<EmbeddedFormat, ConsumerWorker[]> workers = new ConcurrentHashMap<>();
+
+    private final Duration closeTimeout;
+
+    /**
+     * Initialize new AssignedConsumerPool object.
+     *
+     * @param size the maximum number of consumers per format
+     * @param workerFactory creates the consumer worker of the given format and pool index
+     * @param closeTimeout maximum time to wait for a consumer to close
+     */
+    public AssignedConsumerPool(int size, BiFunction<EmbeddedFormat, Integer, ConsumerWorker> workerFactory, Duration closeTimeout) {
+        this.size = Math.max(1, size);
+        this.workerFactory = workerFactory;
+        this.closeTimeout = closeTimeout;
+        LOG.debug("Assigned consumer pool size is {}", this.size);
+    }
+
+    /**
+     * Get the consumer worker that reads the given partitions in the given format. The worker is created if it
+     * doesn't exist yet.
+     *
+     * @param format format of the record keys and values
+     * @param partitions partitions to read
+     * @return consumer worker
+     */
+    public ConsumerWorker getWorker(EmbeddedFormat format, Collection<TopicPartition> partitions) {
+        ConsumerWorker[] pool = workers.computeIfAbsent(format, key -> new ConsumerWorker[size]);
+        int index = Math.floorMod(new HashSet<>(partitions).hashCode(), size);
+        synchronized (pool) {
+            if (pool[index] == null) {
+                LOG.debug("Add new assigned consumer {} for format \"{}\"", index, format.getName());
+                pool[index] = workerFactory.apply(format, index);
+            }
+            return pool[index];
+        }
+    }
+
+    /**
+     * Close all the consumers of the pool.
+     */
+    @Override
+    public void close() {
+        for (ConsumerWorker[] pool : workers.values()) {
+            synchronized (pool) {
+                for (ConsumerWorker worker : pool) {
+                    if (worker != null) {
+                        worker.close(closeTimeout);
+                    }
+                }
+            }
+        }
+    }
+}
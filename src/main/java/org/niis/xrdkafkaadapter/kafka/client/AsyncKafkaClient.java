@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
+import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * This interface defines an asynchronous client interface for Kafka. The methods don't block the calling thread.
+ * If a request fails, the returned stage is completed exceptionally with RequestFailedException,
+ * ForbiddenRequestException or BadRequestException.
+ */
+public interface AsyncKafkaClient {
+
+    default CompletionStage<KafkaClientResponse> subscribeAsync(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy) {
+        return subscribeAsync(xrdClientId, topicName, offsetResetPolicy, new SubscriptionOptions());
+    }
+
+    /**
+     * Subscribe to Kafka topic. The records of the subscription are returned in the given format.
+     * @param xrdClientId
+     * @param topicName
+     * @param offsetResetPolicy
+     * @param format format of the record keys and values
+     * @return
+     */
+    default CompletionStage<KafkaClientResponse> subscribeAsync(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                                EmbeddedFormat format) {
+        return subscribeAsync(xrdClientId, topicName, offsetResetPolicy, new SubscriptionOptions(format));
+    }
+
+    /**
+     * Subscribe to Kafka topic using the given options. Consumer properties of the options override the configured
+     * consumer properties of the topic.
+     * @param xrdClientId
+     * @param topicName
+     * @param offsetResetPolicy
+     * @param options format and consumer properties of the subscription
+     * @return
+     */
+    CompletionStage<KafkaClientResponse> subscribeAsync(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                        SubscriptionOptions options);
+
+    CompletionStage<KafkaClientResponse> unsubscribeAsync(String xrdClientId, String topicName);
+
+    CompletionStage<KafkaClientResponse> readAsync(String xrdClientId, String topicName, ReadOptions readOptions);
+
+    default CompletionStage<KafkaClientResponse> publishAsync(String xrdClientId, String topicName, byte[] messageBody) {
+        return publishAsync(xrdClientId, topicName, messageBody, EmbeddedFormat.JSON);
+    }
+
+    /**
+     * Publish records in the given format to a Kafka topic.
+     * @param xrdClientId
+     * @param topicName
+     * @param messageBody
+     * @param format format of the record keys and values
+     * @return
+     */
+    CompletionStage<KafkaClientResponse> publishAsync(String xrdClientId, String topicName, byte[] messageBody, EmbeddedFormat format);
+
+    /**
+     * Publish a single record whose value is sent to Kafka as such.
+     * @param xrdClientId
+     * @param topicName
+     * @param key record key or null
+     * @param value record value
+     * @return
+     */
+    CompletionStage<KafkaClientResponse> publishBinaryAsync(String xrdClientId, String topicName, String key, byte[] value);
+
+    /**
+     * Move the subscription's consumer to the given offsets, so that the next read returns records starting from
+     * the given offsets. Partitions that are not in the map keep their current positions.
+     * @param xrdClientId
+     * @param topicName
+     * @param offsets offsets by partition
+     * @return
+     */
+    CompletionStage<KafkaClientResponse> seekAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets);
+
+    /**
+     * Move the subscription's consumer to the first records whose timestamps are equal to or greater than the given
+     * timestamp. Partitions that don't have such records are moved to their end.
+     * @param xrdClientId
+     * @param topicName
+     * @param timestamp timestamp in milliseconds since the epoch
+     * @return
+     */
+    CompletionStage<KafkaClientResponse> seekToTimestampAsync(String xrdClientId, String topicName, long timestamp);
+
+    /**
+     * Move the subscription's consumer to the beginning (EARLIEST) or to the end (LATEST) of the topic's partitions.
+     * @param xrdClientId
+     * @param topicName
+     * @param position
+     * @return
+     */
+    CompletionStage<KafkaClientResponse> resetPositionsAsync(String xrdClientId, String topicName, OffsetResetPolicy position);
+
+    /**
+     * Acknowledge the records of a subscription that uses the manual commit mode. The offsets are committed
+     * asynchronously, so the returned stage is completed before the offsets have been committed.
+     * @param xrdClientId
+     * @param topicName
+     * @param offsets the offsets of the next records to consume by partition
+     * @return
+     */
+    CompletionStage<KafkaClientResponse> commitAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets);
+
+    /**
+     * Read records of the given partitions starting from the given offsets without a subscription. No consumer
+     * group is used and no offsets are committed. The response contains the cursor that the next read of the
+     * partitions continues from.
+     * @param xrdClientId
+     * @param topicName
+     * @param positions the offsets of the next records to read by partition
+     * @param format format of the record keys and values
+     * @param readOptions
+     * @return
+     */
+    CompletionStage<KafkaClientResponse> fetchAsync(String xrdClientId, String topicName, Map<Integer, Long> positions,
+                                                    EmbeddedFormat format, ReadOptions readOptions);
+}
@@ -0,0 +1,322 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.cluster.ClusterService;
+import org.niis.xrdkafkaadapter.cluster.ConsistentHashRing;
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
+import org.niis.xrdkafkaadapter.exception.RequestFailedException;
+import org.niis.xrdkafkaadapter.http.HttpClientResponse;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
+import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
+import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.util.Constants;
+
+import org.apache.http.HttpStatus;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements a Kafka client for a cluster of adapter nodes. Each subscription is owned by one node, which
+ * is selected by consistent hashing of the consumer group name. Subscribe, unsubscribe, read, seek and commit
+ * requests of subscriptions that are owned by other nodes are forwarded to the owners, and the requests of this node's
+ * subscriptions are handled by the delegate client. Records can be published, and partitions can be read without a
+ * subscription, by any node.
+ *
+ * When the live nodes change, the subscriptions of this node that are now owned by other nodes are handed over:
+ * the local consumer is closed, which commits its offsets, and its static member is removed from the consumer group.
+ * Only then the subscription is created on the new owner, which continues from the committed offsets. The nodes use
+ * node specific group instance ids, so if the nodes disagree on the owner for a while, the consumers of both nodes
+ * share the partitions of the group instead of fencing each other. The subscription is removed from this node only after the new owner
+ * has accepted it. If handing over fails, the subscription is kept, so that its consumer is restored by the next
+ * read that reaches this node, and handing over is retried. The subscriptions are handed over only if the delegate
+ * owns its consumers, because the consumer instances of a REST Proxy are shared by all the nodes.
+ */
+public class ClusteredKafkaClient implements KafkaClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusteredKafkaClient.class);
+
+    private static final String FORWARDING_FAILED_ERROR = "Forwarding request to cluster node failed.";
+
+    private static final String SUBSCRIPTIONS_PATH = "/subscriptions";
+
+    private static final String RECORDS_PATH = "/records";
+
+    private static final String POSITIONS_PATH = "/positions";
+
+    private static final String OFFSETS_PATH = "/offsets";
+
+    private static final String TIMESTAMP_POSITIONS_PATH = "/positions/timestamp";
+
+    private static final String RESET_POSITIONS_PATH = "/positions/reset";
+
+    private static final int HANDOVER_RETRY_INTERVAL_MS = 5000;
+
+    private final KafkaClient delegate;
+
+    private final ClusterService clusterService;
+
+    private final HelperService helperService;
+
+    private final int handOverRetryInterval;
+
+    // Consumer groups that are being handed over to other nodes
+    private final Set<String> handingOver = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Initialize new ClusteredKafkaClient object.
+     * @param delegate Kafka client that handles the requests of this node's subscriptions
+     * @param clusterService cluster service
+     * @param helperService helper service
+     */
+    public ClusteredKafkaClient(KafkaClient delegate, ClusterService clusterService, HelperService helperService) {
+        this.delegate = delegate;
+        this.clusterService = clusterService;
+        this.helperService = helperService;
+        this.handOverRetryInterval = helperService.getClusterHandOverRetryInterval(HANDOVER_RETRY_INTERVAL_MS);
+        clusterService.addMembershipListener(this::handOver);
+    }
+
+    /**
+     * Get the Kafka client that handles requests on this node without forwarding them. Requests that have been
+     * forwarded by other nodes are handled using this client, so that a request is never forwarded twice even if
+     * the nodes disagree on the owner.
+     * @return
+     */
+    public KafkaClient getLocalClient() {
+        return delegate;
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> subscribeAsync(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                               SubscriptionOptions options) {
+        String owner = getOwner(xrdClientId, topicName);
+        if (clusterService.isLocal(owner)) {
+            return delegate.subscribeAsync(xrdClientId, topicName, offsetResetPolicy, options);
+        }
+        return forwardSubscribe(owner, new SubscriptionRegistry.Subscription(xrdClientId, topicName, offsetResetPolicy, options));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> unsubscribeAsync(String xrdClientId, String topicName) {
+        String owner = getOwner(xrdClientId, topicName);
+        if (clusterService.isLocal(owner)) {
+            return delegate.unsubscribeAsync(xrdClientId, topicName);
+        }
+        return forward(HttpMethod.DELETE, owner, topicName, SUBSCRIPTIONS_PATH, null, new HashMap<>(), xrdClientId);
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> readAsync(String xrdClientId, String topicName, ReadOptions readOptions) {
+        String owner = getOwner(xrdClientId, topicName);
+        if (clusterService.isLocal(owner)) {
+            return delegate.readAsync(xrdClientId, topicName, readOptions);
+        }
+        Map<String, String> params = new HashMap<>();
+        if (readOptions.hasWaitMs()) {
+            params.put("wait_ms", String.valueOf(readOptions.getWaitMs(0)));
+        }
+        params.put("min_records", String.valueOf(readOptions.getMinRecords(0)));
+        params.put("max_records", String.valueOf(readOptions.getMaxRecords(Integer.MAX_VALUE)));
+        return forward(HttpMethod.GET, owner, topicName, RECORDS_PATH, null, params, xrdClientId);
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> publishAsync(String xrdClientId, String topicName, byte[] messageBody,
+                                                             EmbeddedFormat format) {
+        return delegate.publishAsync(xrdClientId, topicName, messageBody, format);
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> publishBinaryAsync(String xrdClientId, String topicName, String key, byte[] value) {
+        return delegate.publishBinaryAsync(xrdClientId, topicName, key, value);
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> seekAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets) {
+        String owner = getOwner(xrdClientId, topicName);
+        if (clusterService.isLocal(owner)) {
+            return delegate.seekAsync(xrdClientId, topicName, offsets);
+        }
+        return forward(HttpMethod.POST, owner, topicName, POSITIONS_PATH, new JSONObject(offsets).toString(), new HashMap<>(), xrdClientId);
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> seekToTimestampAsync(String xrdClientId, String topicName, long timestamp) {
+        String owner = getOwner(xrdClientId, topicName);
+        if (clusterService.isLocal(owner)) {
+            return delegate.seekToTimestampAsync(xrdClientId, topicName, timestamp);
+        }
+        Map<String, String> params = new HashMap<>();
+        params.put("timestamp", String.valueOf(timestamp));
+        return forward(HttpMethod.POST, owner, topicName, TIMESTAMP_POSITIONS_PATH, null, params, xrdClientId);
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> resetPositionsAsync(String xrdClientId, String topicName, OffsetResetPolicy position) {
+        String owner = getOwner(xrdClientId, topicName);
+        if (clusterService.isLocal(owner)) {
+            return delegate.resetPositionsAsync(xrdClientId, topicName, position);
+        }
+        Map<String, String> params = new HashMap<>();
+        params.put("position", position.name().toLowerCase());
+        return forward(HttpMethod.POST, owner, topicName, RESET_POSITIONS_PATH, null, params, xrdClientId);
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> commitAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets) {
+        String owner = getOwner(xrdClientId, topicName);
+        if (clusterService.isLocal(owner)) {
+            return delegate.commitAsync(xrdClientId, topicName, offsets);
+        }
+        return forward(HttpMethod.POST, owner, topicName, OFFSETS_PATH, new JSONObject(offsets).toString(), new HashMap<>(), xrdClientId);
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> fetchAsync(String xrdClientId, String topicName, Map<Integer, Long> positions,
+                                                           EmbeddedFormat format, ReadOptions readOptions) {
+        // Reads without a subscription don't have any node specific state
+        return delegate.fetchAsync(xrdClientId, topicName, positions, format, readOptions);
+    }
+
+    /**
+     * Hand over the subscriptions of this node that are owned by other nodes after the live nodes have changed.
+     * @param ring hash ring of the live nodes
+     */
+    protected void handOver(ConsistentHashRing ring) {
+        if (!(delegate instanceof SubscriptionOwner)) {
+            return;
+        }
+        new HashMap<>(((SubscriptionOwner) delegate).getSubscriptions()).forEach((groupName, subscription) -> {
+            String owner = ring.getOwner(groupName);
+            // A failed handover is retried with the current ring, so it's not started again
+            if (owner != null && !clusterService.isLocal(owner) && handingOver.add(groupName)) {
+                handOver(groupName, subscription, owner);
+            }
+        });
+    }
+
+    private void handOver(String groupName, SubscriptionRegistry.Subscription subscription, String owner) {
+        SubscriptionOwner subscriptionOwner = (SubscriptionOwner) delegate;
+        LOG.info("Hand over consumer group \"{}\" to node \"{}\"", groupName, owner);
+        // The new owner continues from the offsets that the local consumer commits when it's closed
+        subscriptionOwner.releaseAsync(groupName)
+                .thenCompose(v -> forwardSubscribe(owner, subscription))
+                .whenComplete((response, error) -> {
+                    if (error == null) {
+                        subscriptionOwner.unregister(groupName);
+                        // A request that was forwarded by a node with an older ring may have restored the consumer
+                        subscriptionOwner.releaseAsync(groupName);
+                        handingOver.remove(groupName);
+                    } else {
+                        LOG.warn("Handing over consumer group \"{}\" to node \"{}\" failed, retrying in {} ms: {}", groupName, owner,
+                                handOverRetryInterval, KafkaClientFutures.unwrap(error).getMessage());
+                        CompletableFuture.delayedExecutor(handOverRetryInterval, TimeUnit.MILLISECONDS)
+                                .execute(() -> retryHandOver(groupName));
+                    }
+                });
+    }
+
+    /**
+     * Retry handing over a subscription to its owner in the current ring. Retrying stops if the subscription has
+     * been removed or this node owns it again.
+     */
+    private void retryHandOver(String groupName) {
+        SubscriptionRegistry.Subscription subscription = ((SubscriptionOwner) delegate).getSubscriptions().get(groupName);
+        String owner = clusterService.getRing().getOwner(groupName);
+        if (subscription == null || owner == null || clusterService.isLocal(owner)) {
+            handingOver.remove(groupName);
+            return;
+        }
+        handOver(groupName, subscription, owner);
+    }
+
+    private String getOwner(String xrdClientId, String topicName) {
+        return clusterService.getOwner(helperService.getKafkaConsumerGroupName(xrdClientId, topicName));
+    }
+
+    private CompletionStage<KafkaClientResponse> forwardSubscribe(String owner, SubscriptionRegistry.Subscription subscription) {
+        SubscriptionOptions options = subscription.getOptions();
+        Map<String, String> params = new HashMap<>();
+        params.put("offset_reset_policy", subscription.getOffsetResetPolicy().name().toLowerCase());
+        params.put("format", options.getFormat().getName());
+        params.put("commit_mode", options.getCommitMode().name().toLowerCase());
+        String body = new JSONObject(options.getConsumerProperties()).toString();
+        return forward(HttpMethod.POST, owner, subscription.getTopicName(), SUBSCRIPTIONS_PATH, body, params, subscription.getXrdClientId());
+    }
+
+    private CompletionStage<KafkaClientResponse> forward(HttpMethod method, String owner, String topicName, String path, String body,
+                                                         Map<String, String> params, String xrdClientId) {
+        return clusterService.forward(method, owner, "/" + topicName + path, body, params, xrdClientId)
+                .thenCompose(ClusteredKafkaClient::toResponse);
+    }
+
+    /**
+     * Convert the response of a forwarded request to the result of the request. Error responses are converted
+     * back to the exceptions that they have been created from.
+     */
+    private static CompletableFuture<KafkaClientResponse> toResponse(HttpClientResponse response) {
+        if (response == null) {
+            return KafkaClientFutures.failed(new RequestFailedException(FORWARDING_FAILED_ERROR));
+        }
+        switch (response.getStatusCode()) {
+            case HttpStatus.SC_OK:
+                KafkaClientResponse result = new KafkaClientResponse(response.getData());
+                result.setCommitToken(response.getHeader(Constants.HTTP_HEADER_COMMIT_TOKEN));
+                return CompletableFuture.completedFuture(result);
+            case HttpStatus.SC_NO_CONTENT:
+                return CompletableFuture.completedFuture(new KafkaClientResponse());
+            case HttpStatus.SC_BAD_REQUEST:
+                return KafkaClientFutures.failed(new BadRequestException(getErrorMessage(response)));
+            case HttpStatus.SC_FORBIDDEN:
+                return KafkaClientFutures.failed(new ForbiddenRequestException(getErrorMessage(response)));
+            default:
+                LOG.warn("Forwarded request failed with status {}", response.getStatusCode());
+                return KafkaClientFutures.failed(new RequestFailedException(getErrorMessage(response)));
+        }
+    }
+
+    private static String getErrorMessage(HttpClientResponse response) {
+        try {
+            return new JSONObject(response.getData()).getString("message");
+        } catch (JSONException | NullPointerException e) {
+            return FORWARDING_FAILED_ERROR;
+        }
+    }
+}
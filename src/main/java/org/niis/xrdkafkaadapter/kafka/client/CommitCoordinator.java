@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class commits the acknowledged offsets of the subscriptions that use the manual commit mode. Acknowledging
+ * records only records the offsets in the consumer worker, and the acknowledged offsets of all the subscriptions
+ * are committed periodically, so that a client request never waits for a commit and several acknowledgements of
+ * the same subscription result in a single asynchronous commit.
+ */
+public class CommitCoordinator implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CommitCoordinator.class);
+
+    // Workers that have acknowledged offsets that haven't been committed yet
+    private final Set<ConsumerWorker> pendingWorkers = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledFuture<?> commitTask;
+
+    /**
+     * Initialize new CommitCoordinator object.
+     *
+     * @param scheduler scheduler that runs the periodic commits
+     * @param commitInterval the interval of the commits in milliseconds
+     */
+    public CommitCoordinator(ScheduledExecutorService scheduler, long commitInterval) {
+        LOG.debug("Commit interval is {}ms", commitInterval);
+        commitTask = scheduler.scheduleWithFixedDelay(this::commit, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Acknowledge records of a subscription. The offsets are committed by the next periodic commit.
+     *
+     * @param worker consumer worker of the subscription
+     * @param offsets the offsets of the next records to consume by partition
+     */
+    public void acknowledge(ConsumerWorker worker, Map<TopicPartition, Long> offsets) {
+        worker.acknowledge(offsets);
+        pendingWorkers.add(worker);
+    }
+
+    /**
+     * Commit the acknowledged offsets of all the subscriptions asynchronously. The offsets of a worker that has
+     * been closed in the meantime have already been committed when the worker was closed.
+     */
+    public void commit() {
+        Iterator<ConsumerWorker> workers = pendingWorkers.iterator();
+        while (workers.hasNext()) {
+            ConsumerWorker worker = workers.next();
+            workers.remove();
+            if (!worker.isClosed()) {
+                worker.commitAcknowledged();
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic commits.
+     */
+    @Override
+    public void close() {
+        commitTask.cancel(false);
+    }
+}
@@ -0,0 +1,664 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.model.CommitMode;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * This class owns a single Kafka consumer. KafkaConsumer is not thread-safe, so the consumer is accessed only from
+ * the worker's own thread. Request threads submit tasks to the worker and get futures that are completed with the
+ * results, which means that concurrent requests targeting the same consumer are queued and executed one at a time.
+ *
+ * Fetched records are stored in a buffer and the records that don't fit in a response are returned by the next
+ * read. When the consumer is closed or its partitions are revoked, it's moved back to the first buffered record
+ * of each partition before its positions are committed, so that the buffered records are fetched again.
+ *
+ * Optionally, the worker prefetches records in the background. The prefetched records are stored in a bounded
+ * buffer that request threads drain without waiting for the worker. When the buffer is full, the assigned
+ * partitions are paused, and they are resumed when there's room in the buffer again. The consumer keeps polling
+ * while its partitions are paused, which keeps its group membership alive.
+ */
+public class ConsumerWorker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConsumerWorker.class);
+
+    private static final String THREAD_NAME_PREFIX = "kafka-consumer-";
+
+    // The default close timeout of KafkaConsumer
+    private static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(30);
+
+    // The maximum time that a read of assigned partitions holds the worker per poll
+    private static final long FETCH_POLL_TIMEOUT_MS = 100;
+
+    private final String name;
+
+    private final Consumer<String, String> consumer;
+
+    private final ExecutorService executor;
+
+    private final RecordBuffer recordBuffer;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final SubscriptionOptions options;
+
+    private final AtomicBoolean prefetching = new AtomicBoolean();
+
+    // Positions of partitions that weren't assigned to the consumer when seeking. Accessed only from the worker's thread.
+    private final Map<TopicPartition, Long> pendingPositions = new HashMap<>();
+
+    // Acknowledged offsets that haven't been committed yet by partition
+    private final Map<TopicPartition, Long> acknowledgedOffsets = new ConcurrentHashMap<>();
+
+    // Reads of assigned partitions that wait for records. Accessed only from the worker's thread.
+    private final List<Fetch> pendingFetches = new ArrayList<>();
+
+    // Positions of the assigned partitions after the previous fetch poll. Accessed only from the worker's thread.
+    private final Map<TopicPartition, Long> fetchPositions = new HashMap<>();
+
+    private boolean fetchPollScheduled;
+
+    private Duration prefetchPollTimeout;
+
+    /**
+     * Initialize new ConsumerWorker object.
+     *
+     * @param name worker name, e.g., the consumer group name
+     * @param consumer the consumer that is owned by the worker
+     * @param recordBuffer buffer for fetched records that haven't been returned to a client yet
+     * @param scheduler scheduler that completes the reads that wait for prefetched records
+     */
+    public ConsumerWorker(String name, Consumer<String, String> consumer, RecordBuffer recordBuffer, ScheduledExecutorService scheduler) {
+        this(name, consumer, recordBuffer, scheduler, new SubscriptionOptions());
+    }
+
+    /**
+     * Initialize new ConsumerWorker object.
+     *
+     * @param name worker name, e.g., the consumer group name
+     * @param consumer the consumer that is owned by the worker
+     * @param recordBuffer buffer for fetched records that haven't been returned to a client yet
+     * @param scheduler scheduler that completes the reads that wait for prefetched records
+     * @param options options of the subscription that the consumer has been created with
+     */
+    public ConsumerWorker(String name, Consumer<String, String> consumer, RecordBuffer recordBuffer, ScheduledExecutorService scheduler,
+                          SubscriptionOptions options) {
+        this.name = name;
+        this.options = options;
+        this.consumer = consumer;
+        this.recordBuffer = recordBuffer;
+        this.scheduler = scheduler;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Get worker name.
+     * @return
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the options of the subscription that the consumer has been created with.
+     * @return
+     */
+    public SubscriptionOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Get the record buffer.
+     * @return record buffer
+     */
+    public RecordBuffer getRecordBuffer() {
+        return recordBuffer;
+    }
+
+    /**
+     * Start prefetching records in the background. The consumer must be subscribed to a topic before prefetching
+     * is started. Invoking this method has no effect if prefetching has already been started.
+     *
+     * @param pollTimeout poll timeout in milliseconds that is used when prefetching records
+     */
+    public void startPrefetching(int pollTimeout) {
+        if (prefetching.compareAndSet(false, true)) {
+            LOG.debug("Start prefetching records for consumer \"{}\"", name);
+            prefetchPollTimeout = Duration.ofMillis(pollTimeout);
+            schedulePrefetch();
+        }
+    }
+
+    /**
+     * Check if the worker prefetches records in the background.
+     * @return true if prefetching has been started, otherwise false
+     */
+    public boolean isPrefetching() {
+        return prefetching.get();
+    }
+
+    /**
+     * Read records. The returned future is completed when the record buffer contains at least the given minimum
+     * number of records or when the wait time elapses, whichever happens first. Records that exceed the maximum
+     * number or size of records are left in the buffer and they're returned by the next read.
+     *
+     * If the worker prefetches records, records are read from the buffer without waiting for the worker and without
+     * blocking the calling thread. Otherwise, the consumer is polled in the worker's thread.
+     *
+     * @param waitMs the maximum time to wait for records in milliseconds
+     * @param minRecords the minimum number of records to wait for
+     * @param maxRecords the maximum number of records to return
+     * @param maxBytes the maximum size of the returned records in bytes
+     * @return future that is completed with the records
+     */
+    public CompletableFuture<List<ConsumerRecord<String, String>>> read(long waitMs, int minRecords, int maxRecords, long maxBytes) {
+        if (isPrefetching()) {
+            return recordBuffer.whenAvailable(minRecords, waitMs, scheduler)
+                    .thenApply(available -> recordBuffer.drain(maxRecords, maxBytes));
+        }
+        return submit(c -> {
+            long deadline = System.currentTimeMillis() + waitMs;
+            long remaining = waitMs;
+            // Poll at least once, even if there are enough records in the buffer already, so that the consumer
+            // keeps its group membership alive
+            do {
+                recordBuffer.addAll(c.poll(Duration.ofMillis(Math.max(0, remaining))));
+                remaining = deadline - System.currentTimeMillis();
+            } while (recordBuffer.size() < minRecords && remaining > 0);
+            return recordBuffer.drain(maxRecords, maxBytes);
+        });
+    }
+
+    /**
+     * Read records of the given partitions starting from the given offsets. The partitions are assigned to the
+     * consumer explicitly, so the consumer must not belong to a consumer group. The returned future is completed
+     * when at least the given minimum number of records have been fetched or when the wait time elapses. Records
+     * that exceed the maximum number or size of records are discarded, because the next read seeks the consumer
+     * again.
+     *
+     * The worker is not held for the whole wait time. The reads that wait for records are served together: each
+     * poll assigns the union of their partitions, the fetched records are handed to the reads by partition and
+     * offset, and the next poll is queued behind the tasks that have been submitted in the meantime. A partition is
+     * moved only if its position differs from the lowest offset that the reads wait for. A read stops waiting if
+     * the returned future is cancelled.
+     *
+     * @param positions the offsets of the next records to fetch by partition
+     * @param waitMs the maximum time to wait for records in milliseconds
+     * @param minRecords the minimum number of records to wait for
+     * @param maxRecords the maximum number of records to return
+     * @param maxBytes the maximum size of the returned records in bytes
+     * @return future that is completed with the records
+     */
+    public CompletableFuture<List<ConsumerRecord<String, String>>> fetch(Map<TopicPartition, Long> positions, long waitMs,
+                                                                         int minRecords, int maxRecords, long maxBytes) {
+        Fetch fetch = new Fetch(positions, System.currentTimeMillis() + waitMs, minRecords, maxRecords, maxBytes);
+        submit(c -> {
+            pendingFetches.add(fetch);
+            if (!fetchPollScheduled) {
+                fetchPollScheduled = true;
+                scheduleFetchPoll();
+            }
+            return null;
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                fetch.result.completeExceptionally(error);
+            }
+        });
+        return fetch.result;
+    }
+
+    /**
+     * Move the consumer to the given positions. The buffered records of the partitions are discarded. Partitions
+     * that are not currently assigned to the consumer are moved if they get assigned by the next rebalance. The
+     * positions of unassigned partitions that were requested by a previous seek are discarded.
+     *
+     * @param positions the offsets of the next records to fetch by partition
+     * @return future that is completed when the positions have been updated
+     */
+    public CompletableFuture<Void> seek(Map<TopicPartition, Long> positions) {
+        return submit(c -> {
+            pendingPositions.clear();
+            recordBuffer.removeAll(positions.keySet());
+            Collection<TopicPartition> assignment = c.assignment();
+            positions.forEach((partition, offset) -> {
+                if (assignment.contains(partition)) {
+                    LOG.debug("Seek consumer \"{}\" to offset {} of partition {}", name, offset, partition);
+                    c.seek(partition, offset);
+                } else {
+                    pendingPositions.put(partition, offset);
+                }
+            });
+            return null;
+        });
+    }
+
+    /**
+     * Move the given newly assigned partitions to the positions that were requested before the partitions were
+     * assigned. The requested positions apply to the next assignment only, and the positions of the partitions
+     * that were assigned to other consumers are discarded. Must be invoked from the worker's thread, e.g., by a
+     * rebalance listener.
+     *
+     * @param partitions assigned partitions
+     */
+    void seekPendingPositions(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            Long offset = pendingPositions.remove(partition);
+            if (offset != null) {
+                LOG.debug("Seek consumer \"{}\" to offset {} of partition {}", name, offset, partition);
+                consumer.seek(partition, offset);
+            }
+        }
+        if (!pendingPositions.isEmpty()) {
+            LOG.debug("Discard positions {} of partitions that weren't assigned to consumer \"{}\"", pendingPositions, name);
+            pendingPositions.clear();
+        }
+    }
+
+    /**
+     * Acknowledge consumed records. The offsets are committed by the next commit of the acknowledged offsets, and
+     * an offset that is lower than an already acknowledged offset of the same partition is ignored.
+     *
+     * @param offsets the offsets of the next records to consume by partition
+     */
+    public void acknowledge(Map<TopicPartition, Long> offsets) {
+        offsets.forEach((partition, offset) -> acknowledgedOffsets.merge(partition, offset, Math::max));
+    }
+
+    /**
+     * Commit the acknowledged offsets asynchronously in the worker's thread. If the commit fails, the offsets of
+     * the partitions that are still assigned to the consumer are committed by the next commit.
+     *
+     * @return future that is completed when the commit has been sent
+     */
+    public CompletableFuture<Void> commitAcknowledged() {
+        return submit(c -> {
+            Map<TopicPartition, OffsetAndMetadata> offsets = takeAcknowledgedOffsets(acknowledgedOffsets.keySet());
+            if (!offsets.isEmpty()) {
+                LOG.debug("Commit offsets {} of consumer \"{}\"", offsets, name);
+                // The callback is invoked in the worker's thread by a later poll or commit
+                c.commitAsync(offsets, (committed, error) -> {
+                    if (error != null) {
+                        LOG.warn("Committing offsets of consumer \"{}\" failed: {}", name, error.getMessage());
+                        Collection<TopicPartition> assignment = c.assignment();
+                        offsets.forEach((partition, offset) -> {
+                            if (assignment.contains(partition)) {
+                                acknowledgedOffsets.merge(partition, offset.offset(), Math::max);
+                            }
+                        });
+                    }
+                });
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Release partitions that are revoked from the consumer. The buffered records of the partitions are discarded
+     * and the acknowledged offsets are committed. Must be invoked from the worker's thread by a rebalance listener
+     * before the partitions are revoked.
+     *
+     * When offsets are committed automatically, the consumer has already committed its positions before revoking
+     * the partitions, and the positions are past the buffered records. The offsets of the first buffered records
+     * are committed instead, so that the next owner of the partitions fetches the records that haven't been
+     * returned to a client.
+     *
+     * @param partitions revoked partitions
+     * @param timeout maximum time to wait for the commit
+     */
+    void releasePartitions(Collection<TopicPartition> partitions, Duration timeout) {
+        Map<TopicPartition, Long> unreturned = rewindBuffered(partitions);
+        if (options.getCommitMode() != CommitMode.MANUAL && !unreturned.isEmpty()) {
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            unreturned.forEach((partition, offset) -> offsets.put(partition, new OffsetAndMetadata(offset)));
+            commitSync(offsets, timeout);
+        }
+        commitAcknowledged(partitions, timeout);
+    }
+
+    /**
+     * Discard the buffered records of the given partitions and move the consumer back to the first discarded record
+     * of each partition, so that the positions committed by the consumer don't skip records that haven't been
+     * returned to a client. Must be invoked from the worker's thread.
+     *
+     * @param partitions partitions whose buffered records are discarded
+     * @return the offsets of the first discarded records by partition
+     */
+    private Map<TopicPartition, Long> rewindBuffered(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, Long> unreturned = recordBuffer.removeAll(partitions);
+        Collection<TopicPartition> assignment = consumer.assignment();
+        unreturned.forEach((partition, offset) -> {
+            if (assignment.contains(partition)) {
+                LOG.debug("Seek consumer \"{}\" back to offset {} of partition {}", name, offset, partition);
+                consumer.seek(partition, offset);
+            }
+        });
+        return unreturned;
+    }
+
+    /**
+     * Commit the acknowledged offsets of the given partitions synchronously. Must be invoked from the worker's
+     * thread, e.g., by a rebalance listener before the partitions are revoked.
+     *
+     * @param partitions partitions whose acknowledged offsets are committed
+     * @param timeout maximum time to wait for the commit
+     */
+    void commitAcknowledged(Collection<TopicPartition> partitions, Duration timeout) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = takeAcknowledgedOffsets(partitions);
+        if (!offsets.isEmpty()) {
+            commitSync(offsets, timeout);
+        }
+    }
+
+    private void commitSync(Map<TopicPartition, OffsetAndMetadata> offsets, Duration timeout) {
+        try {
+            consumer.commitSync(offsets, timeout);
+            LOG.debug("Committed offsets {} of consumer \"{}\"", offsets, name);
+        } catch (KafkaException e) {
+            LOG.warn("Committing offsets of consumer \"{}\" failed: {}", name, e.getMessage());
+        }
+    }
+
+    private Map<TopicPartition, OffsetAndMetadata> takeAcknowledgedOffsets(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (TopicPartition partition : partitions.toArray(new TopicPartition[0])) {
+            Long offset = acknowledgedOffsets.remove(partition);
+            if (offset != null) {
+                offsets.put(partition, new OffsetAndMetadata(offset));
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Submit a task that uses the consumer. The task is executed in the worker's thread after all the previously
+     * submitted tasks have been completed. If the returned future is cancelled before the task is started, the task
+     * is skipped. If the worker has been closed, the returned future is completed exceptionally with a
+     * RejectedExecutionException.
+     *
+     * @param task task to execute
+     * @param <T> task result type
+     * @return future that is completed with the task result
+     */
+    public <T> CompletableFuture<T> submit(Function<Consumer<String, String>, T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                if (future.isDone()) {
+                    // The future has been cancelled while the task was queued, e.g., because the request timed out
+                    return;
+                }
+                try {
+                    future.complete(task.apply(consumer));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Close the worker. The consumer is closed in the worker's thread after the tasks that have already been
+     * submitted have been completed. No new tasks are accepted after this method has been invoked.
+     */
+    public void close() {
+        close(DEFAULT_CLOSE_TIMEOUT);
+    }
+
+    /**
+     * Close the worker. The consumer is closed in the worker's thread after the tasks that have already been
+     * submitted have been completed, and it waits at most the given time for committing the offsets and leaving
+     * the consumer group. The offsets that have been acknowledged, but not committed yet, are committed before the
+     * consumer is closed. The consumer is moved back to the first buffered record of each partition, so that the
+     * records that haven't been returned to a client are not skipped. No new tasks are accepted after this method
+     * has been invoked.
+     *
+     * @param timeout maximum time to wait for the consumer to close
+     * @return future that is completed when the consumer has been closed
+     */
+    public CompletableFuture<Void> close(Duration timeout) {
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    // The consumer commits its positions when it's closed, so the buffered records must be fetched again
+                    rewindBuffered(consumer.assignment());
+                    commitAcknowledged(acknowledgedOffsets.keySet(), timeout);
+                    consumer.close(timeout);
+                    LOG.debug("Connection closed for consumer \"{}\"", name);
+                } catch (Throwable e) {
+                    LOG.error("Failed to close Kafka consumer: {}", name, e);
+                } finally {
+                    closed.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Consumer worker \"{}\" has already been closed", name);
+            closed.complete(null);
+        }
+        executor.shutdown();
+        return closed;
+    }
+
+    /**
+     * Fetch records into the prefetch buffer. After each poll the next prefetch is queued behind the tasks that
+     * have been submitted in the meantime, so that the submitted tasks are not blocked by prefetching.
+     */
+    private void prefetch() {
+        try {
+            if (recordBuffer.isFull()) {
+                consumer.pause(consumer.assignment());
+            } else if (!consumer.paused().isEmpty()) {
+                consumer.resume(consumer.paused());
+            }
+            ConsumerRecords<String, String> records = consumer.poll(prefetchPollTimeout);
+            if (!records.isEmpty()) {
+                recordBuffer.addAll(records);
+                LOG.trace("Prefetched {} records for consumer \"{}\"", records.count(), name);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Prefetching records failed for consumer \"{}\"", name, e);
+            // Avoid a busy loop if the error persists
+            sleep(prefetchPollTimeout.toMillis());
+        }
+        schedulePrefetch();
+    }
+
+    private void schedulePrefetch() {
+        try {
+            executor.execute(this::prefetch);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Stop prefetching records for consumer \"{}\"", name);
+        }
+    }
+
+    private void scheduleFetchPoll() {
+        submit(c -> {
+            pollFetches(c);
+            return null;
+        }).whenComplete((ignored, error) -> {
+            // The poll is rejected if the worker has been closed. This is invoked in the worker's thread.
+            if (error != null) {
+                failFetches(error);
+            }
+        });
+    }
+
+    /**
+     * Poll the consumer once for all the pending fetches and complete the fetches that have got enough records or
+     * whose wait time has elapsed. The next poll is queued if there are fetches left.
+     */
+    private void pollFetches(Consumer<String, String> c) {
+        try {
+            pendingFetches.removeIf(fetch -> fetch.result.isDone());
+            if (pendingFetches.isEmpty()) {
+                fetchPollScheduled = false;
+                return;
+            }
+            Map<TopicPartition, Long> positions = new HashMap<>();
+            long deadline = Long.MAX_VALUE;
+            for (Fetch fetch : pendingFetches) {
+                fetch.positions.forEach((partition, offset) -> positions.merge(partition, offset, Math::min));
+                deadline = Math.min(deadline, fetch.deadline);
+            }
+            if (!c.assignment().equals(positions.keySet())) {
+                c.assign(new ArrayList<>(positions.keySet()));
+                fetchPositions.keySet().retainAll(positions.keySet());
+            }
+            positions.forEach((partition, offset) -> {
+                if (!offset.equals(fetchPositions.get(partition))) {
+                    c.seek(partition, offset);
+                    fetchPositions.put(partition, offset);
+                }
+            });
+            long remaining = deadline - System.currentTimeMillis();
+            ConsumerRecords<String, String> records = c.poll(Duration.ofMillis(Math.max(0, Math.min(remaining, FETCH_POLL_TIMEOUT_MS))));
+            for (TopicPartition partition : records.partitions()) {
+                List<ConsumerRecord<String, String>> partitionRecords = records.records(partition);
+                fetchPositions.put(partition, partitionRecords.get(partitionRecords.size() - 1).offset() + 1);
+                pendingFetches.forEach(fetch -> fetch.add(partition, partitionRecords));
+            }
+            long now = System.currentTimeMillis();
+            pendingFetches.removeIf(fetch -> fetch.completeIfReady(now));
+        } catch (RuntimeException e) {
+            failFetches(e);
+        }
+        if (pendingFetches.isEmpty()) {
+            fetchPollScheduled = false;
+        } else {
+            scheduleFetchPoll();
+        }
+    }
+
+    private void failFetches(Throwable error) {
+        pendingFetches.forEach(fetch -> fetch.result.completeExceptionally(error));
+        pendingFetches.clear();
+        fetchPositions.clear();
+        fetchPollScheduled = false;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Check if the worker has been closed.
+     * @return true if the worker has been closed, otherwise false
+     */
+    public boolean isClosed() {
+        return executor.isShutdown();
+    }
+
+    /**
+     * A read of assigned partitions that waits until enough records have been fetched or the wait time elapses.
+     * The state is accessed only from the worker's thread.
+     */
+    private static final class Fetch {
+
+        private final CompletableFuture<List<ConsumerRecord<String, String>>> result = new CompletableFuture<>();
+
+        // The offsets of the next records to fetch by partition
+        private final Map<TopicPartition, Long> positions;
+
+        private final RecordBuffer fetched = new RecordBuffer(Integer.MAX_VALUE, Long.MAX_VALUE);
+
+        private final long deadline;
+
+        private final int minRecords;
+
+        private final int maxRecords;
+
+        private final long maxBytes;
+
+        private Fetch(Map<TopicPartition, Long> positions, long deadline, int minRecords, int maxRecords, long maxBytes) {
+            this.positions = new HashMap<>(positions);
+            this.deadline = deadline;
+            this.minRecords = minRecords;
+            this.maxRecords = maxRecords;
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * Add the polled records of a partition that are at or after the position of the partition.
+         */
+        private void add(TopicPartition partition, List<ConsumerRecord<String, String>> records) {
+            Long position = positions.get(partition);
+            if (position == null) {
+                return;
+            }
+            List<ConsumerRecord<String, String>> added = new ArrayList<>();
+            for (ConsumerRecord<String, String> record : records) {
+                if (record.offset() >= position) {
+                    added.add(record);
+                    position = record.offset() + 1;
+                }
+            }
+            positions.put(partition, position);
+            fetched.addAll(added);
+        }
+
+        private boolean completeIfReady(long now) {
+            if (fetched.size() >= minRecords || deadline - now <= 0) {
+                result.complete(fetched.drain(maxRecords, maxBytes));
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -28,18 +28,84 @@ import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
 import org.niis.xrdkafkaadapter.exception.RequestFailedException;
 import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
 import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
 
 /**
- * This interface defines a client interface for Kafka.
+ * This interface defines a client interface for Kafka. The blocking methods wait for the asynchronous
+ * counterparts to complete.
  */
-public interface KafkaClient {
+public interface KafkaClient extends AsyncKafkaClient {
 
-    KafkaClientResponse subscribe(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy)
-            throws RequestFailedException;
+    /**
+     * Subscribe to Kafka topic.
+     * @param xrdClientId
+     * @param topicName
+     * @param offsetResetPolicy
+     * @return
+     * @throws RequestFailedException
+     */
+    default KafkaClientResponse subscribe(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy)
+            throws RequestFailedException {
+        try {
+            return KafkaClientFutures.await(subscribeAsync(xrdClientId, topicName, offsetResetPolicy));
+        } catch (ForbiddenRequestException | BadRequestException e) {
+            throw new RequestFailedException(e.getMessage());
+        }
+    }
 
-    KafkaClientResponse unsubscribe(String xrdClientId, String topicName) throws RequestFailedException, ForbiddenRequestException;
+    /**
+     * Unsubscribe from a Kafka topic.
+     * @param xrdClientId
+     * @param topicName
+     * @return
+     * @throws RequestFailedException
+     * @throws ForbiddenRequestException
+     */
+    default KafkaClientResponse unsubscribe(String xrdClientId, String topicName) throws RequestFailedException, ForbiddenRequestException {
+        try {
+            return KafkaClientFutures.await(unsubscribeAsync(xrdClientId, topicName));
+        } catch (BadRequestException e) {
+            throw new RequestFailedException(e.getMessage());
+        }
+    }
 
-    KafkaClientResponse read(String xrdClientId, String topicName) throws RequestFailedException, ForbiddenRequestException;
+    default KafkaClientResponse read(String xrdClientId, String topicName) throws RequestFailedException, ForbiddenRequestException {
+        return read(xrdClientId, topicName, new ReadOptions());
+    }
 
-    KafkaClientResponse publish(String xrdClientId, String topicName, String messageBody) throws RequestFailedException, BadRequestException;
+    /**
+     * Consume data from Kafka topic.
+     * @param xrdClientId
+     * @param topicName
+     * @param readOptions
+     * @return
+     * @throws RequestFailedException
+     * @throws ForbiddenRequestException
+     */
+    default KafkaClientResponse read(String xrdClientId, String topicName, ReadOptions readOptions)
+            throws RequestFailedException, ForbiddenRequestException {
+        try {
+            return KafkaClientFutures.await(readAsync(xrdClientId, topicName, readOptions));
+        } catch (BadRequestException e) {
+            throw new RequestFailedException(e.getMessage());
+        }
+    }
+
+    /**
+     * Publish data to a Kafka topic.
+     * @param xrdClientId
+     * @param topicName
+     * @param messageBody
+     * @return
+     * @throws RequestFailedException
+     * @throws BadRequestException
+     */
+    default KafkaClientResponse publish(String xrdClientId, String topicName, byte[] messageBody)
+            throws RequestFailedException, BadRequestException {
+        try {
+            return KafkaClientFutures.await(publishAsync(xrdClientId, topicName, messageBody));
+        } catch (ForbiddenRequestException e) {
+            throw new RequestFailedException(e.getMessage());
+        }
+    }
 }
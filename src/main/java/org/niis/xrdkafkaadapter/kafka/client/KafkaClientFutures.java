@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
+import org.niis.xrdkafkaadapter.exception.RequestFailedException;
+
+import org.springframework.http.HttpStatus;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * This class provides helper methods for the futures returned by asynchronous Kafka clients.
+ */
+public final class KafkaClientFutures {
+
+    private static final String REQUEST_FAILED_ERROR = "Kafka client request failed.";
+
+    private KafkaClientFutures() {
+    }
+
+    /**
+     * Create a future that is already completed exceptionally with the given exception.
+     * @param throwable exception
+     * @param <T> future result type
+     * @return failed future
+     */
+    public static <T> CompletableFuture<T> failed(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    /**
+     * Get the original exception, if the given exception has been wrapped in a CompletionException or
+     * ExecutionException.
+     * @param throwable exception
+     * @return original exception
+     */
+    public static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * Get the HTTP status of the error response of an exception that a Kafka client call has been completed with.
+     * @param throwable exception, possibly wrapped in a CompletionException or ExecutionException
+     * @return HTTP status of the error response
+     */
+    public static HttpStatus getErrorStatus(Throwable throwable) {
+        Throwable cause = unwrap(throwable);
+        if (cause instanceof RequestFailedException) {
+            return HttpStatus.GATEWAY_TIMEOUT;
+        } else if (cause instanceof ForbiddenRequestException) {
+            return HttpStatus.FORBIDDEN;
+        } else if (cause instanceof BadRequestException) {
+            return HttpStatus.BAD_REQUEST;
+        }
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * Wait for the stage to complete and return its result. The Kafka client exceptions that the stage has been
+     * completed with are thrown as such, and other exceptions are converted to RequestFailedException.
+     * @param stage stage to wait for
+     * @param <T> result type
+     * @return result of the stage
+     * @throws RequestFailedException if the request failed
+     * @throws ForbiddenRequestException if the request was refused
+     * @throws BadRequestException if the request was invalid
+     */
+    public static <T> T await(CompletionStage<T> stage) throws RequestFailedException, ForbiddenRequestException, BadRequestException {
+        try {
+            return stage.toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RequestFailedException) {
+                throw (RequestFailedException) cause;
+            } else if (cause instanceof ForbiddenRequestException) {
+                throw (ForbiddenRequestException) cause;
+            } else if (cause instanceof BadRequestException) {
+                throw (BadRequestException) cause;
+            }
+            throw new RequestFailedException(REQUEST_FAILED_ERROR);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RequestFailedException(REQUEST_FAILED_ERROR);
+        }
+    }
+}
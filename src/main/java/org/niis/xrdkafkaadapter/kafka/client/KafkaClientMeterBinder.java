@@ -0,0 +1,160 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * This class publishes the native metrics of a Kafka consumer or producer as Micrometer gauges. The gauges read
+ * the client-level metrics of the client when they're published, so no background thread is needed per client.
+ * The gauges are removed from the registry when the binder is closed, i.e., when the client is closed.
+ */
+public final class KafkaClientMeterBinder implements MeterBinder, AutoCloseable {
+
+    private static final List<String> CONSUMER_METRICS = Collections.unmodifiableList(Arrays.asList(
+            "records-lag-max", "records-consumed-rate", "bytes-consumed-rate", "fetch-rate", "fetch-latency-avg",
+            "fetch-size-avg", "records-per-request-avg"));
+
+    private static final List<String> PRODUCER_METRICS = Collections.unmodifiableList(Arrays.asList(
+            "record-send-rate", "record-error-rate", "record-retry-rate", "request-latency-avg", "batch-size-avg",
+            "compression-rate-avg", "record-queue-time-avg", "buffer-available-bytes", "bufferpool-wait-ratio"));
+
+    private static final String CLIENT_ID_TAG = "client-id";
+
+    private final String prefix;
+
+    private final List<String> metricNames;
+
+    private final Supplier<Map<MetricName, ? extends Metric>> metrics;
+
+    private final Tags tags;
+
+    private final List<Meter> meters = new ArrayList<>();
+
+    private MeterRegistry registry;
+
+    private KafkaClientMeterBinder(String prefix, List<String> metricNames, Supplier<Map<MetricName, ? extends Metric>> metrics,
+                                   Tags tags) {
+        this.prefix = prefix;
+        this.metricNames = metricNames;
+        this.metrics = metrics;
+        this.tags = tags;
+    }
+
+    /**
+     * Create a binder for the metrics of a consumer.
+     * @param consumer Kafka consumer
+     * @param groupName consumer group name of the subscription
+     * @param topicName topic name of the subscription
+     * @return binder
+     */
+    public static KafkaClientMeterBinder forConsumer(Consumer<?, ?> consumer, String groupName, String topicName) {
+        return new KafkaClientMeterBinder("kafka.consumer.", CONSUMER_METRICS, consumer::metrics,
+                Tags.of("group", groupName, "topic", topicName));
+    }
+
+    /**
+     * Create a binder for the metrics of a producer.
+     * @param producer Kafka producer
+     * @param clientId producer client ID
+     * @param topicName topic name that the producer publishes to
+     * @return binder
+     */
+    public static KafkaClientMeterBinder forProducer(Producer<?, ?> producer, String clientId, String topicName) {
+        return new KafkaClientMeterBinder("kafka.producer.", PRODUCER_METRICS, producer::metrics,
+                Tags.of("client.id", clientId, "topic", topicName));
+    }
+
+    /**
+     * Register the gauges. Gauges of a previous client with the same tags, e.g., a consumer that has been replaced,
+     * are replaced.
+     * @param meterRegistry registry
+     */
+    @Override
+    public synchronized void bindTo(MeterRegistry meterRegistry) {
+        this.registry = meterRegistry;
+        for (String name : metricNames) {
+            String meterName = prefix + name.replace('-', '.');
+            Meter previous = meterRegistry.find(meterName).tags(tags).meter();
+            if (previous != null) {
+                meterRegistry.remove(previous);
+            }
+            meters.add(Gauge.builder(meterName, this, binder -> binder.value(name))
+                    .tags(tags)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Remove the gauges from the registry, unless they have already been replaced by the gauges of another client.
+     */
+    @Override
+    public synchronized void close() {
+        if (registry != null) {
+            for (Meter meter : meters) {
+                if (registry.find(meter.getId().getName()).tags(meter.getId().getTags()).meter() == meter) {
+                    registry.remove(meter);
+                }
+            }
+        }
+        meters.clear();
+    }
+
+    /**
+     * Get the current value of a client-level metric, i.e., a metric that isn't specific to a topic, partition
+     * or broker node.
+     * @param name metric name
+     * @return metric value or NaN if the metric isn't available
+     */
+    double value(String name) {
+        try {
+            for (Map.Entry<MetricName, ? extends Metric> entry : metrics.get().entrySet()) {
+                MetricName metricName = entry.getKey();
+                if (metricName.name().equals(name) && metricName.tags().keySet().equals(Collections.singleton(CLIENT_ID_TAG))) {
+                    Object value = entry.getValue().metricValue();
+                    return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+                }
+            }
+        } catch (RuntimeException e) {
+            // The client has been closed
+            return Double.NaN;
+        }
+        return Double.NaN;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
+import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
+import org.niis.xrdkafkaadapter.service.MetricsService;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * This class implements a Kafka client that records the duration and outcome of the operations of another Kafka
+ * client. The metrics are tagged with the name of the client, the operation, the topic and the outcome.
+ */
+public class MeteredKafkaClient implements KafkaClient {
+
+    private final KafkaClient delegate;
+
+    private final String clientName;
+
+    private final MetricsService metricsService;
+
+    /**
+     * Initialize new MeteredKafkaClient object.
+     * @param delegate Kafka client whose operations are recorded
+     * @param clientName Kafka client name, e.g., "tcpClient"
+     * @param metricsService metrics service
+     */
+    public MeteredKafkaClient(KafkaClient delegate, String clientName, MetricsService metricsService) {
+        this.delegate = delegate;
+        this.clientName = clientName;
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * Get the Kafka client whose operations are recorded.
+     * @return
+     */
+    public KafkaClient getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> subscribeAsync(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                               SubscriptionOptions options) {
+        return time(MetricsService.OPERATION_SUBSCRIBE, topicName,
+                () -> delegate.subscribeAsync(xrdClientId, topicName, offsetResetPolicy, options));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> unsubscribeAsync(String xrdClientId, String topicName) {
+        return time(MetricsService.OPERATION_UNSUBSCRIBE, topicName, () -> delegate.unsubscribeAsync(xrdClientId, topicName));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> readAsync(String xrdClientId, String topicName, ReadOptions readOptions) {
+        return time(MetricsService.OPERATION_READ, topicName, () -> delegate.readAsync(xrdClientId, topicName, readOptions));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> publishAsync(String xrdClientId, String topicName, byte[] messageBody,
+                                                             EmbeddedFormat format) {
+        return time(MetricsService.OPERATION_PUBLISH, topicName, () -> delegate.publishAsync(xrdClientId, topicName, messageBody, format));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> publishBinaryAsync(String xrdClientId, String topicName, String key, byte[] value) {
+        return time(MetricsService.OPERATION_PUBLISH, topicName, () -> delegate.publishBinaryAsync(xrdClientId, topicName, key, value));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> seekAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets) {
+        return time(MetricsService.OPERATION_SEEK, topicName, () -> delegate.seekAsync(xrdClientId, topicName, offsets));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> seekToTimestampAsync(String xrdClientId, String topicName, long timestamp) {
+        return time(MetricsService.OPERATION_SEEK, topicName, () -> delegate.seekToTimestampAsync(xrdClientId, topicName, timestamp));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> resetPositionsAsync(String xrdClientId, String topicName, OffsetResetPolicy position) {
+        return time(MetricsService.OPERATION_SEEK, topicName, () -> delegate.resetPositionsAsync(xrdClientId, topicName, position));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> commitAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets) {
+        return time(MetricsService.OPERATION_COMMIT, topicName, () -> delegate.commitAsync(xrdClientId, topicName, offsets));
+    }
+
+    @Override
+    public CompletionStage<KafkaClientResponse> fetchAsync(String xrdClientId, String topicName, Map<Integer, Long> positions,
+                                                           EmbeddedFormat format, ReadOptions readOptions) {
+        return time(MetricsService.OPERATION_FETCH, topicName,
+                () -> delegate.fetchAsync(xrdClientId, topicName, positions, format, readOptions));
+    }
+
+    private CompletionStage<KafkaClientResponse> time(String operation, String topicName,
+                                                      Supplier<CompletionStage<KafkaClientResponse>> call) {
+        return metricsService.timeOperation(clientName, operation, topicName, call);
+    }
+}
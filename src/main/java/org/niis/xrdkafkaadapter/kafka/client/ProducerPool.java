@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalListeners;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.kafka.clients.producer.Producer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * This class implements a pool of long-lived Kafka producers. Producers are keyed by producer client ID and shared
+ * between requests, so that metadata, broker connections and buffer pools are reused instead of being created for
+ * every publish request. KafkaProducer is thread-safe, which means that several requests may use the same producer
+ * at the same time.
+ *
+ * The pool is bounded by size and idle time. A producer that is evicted from the pool while it's still leased by
+ * a request is closed only after the last lease has been released. Producers are closed in a dedicated thread,
+ * so that waiting for the buffered records never blocks a publishing request or a producer's I/O thread.
+ *
+ * @param <K> record key type
+ * @param <V> record value type
+ */
+public class ProducerPool<K, V> implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProducerPool.class);
+
+    private final Cache<String, PooledProducer<K, V>> producers;
+
+    private final Duration closeTimeout;
+
+    // Closes the retired producers
+    private final ExecutorService closeExecutor;
+
+    /**
+     * Initialize new ProducerPool object.
+     *
+     * @param maxSize maximum number of producers in the pool
+     * @param idleTimeout the length of time in seconds after a producer is last used that it's closed
+     * @param closeTimeout the length of time in seconds to wait for buffered records when a producer is closed
+     */
+    public ProducerPool(int maxSize, int idleTimeout, int closeTimeout) {
+        this(maxSize, idleTimeout, closeTimeout, (clientId, producer) -> { });
+    }
+
+    /**
+     * Initialize new ProducerPool object.
+     *
+     * @param maxSize maximum number of producers in the pool
+     * @param idleTimeout the length of time in seconds after a producer is last used that it's closed
+     * @param closeTimeout the length of time in seconds to wait for buffered records when a producer is closed
+     * @param removalListener invoked with the client ID and the producer when a producer is removed from the pool
+     */
+    public ProducerPool(int maxSize, int idleTimeout, int closeTimeout, BiConsumer<String, Producer<K, V>> removalListener) {
+        this.closeTimeout = Duration.ofSeconds(closeTimeout);
+        LOG.debug("Producer pool max size is {}", maxSize);
+        LOG.debug("Producer pool idle timeout is {}s", idleTimeout);
+
+        closeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-producer-close");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // N.B. The removal listener is not invoked automatically when an entry expires. Expired producers are removed
+        // when the pool is used or cleanUp() is invoked. The removal listener is invoked asynchronously using the
+        // close executor, so evicting a producer in lease() doesn't block the request.
+        producers = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterAccess(idleTimeout, TimeUnit.SECONDS)
+                .removalListener(RemovalListeners.asynchronous((RemovalListener<String, PooledProducer<K, V>>) entry -> {
+                    LOG.debug("Remove producer \"{}\" from producer pool", entry.getKey());
+                    if (entry.getValue() != null) {
+                        removalListener.accept(entry.getKey(), entry.getValue().getProducer());
+                        entry.getValue().retire();
+                    }
+                }, closeExecutor))
+                .build();
+    }
+
+    /**
+     * Lease a producer with the given client ID from the pool. If the pool doesn't contain a producer with the
+     * given client ID, a new producer is created using the given factory. The lease must be closed when the
+     * producer is not needed anymore.
+     *
+     * @param clientId producer client ID
+     * @param factory factory that creates a new producer
+     * @return producer lease
+     * @throws ExecutionException if creating a new producer fails
+     */
+    public PooledProducer<K, V> lease(String clientId, Callable<Producer<K, V>> factory) throws ExecutionException {
+        while (true) {
+            PooledProducer<K, V> pooledProducer;
+            try {
+                pooledProducer = producers.get(clientId, () -> new PooledProducer<>(clientId, factory.call(), closeTimeout, closeExecutor));
+            } catch (UncheckedExecutionException e) {
+                throw new ExecutionException(e.getCause());
+            }
+            // A retired producer has already been removed from the pool, so the next attempt creates a new one
+            if (pooledProducer.acquire()) {
+                return pooledProducer;
+            }
+        }
+    }
+
+    /**
+     * Get the number of producers in the pool.
+     * @return number of producers
+     */
+    public long size() {
+        return producers.size();
+    }
+
+    /**
+     * Perform any pending maintenance operations, e.g., close producers that have been idle too long.
+     */
+    public void cleanUp() {
+        producers.cleanUp();
+    }
+
+    /**
+     * Close all the producers in the pool. Waits at most the close timeout for the producers to be closed.
+     */
+    @Override
+    public void close() {
+        LOG.debug("Close producer pool");
+        producers.invalidateAll();
+        producers.cleanUp();
+        closeExecutor.shutdown();
+        try {
+            if (!closeExecutor.awaitTermination(closeTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                LOG.warn("Closing Kafka producers did not complete in {}s", closeTimeout.getSeconds());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This class represents a producer that is leased from the pool. Closing the lease returns the producer to
+     * the pool.
+     *
+     * @param <K> record key type
+     * @param <V> record value type
+     */
+    public static final class PooledProducer<K, V> implements AutoCloseable {
+
+        private final String clientId;
+
+        private final Producer<K, V> producer;
+
+        private final Duration closeTimeout;
+
+        private final ExecutorService closeExecutor;
+
+        private int leases;
+
+        private boolean retired;
+
+        private PooledProducer(String clientId, Producer<K, V> producer, Duration closeTimeout, ExecutorService closeExecutor) {
+            this.clientId = clientId;
+            this.producer = producer;
+            this.closeTimeout = closeTimeout;
+            this.closeExecutor = closeExecutor;
+        }
+
+        /**
+         * Get the leased producer.
+         * @return producer
+         */
+        public Producer<K, V> getProducer() {
+            return producer;
+        }
+
+        /**
+         * Return the producer to the pool. If the producer has been removed from the pool, it's closed in the
+         * background after the last lease has been returned. The last lease may be returned in the producer's own
+         * I/O thread, which must not wait for the producer to close.
+         */
+        @Override
+        public void close() {
+            boolean closeProducer;
+            synchronized (this) {
+                leases--;
+                closeProducer = retired && leases == 0;
+            }
+            if (closeProducer) {
+                try {
+                    closeExecutor.execute(this::closeProducer);
+                } catch (RejectedExecutionException e) {
+                    // The pool has been closed
+                    closeProducer();
+                }
+            }
+        }
+
+        private synchronized boolean acquire() {
+            if (retired) {
+                return false;
+            }
+            leases++;
+            return true;
+        }
+
+        private void retire() {
+            boolean closeProducer;
+            synchronized (this) {
+                retired = true;
+                closeProducer = leases == 0;
+            }
+            if (closeProducer) {
+                closeProducer();
+            }
+        }
+
+        private void closeProducer() {
+            try {
+                // Buffered records are sent before the producer is closed
+                producer.close(closeTimeout);
+                LOG.debug("Connection closed for producer \"{}\"", clientId);
+            } catch (Throwable e) {
+                LOG.error("Failed to close Kafka producer: {}", clientId, e);
+            }
+        }
+    }
+}
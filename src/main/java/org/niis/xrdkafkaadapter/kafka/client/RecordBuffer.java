@@ -0,0 +1,230 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class implements an in-memory buffer for records that a consumer worker has fetched, but that haven't
+ * been returned to a client yet. The buffer holds the records that didn't fit in the previous response, and
+ * when prefetching is enabled, the records that have been fetched in the background. The buffer is filled by
+ * the worker's thread and drained by request threads.
+ *
+ * The limits of the buffer are soft: the worker stops prefetching when the buffer is full, but the records of
+ * a single poll are always added to the buffer.
+ *
+ * Readers that wait for records don't block a thread: they register a waiter that is completed when enough
+ * records have been added to the buffer or when the wait time elapses.
+ */
+public class RecordBuffer {
+
+    private final int maxRecords;
+
+    private final long maxBytes;
+
+    private final Deque<ConsumerRecord<String, String>> records = new ArrayDeque<>();
+
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    private long bytes;
+
+    /**
+     * Initialize new RecordBuffer object.
+     *
+     * @param maxRecords the maximum number of records in the buffer
+     * @param maxBytes the maximum size of the records in the buffer in bytes
+     */
+    public RecordBuffer(int maxRecords, long maxBytes) {
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Add records to the end of the buffer.
+     * @param newRecords records to add
+     */
+    public void addAll(Iterable<ConsumerRecord<String, String>> newRecords) {
+        List<Waiter> completed = new ArrayList<>();
+        synchronized (this) {
+            for (ConsumerRecord<String, String> record : newRecords) {
+                records.addLast(record);
+                bytes += sizeOf(record);
+            }
+            Iterator<Waiter> iterator = waiters.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (records.size() >= waiter.minRecords) {
+                    iterator.remove();
+                    completed.add(waiter);
+                }
+            }
+        }
+        // Complete the waiters outside the lock, because completing them runs the dependent actions
+        completed.forEach(waiter -> waiter.future.complete(null));
+    }
+
+    /**
+     * Remove and return at most the given number of records from the beginning of the buffer.
+     * @param max the maximum number of records to return
+     * @return list of records
+     */
+    public List<ConsumerRecord<String, String>> drain(int max) {
+        return drain(max, Long.MAX_VALUE);
+    }
+
+    /**
+     * Remove and return records from the beginning of the buffer. At most the given number of records are returned,
+     * and records are returned until their combined size exceeds the given number of bytes. At least one record is
+     * returned if the buffer isn't empty.
+     * @param max the maximum number of records to return
+     * @param maxSize the maximum size of the returned records in bytes
+     * @return list of records
+     */
+    public synchronized List<ConsumerRecord<String, String>> drain(int max, long maxSize) {
+        List<ConsumerRecord<String, String>> result = new ArrayList<>(Math.min(max, records.size()));
+        long size = 0;
+        while (result.size() < max && !records.isEmpty()) {
+            long recordSize = sizeOf(records.peekFirst());
+            if (!result.isEmpty() && size + recordSize > maxSize) {
+                break;
+            }
+            result.add(records.removeFirst());
+            bytes -= recordSize;
+            size += recordSize;
+        }
+        return result;
+    }
+
+    /**
+     * Get a future that is completed when the buffer contains at least the given number of records or when the wait
+     * time elapses, whichever happens first.
+     * @param min the minimum number of records
+     * @param waitMs the maximum time to wait in milliseconds
+     * @param scheduler scheduler that completes the future when the wait time elapses
+     * @return future that is completed when the records are available or the wait time has elapsed
+     */
+    public CompletableFuture<Void> whenAvailable(int min, long waitMs, ScheduledExecutorService scheduler) {
+        Waiter waiter = new Waiter(min);
+        synchronized (this) {
+            if (records.size() >= min || waitMs <= 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            waiters.add(waiter);
+        }
+        ScheduledFuture<?> timer = scheduler.schedule(() -> {
+            synchronized (this) {
+                waiters.remove(waiter);
+            }
+            waiter.future.complete(null);
+        }, waitMs, TimeUnit.MILLISECONDS);
+        waiter.future.whenComplete((result, error) -> timer.cancel(false));
+        return waiter.future;
+    }
+
+    /**
+     * Remove the records of the given partitions from the buffer, e.g., when the partitions have been revoked
+     * from the consumer.
+     * @param partitions topic partitions
+     * @return the offsets of the first removed records by partition
+     */
+    public synchronized Map<TopicPartition, Long> removeAll(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, Long> firstOffsets = new HashMap<>();
+        Iterator<ConsumerRecord<String, String>> iterator = records.iterator();
+        while (iterator.hasNext()) {
+            ConsumerRecord<String, String> record = iterator.next();
+            TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+            if (partitions.contains(partition)) {
+                // The records of a partition are in offset order
+                firstOffsets.putIfAbsent(partition, record.offset());
+                bytes -= sizeOf(record);
+                iterator.remove();
+            }
+        }
+        return firstOffsets;
+    }
+
+    /**
+     * Remove all the records from the buffer.
+     */
+    public synchronized void clear() {
+        records.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Check if the buffer has reached either of its limits.
+     * @return true if the buffer is full, otherwise false
+     */
+    public synchronized boolean isFull() {
+        return records.size() >= maxRecords || bytes >= maxBytes;
+    }
+
+    /**
+     * Get the number of records in the buffer.
+     * @return number of records
+     */
+    public synchronized int size() {
+        return records.size();
+    }
+
+    /**
+     * Get the size of the records in the buffer in bytes.
+     * @return size in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    private static long sizeOf(ConsumerRecord<String, String> record) {
+        return Math.max(0, record.serializedKeySize()) + Math.max(0, record.serializedValueSize());
+    }
+
+    /**
+     * A reader waiting for the given minimum number of records.
+     */
+    private static final class Waiter {
+
+        private final int minRecords;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Waiter(int minRecords) {
+            this.minRecords = minRecords;
+        }
+    }
+}
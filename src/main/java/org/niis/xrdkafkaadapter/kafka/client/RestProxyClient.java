@@ -23,19 +23,25 @@
  */
 package org.niis.xrdkafkaadapter.kafka.client;
 
-import org.niis.xrd4j.rest.ClientResponse;
-import org.niis.xrd4j.rest.client.RESTClient;
-import org.niis.xrd4j.rest.client.RESTClientFactory;
 import org.niis.xrdkafkaadapter.exception.BadRequestException;
 import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
 import org.niis.xrdkafkaadapter.exception.RequestFailedException;
+import org.niis.xrdkafkaadapter.http.HttpClientResponse;
+import org.niis.xrdkafkaadapter.http.PooledHttpClient;
+import org.niis.xrdkafkaadapter.model.CommitMode;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
 import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
 import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
 import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.service.MetricsService;
 import org.niis.xrdkafkaadapter.util.Constants;
 
+import com.google.common.base.Utf8;
 import org.apache.http.HttpStatus;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,8 +49,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This class implements a HTTP client for Kafka REST Proxy.
@@ -58,6 +74,12 @@ public class RestProxyClient implements KafkaClient {
 
     private static final String NO_SUBSCRIPTION_FOUND_ERROR = "No subscription found.";
 
+    private static final String MANUAL_COMMIT_NOT_SUPPORTED_ERROR = "Manual commit mode is not supported by the Kafka client.";
+
+    private static final String TIMESTAMP_SEEK_NOT_SUPPORTED_ERROR = "Seeking to a timestamp is not supported by the Kafka client.";
+
+    private static final String FETCH_NOT_SUPPORTED_ERROR = "Reading partitions without a subscription is not supported by the Kafka client.";
+
     private static final String CONSUMERS_PATH = "/consumers/";
 
     private static final String INSTANCES_PATH = "/instances/";
@@ -66,11 +88,69 @@ public class RestProxyClient implements KafkaClient {
 
     private static final String RECORDS_PATH = "/records";
 
+    private static final String POSITIONS_PATH = "/positions";
+
+    private static final String POSITIONS_BEGINNING_PATH = "/positions/beginning";
+
+    private static final String POSITIONS_END_PATH = "/positions/end";
+
+    private static final String ASSIGNMENTS_PATH = "/assignments";
+
     private static final String TOPICS_PATH = "/topics/";
 
+    private static final String TIMEOUT_PARAM = "timeout";
+
+    private static final String MAX_BYTES_PARAM = "max_bytes";
+
+    // Default (can be overridden in props): 10485760 bytes = 10MB
+    private static final int READ_MAX_BYTES = 10485760;
+
+    private static final int SCHEMA_CACHE_MAX_SIZE = 1000;
+
+    private static final List<String> SCHEMA_TYPES = Arrays.asList("key", "value");
+
+    private static final String INVALID_REQUEST_ERROR = "Invalid JSON object in request body";
+
+    // Request headers and parameters are the same for every request, so the same maps are shared by all requests
+    private static final Map<String, String> CONTENT_TYPE_HEADERS = Collections.singletonMap(
+            Constants.HTTP_HEADER_CONTENT_TYPE, Constants.CONTENT_TYPE_KAFKA_JSON_V2);
+
+    private static final Map<String, String> ACCEPT_HEADERS = Collections.singletonMap(
+            Constants.HTTP_HEADER_ACCEPT, Constants.CONTENT_TYPE_KAFKA_JSON_V2);
+
+    private static final Map<String, String> NO_PARAMS = Collections.emptyMap();
+
+    private static final String CLIENT_NAME = "restProxyClient";
+
+    // Consumer fetch and poll properties that can be set when a consumer instance is created
+    private static final List<String> REST_PROXY_CONSUMER_PROPERTIES = Collections.singletonList(Constants.KAFKA_FETCH_MIN_BYTES);
+
+    // Records are published and read using the content type of their format
+    private static final Map<EmbeddedFormat, Map<String, String>> FORMAT_CONTENT_TYPE_HEADERS = new EnumMap<>(EmbeddedFormat.class);
+
+    private static final Map<EmbeddedFormat, Map<String, String>> FORMAT_ACCEPT_HEADERS = new EnumMap<>(EmbeddedFormat.class);
+
+    static {
+        for (EmbeddedFormat format : EmbeddedFormat.values()) {
+            FORMAT_CONTENT_TYPE_HEADERS.put(format, Collections.singletonMap(Constants.HTTP_HEADER_CONTENT_TYPE, format.getContentType()));
+            FORMAT_ACCEPT_HEADERS.put(format, Collections.singletonMap(Constants.HTTP_HEADER_ACCEPT, format.getContentType()));
+        }
+    }
+
     @Autowired
     private HelperService helperService;
 
+    @Autowired
+    private PooledHttpClient httpClient;
+
+    private MetricsService metricsService = MetricsService.noop();
+
+    private final SchemaCache schemaCache = new SchemaCache(SCHEMA_CACHE_MAX_SIZE);
+
+    // Formats of the subscriptions by consumer group name. Records must be read using the format of the
+    // consumer instance. The format of a consumer instance that isn't found here is detected by the first read.
+    private final Map<String, EmbeddedFormat> subscriptionFormats = new ConcurrentHashMap<>();
+
     /**
      * Initialize new RESTProxyClient object.
      */
@@ -85,6 +165,26 @@ public class RestProxyClient implements KafkaClient {
         this.helperService = helperService;
     }
 
+    /**
+     * Initialize new RESTProxyClient object.
+     *
+     * @param helperService
+     * @param httpClient
+     */
+    public RestProxyClient(HelperService helperService, PooledHttpClient httpClient) {
+        this.helperService = helperService;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * Set the metrics service that records the size of the records that are read and published.
+     * @param metricsService
+     */
+    @Autowired(required = false)
+    public void setMetricsService(MetricsService metricsService) {
+        this.metricsService = metricsService;
+    }
+
     /**
      * Subscribe to Kafka topic. Subscription consists of two separate operations:
      *
@@ -92,56 +192,62 @@ public class RestProxyClient implements KafkaClient {
      * 2. Subscribe to the given topic to get dynamically assigned partitions. If a prior subscription exists, it is
      * be replaced by the latest subscription.
      *
+     * The consumer instance is created using the given format. Of the consumer fetch and poll properties, REST
+     * Proxy supports only "fetch.min.bytes" when creating a consumer instance, and the other properties are ignored.
+     *
      * @param xrdClientId
      * @param topicName
      * @param offsetResetPolicy
+     * @param options
      * @return
-     * @throws RequestFailedException
      */
-    public KafkaClientResponse subscribe(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy)
-            throws RequestFailedException {
+    public CompletableFuture<KafkaClientResponse> subscribeAsync(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                                 SubscriptionOptions options) {
+        if (options.getCommitMode() == CommitMode.MANUAL) {
+            return KafkaClientFutures.failed(new BadRequestException(MANUAL_COMMIT_NOT_SUPPORTED_ERROR));
+        }
+        EmbeddedFormat format = options.getFormat();
         // Generate Kafka consumer group and consumer instance names
         String groupName = helperService.getKafkaConsumerGroupName(xrdClientId, topicName);
         String instanceName = helperService.getKafkaConsumerInstanceName(xrdClientId);
 
+        // Fetch and poll properties of the topic, overridden by the properties of the subscription request
+        Map<String, String> consumerProperties = new HashMap<>(helperService.getConsumerProperties(topicName));
+        consumerProperties.putAll(options.getConsumerProperties());
+
         // Create request object and request target URL
-        JSONObject createConsumerInstanceRequest = buildCreateConsumerInstanceRequest(instanceName, offsetResetPolicy);
+        JSONObject createConsumerInstanceRequest = buildCreateConsumerInstanceRequest(instanceName, offsetResetPolicy, format,
+                consumerProperties);
         LOG.debug("Consumer instance request: {}", createConsumerInstanceRequest.toString());
         String consumerGroupUrl = buildConsumerGroupUrl(groupName);
 
-        // Create REST client
-        RESTClient restClient = RESTClientFactory.createRESTClient(HttpMethod.POST.toString());
-        Map<String, String> params = new HashMap<>();
-        Map<String, String> headers = new HashMap<>();
-        headers.put(Constants.HTTP_HEADER_CONTENT_TYPE, Constants.CONTENT_TYPE_KAFKA_JSON_V2);
-
         // Send create consumer instance request
-        ClientResponse restResponse = restClient.send(consumerGroupUrl, createConsumerInstanceRequest.toString(), params, headers);
-        // If the request failed, the response is null
-        if (restResponse == null) {
-            throw new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE);
-        }
-
-        // Status codes 200 (OK) and 409 (Conflict) can be ignored. 409 means that consumer instance with the specified
-        // name already exists. In case of other status code, return the response.
-        if (restResponse.getStatusCode() != HttpStatus.SC_OK
-                && restResponse.getStatusCode() != HttpStatus.SC_CONFLICT) {
-            LOG.debug("Unable to subscribe to a topic. Status code {} detected.", restResponse.getStatusCode());
-            return new KafkaClientResponse(restResponse.getData());
-        }
-
-        // Create request object and request target URL
-        JSONObject subscribeToTopicRequest = buildSubscribeToTopicRequest(topicName);
-        LOG.debug("Subscribe to topic request: {}", subscribeToTopicRequest.toString());
-        String subscriptionsUrl = buildSubscriptionsUrl(groupName, instanceName);
-
-        // Send subscribe to topic request
-        restResponse = restClient.send(subscriptionsUrl, subscribeToTopicRequest.toString(), params, headers);
-        // If the request failed, the response is null
-        if (restResponse == null) {
-            throw new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE);
-        }
-        return new KafkaClientResponse(restResponse.getData());
+        CompletableFuture<HttpClientResponse> createConsumerInstance = httpClient.sendAsync(HttpMethod.POST, consumerGroupUrl,
+                createConsumerInstanceRequest.toString(), NO_PARAMS, CONTENT_TYPE_HEADERS).thenCompose(RestProxyClient::requireResponse);
+        return createConsumerInstance.thenCompose(restResponse -> {
+            // Status codes 200 (OK) and 409 (Conflict) can be ignored. 409 means that consumer instance with the specified
+            // name already exists. In case of other status code, return the response.
+            if (restResponse.getStatusCode() != HttpStatus.SC_OK
+                    && restResponse.getStatusCode() != HttpStatus.SC_CONFLICT) {
+                LOG.debug("Unable to subscribe to a topic. Status code {} detected.", restResponse.getStatusCode());
+                return CompletableFuture.completedFuture(new KafkaClientResponse(restResponse.getData()));
+            }
+
+            // Create request object and request target URL
+            JSONObject subscribeToTopicRequest = buildSubscribeToTopicRequest(topicName);
+            LOG.debug("Subscribe to topic request: {}", subscribeToTopicRequest.toString());
+            String subscriptionsUrl = buildSubscriptionsUrl(groupName, instanceName);
+
+            // Send subscribe to topic request
+            return httpClient.sendAsync(HttpMethod.POST, subscriptionsUrl, subscribeToTopicRequest.toString(), NO_PARAMS,
+                    CONTENT_TYPE_HEADERS).thenCompose(RestProxyClient::requireResponse)
+                    .thenApply(response -> {
+                        if (response.getStatusCode() == HttpStatus.SC_NO_CONTENT) {
+                            subscriptionFormats.put(groupName, format);
+                        }
+                        return new KafkaClientResponse(response.getData());
+                    });
+        });
     }
 
     /**
@@ -153,9 +259,8 @@ public class RestProxyClient implements KafkaClient {
      * @param xrdClientId
      * @param topicName
      * @return
-     * @throws RequestFailedException
      */
-    public KafkaClientResponse unsubscribe(String xrdClientId, String topicName) throws RequestFailedException, ForbiddenRequestException {
+    public CompletableFuture<KafkaClientResponse> unsubscribeAsync(String xrdClientId, String topicName) {
         // Generate Kafka consumer group and consumer instance names
         String groupName = helperService.getKafkaConsumerGroupName(xrdClientId, topicName);
         String instanceName = helperService.getKafkaConsumerInstanceName(xrdClientId);
@@ -163,47 +268,44 @@ public class RestProxyClient implements KafkaClient {
         // Create request target URL
         String subscriptionsUrl = buildSubscriptionsUrl(groupName, instanceName);
 
-        // Create REST client
-        RESTClient restClient = RESTClientFactory.createRESTClient(HttpMethod.DELETE.toString());
-        Map<String, String> params = new HashMap<>();
-        Map<String, String> headers = new HashMap<>();
-        headers.put(Constants.HTTP_HEADER_ACCEPT, Constants.CONTENT_TYPE_KAFKA_JSON_V2);
-
         // Send unsubscribe from a topic request
-        ClientResponse restResponse = restClient.send(subscriptionsUrl, null, params, headers);
-        // If the request failed, the response is null
-        if (restResponse == null) {
-            throw new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE);
-        }
-
-        // Status code 204 (No content) can be ignored. In case of other status code, return the response.
-        if (restResponse.getStatusCode() != HttpStatus.SC_NO_CONTENT) {
-            LOG.debug("Unable to unsubscribe from a topic. Status code {} detected.", restResponse.getStatusCode());
-            // Most common reason is that subscription doesn't exist
-            throw new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR);
-        }
-
-        // Create request object and request target URL
-        String consumerGroupInstanceUrl = buildConsumerGroupInstanceUrl(groupName, instanceName);
-
-        // Send destroy a consumer instance request
-        restResponse = restClient.send(consumerGroupInstanceUrl, null, params, headers);
-        // If the request failed, the response is null
-        if (restResponse == null) {
-            throw new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE);
-        }
-        return new KafkaClientResponse();
+        CompletableFuture<HttpClientResponse> deleteSubscription = httpClient.sendAsync(HttpMethod.DELETE, subscriptionsUrl, null,
+                NO_PARAMS, ACCEPT_HEADERS).thenCompose(RestProxyClient::requireResponse);
+        return deleteSubscription.thenCompose(restResponse -> {
+            // Status code 204 (No content) can be ignored. In case of other status code, return the response.
+            if (restResponse.getStatusCode() != HttpStatus.SC_NO_CONTENT) {
+                LOG.debug("Unable to unsubscribe from a topic. Status code {} detected.", restResponse.getStatusCode());
+                // Most common reason is that subscription doesn't exist
+                return KafkaClientFutures.failed(new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR));
+            }
+
+            // Create request object and request target URL
+            String consumerGroupInstanceUrl = buildConsumerGroupInstanceUrl(groupName, instanceName);
+
+            subscriptionFormats.remove(groupName);
+
+            // Send destroy a consumer instance request
+            return httpClient.sendAsync(HttpMethod.DELETE, consumerGroupInstanceUrl, null, NO_PARAMS, ACCEPT_HEADERS)
+                    .thenCompose(RestProxyClient::requireResponse)
+                    .thenApply(response -> new KafkaClientResponse());
+        });
     }
 
     /**
-     * Consumer data from Kafka topic.
+     * Consumer data from Kafka topic. The wait time is passed to REST Proxy in the "timeout" parameter and the
+     * response size is limited using the "max_bytes" parameter. If more records than a single fetch returns are
+     * required, records are fetched again until at least the minimum number of records have been received or the
+     * wait time elapses.
+     *
+     * N.B. REST Proxy doesn't support limiting the number of records, so the maximum number of records only stops
+     * fetching more records, and a single fetch may return more records than the maximum.
      *
      * @param xrdClientId
      * @param topicName
+     * @param readOptions
      * @return
-     * @throws RequestFailedException
      */
-    public KafkaClientResponse read(String xrdClientId, String topicName) throws RequestFailedException, ForbiddenRequestException {
+    public CompletableFuture<KafkaClientResponse> readAsync(String xrdClientId, String topicName, ReadOptions readOptions) {
         // Generate Kafka consumer group and consumer instance names
         String groupName = helperService.getKafkaConsumerGroupName(xrdClientId, topicName);
         String instanceName = helperService.getKafkaConsumerInstanceName(xrdClientId);
@@ -211,55 +313,384 @@ public class RestProxyClient implements KafkaClient {
         // Create request target URL
         String consumerInstanceRecordsUrl = buildConsumerInstanceRecordsUrl(groupName, instanceName);
 
-        // Create REST client
-        RESTClient restClient = RESTClientFactory.createRESTClient(HttpMethod.GET.toString());
         Map<String, String> params = new HashMap<>();
-        Map<String, String> headers = new HashMap<>();
-        headers.put(Constants.HTTP_HEADER_ACCEPT, Constants.CONTENT_TYPE_KAFKA_JSON_V2);
+        params.put(MAX_BYTES_PARAM, String.valueOf(helperService.getReadMaxBytes(READ_MAX_BYTES)));
+        if (readOptions.hasWaitMs()) {
+            params.put(TIMEOUT_PARAM, String.valueOf(readOptions.getWaitMs(0)));
+        }
+        long deadline = System.currentTimeMillis() + readOptions.getWaitMs(0);
+        int minRecords = readOptions.getMinRecords(0);
+        int maxRecords = readOptions.getMaxRecords(Integer.MAX_VALUE);
+
+        // Records must be read using the format of the consumer instance
+        List<EmbeddedFormat> formats = new ArrayList<>(Arrays.asList(EmbeddedFormat.values()));
+        EmbeddedFormat knownFormat = subscriptionFormats.getOrDefault(groupName, EmbeddedFormat.JSON);
+        formats.remove(knownFormat);
+        formats.add(0, knownFormat);
 
         // Send read from topic request
-        ClientResponse restResponse = restClient.send(consumerInstanceRecordsUrl, null, params, headers);
-        // If the request failed, the response is null
-        if (restResponse == null) {
-            throw new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE);
+        CompletableFuture<HttpClientResponse> fetchRecords = sendReadRequest(groupName, consumerInstanceRecordsUrl, params, formats.iterator());
+        return fetchRecords.thenCompose(restResponse -> {
+            Map<String, String> acceptHeaders = FORMAT_ACCEPT_HEADERS.get(subscriptionFormats.getOrDefault(groupName, EmbeddedFormat.JSON));
+            if (restResponse.getStatusCode() != HttpStatus.SC_OK || minRecords <= 1) {
+                if (restResponse.getStatusCode() == HttpStatus.SC_OK) {
+                    recordBytes(MetricsService.OPERATION_READ, topicName, restResponse.getData());
+                }
+                return CompletableFuture.completedFuture(toKafkaClientResponse(restResponse));
+            }
+            // Keep on fetching until there are enough records or the wait time elapses
+            return fetchMore(consumerInstanceRecordsUrl, params, acceptHeaders, new JSONArray(restResponse.getData()), deadline, minRecords,
+                    maxRecords)
+                    .thenApply(records -> {
+                        LOG.debug("Received {} records from the topic", records.length());
+                        String data = records.toString();
+                        recordBytes(MetricsService.OPERATION_READ, topicName, data);
+                        return new KafkaClientResponse(data);
+                    });
+        });
+    }
+
+    /**
+     * Send a read request using the format of the consumer instance. The formats of the subscriptions are kept in
+     * memory only, so the format of a consumer instance that was created before the adapter was restarted, or by
+     * another adapter, isn't known. REST Proxy rejects a read whose format doesn't match the consumer instance with
+     * 406 (Not Acceptable) without consuming any records, so the formats are tried in the given order until the
+     * matching format is found, and the format is then stored for the next reads.
+     *
+     * @param groupName consumer group name
+     * @param url records URL of the consumer instance
+     * @param params request parameters
+     * @param formats formats to try
+     * @return future that is completed with the response of the last request
+     */
+    private CompletableFuture<HttpClientResponse> sendReadRequest(String groupName, String url, Map<String, String> params,
+                                                                  Iterator<EmbeddedFormat> formats) {
+        EmbeddedFormat format = formats.next();
+        return httpClient.sendAsync(HttpMethod.GET, url, null, params, FORMAT_ACCEPT_HEADERS.get(format))
+                .thenCompose(RestProxyClient::requireResponse)
+                .thenCompose(restResponse -> {
+                    if (restResponse.getStatusCode() == HttpStatus.SC_NOT_ACCEPTABLE && formats.hasNext()) {
+                        LOG.debug("Consumer instance of \"{}\" doesn't use format \"{}\"", groupName, format.getName());
+                        return sendReadRequest(groupName, url, params, formats);
+                    }
+                    if (restResponse.getStatusCode() == HttpStatus.SC_OK) {
+                        subscriptionFormats.put(groupName, format);
+                    }
+                    return CompletableFuture.completedFuture(restResponse);
+                });
+    }
+
+    private CompletableFuture<JSONArray> fetchMore(String url, Map<String, String> params, Map<String, String> headers, JSONArray records,
+                                                   long deadline, int minRecords, int maxRecords) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (records.length() >= minRecords || records.length() >= maxRecords || remaining <= 0) {
+            return CompletableFuture.completedFuture(records);
         }
-        return new KafkaClientResponse(restResponse.getData());
+        params.put(TIMEOUT_PARAM, String.valueOf(remaining));
+        return httpClient.sendAsync(HttpMethod.GET, url, null, params, headers).thenCompose(restResponse -> {
+            if (restResponse == null || restResponse.getStatusCode() != HttpStatus.SC_OK) {
+                // The records that have already been fetched must be returned, because they've been consumed
+                LOG.warn("Fetching more records failed, returning {} records", records.length());
+                return CompletableFuture.completedFuture(records);
+            }
+            new JSONArray(restResponse.getData()).forEach(records::put);
+            return fetchMore(url, params, headers, records, deadline, minRecords, maxRecords);
+        });
     }
 
     /**
-     * Publish data to a Kafka topic.
+     * Publish data to a Kafka topic. The request body is sent to REST Proxy using the content type of the format.
+     * Avro and Protobuf schemas whose ids are known are replaced with the ids.
      *
      * @param xrdClientId
      * @param topicName
      * @param messageBody
+     * @param format
      * @return
-     * @throws RequestFailedException
      */
-    public KafkaClientResponse publish(String xrdClientId, String topicName, String messageBody)
-            throws RequestFailedException, BadRequestException {
+    public CompletableFuture<KafkaClientResponse> publishAsync(String xrdClientId, String topicName, byte[] messageBody,
+                                                               EmbeddedFormat format) {
+        String body = new String(messageBody, StandardCharsets.UTF_8);
+        if (format != EmbeddedFormat.AVRO && format != EmbeddedFormat.PROTOBUF) {
+            return send(topicName, body, format);
+        }
+        JSONObject request;
+        try {
+            request = new JSONObject(body);
+        } catch (JSONException je) {
+            return KafkaClientFutures.failed(new BadRequestException(INVALID_REQUEST_ERROR));
+        }
+        // Schemas that are sent to REST Proxy and whose ids are cached from the response
+        Map<String, String> newSchemas = new HashMap<>();
+        for (String schemaType : SCHEMA_TYPES) {
+            String schemaField = schemaType + "_schema";
+            String schemaIdField = schemaType + "_schema_id";
+            if (request.isNull(schemaField) || request.has(schemaIdField)) {
+                continue;
+            }
+            String schema = request.get(schemaField).toString();
+            Integer schemaId = schemaCache.getId(topicName, schemaType, schema);
+            if (schemaId == null) {
+                newSchemas.put(schemaType, schema);
+            } else {
+                LOG.debug("Use cached {} schema id {}", schemaType, schemaId);
+                request.remove(schemaField);
+                request.put(schemaIdField, schemaId);
+            }
+        }
+        return send(topicName, request.toString(), format).thenApply(response -> {
+            cacheSchemaIds(topicName, newSchemas, response.getValue());
+            return response;
+        });
+    }
+
+    /**
+     * Publish a single record whose value is sent to Kafka as such. The key and the value are sent to REST Proxy
+     * using the binary format.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param key
+     * @param value
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> publishBinaryAsync(String xrdClientId, String topicName, String key, byte[] value) {
+        JSONObject record = new JSONObject();
+        if (key != null) {
+            record.put("key", Base64.getEncoder().encodeToString(key.getBytes(StandardCharsets.UTF_8)));
+        }
+        record.put("value", Base64.getEncoder().encodeToString(value));
+        JSONObject request = new JSONObject();
+        request.put("records", new JSONArray().put(record));
+        return send(topicName, request.toString(), EmbeddedFormat.BINARY);
+    }
+
+    private CompletableFuture<KafkaClientResponse> send(String topicName, String body, EmbeddedFormat format) {
         // Create request target URL
         String topicsUrl = buildTopicUrl(topicName);
 
-        // Create REST client
-        RESTClient restClient = RESTClientFactory.createRESTClient(HttpMethod.POST.toString());
-        Map<String, String> params = new HashMap<>();
-        Map<String, String> headers = new HashMap<>();
-        headers.put(Constants.HTTP_HEADER_CONTENT_TYPE, Constants.CONTENT_TYPE_KAFKA_JSON_V2);
+        // Send publish to topic request. The size is recorded only when the topic accepted the records.
+        return httpClient.sendAsync(HttpMethod.POST, topicsUrl, body, NO_PARAMS, FORMAT_CONTENT_TYPE_HEADERS.get(format))
+                .thenCompose(RestProxyClient::requireResponse)
+                .thenApply(restResponse -> {
+                    KafkaClientResponse response = toKafkaClientResponse(restResponse);
+                    if (response.isSuccessful()) {
+                        recordBytes(MetricsService.OPERATION_PUBLISH, topicName, body);
+                    }
+                    return response;
+                });
+    }
 
-        // Send read from topic request
-        ClientResponse restResponse = restClient.send(topicsUrl, messageBody, params, headers);
-        // If the request failed, the response is null
+    /**
+     * Convert a REST Proxy response whose body is returned to the client as such. The status code is kept, so that
+     * an error response isn't recorded as a successful operation.
+     * @param restResponse REST Proxy response
+     * @return response
+     */
+    private static KafkaClientResponse toKafkaClientResponse(HttpClientResponse restResponse) {
+        KafkaClientResponse response = new KafkaClientResponse(restResponse.getData());
+        response.setStatusCode(restResponse.getStatusCode());
+        return response;
+    }
+
+    private void recordBytes(String operation, String topicName, String data) {
+        if (data == null) {
+            return;
+        }
+        // REST Proxy responses aren't parsed just to count the records, so only the size is recorded
+        long bytes;
+        try {
+            bytes = Utf8.encodedLength(data);
+        } catch (IllegalArgumentException e) {
+            bytes = data.length();
+        }
+        metricsService.recordBytes(CLIENT_NAME, operation, topicName, bytes);
+    }
+
+    private void cacheSchemaIds(String topicName, Map<String, String> schemas, String publishResponse) {
+        if (schemas.isEmpty() || publishResponse == null) {
+            return;
+        }
+        try {
+            JSONObject response = new JSONObject(publishResponse);
+            schemas.forEach((schemaType, schema) -> {
+                String schemaIdField = schemaType + "_schema_id";
+                if (!response.isNull(schemaIdField)) {
+                    schemaCache.put(topicName, schemaType, schema, response.getInt(schemaIdField));
+                }
+            });
+        } catch (JSONException je) {
+            LOG.debug("Unable to read schema ids from the response: {}", je.getMessage());
+        }
+    }
+
+    /**
+     * Get the schema cache.
+     * @return
+     */
+    protected SchemaCache getSchemaCache() {
+        return schemaCache;
+    }
+
+    /**
+     * Move the consumer instance to the given offsets using the REST Proxy "positions" resource.
+     *
+     * N.B. REST Proxy is able to seek only the partitions that are currently assigned to the consumer instance.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param offsets
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> seekAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets) {
+        // Generate Kafka consumer group and consumer instance names
+        String groupName = helperService.getKafkaConsumerGroupName(xrdClientId, topicName);
+        String instanceName = helperService.getKafkaConsumerInstanceName(xrdClientId);
+
+        // Create request object and request target URL
+        JSONObject seekRequest = buildSeekRequest(topicName, offsets);
+        LOG.debug("Seek request: {}", seekRequest.toString());
+        String positionsUrl = buildPositionsUrl(groupName, instanceName);
+
+        // Send seek request
+        return httpClient.sendAsync(HttpMethod.POST, positionsUrl, seekRequest.toString(), NO_PARAMS, CONTENT_TYPE_HEADERS)
+                .thenCompose(RestProxyClient::requireResponse)
+                .thenCompose(restResponse -> {
+                    if (restResponse.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                        return KafkaClientFutures.failed(new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR));
+                    } else if (restResponse.getStatusCode() != HttpStatus.SC_NO_CONTENT) {
+                        LOG.debug("Unable to seek. Status code {} detected.", restResponse.getStatusCode());
+                        return KafkaClientFutures.failed(new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE));
+                    }
+                    return CompletableFuture.completedFuture(new KafkaClientResponse());
+                });
+    }
+
+    /**
+     * REST Proxy v2 doesn't provide a way to look up offsets by timestamp, so seeking to a timestamp is supported
+     * only by tcpClient.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param timestamp
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> seekToTimestampAsync(String xrdClientId, String topicName, long timestamp) {
+        return KafkaClientFutures.failed(new BadRequestException(TIMESTAMP_SEEK_NOT_SUPPORTED_ERROR));
+    }
+
+    /**
+     * Move the consumer instance to the beginning or to the end of the partitions that are assigned to it using the
+     * REST Proxy "positions/beginning" and "positions/end" resources.
+     *
+     * N.B. REST Proxy is able to seek only the partitions that are currently assigned to the consumer instance, so
+     * the request has no effect before the consumer instance has fetched records for the first time.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param position
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> resetPositionsAsync(String xrdClientId, String topicName, OffsetResetPolicy position) {
+        // Generate Kafka consumer group and consumer instance names
+        String groupName = helperService.getKafkaConsumerGroupName(xrdClientId, topicName);
+        String instanceName = helperService.getKafkaConsumerInstanceName(xrdClientId);
+        String consumerGroupInstanceUrl = buildConsumerGroupInstanceUrl(groupName, instanceName);
+
+        // Get the assigned partitions and move them
+        return httpClient.sendAsync(HttpMethod.GET, consumerGroupInstanceUrl + ASSIGNMENTS_PATH, null, NO_PARAMS, ACCEPT_HEADERS)
+                .thenCompose(RestProxyClient::requireResponse)
+                .thenCompose(restResponse -> {
+                    if (restResponse.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                        return KafkaClientFutures.<HttpClientResponse>failed(new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR));
+                    } else if (restResponse.getStatusCode() != HttpStatus.SC_OK) {
+                        LOG.debug("Unable to get assignments. Status code {} detected.", restResponse.getStatusCode());
+                        return KafkaClientFutures.<HttpClientResponse>failed(new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE));
+                    }
+                    JSONObject resetRequest;
+                    try {
+                        resetRequest = buildResetRequest(topicName, restResponse.getData());
+                    } catch (JSONException e) {
+                        LOG.debug("Unable to read assignments from the response: {}", e.getMessage());
+                        return KafkaClientFutures.<HttpClientResponse>failed(new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE));
+                    }
+                    LOG.debug("Reset positions request: {}", resetRequest.toString());
+                    String path = position == OffsetResetPolicy.EARLIEST ? POSITIONS_BEGINNING_PATH : POSITIONS_END_PATH;
+                    return httpClient.sendAsync(HttpMethod.POST, consumerGroupInstanceUrl + path, resetRequest.toString(), NO_PARAMS,
+                            CONTENT_TYPE_HEADERS).thenCompose(RestProxyClient::requireResponse);
+                })
+                .thenCompose(restResponse -> {
+                    if (restResponse.getStatusCode() != HttpStatus.SC_NO_CONTENT) {
+                        LOG.debug("Unable to reset positions. Status code {} detected.", restResponse.getStatusCode());
+                        return KafkaClientFutures.failed(new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE));
+                    }
+                    return CompletableFuture.completedFuture(new KafkaClientResponse());
+                });
+    }
+
+    /**
+     * Manual commit mode is supported only by tcpClient. The consumer instances of REST Proxy always commit their
+     * offsets automatically, so there are no records to acknowledge.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param offsets
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> commitAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets) {
+        return KafkaClientFutures.failed(new BadRequestException(MANUAL_COMMIT_NOT_SUPPORTED_ERROR));
+    }
+
+    /**
+     * Reading partitions without a subscription is supported only by tcpClient. REST Proxy v2 reads records only
+     * using consumer instances, which always belong to a consumer group.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param positions
+     * @param format
+     * @param readOptions
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> fetchAsync(String xrdClientId, String topicName, Map<Integer, Long> positions,
+                                                             EmbeddedFormat format, ReadOptions readOptions) {
+        return KafkaClientFutures.failed(new BadRequestException(FETCH_NOT_SUPPORTED_ERROR));
+    }
+
+    /**
+     * If the request failed, the response is null and the returned future is completed exceptionally.
+     * @param restResponse REST Proxy response or null
+     * @return future that is completed with the response
+     */
+    private static CompletableFuture<HttpClientResponse> requireResponse(HttpClientResponse restResponse) {
         if (restResponse == null) {
-            throw new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE);
+            return KafkaClientFutures.failed(new RequestFailedException(REQUEST_FAILED_ERROR_MESSAGE));
         }
-        return new KafkaClientResponse(restResponse.getData());
+        return CompletableFuture.completedFuture(restResponse);
     }
 
     protected JSONObject buildCreateConsumerInstanceRequest(String instanceName, OffsetResetPolicy offsetResetPolicy) {
+        return buildCreateConsumerInstanceRequest(instanceName, offsetResetPolicy, EmbeddedFormat.JSON);
+    }
+
+    protected JSONObject buildCreateConsumerInstanceRequest(String instanceName, OffsetResetPolicy offsetResetPolicy,
+                                                            EmbeddedFormat format) {
+        return buildCreateConsumerInstanceRequest(instanceName, offsetResetPolicy, format, Collections.emptyMap());
+    }
+
+    protected JSONObject buildCreateConsumerInstanceRequest(String instanceName, OffsetResetPolicy offsetResetPolicy,
+                                                            EmbeddedFormat format, Map<String, String> consumerProperties) {
         JSONObject json = new JSONObject();
         json.put("name", instanceName);
-        json.put("format", "json");
+        json.put("format", format.getName());
         json.put("auto.offset.reset", offsetResetPolicy.toString().toLowerCase()); // earliest | latest
+        consumerProperties.forEach((name, value) -> {
+            if (REST_PROXY_CONSUMER_PROPERTIES.contains(name)) {
+                json.put(name, value);
+            } else {
+                LOG.debug("Consumer property \"{}\" is not supported by Kafka REST Proxy", name);
+            }
+        });
         return json;
     }
 
@@ -271,6 +702,41 @@ public class RestProxyClient implements KafkaClient {
         return json;
     }
 
+    protected JSONObject buildSeekRequest(String topicName, Map<Integer, Long> offsets) {
+        JSONArray positions = new JSONArray();
+        offsets.forEach((partition, offset) -> {
+            JSONObject position = new JSONObject();
+            position.put("topic", topicName);
+            position.put("partition", partition);
+            position.put("offset", offset);
+            positions.put(position);
+        });
+        JSONObject json = new JSONObject();
+        json.put("offsets", positions);
+        return json;
+    }
+
+    /**
+     * Build the request body of the "positions/beginning" and "positions/end" resources from the assigned
+     * partitions of the topic.
+     * @param topicName topic name
+     * @param assignments response of the "assignments" resource
+     * @return request body
+     */
+    protected JSONObject buildResetRequest(String topicName, String assignments) {
+        JSONArray partitions = new JSONArray();
+        JSONArray assigned = new JSONObject(assignments).optJSONArray("partitions");
+        for (int i = 0; assigned != null && i < assigned.length(); i++) {
+            JSONObject partition = assigned.getJSONObject(i);
+            if (topicName.equals(partition.optString("topic"))) {
+                partitions.put(partition);
+            }
+        }
+        JSONObject json = new JSONObject();
+        json.put("partitions", partitions);
+        return json;
+    }
+
     protected String buildConsumerGroupUrl(String consumerGroupName) {
         StringBuilder sb = new StringBuilder();
         sb.append(helperService.getKafkaRESTProxyUrl()).append(CONSUMERS_PATH).append(consumerGroupName);
@@ -298,6 +764,13 @@ public class RestProxyClient implements KafkaClient {
         return sb.toString();
     }
 
+    protected String buildPositionsUrl(String consumerGroupName, String consumerInstanceName) {
+        String consumerGroupInstanceUrl = buildConsumerGroupInstanceUrl(consumerGroupName, consumerInstanceName);
+        StringBuilder sb = new StringBuilder(consumerGroupInstanceUrl);
+        sb.append(POSITIONS_PATH);
+        return sb.toString();
+    }
+
     protected String buildTopicUrl(String topicName) {
         StringBuilder sb = new StringBuilder();
         sb.append(helperService.getKafkaRESTProxyUrl()).append(TOPICS_PATH).append(topicName);
@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * This class caches the ids of the Avro and Protobuf schemas that REST Proxy has registered in Schema Registry.
+ * The first publish request that contains a schema returns the id of the schema, and the following requests that
+ * contain the same schema send the id instead of the schema. This keeps the requests small and REST Proxy doesn't
+ * have to look up the schema from Schema Registry again.
+ */
+public class SchemaCache {
+
+    private final Cache<String, Integer> schemaIds;
+
+    /**
+     * Initialize new SchemaCache object.
+     * @param maxSize the maximum number of cached schemas
+     */
+    public SchemaCache(int maxSize) {
+        this.schemaIds = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    }
+
+    /**
+     * Get the id of a schema.
+     * @param topicName topic name
+     * @param schemaType "key" or "value"
+     * @param schema schema
+     * @return schema id or null if the schema is not cached
+     */
+    public Integer getId(String topicName, String schemaType, String schema) {
+        return schemaIds.getIfPresent(buildKey(topicName, schemaType, schema));
+    }
+
+    /**
+     * Add the id of a schema to the cache.
+     * @param topicName topic name
+     * @param schemaType "key" or "value"
+     * @param schema schema
+     * @param id schema id
+     */
+    public void put(String topicName, String schemaType, String schema, int id) {
+        schemaIds.put(buildKey(topicName, schemaType, schema), id);
+    }
+
+    /**
+     * Get the number of cached schemas.
+     * @return
+     */
+    public long size() {
+        return schemaIds.size();
+    }
+
+    private static String buildKey(String topicName, String schemaType, String schema) {
+        // Schemas are registered under the "<topic>-key" and "<topic>-value" subjects
+        return topicName + "-" + schemaType + "\n" + schema;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This interface is implemented by Kafka clients whose consumers are owned by the adapter node, so that the
+ * subscriptions of the node can be handed over to other nodes of a cluster.
+ */
+public interface SubscriptionOwner {
+
+    /**
+     * Get the subscriptions of this node by consumer group name. Subscriptions whose consumers haven't been
+     * restored since the restart are included.
+     * @return
+     */
+    Map<String, SubscriptionRegistry.Subscription> getSubscriptions();
+
+    /**
+     * Close the consumer of a subscription without failing if it doesn't exist. The consumer is closed, which
+     * commits its offsets, and its member is removed from the consumer group. The subscription is kept, so that
+     * its consumer is restored by the next read if the subscription can't be handed over.
+     * @param groupName consumer group name
+     * @return future that is completed when the consumer has been closed and it has left the consumer group
+     */
+    CompletableFuture<Void> releaseAsync(String groupName);
+
+    /**
+     * Remove a subscription that has been handed over to another node. The consumer must be released separately.
+     * @param groupName consumer group name
+     */
+    void unregister(String groupName);
+}
@@ -0,0 +1,318 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.model.CommitMode;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class keeps track of the subscriptions of a Kafka client, so that the consumers can be recreated after
+ * the adapter has been restarted. The subscriptions are stored in a JSON file by consumer group name. Changes are
+ * written to the file in the background, so registering a subscription never blocks on file I/O, and several
+ * changes are written at once. The file is replaced atomically, so a crash never leaves a partially written file.
+ *
+ * If no file is defined, the subscriptions are kept only in memory.
+ */
+public class SubscriptionRegistry implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriptionRegistry.class);
+
+    private static final long CLOSE_TIMEOUT_S = 5;
+
+    private final Path file;
+
+    private final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+
+    // True if a write has been scheduled but it hasn't started yet
+    private final AtomicBoolean writePending = new AtomicBoolean();
+
+    private final ExecutorService writer;
+
+    /**
+     * Initialize new SubscriptionRegistry object and load the subscriptions that have been stored in the file.
+     *
+     * @param path registry file path or null if the subscriptions are kept only in memory
+     */
+    public SubscriptionRegistry(String path) {
+        if (path == null) {
+            file = null;
+            writer = null;
+            return;
+        }
+        file = Paths.get(path).toAbsolutePath();
+        writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "subscription-registry-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        load();
+    }
+
+    /**
+     * Add or replace the subscription of a consumer group.
+     *
+     * @param groupName consumer group name
+     * @param subscription subscription
+     */
+    public void register(String groupName, Subscription subscription) {
+        if (!subscription.equals(subscriptions.put(groupName, subscription))) {
+            scheduleWrite();
+        }
+    }
+
+    /**
+     * Remove the subscription of a consumer group.
+     *
+     * @param groupName consumer group name
+     * @return true if the subscription existed
+     */
+    public boolean unregister(String groupName) {
+        if (subscriptions.remove(groupName) != null) {
+            scheduleWrite();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the subscription of a consumer group.
+     *
+     * @param groupName consumer group name
+     * @return subscription or null if the group has no subscription
+     */
+    public Subscription get(String groupName) {
+        return subscriptions.get(groupName);
+    }
+
+    /**
+     * Get the consumer group names of all the subscriptions.
+     * @return
+     */
+    public Set<String> getGroupNames() {
+        return subscriptions.keySet();
+    }
+
+    /**
+     * Get all the subscriptions by consumer group name.
+     * @return
+     */
+    public Map<String, Subscription> getSubscriptions() {
+        return Collections.unmodifiableMap(subscriptions);
+    }
+
+    /**
+     * Write the pending changes to the file and stop the background writer.
+     */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_S, TimeUnit.SECONDS)) {
+                LOG.warn("Writing subscription registry did not complete in {}s", CLOSE_TIMEOUT_S);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void scheduleWrite() {
+        if (writer != null && writePending.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::write);
+            } catch (RuntimeException e) {
+                // The registry has been closed
+                writePending.set(false);
+                LOG.debug("Subscription registry change not written: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(file)) {
+            LOG.info("Subscription registry \"{}\" doesn't exist yet", file);
+            return;
+        }
+        try {
+            JSONArray entries = new JSONArray(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+            for (int i = 0; i < entries.length(); i++) {
+                JSONObject entry = entries.getJSONObject(i);
+                subscriptions.put(entry.getString("group"), Subscription.fromJson(entry));
+            }
+            LOG.info("Loaded {} subscriptions from subscription registry \"{}\"", subscriptions.size(), file);
+        } catch (IOException | JSONException | IllegalArgumentException e) {
+            // Clients have to subscribe again, but the adapter must start anyway
+            LOG.error("Unable to load subscription registry \"{}\"", file, e);
+        }
+    }
+
+    private void write() {
+        // Changes made after this are written by the next write
+        writePending.set(false);
+        JSONArray entries = new JSONArray();
+        subscriptions.forEach((groupName, subscription) -> entries.put(subscription.toJson().put("group", groupName)));
+        try {
+            Path parent = file.getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.wrap(entries.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                // Flush to disk before the move so that the renamed file is never empty after a crash
+                channel.force(true);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOG.debug("Wrote {} subscriptions to subscription registry", entries.length());
+        } catch (IOException e) {
+            LOG.error("Unable to write subscription registry \"{}\"", file, e);
+        }
+    }
+
+    /**
+     * The parameters that are needed to recreate the consumer of a subscription.
+     */
+    public static final class Subscription {
+
+        private final String xrdClientId;
+
+        private final String topicName;
+
+        private final OffsetResetPolicy offsetResetPolicy;
+
+        private final SubscriptionOptions options;
+
+        /**
+         * Initialize new Subscription object.
+         *
+         * @param xrdClientId
+         * @param topicName
+         * @param offsetResetPolicy
+         * @param options
+         */
+        public Subscription(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy, SubscriptionOptions options) {
+            this.xrdClientId = xrdClientId;
+            this.topicName = topicName;
+            this.offsetResetPolicy = offsetResetPolicy;
+            this.options = options;
+        }
+
+        public String getXrdClientId() {
+            return xrdClientId;
+        }
+
+        public String getTopicName() {
+            return topicName;
+        }
+
+        public OffsetResetPolicy getOffsetResetPolicy() {
+            return offsetResetPolicy;
+        }
+
+        public SubscriptionOptions getOptions() {
+            return options;
+        }
+
+        private JSONObject toJson() {
+            return new JSONObject()
+                    .put("client", xrdClientId)
+                    .put("topic", topicName)
+                    .put("offset_reset_policy", offsetResetPolicy.name())
+                    .put("format", options.getFormat().name())
+                    .put("commit_mode", options.getCommitMode().name())
+                    .put("properties", new JSONObject(options.getConsumerProperties()));
+        }
+
+        private static Subscription fromJson(JSONObject json) {
+            Map<String, String> properties = new HashMap<>();
+            JSONObject props = json.optJSONObject("properties");
+            if (props != null) {
+                for (String name : props.keySet()) {
+                    properties.put(name, props.getString(name));
+                }
+            }
+            return new Subscription(json.getString("client"), json.getString("topic"),
+                    OffsetResetPolicy.valueOf(json.getString("offset_reset_policy")),
+                    new SubscriptionOptions(EmbeddedFormat.valueOf(json.getString("format")), properties,
+                            CommitMode.valueOf(json.optString("commit_mode", CommitMode.AUTO.name()))));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Subscription)) {
+                return false;
+            }
+            Subscription other = (Subscription) o;
+            return xrdClientId.equals(other.xrdClientId) && topicName.equals(other.topicName)
+                    && offsetResetPolicy == other.offsetResetPolicy && options.equals(other.options);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(xrdClientId, topicName, offsetResetPolicy, options);
+        }
+    }
+}
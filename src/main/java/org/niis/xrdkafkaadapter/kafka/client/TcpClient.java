@@ -26,42 +26,78 @@ package org.niis.xrdkafkaadapter.kafka.client;
 import org.niis.xrdkafkaadapter.exception.BadRequestException;
 import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
 import org.niis.xrdkafkaadapter.exception.RequestFailedException;
+import org.niis.xrdkafkaadapter.model.CommitMode;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
 import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
 import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.PublishRecord;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
 import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.service.MetricsService;
+import org.niis.xrdkafkaadapter.util.JsonRecordsReader;
+import org.niis.xrdkafkaadapter.util.JsonRecordsWriter;
+import org.niis.xrdkafkaadapter.util.PartitionOffsets;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.Scheduler;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.AdminClientConfig;
+import org.apache.kafka.clients.admin.MemberToRemove;
+import org.apache.kafka.clients.admin.RemoveMembersFromConsumerGroupOptions;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.InvalidOffsetException;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * This class implements a TCP client for Kafka.
  */
 @Service
-public class TcpClient implements KafkaClient {
+public class TcpClient implements KafkaClient, SubscriptionOwner, DisposableBean {
 
     private static final Logger LOG = LoggerFactory.getLogger(TcpClient.class);
 
@@ -70,19 +106,54 @@ public class TcpClient implements KafkaClient {
     // Default (can be overridden in props): 600s = 10min
     private static final int CONSUMER_CACHE_DURATION_S = 600;
 
+    // Default (can be overridden in props): 10000ms = 10s
+    private static final int CONSUMER_CLOSE_TIMEOUT_MS = 10000;
+
+    // 5s
+    private static final int CONSUMER_REMOVAL_SHUTDOWN_TIMEOUT_S = 5;
+
     // 60000ms = 1min
     private static final int CONSUMER_CACHE_CLEAN_UP_INTERVAL_MS = 60000;
 
     // 10000ms = 10s
     private static final int CONSUMER_CACHE_CLEAN_UP_INITIAL_DELAY_MS = 10000;
 
+    // Default (can be overridden in props): 30000ms = 30s
+    private static final int CONSUMER_REQUEST_TIMEOUT_MS = 30000;
+
+    // Default (can be overridden in props): 1000ms = 1s
+    private static final int CONSUMER_COMMIT_INTERVAL_MS = 1000;
+
+    // Default (can be overridden in props)
+    private static final int ASSIGNED_CONSUMER_POOL_SIZE = 4;
+
+    // Default (can be overridden in props)
+    private static final int PREFETCH_MAX_RECORDS = 1000;
+
+    // Default (can be overridden in props): 10485760 bytes = 10MB
+    private static final int PREFETCH_MAX_BYTES = 10485760;
+
+    // Default (can be overridden in props): 10485760 bytes = 10MB
+    private static final int READ_MAX_BYTES = 10485760;
+
+    // Default (can be overridden in props)
+    private static final int PRODUCER_POOL_MAX_SIZE = 100;
+
+    // Default (can be overridden in props): 600s = 10min
+    private static final int PRODUCER_POOL_IDLE_TIMEOUT_S = 600;
+
+    // Default (can be overridden in props): 30s
+    private static final int PRODUCER_POOL_CLOSE_TIMEOUT_S = 30;
+
     private static final String ENABLE_AUTO_COMMIT = "true";
 
     private static final String AUTO_COMMIT_INTERVAL_MS = "1000";
 
     private static final String STRING_DESERIALIZER_CLASS = "org.apache.kafka.common.serialization.StringDeserializer";
 
-    private static final String STRING_SERIALIZER_CLASS = "org.apache.kafka.common.serialization.StringSerializer";
+    private static final String BASE64_DESERIALIZER_CLASS = Base64Deserializer.class.getName();
+
+    private static final String BYTE_ARRAY_SERIALIZER_CLASS = "org.apache.kafka.common.serialization.ByteArraySerializer";
 
     private static final String ERROR_IN_SENDING_RECORD = "Error in sending record";
 
@@ -90,10 +161,74 @@ public class TcpClient implements KafkaClient {
 
     private static final String NO_SUBSCRIPTION_FOUND_ERROR = "No subscription found.";
 
+    private static final String UNSUPPORTED_FORMAT_ERROR = "Format \"%s\" is not supported by the Kafka client.";
+
+    private static final String CLIENT_NAME = "tcpClient";
+
+    private static final String CONSUMER_CACHE_NAME = "consumers";
+
+    private static final String ADMIN_CLIENT_ID = "xrd-kafka-adapter-admin";
+
+    private static final String ASSIGNED_CONSUMER_CLIENT_ID_PREFIX = "xrd-kafka-adapter-reader-";
+
+    private static final String CONSUMER_CREATION_FAILED_ERROR = "Unable to create Kafka consumer.";
+
+    private static final String PRODUCER_CREATION_FAILED_ERROR = "Unable to create Kafka producer.";
+
+    private static final String CONSUMER_REQUEST_FAILED_ERROR = "Kafka consumer request failed.";
+
+    private static final String CONSUMER_REQUEST_TIMEOUT_ERROR = "Kafka consumer request timed out.";
+
+    private static final String AUTO_COMMIT_ERROR = "Offsets of the subscription are committed automatically.";
+
+    private static final String OFFSET_OUT_OF_RANGE_ERROR = "Offset is out of range.";
+
     @Autowired
     private HelperService helperService;
 
-    private LoadingCache<String, KafkaConsumer> consumerCache;
+    private MetricsService metricsService = MetricsService.noop();
+
+    // Native metrics of the cached consumers and pooled producers by consumer worker or producer
+    private final Map<Object, KafkaClientMeterBinder> clientMeters = new ConcurrentHashMap<>();
+
+    // Static group membership ids of the cached consumers by consumer worker
+    private final Map<ConsumerWorker, String> groupInstanceIds = new ConcurrentHashMap<>();
+
+    // Consumers that are being closed and removed from their groups by consumer worker
+    private final Map<ConsumerWorker, CompletableFuture<Void>> removals = new HashMap<>();
+
+    private Cache<String, ConsumerWorker> consumerCache;
+
+    // Subscriptions that are restored after a restart by consumer group name
+    private SubscriptionRegistry subscriptionRegistry;
+
+    // Removes the static members of closed consumers from their groups. Created when it's needed the first time.
+    private Admin admin;
+
+    private ProducerPool<byte[], byte[]> producerPool;
+
+    // Shared consumers that read partitions without a subscription
+    private AssignedConsumerPool assignedConsumerPool;
+
+    // Commits the acknowledged offsets of the subscriptions that use the manual commit mode
+    private CommitCoordinator commitCoordinator;
+
+    private ScheduledExecutorService scheduler;
+
+    // Runs the removal listener of the consumer cache, so that removed consumers are never closed on request threads
+    private ExecutorService removalExecutor;
+
+    private int consumerRequestTimeout;
+
+    private Duration consumerCloseTimeout;
+
+    private boolean prefetchEnabled;
+
+    private int prefetchMaxRecords;
+
+    private int prefetchMaxBytes;
+
+    private int readMaxBytes;
 
     /**
      * Initialize new TcpClient object.
@@ -108,82 +243,366 @@ public class TcpClient implements KafkaClient {
         LOG.debug("Cache clean up initial delay is {}ms", CONSUMER_CACHE_CLEAN_UP_INITIAL_DELAY_MS);
         LOG.debug("Cache clean up interval is {}ms", CONSUMER_CACHE_CLEAN_UP_INTERVAL_MS);
 
+        consumerRequestTimeout = helperService.getConsumerRequestTimeout(CONSUMER_REQUEST_TIMEOUT_MS);
+        LOG.debug("Consumer request timeout is {}ms", consumerRequestTimeout);
+
+        consumerCloseTimeout = Duration.ofMillis(helperService.getConsumerCloseTimeout(CONSUMER_CLOSE_TIMEOUT_MS));
+        LOG.debug("Consumer close timeout is {}ms", consumerCloseTimeout.toMillis());
+
+        prefetchEnabled = helperService.isPrefetchEnabled();
+        prefetchMaxRecords = helperService.getPrefetchMaxRecords(PREFETCH_MAX_RECORDS);
+        prefetchMaxBytes = helperService.getPrefetchMaxBytes(PREFETCH_MAX_BYTES);
+        LOG.debug("Prefetch enabled: {}", prefetchEnabled);
+        if (prefetchEnabled) {
+            LOG.debug("Prefetch max records is {}", prefetchMaxRecords);
+            LOG.debug("Prefetch max bytes is {}", prefetchMaxBytes);
+        }
+        readMaxBytes = helperService.getReadMaxBytes(READ_MAX_BYTES);
+        LOG.debug("Read max bytes is {}", readMaxBytes);
+
+        // Completes reads that wait for prefetched records, times out consumer requests and expires cached consumers
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-client-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        removalExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kafka-consumer-removal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        commitCoordinator = new CommitCoordinator(scheduler, helperService.getConsumerCommitInterval(CONSUMER_COMMIT_INTERVAL_MS));
+        assignedConsumerPool = new AssignedConsumerPool(helperService.getAssignedConsumerPoolSize(ASSIGNED_CONSUMER_POOL_SIZE),
+                (format, index) -> {
+                    String clientId = ASSIGNED_CONSUMER_CLIENT_ID_PREFIX + format.getName() + "-" + index;
+                    return new ConsumerWorker(clientId, createAssignedConsumer(clientId, format),
+                            new RecordBuffer(prefetchMaxRecords, prefetchMaxBytes), scheduler);
+                }, consumerCloseTimeout);
+
+        subscriptionRegistry = new SubscriptionRegistry(helperService.getSubscriptionRegistryPath());
+        if (!subscriptionRegistry.getGroupNames().isEmpty()) {
+            // Subscriptions that aren't used within the cache duration after the restart would have expired
+            scheduler.schedule(this::expireUnusedSubscriptions, cacheDuration, TimeUnit.SECONDS);
+        }
+
         /**
          * The "expireAfterAccess" specifies that each entry should be automatically removed from the cache once a fixed
          * duration has elapsed after the entry's creation, the most recent replacement of its value, or its
-         * last access. Access time is reset by all cache read and write operations (including Cache.asMap().get(Object)
-         * and Cache.asMap().put(K, V)), but not by operations on the collection-views of Cache.asMap().
+         * last access. Access time is reset by all cache read and write operations, including the operations of
+         * Cache.asMap().
          *
-         * The removalListener method is not called for objects that are automatically removed from cache
-         * because they have expired. For those objects, the removalListener method is invoked only when the cache
-         * cleanUp() method is invoked. Therefore, the cleanUp() is scheduled to be invoked once in a minute. In addition,
-         * cleanUp() is explicitly invoked in subscribe method.
+         * Expired entries are removed by the scheduler when they expire, so the connections of expired consumers aren't
+         * kept open until the next cache operation or clean up. The removalListener is invoked asynchronously using
+         * the removal executor, also when an entry is removed explicitly, so removing a consumer never blocks the
+         * request that caused it. The evictionListener is invoked synchronously when an entry expires, so that the
+         * closing of an expired consumer is registered before a new consumer of the same group can be created.
          *
-         * When cleanUp() is invoked, the connections of all consumers that have been removed from the cache because of
-         * expiration since cleanUp() was invoked the last time, are closed. In other words, when a consumer expires
-         * in the cache, the connection is not closed until cleanUp() is invoked.
+         * Each consumer is owned by a ConsumerWorker and the consumer is closed in the worker's own thread after
+         * the tasks that are already queued for the consumer have been completed. Closing the consumer commits the
+         * consumed offsets. Consumers are static members of their groups, so they don't leave the group when they're
+         * closed - the member is removed from the group using the admin client, so that the partitions are reassigned
+         * without waiting for the session timeout.
+         *
+         * Expired subscriptions are also removed from the subscription registry, unless a new consumer of the same
+         * group has been created in the meantime.
          */
-        consumerCache = CacheBuilder.newBuilder()
+        consumerCache = Caffeine.newBuilder()
                 .expireAfterAccess(cacheDuration, TimeUnit.SECONDS)
-                // N.B. Not invoked automatically when entry expires
-                .removalListener((RemovalListener<String, KafkaConsumer>) entry -> {
-                    KafkaConsumer consumer = entry.getValue();
-                    LOG.debug("Remove consumer \"{}\" from consumer cache", entry.getKey());
-                    if (consumer != null) {
-                        try {
-                            // Close connection
-                            consumer.close();
-                            LOG.debug("Connection closed for consumer object \"{}\"", consumer);
-                        } catch (Throwable e) {
-                            LOG.error("Failed to close Kafka consumer: {}", consumer.getClass().getName(), e);
-                        }
+                .scheduler(Scheduler.forScheduledExecutorService(scheduler))
+                .executor(removalExecutor)
+                // Hit, miss and eviction counts are published as metrics
+                .recordStats()
+                .<String, ConsumerWorker>evictionListener((key, worker, cause) -> {
+                    if (worker != null) {
+                        removeConsumer(key, worker);
                     }
                 })
-                .build(new CacheLoader<String, KafkaConsumer>() {
-                    @Override
-                    public KafkaConsumer load(String key) throws ForbiddenRequestException {
-                        throw new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR);
+                .removalListener((key, worker, cause) -> {
+                    LOG.debug("Remove consumer \"{}\" from consumer cache ({})", key, cause);
+                    if (worker != null) {
+                        if (cause == RemovalCause.EXPIRED && !consumerCache.asMap().containsKey(key)) {
+                            subscriptionRegistry.unregister(key);
+                        }
+                        // Returns the same removal if the consumer is already being removed, e.g., after it has expired
+                        removeConsumer(key, worker);
                     }
-                });
+                })
+                .build();
+
+        producerPool = new ProducerPool<>(helperService.getProducerPoolMaxSize(PRODUCER_POOL_MAX_SIZE),
+                helperService.getProducerPoolIdleTimeout(PRODUCER_POOL_IDLE_TIMEOUT_S),
+                helperService.getProducerPoolCloseTimeout(PRODUCER_POOL_CLOSE_TIMEOUT_S),
+                (clientId, producer) -> unbindMeters(producer));
+    }
+
+    /**
+     * Set the metrics service and register the consumer cache metrics.
+     * @param metricsService
+     */
+    @Autowired(required = false)
+    public void setMetricsService(MetricsService metricsService) {
+        this.metricsService = metricsService;
+        metricsService.monitorCache(consumerCache, CONSUMER_CACHE_NAME);
     }
 
     /**
-     * Perform any pending maintenance operations for consumer cache, e.g., run "removalListener" for expired
-     * cache entries.
+     * Publish the native metrics of a cached consumer or a pooled producer.
+     * @param client consumer worker or producer
+     * @param binder binder of the client's metrics
+     */
+    private void bindMeters(Object client, KafkaClientMeterBinder binder) {
+        metricsService.bind(binder);
+        clientMeters.put(client, binder);
+    }
+
+    /**
+     * Remove the native metrics of a consumer or a producer that is removed.
+     * @param client consumer worker or producer
+     */
+    private void unbindMeters(Object client) {
+        KafkaClientMeterBinder binder = clientMeters.remove(client);
+        if (binder != null) {
+            binder.close();
+        }
+    }
+
+    /**
+     * Perform any pending maintenance operations for consumer cache and producer pool, e.g., run "removalListener"
+     * for expired producers. Expired consumers are removed by the scheduler, so the consumer cache clean up is only
+     * a fallback.
      */
     @Scheduled(fixedRate = CONSUMER_CACHE_CLEAN_UP_INTERVAL_MS, initialDelay = CONSUMER_CACHE_CLEAN_UP_INITIAL_DELAY_MS)
     protected void cleanUpCache() {
         LOG.debug("Clean up consumer cache");
         consumerCache.cleanUp();
+        LOG.debug("Clean up producer pool");
+        producerPool.cleanUp();
+    }
+
+    /**
+     * Close all the pooled producers and cached consumers when the application is shut down.
+     */
+    @Override
+    public void destroy() {
+        LOG.debug("Close producer pool and consumer cache");
+        producerPool.close();
+        assignedConsumerPool.close();
+        // Closing the consumers commits the offsets that have been acknowledged after the last periodic commit
+        commitCoordinator.close();
+        consumerCache.invalidateAll();
+        consumerCache.cleanUp();
+        // Let the removal listener close the removed consumers before the application exits
+        removalExecutor.shutdown();
+        try {
+            if (!removalExecutor.awaitTermination(CONSUMER_REMOVAL_SHUTDOWN_TIMEOUT_S, TimeUnit.SECONDS)) {
+                LOG.warn("Closing Kafka consumers did not complete in {}s", CONSUMER_REMOVAL_SHUTDOWN_TIMEOUT_S);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.shutdownNow();
+        // The subscriptions of the closed consumers are kept, so that they can be restored after the restart
+        subscriptionRegistry.close();
+        synchronized (this) {
+            if (admin != null) {
+                admin.close(Duration.ofSeconds(CONSUMER_REMOVAL_SHUTDOWN_TIMEOUT_S));
+            }
+        }
     }
 
     /**
-     * Subscribe to Kafka topic.
+     * Close the consumer of a worker that has been removed from the cache and remove its member from the consumer
+     * group. The removal is done only once, and the same future is returned if the removal is already in progress.
+     * @param groupName consumer group name
+     * @param worker removed consumer worker
+     * @return future that is completed when the consumer has been closed and it has left the consumer group
+     */
+    private CompletableFuture<Void> removeConsumer(String groupName, ConsumerWorker worker) {
+        synchronized (removals) {
+            CompletableFuture<Void> removal = removals.get(worker);
+            if (removal != null) {
+                return removal;
+            }
+            String groupInstanceId = groupInstanceIds.remove(worker);
+            if (groupInstanceId == null) {
+                // The consumer has already been removed
+                return CompletableFuture.completedFuture(null);
+            }
+            unbindMeters(worker);
+            // Close connection and leave the consumer group
+            removal = worker.close(consumerCloseTimeout).thenCompose(v -> leaveGroup(groupName, groupInstanceId));
+            removals.put(worker, removal);
+            removal.whenComplete((result, error) -> {
+                synchronized (removals) {
+                    removals.remove(worker);
+                }
+            });
+            return removal;
+        }
+    }
+
+    /**
+     * Get a future that is completed when the consumers of the given group that are being closed have been closed
+     * and removed from the group. A new consumer of the group must not be created before that, because it uses the
+     * same group instance id and joining the group would fence the closing consumer before it has committed its
+     * offsets.
+     * @param groupName consumer group name
+     * @return future that is completed when the consumers of the group have been removed
+     */
+    private CompletableFuture<Void> awaitRemoval(String groupName) {
+        synchronized (removals) {
+            return CompletableFuture.allOf(removals.entrySet().stream()
+                    .filter(entry -> entry.getKey().getName().equals(groupName))
+                    .map(Map.Entry::getValue)
+                    .toArray(CompletableFuture[]::new))
+                    // A failed removal doesn't prevent creating a new consumer
+                    .exceptionally(error -> null);
+        }
+    }
+
+    /**
+     * Remove the static member of a closed consumer from its consumer group. The member is not removed if a new
+     * consumer of the same group has been created in the meantime, because the new consumer uses the same group
+     * instance id.
+     * @param groupName consumer group name
+     * @param groupInstanceId group instance id of the closed consumer
+     * @return future that is completed when the member has been removed or the removal has failed
+     */
+    private CompletableFuture<Void> leaveGroup(String groupName, String groupInstanceId) {
+        if (consumerCache.asMap().containsKey(groupName)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> left = new CompletableFuture<>();
+        try {
+            getAdmin().removeMembersFromConsumerGroup(groupName,
+                    new RemoveMembersFromConsumerGroupOptions(Collections.singleton(new MemberToRemove(groupInstanceId))))
+                    .all().whenComplete((result, error) -> {
+                        if (error == null) {
+                            LOG.debug("Removed member \"{}\" from consumer group \"{}\"", groupInstanceId, groupName);
+                        } else {
+                            // E.g., the member has already been removed after the session timeout
+                            LOG.debug("Unable to remove member \"{}\" from consumer group \"{}\": {}", groupInstanceId, groupName,
+                                    error.getMessage());
+                        }
+                        left.complete(null);
+                    });
+        } catch (KafkaException e) {
+            LOG.warn("Unable to remove member \"{}\" from consumer group \"{}\"", groupInstanceId, groupName, e);
+            left.complete(null);
+        }
+        return left;
+    }
+
+    /**
+     * Remove the subscriptions from the registry that haven't been restored since the application was started.
+     */
+    private void expireUnusedSubscriptions() {
+        for (String groupName : subscriptionRegistry.getGroupNames()) {
+            if (!consumerCache.asMap().containsKey(groupName)) {
+                LOG.debug("Remove unused subscription \"{}\" from subscription registry", groupName);
+                subscriptionRegistry.unregister(groupName);
+            }
+        }
+    }
+
+    private synchronized Admin getAdmin() {
+        if (admin == null) {
+            admin = createAdmin();
+        }
+        return admin;
+    }
+
+    protected Admin createAdmin() {
+        Properties props = new Properties();
+        props.setProperty(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, helperService.getKafkaBrokerAddress());
+        props.setProperty(AdminClientConfig.CLIENT_ID_CONFIG, ADMIN_CLIENT_ID);
+        return Admin.create(props);
+    }
+
+    /**
+     * Subscribe to Kafka topic. JSON and binary formats are supported. If the consumer of the subscription already
+     * exists, but it has been created with other options, the consumer is replaced. The new consumer is created only
+     * after the previous consumer of the same group has been closed. The subscription is stored in the subscription
+     * registry.
      *
      * @param xrdClientId
      * @param topicName
      * @param offsetResetPolicy
+     * @param options
      * @return
-     * @throws RequestFailedException
      */
-    public KafkaClientResponse subscribe(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy)
-            throws RequestFailedException {
+    public CompletableFuture<KafkaClientResponse> subscribeAsync(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                                 SubscriptionOptions options) {
+        EmbeddedFormat format = options.getFormat();
+        if (!isSupported(format)) {
+            return KafkaClientFutures.failed(new BadRequestException(String.format(UNSUPPORTED_FORMAT_ERROR, format.getName())));
+        }
         String groupName = helperService.getKafkaConsumerGroupName(xrdClientId, topicName);
 
-        // Check if the consumer already exists in the cache and create a new one if it doesn't
-        if (!consumerCache.asMap().containsKey(groupName)) {
-            // Clean up consumer cache in case this consumer has a previous expired consumer instance that has been
-            // removed from cache, but the connection hasn't been closed yet.
-            cleanUpCache();
-            LOG.debug("Add new consumer \"{}\" to consumer cache", groupName);
-            KafkaConsumer<String, String> consumer = new KafkaConsumer<>(getConsumerProperties(xrdClientId, topicName, offsetResetPolicy));
-            consumerCache.asMap().put(groupName, consumer);
-            LOG.debug("Consumer cache size: {}", consumerCache.size());
+        ConsumerWorker existing = consumerCache.asMap().get(groupName);
+        if (existing != null && !existing.getOptions().equals(options) && consumerCache.asMap().remove(groupName, existing)) {
+            LOG.debug("Replace consumer \"{}\" because the subscription options have changed", groupName);
+            // The removal listener is invoked too, but it gets the same removal
+            removeConsumer(groupName, existing);
         }
-        // Subscribe to the topic
-        consumerCache.asMap().get(groupName).subscribe(Arrays.asList(topicName));
 
-        return new KafkaClientResponse();
+        // A previous consumer of the same group may still be committing its offsets, e.g., after it has been replaced,
+        // unsubscribed or expired
+        return awaitRemoval(groupName).thenCompose(v -> subscribe(groupName, xrdClientId, topicName, offsetResetPolicy, options));
+    }
+
+    /**
+     * Create the consumer of a subscription if it doesn't exist in the cache, and subscribe to the topic.
+     *
+     * @param groupName
+     * @param xrdClientId
+     * @param topicName
+     * @param offsetResetPolicy
+     * @param options
+     * @return
+     */
+    private CompletableFuture<KafkaClientResponse> subscribe(String groupName, String xrdClientId, String topicName,
+                                                             OffsetResetPolicy offsetResetPolicy, SubscriptionOptions options) {
+        ConsumerWorker worker;
+        try {
+            worker = consumerCache.asMap().computeIfAbsent(groupName, key -> {
+                LOG.debug("Add new consumer \"{}\" to consumer cache", key);
+                Consumer<String, String> consumer = createConsumer(xrdClientId, topicName, offsetResetPolicy, options);
+                ConsumerWorker created = new ConsumerWorker(key, consumer, new RecordBuffer(prefetchMaxRecords, prefetchMaxBytes), scheduler,
+                        options);
+                bindMeters(created, KafkaClientMeterBinder.forConsumer(consumer, key, topicName));
+                groupInstanceIds.put(created, helperService.getKafkaConsumerGroupInstanceId(xrdClientId));
+                return created;
+            });
+        } catch (KafkaException e) {
+            LOG.error(CONSUMER_CREATION_FAILED_ERROR);
+            LOG.error(e.getMessage(), e);
+            return KafkaClientFutures.failed(new RequestFailedException(CONSUMER_CREATION_FAILED_ERROR));
+        }
+        LOG.debug("Consumer cache size: {}", consumerCache.estimatedSize());
+
+        // Subscribe to the topic
+        CompletableFuture<Void> subscription = execute(worker, consumer -> {
+            consumer.subscribe(Arrays.asList(topicName), new WorkerRebalanceListener(worker, Duration.ofMillis(consumerRequestTimeout)));
+            return null;
+        });
+        CompletableFuture<KafkaClientResponse> response = new CompletableFuture<>();
+        subscription.whenComplete((result, error) -> {
+            if (error == null) {
+                if (prefetchEnabled) {
+                    worker.startPrefetching(POLL_TIMEOUT_MS);
+                }
+                subscriptionRegistry.register(groupName, new SubscriptionRegistry.Subscription(xrdClientId, topicName, offsetResetPolicy,
+                        options));
+                response.complete(new KafkaClientResponse());
+            } else if (KafkaClientFutures.unwrap(error) instanceof ForbiddenRequestException) {
+                // The consumer was removed from the cache while subscribing
+                response.completeExceptionally(new RequestFailedException(CONSUMER_REQUEST_FAILED_ERROR));
+            } else {
+                response.completeExceptionally(error);
+            }
+        });
+        return response;
     }
 
     /**
@@ -192,118 +611,505 @@ public class TcpClient implements KafkaClient {
      * @param xrdClientId
      * @param topicName
      * @return
-     * @throws RequestFailedException
      */
-    public KafkaClientResponse unsubscribe(String xrdClientId, String topicName) throws RequestFailedException, ForbiddenRequestException {
+    public CompletableFuture<KafkaClientResponse> unsubscribeAsync(String xrdClientId, String topicName) {
         String groupName = helperService.getKafkaConsumerGroupName(xrdClientId, topicName);
 
-        if (consumerCache.asMap().containsKey(groupName)) {
-            // The connection is closed in the removalListener - no need to close it here
-            // Remove consumer from cache
-            consumerCache.invalidate(groupName);
-            LOG.debug("Consumer cache size: {}", consumerCache.size());
-            return new KafkaClientResponse();
+        // The subscription may exist only in the registry if its consumer hasn't been restored after a restart
+        boolean registered = subscriptionRegistry.unregister(groupName);
+        ConsumerWorker worker = consumerCache.asMap().remove(groupName);
+        if (worker != null) {
+            // The connection is closed in the background. The removal is registered before returning, so that
+            // a new subscription of the same group waits for it.
+            removeConsumer(groupName, worker);
+            LOG.debug("Consumer cache size: {}", consumerCache.estimatedSize());
+            return CompletableFuture.completedFuture(new KafkaClientResponse());
+        }
+        if (registered) {
+            return CompletableFuture.completedFuture(new KafkaClientResponse());
         }
         LOG.debug("Unable to unsubscribe from topic - no subscription found");
-        throw new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR);
+        return KafkaClientFutures.failed(new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR));
+    }
+
+    @Override
+    public Map<String, SubscriptionRegistry.Subscription> getSubscriptions() {
+        return subscriptionRegistry.getSubscriptions();
+    }
+
+    @Override
+    public CompletableFuture<Void> releaseAsync(String groupName) {
+        ConsumerWorker worker = consumerCache.asMap().remove(groupName);
+        if (worker == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        // The removal listener is invoked too, but it gets the same removal
+        return removeConsumer(groupName, worker);
+    }
+
+    @Override
+    public void unregister(String groupName) {
+        subscriptionRegistry.unregister(groupName);
     }
 
     /**
-     *  Consumer data from Kafka topic.
+     *  Consumer data from Kafka topic. The request waits until at least the minimum number of records are available
+     *  or the wait time elapses. Records that exceed the maximum number or size of records are returned by the next
+     *  read request. If the consumer doesn't exist, but the subscription is found in the subscription registry, the
+     *  consumer is recreated first.
      *
      * @param xrdClientId
      * @param topicName
+     * @param readOptions
      * @return
-     * @throws RequestFailedException
      */
-    public KafkaClientResponse read(String xrdClientId, String topicName) throws RequestFailedException, ForbiddenRequestException {
-        String groupName = helperService.getKafkaConsumerGroupName(xrdClientId, topicName);
-        if (consumerCache.asMap().containsKey(groupName)) {
-            ConsumerRecords<String, String> records = consumerCache.asMap().get(groupName).poll(Duration.ofMillis(POLL_TIMEOUT_MS));
-            LOG.debug("Received {} records from the topic", records.count());
+    public CompletableFuture<KafkaClientResponse> readAsync(String xrdClientId, String topicName, ReadOptions readOptions) {
+        long waitMs = readOptions.getWaitMs(POLL_TIMEOUT_MS);
+        int minRecords = readOptions.getMinRecords(1);
+        int maxRecords = readOptions.getMaxRecords(Integer.MAX_VALUE);
+        LOG.debug("Wait max {}ms for min {} records", waitMs, minRecords);
 
-            // JSON object for the response
-            JSONArray response = new JSONArray();
+        return getWorker(xrdClientId, topicName).thenCompose(worker ->
+                withTimeout(worker, worker.read(waitMs, minRecords, maxRecords, readMaxBytes), consumerRequestTimeout + waitMs)
+                        .thenApply(list -> toReadResponse(MetricsService.OPERATION_READ, topicName, list,
+                                worker.getOptions().getCommitMode())));
+    }
+
+    /**
+     * Read records of the given partitions starting from the given offsets without a subscription. The records
+     * are read by a shared consumer that doesn't belong to any consumer group, so no offsets are committed. The
+     * response contains the cursor that the next read continues from: the offset that follows the last returned
+     * record of each partition, or the requested offset if no records were returned from the partition.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param positions
+     * @param format
+     * @param readOptions
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> fetchAsync(String xrdClientId, String topicName, Map<Integer, Long> positions,
+                                                             EmbeddedFormat format, ReadOptions readOptions) {
+        if (!isSupported(format)) {
+            return KafkaClientFutures.failed(new BadRequestException(String.format(UNSUPPORTED_FORMAT_ERROR, format.getName())));
+        }
+        long waitMs = readOptions.getWaitMs(POLL_TIMEOUT_MS);
+        int minRecords = readOptions.getMinRecords(1);
+        int maxRecords = readOptions.getMaxRecords(Integer.MAX_VALUE);
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        positions.forEach((partition, offset) -> offsets.put(new TopicPartition(topicName, partition), offset));
+
+        ConsumerWorker worker;
+        try {
+            worker = assignedConsumerPool.getWorker(format, offsets.keySet());
+        } catch (KafkaException e) {
+            LOG.error(CONSUMER_CREATION_FAILED_ERROR);
+            LOG.error(e.getMessage(), e);
+            return KafkaClientFutures.failed(new RequestFailedException(CONSUMER_CREATION_FAILED_ERROR));
+        }
+        LOG.debug("Fetch records of partitions {} using consumer \"{}\"", positions, worker.getName());
+        return withTimeout(worker, worker.fetch(offsets, waitMs, minRecords, maxRecords, readMaxBytes), consumerRequestTimeout + waitMs)
+                .thenApply(list -> {
+                    KafkaClientResponse response = toReadResponse(MetricsService.OPERATION_FETCH, topicName, list, CommitMode.AUTO);
+                    Map<Integer, Long> cursor = new TreeMap<>(positions);
+                    for (ConsumerRecord<String, String> record : list) {
+                        cursor.merge(record.partition(), record.offset() + 1, Math::max);
+                    }
+                    response.setCursor(PartitionOffsets.format(cursor));
+                    return response;
+                });
+    }
+
+    private KafkaClientResponse toReadResponse(String operation, String topicName, List<ConsumerRecord<String, String>> list,
+                                               CommitMode commitMode) {
+        LOG.debug("Received {} records from the topic", list.size());
+        long bytes = 0;
+        // Offsets of the last returned records by partition
+        Map<Integer, Long> lastOffsets = new TreeMap<>();
+        for (ConsumerRecord<String, String> record : list) {
+            bytes += Math.max(record.serializedKeySize(), 0) + Math.max(record.serializedValueSize(), 0);
+            lastOffsets.merge(record.partition(), record.offset(), Math::max);
+        }
+        metricsService.recordRecords(CLIENT_NAME, operation, topicName, list.size(), bytes);
+
+        // The records are serialized one at a time when the response is written
+        KafkaClientResponse response = new KafkaClientResponse((out, format) -> {
+            JsonRecordsWriter writer = new JsonRecordsWriter(out, format);
+            for (ConsumerRecord<String, String> record : list) {
+                writer.write(record.partition(), record.offset(), topicName, record.key(), record.value());
+            }
+            writer.finish();
+        });
+        // Record streams send the records one at a time
+        response.setRecordsEmitter(handler -> {
+            for (ConsumerRecord<String, String> record : list) {
+                handler.handle(record.partition(), record.offset(),
+                        JsonRecordsWriter.toJson(record.partition(), record.offset(), topicName, record.key(), record.value()));
+            }
+        });
+        if (commitMode == CommitMode.MANUAL && !lastOffsets.isEmpty()) {
+            response.setCommitToken(PartitionOffsets.format(lastOffsets));
+        }
+        return response;
+    }
+
+    /**
+     * Move the consumer of a subscription to the given offsets. The records of the partitions that have already
+     * been fetched, but not returned to the client, are discarded.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param offsets
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> seekAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets) {
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        offsets.forEach((partition, offset) -> positions.put(new TopicPartition(topicName, partition), offset));
+        return getWorker(xrdClientId, topicName)
+                .thenCompose(worker -> withTimeout(worker, worker.seek(positions), consumerRequestTimeout))
+                .thenApply(result -> new KafkaClientResponse());
+    }
 
-            records.forEach(record -> {
-                response.put(generateReadResultsEntry(record.partition(), record.offset(), topicName, record.key(), record.value()));
+    /**
+     * Move the consumer of a subscription to the first records whose timestamps are equal to or greater than the
+     * given timestamp. The offsets are looked up using offsetsForTimes. Partitions that don't have such records are
+     * moved to their end.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param timestamp
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> seekToTimestampAsync(String xrdClientId, String topicName, long timestamp) {
+        Duration timeout = Duration.ofMillis(consumerRequestTimeout);
+        return seekAsync(xrdClientId, topicName, consumer -> {
+            Map<TopicPartition, Long> timestamps = new HashMap<>();
+            for (TopicPartition partition : getPartitions(consumer, topicName, timeout)) {
+                timestamps.put(partition, timestamp);
+            }
+            Map<TopicPartition, Long> positions = new HashMap<>(consumer.endOffsets(timestamps.keySet(), timeout));
+            consumer.offsetsForTimes(timestamps, timeout).forEach((partition, offset) -> {
+                if (offset != null) {
+                    positions.put(partition, offset.offset());
+                }
             });
-            return new KafkaClientResponse(response.toString());
+            return positions;
+        });
+    }
+
+    /**
+     * Move the consumer of a subscription to the beginning or to the end of all the partitions of the topic.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param position
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> resetPositionsAsync(String xrdClientId, String topicName, OffsetResetPolicy position) {
+        Duration timeout = Duration.ofMillis(consumerRequestTimeout);
+        return seekAsync(xrdClientId, topicName, consumer -> {
+            List<TopicPartition> partitions = getPartitions(consumer, topicName, timeout);
+            return new HashMap<>(position == OffsetResetPolicy.EARLIEST ? consumer.beginningOffsets(partitions, timeout)
+                    : consumer.endOffsets(partitions, timeout));
+        });
+    }
+
+    /**
+     * Move the consumer of a subscription to the positions that are looked up using the consumer. The positions
+     * are looked up and the consumer is moved in the worker's thread, so the partitions that aren't assigned to the
+     * consumer are moved when they get assigned.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param lookup looks up the offsets of the next records to fetch by partition
+     * @return
+     */
+    private CompletableFuture<KafkaClientResponse> seekAsync(String xrdClientId, String topicName,
+                                                             Function<Consumer<String, String>, Map<TopicPartition, Long>> lookup) {
+        return getWorker(xrdClientId, topicName)
+                .thenCompose(worker -> execute(worker, lookup).thenCompose(positions -> {
+                    LOG.debug("Seek consumer \"{}\" to positions {}", worker.getName(), positions);
+                    return withTimeout(worker, worker.seek(positions), consumerRequestTimeout);
+                }))
+                .thenApply(result -> new KafkaClientResponse());
+    }
+
+    private static List<TopicPartition> getPartitions(Consumer<String, String> consumer, String topicName, Duration timeout) {
+        List<TopicPartition> partitions = new ArrayList<>();
+        List<PartitionInfo> infos = consumer.partitionsFor(topicName, timeout);
+        if (infos != null) {
+            for (PartitionInfo info : infos) {
+                partitions.add(new TopicPartition(topicName, info.partition()));
+            }
         }
-        LOG.debug("Unable to read topic - no subscription found");
-        throw new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR);
+        return partitions;
+    }
+
+    /**
+     * Acknowledge the records of a subscription that uses the manual commit mode. The offsets are committed by the
+     * commit coordinator, so the request doesn't wait for the commit.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param offsets
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> commitAsync(String xrdClientId, String topicName, Map<Integer, Long> offsets) {
+        return getWorker(xrdClientId, topicName).thenCompose(worker -> {
+            if (worker.getOptions().getCommitMode() != CommitMode.MANUAL) {
+                return KafkaClientFutures.<KafkaClientResponse>failed(new BadRequestException(AUTO_COMMIT_ERROR));
+            }
+            Map<TopicPartition, Long> positions = new HashMap<>();
+            offsets.forEach((partition, offset) -> positions.put(new TopicPartition(topicName, partition), offset));
+            commitCoordinator.acknowledge(worker, positions);
+            return CompletableFuture.completedFuture(new KafkaClientResponse());
+        });
+    }
+
+    /**
+     * Get the consumer worker of a subscription. If the consumer doesn't exist, but the subscription is found in the
+     * subscription registry, e.g., after a restart, the consumer is recreated using the registered parameters.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @return future that is completed with the worker or ForbiddenRequestException if no subscription is found
+     */
+    protected CompletableFuture<ConsumerWorker> getWorker(String xrdClientId, String topicName) {
+        String groupName = helperService.getKafkaConsumerGroupName(xrdClientId, topicName);
+        ConsumerWorker worker = consumerCache.asMap().get(groupName);
+        if (worker != null) {
+            return CompletableFuture.completedFuture(worker);
+        }
+        SubscriptionRegistry.Subscription subscription = subscriptionRegistry.get(groupName);
+        if (subscription == null) {
+            LOG.debug("No subscription found");
+            return KafkaClientFutures.failed(new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR));
+        }
+        LOG.info("Restore consumer \"{}\" from subscription registry", groupName);
+        return subscribeAsync(xrdClientId, topicName, subscription.getOffsetResetPolicy(), subscription.getOptions())
+                .thenCompose(response -> {
+                    ConsumerWorker restored = consumerCache.asMap().get(groupName);
+                    if (restored == null) {
+                        // The restored consumer was removed before it could be used
+                        return KafkaClientFutures.<ConsumerWorker>failed(new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR));
+                    }
+                    return CompletableFuture.completedFuture(restored);
+                });
+    }
+
+    /**
+     * Execute a task in the consumer worker's thread.
+     *
+     * @param worker consumer worker
+     * @param task task to execute
+     * @param <T> task result type
+     * @return future that is completed with the task result
+     */
+    protected <T> CompletableFuture<T> execute(ConsumerWorker worker, Function<Consumer<String, String>, T> task) {
+        return withTimeout(worker, worker.submit(task), consumerRequestTimeout);
+    }
+
+    /**
+     * Get a future that is completed with the result of a consumer worker's task. If the task fails or doesn't
+     * complete in time, the future is completed with RequestFailedException, and if the worker has been closed,
+     * the future is completed with ForbiddenRequestException. If the consumer was moved to an offset that doesn't
+     * exist, the future is completed with BadRequestException. When the time runs out, the task's future is
+     * cancelled, so that a task that hasn't been started yet is skipped.
+     *
+     * @param worker consumer worker
+     * @param future future result of the task
+     * @param timeout the maximum time to wait in milliseconds
+     * @param <T> task result type
+     * @return future that is completed with the task result
+     */
+    protected <T> CompletableFuture<T> withTimeout(ConsumerWorker worker, CompletableFuture<T> future, long timeout) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        ScheduledFuture<?> timer = scheduler.schedule(() -> {
+            if (result.completeExceptionally(new RequestFailedException(CONSUMER_REQUEST_TIMEOUT_ERROR))) {
+                LOG.error(CONSUMER_REQUEST_TIMEOUT_ERROR);
+                // A task that hasn't been started yet is skipped
+                future.cancel(false);
+            }
+        }, timeout, TimeUnit.MILLISECONDS);
+        future.whenComplete((value, error) -> {
+            timer.cancel(false);
+            if (result.isDone()) {
+                // The request has already timed out
+                return;
+            } else if (error == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = KafkaClientFutures.unwrap(error);
+            if (cause instanceof RejectedExecutionException) {
+                // The consumer has been removed from the cache and closed
+                LOG.debug("Consumer \"{}\" has been closed", worker.getName());
+                result.completeExceptionally(new ForbiddenRequestException(NO_SUBSCRIPTION_FOUND_ERROR));
+            } else if (cause instanceof InvalidOffsetException) {
+                // A partition was read from an offset that doesn't exist (anymore)
+                LOG.debug("Consumer \"{}\": {}", worker.getName(), cause.getMessage());
+                result.completeExceptionally(new BadRequestException(OFFSET_OUT_OF_RANGE_ERROR));
+            } else {
+                LOG.error(CONSUMER_REQUEST_FAILED_ERROR);
+                LOG.error(cause.getMessage(), cause);
+                result.completeExceptionally(new RequestFailedException(CONSUMER_REQUEST_FAILED_ERROR));
+            }
+        });
+        return result;
     }
 
     /**
-     * Publish data to a Kafka topic.
+     * Publish data to a Kafka topic. The request body is read using a streaming parser and the record values are
+     * sent to Kafka as bytes without parsing them. In the binary format, the keys and values are base64 decoded.
      *
      * @param xrdClientId
      * @param topicName
      * @param messageBody
+     * @param format
      * @return
-     * @throws RequestFailedException
      */
-    public KafkaClientResponse publish(String xrdClientId, String topicName, String messageBody)
-            throws RequestFailedException, BadRequestException {
-        Producer<String, String> producer = new KafkaProducer<>(getProducerProperties(xrdClientId, topicName));
+    public CompletableFuture<KafkaClientResponse> publishAsync(String xrdClientId, String topicName, byte[] messageBody,
+                                                               EmbeddedFormat format) {
+        if (!isSupported(format)) {
+            return KafkaClientFutures.failed(new BadRequestException(String.format(UNSUPPORTED_FORMAT_ERROR, format.getName())));
+        }
+        List<PublishRecord> records;
+        try {
+            records = JsonRecordsReader.readPublishRecords(messageBody);
+        } catch (BadRequestException e) {
+            return KafkaClientFutures.failed(e);
+        }
+        if (format == EmbeddedFormat.BINARY) {
+            records = decodeBase64(records);
+        }
+
+        LOG.debug("Request records count is {}", records.size());
+        return send(xrdClientId, topicName, records);
+    }
 
-        // JSON object for the response
-        JSONObject response = new JSONObject();
-        JSONArray offsets = new JSONArray();
-        response.put("offsets", offsets);
-        JSONObject json = null;
+    /**
+     * Publish a single record whose value is sent to Kafka as such.
+     *
+     * @param xrdClientId
+     * @param topicName
+     * @param key
+     * @param value
+     * @return
+     */
+    public CompletableFuture<KafkaClientResponse> publishBinaryAsync(String xrdClientId, String topicName, String key, byte[] value) {
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        return send(xrdClientId, topicName, Collections.singletonList(new PublishRecord(keyBytes, value)));
+    }
 
+    private CompletableFuture<KafkaClientResponse> send(String xrdClientId, String topicName, List<PublishRecord> records) {
+        long bytes = 0;
+        for (PublishRecord record : records) {
+            bytes += (record.getKey() == null ? 0 : record.getKey().length) + (record.getValue() == null ? 0 : record.getValue().length);
+        }
+        metricsService.recordRecords(CLIENT_NAME, MetricsService.OPERATION_PUBLISH, topicName, records.size(), bytes);
+        String clientId = helperService.getKafkaProducerClientId(xrdClientId, topicName);
+        ProducerPool.PooledProducer<byte[], byte[]> pooledProducer;
         try {
-            json = new JSONObject(messageBody);
-        } catch (JSONException je) {
-            throw new BadRequestException("Invalid JSON object in request body");
+            pooledProducer = producerPool.lease(clientId, () -> {
+                Producer<byte[], byte[]> producer = new KafkaProducer<>(getProducerProperties(xrdClientId, topicName));
+                bindMeters(producer, KafkaClientMeterBinder.forProducer(producer, clientId, topicName));
+                return producer;
+            });
+        } catch (ExecutionException e) {
+            LOG.error(PRODUCER_CREATION_FAILED_ERROR);
+            LOG.error(e.getMessage(), e);
+            return KafkaClientFutures.failed(new RequestFailedException(PRODUCER_CREATION_FAILED_ERROR));
         }
+        // The lease is released when all the records have been completed
+        CompletableFuture<JSONArray> offsets;
+        try {
+            offsets = publishRecords(pooledProducer.getProducer(), topicName, records);
+        } catch (RuntimeException e) {
+            pooledProducer.close();
+            throw e;
+        }
+        return offsets.whenComplete((result, error) -> pooledProducer.close()).thenApply(result -> {
+            // JSON object for the response
+            JSONObject response = new JSONObject();
+            response.put("offsets", result);
+            return new KafkaClientResponse(response.toString());
+        });
+    }
 
-        LOG.debug("Request records count is {}", json.getJSONArray("records").length());
+    /**
+     * Send the records to a Kafka topic. All the records are sent first, so that the producer is able to batch
+     * them, and the result entries are completed by the producer callbacks. The returned future is completed with
+     * the result entries in the same order as the records.
+     *
+     * @param producer Kafka producer
+     * @param topicName topic name
+     * @param records records to send
+     * @return future that is completed with the result entries
+     */
+    protected CompletableFuture<JSONArray> publishRecords(Producer<byte[], byte[]> producer, String topicName, List<PublishRecord> records) {
+        List<CompletableFuture<JSONObject>> offsetEntries = new ArrayList<>(records.size());
 
-        json.getJSONArray("records").forEach(element -> {
-            JSONObject offsetEntry = null;
+        for (PublishRecord element : records) {
+            CompletableFuture<JSONObject> offsetEntry = new CompletableFuture<>();
+            offsetEntries.add(offsetEntry);
+            // Value is mandatory
+            if (!element.isValid()) {
+                LOG.error(VALUE_MISSING_ERROR);
+                offsetEntry.complete(generatePublishResultsEntry(null, VALUE_MISSING_ERROR));
+                continue;
+            }
             try {
-                // Key is optional
-                String key = null;
-                if (!((JSONObject)element).isNull("key")) {
-                    key = ((JSONObject)element).getString("key");
-                }
-                // Value is mandatory
-                String value = ((JSONObject)element).get("value").toString();
-
                 // Create new record and send it
-                ProducerRecord<String, String> record = getProducerRecord(topicName, key, value);
-                RecordMetadata metadata = producer.send(record).get();
-                LOG.debug("Record sent to partition {} with offset {}", metadata.partition(), metadata.offset());
-
-                offsetEntry = generatePublishResultsEntry(metadata, null);
-            } catch (ExecutionException | InterruptedException e) {
+                ProducerRecord<byte[], byte[]> record = getProducerRecord(topicName, element.getKey(), element.getValue());
+                producer.send(record, (metadata, exception) -> {
+                    if (exception == null) {
+                        LOG.debug("Record sent to partition {} with offset {}", metadata.partition(), metadata.offset());
+                        offsetEntry.complete(generatePublishResultsEntry(metadata, null));
+                    } else {
+                        LOG.error(ERROR_IN_SENDING_RECORD);
+                        LOG.error(exception.getMessage(), exception);
+                        offsetEntry.complete(generatePublishResultsEntry(null, ERROR_IN_SENDING_RECORD));
+                    }
+                });
+            } catch (KafkaException e) {
                 LOG.error(ERROR_IN_SENDING_RECORD);
                 LOG.error(e.getMessage(), e);
-                offsetEntry = generatePublishResultsEntry(null, ERROR_IN_SENDING_RECORD);
-            } catch (JSONException je) {
-                LOG.error(VALUE_MISSING_ERROR);
-                offsetEntry = generatePublishResultsEntry(null, VALUE_MISSING_ERROR);
+                offsetEntry.complete(generatePublishResultsEntry(null, ERROR_IN_SENDING_RECORD));
             }
-            offsets.put(offsetEntry);
+        }
+
+        return CompletableFuture.allOf(offsetEntries.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            JSONArray offsets = new JSONArray();
+            offsetEntries.forEach(offsetEntry -> offsets.put(offsetEntry.join()));
+            return offsets;
         });
-        producer.close();
-        return new KafkaClientResponse(response.toString());
     }
 
-    protected JSONObject generateReadResultsEntry(int partition, long offset, String topic, String key, String value) {
-        JSONObject entry = new JSONObject();
-        entry.put("partition", partition);
-        entry.put("offset", offset);
-        entry.put("topic", topic);
-        entry.put("key", key);
-        try {
-            entry.put("value", new JSONObject(value));
-        } catch (JSONException je) {
-            entry.put("value", value);
+    /**
+     * Decode base64 encoded keys and values. Records that are not valid base64 are returned as invalid records.
+     *
+     * @param records records with base64 encoded keys and values
+     * @return records with decoded keys and values
+     */
+    protected List<PublishRecord> decodeBase64(List<PublishRecord> records) {
+        List<PublishRecord> decoded = new ArrayList<>(records.size());
+        for (PublishRecord record : records) {
+            if (!record.isValid()) {
+                decoded.add(record);
+                continue;
+            }
+            try {
+                byte[] key = record.getKey() == null ? null : Base64.getDecoder().decode(record.getKey());
+                decoded.add(new PublishRecord(key, Base64.getDecoder().decode(record.getValue())));
+            } catch (IllegalArgumentException e) {
+                decoded.add(new PublishRecord(null, null));
+            }
         }
-        return entry;
+        return decoded;
+    }
+
+    private static boolean isSupported(EmbeddedFormat format) {
+        return format == EmbeddedFormat.JSON || format == EmbeddedFormat.BINARY;
     }
 
     protected JSONObject generatePublishResultsEntry(RecordMetadata metadata, String errorMsg) {
@@ -319,32 +1125,105 @@ public class TcpClient implements KafkaClient {
         return entry;
     }
 
+    protected Consumer<String, String> createConsumer(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                      SubscriptionOptions options) {
+        return new KafkaConsumer<>(getConsumerProperties(xrdClientId, topicName, offsetResetPolicy, options));
+    }
+
+    protected Consumer<String, String> createAssignedConsumer(String clientId, EmbeddedFormat format) {
+        return new KafkaConsumer<>(getAssignedConsumerProperties(clientId, format));
+    }
+
+    protected Properties getAssignedConsumerProperties(String clientId, EmbeddedFormat format) {
+        String deserializer = format == EmbeddedFormat.BINARY ? BASE64_DESERIALIZER_CLASS : STRING_DESERIALIZER_CLASS;
+        Properties props = new Properties();
+        props.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, helperService.getKafkaBrokerAddress());
+        props.setProperty(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
+        // The consumer doesn't belong to a consumer group, so there are no offsets to commit or reset
+        props.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.FALSE.toString());
+        props.setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "none");
+        props.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, deserializer);
+        props.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, deserializer);
+        return props;
+    }
+
     protected Properties getConsumerProperties(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy) {
+        return getConsumerProperties(xrdClientId, topicName, offsetResetPolicy, EmbeddedFormat.JSON);
+    }
+
+    protected Properties getConsumerProperties(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                               EmbeddedFormat format) {
+        return getConsumerProperties(xrdClientId, topicName, offsetResetPolicy, new SubscriptionOptions(format));
+    }
+
+    protected Properties getConsumerProperties(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                               SubscriptionOptions options) {
+        // In the binary format, keys and values are returned as base64 encoded strings
+        String deserializer = options.getFormat() == EmbeddedFormat.BINARY ? BASE64_DESERIALIZER_CLASS : STRING_DESERIALIZER_CLASS;
         Properties props = new Properties();
+        // Fetch and poll properties of the topic, overridden by the properties of the subscription request
+        props.putAll(helperService.getConsumerProperties(topicName));
+        props.putAll(options.getConsumerProperties());
         props.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, helperService.getKafkaBrokerAddress());
         props.setProperty(ConsumerConfig.GROUP_ID_CONFIG, helperService.getKafkaConsumerGroupName(xrdClientId, topicName));
-        props.setProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, helperService.getKafkaConsumerInstanceName(xrdClientId));
-        props.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, ENABLE_AUTO_COMMIT);
-        props.setProperty(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, AUTO_COMMIT_INTERVAL_MS);
-        props.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, STRING_DESERIALIZER_CLASS);
-        props.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, STRING_DESERIALIZER_CLASS);
+        props.setProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, helperService.getKafkaConsumerGroupInstanceId(xrdClientId));
+        if (options.getCommitMode() == CommitMode.MANUAL) {
+            // Offsets are committed only after the client has acknowledged the records
+            props.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, Boolean.FALSE.toString());
+        } else {
+            props.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, ENABLE_AUTO_COMMIT);
+            props.setProperty(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, AUTO_COMMIT_INTERVAL_MS);
+        }
+        props.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, deserializer);
+        props.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, deserializer);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, offsetResetPolicy.toString().toLowerCase());
         return props;
     }
 
     protected Properties getProducerProperties(String xrdClientId, String topicName) {
         Properties props = new Properties();
+        // Batching, compression and delivery properties of the topic's producer profile
+        props.putAll(helperService.getProducerProperties(topicName));
         props.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, helperService.getKafkaBrokerAddress());
         props.setProperty(ProducerConfig.CLIENT_ID_CONFIG, helperService.getKafkaProducerClientId(xrdClientId, topicName));
-        props.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, STRING_SERIALIZER_CLASS);
-        props.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, STRING_SERIALIZER_CLASS);
+        props.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, BYTE_ARRAY_SERIALIZER_CLASS);
+        props.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, BYTE_ARRAY_SERIALIZER_CLASS);
         return props;
     }
 
-    protected ProducerRecord<String, String> getProducerRecord(String topicName, String key, String value) {
+    protected ProducerRecord<byte[], byte[]> getProducerRecord(String topicName, byte[] key, byte[] value) {
         if (key != null) {
-            return new ProducerRecord<String, String>(topicName, key, value);
+            return new ProducerRecord<byte[], byte[]>(topicName, key, value);
+        }
+        return new ProducerRecord<byte[], byte[]>(topicName, value);
+    }
+
+    /**
+     * This class removes the buffered records of revoked partitions from the record buffer, so that records of
+     * partitions that are not owned by the consumer anymore are not returned to the client. The offsets of the
+     * revoked partitions are committed so that the next owner fetches the records that weren't returned. Assigned
+     * partitions are moved to the positions that were requested before the partitions were assigned.
+     */
+    private static class WorkerRebalanceListener implements ConsumerRebalanceListener {
+
+        private final ConsumerWorker worker;
+
+        private final Duration commitTimeout;
+
+        WorkerRebalanceListener(ConsumerWorker worker, Duration commitTimeout) {
+            this.worker = worker;
+            this.commitTimeout = commitTimeout;
+        }
+
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            // The offsets must be committed while the partitions are still assigned to the consumer
+            worker.releasePartitions(partitions, commitTimeout);
+        }
+
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            worker.seekPendingPositions(partitions);
         }
-        return new ProducerRecord<String, String>(topicName, value);
     }
 }
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.model;
+
+import org.niis.xrdkafkaadapter.util.Constants;
+
+/**
+ * This enum defines the supported formats of record keys and values. The names and the content types are the
+ * same as the embedded formats of Kafka REST Proxy.
+ *
+ * JSON: keys and values are JSON.
+ * BINARY: keys and values are base64 encoded strings.
+ * AVRO and PROTOBUF: keys and values are encoded using schemas from Schema Registry.
+ */
+public enum EmbeddedFormat {
+    JSON(Constants.CONTENT_TYPE_KAFKA_JSON_V2),
+    BINARY(Constants.CONTENT_TYPE_KAFKA_BINARY_V2),
+    AVRO(Constants.CONTENT_TYPE_KAFKA_AVRO_V2),
+    PROTOBUF(Constants.CONTENT_TYPE_KAFKA_PROTOBUF_V2);
+
+    private final String contentType;
+
+    EmbeddedFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * Get the REST Proxy content type of the format.
+     * @return
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Get the REST Proxy name of the format, e.g., "binary".
+     * @return
+     */
+    public String getName() {
+        return name().toLowerCase();
+    }
+}
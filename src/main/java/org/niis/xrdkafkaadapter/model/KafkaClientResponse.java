@@ -23,13 +23,35 @@
  */
 package org.niis.xrdkafkaadapter.model;
 
+import org.niis.xrdkafkaadapter.util.JsonRecordsWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
 /**
- * This class represents KafkaClient responses.
+ * This class represents KafkaClient responses. The value of a read response may be either a string or a records
+ * writer that streams the records to the HTTP response without building the whole response in memory first.
  */
 public class KafkaClientResponse {
 
     private String value;
 
+    private RecordsWriter recordsWriter;
+
+    private RecordsEmitter recordsEmitter;
+
+    private String commitToken;
+
+    private String cursor;
+
+    private Integer statusCode;
+
     /**
      * Initialize new KafkaClientResponse object.
      */
@@ -44,10 +66,27 @@ public class KafkaClientResponse {
     }
 
     /**
-     * Get value.
+     * Initialize new KafkaClientResponse object with the given records writer.
+     * @param recordsWriter
+     */
+    public KafkaClientResponse(RecordsWriter recordsWriter) {
+        this.recordsWriter = recordsWriter;
+    }
+
+    /**
+     * Get value. If the response has a records writer, the records are written to a string in JSON format.
      * @return
      */
     public String getValue() {
+        if (this.value == null && this.recordsWriter != null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                recordsWriter.write(out, RecordsFormat.JSON);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
         return this.value;
     }
 
@@ -59,4 +98,128 @@ public class KafkaClientResponse {
         this.value = value;
     }
 
+    /**
+     * Get the status code of the Kafka REST Proxy response whose body is returned as the value, or null if the
+     * value isn't a REST Proxy response.
+     * @return
+     */
+    public Integer getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Set the status code of the Kafka REST Proxy response whose body is returned as the value.
+     * @param statusCode
+     */
+    public void setStatusCode(Integer statusCode) {
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Check whether the operation succeeded. A REST Proxy response that is returned as such may contain an error.
+     * @return true if the response doesn't have a status code or the status code is 2xx
+     */
+    public boolean isSuccessful() {
+        return statusCode == null || statusCode / 100 == 2;
+    }
+
+    /**
+     * Set the function that passes the records of the response to a record handler without serializing the whole
+     * response first.
+     * @param recordsEmitter
+     */
+    public void setRecordsEmitter(RecordsEmitter recordsEmitter) {
+        this.recordsEmitter = recordsEmitter;
+    }
+
+    /**
+     * Check if the response contains records, i.e., it has a records emitter or its value is a JSON array. A REST
+     * Proxy error response contains an error object instead.
+     * @return true if the response contains records, otherwise false
+     */
+    public boolean hasRecords() {
+        return recordsEmitter != null || (value != null && value.trim().startsWith("["));
+    }
+
+    /**
+     * Pass the records of the response to the given handler one at a time. The records of a response that has a
+     * records emitter are passed as they are serialized, and the records of a string value are parsed from the
+     * JSON array.
+     * @param handler record handler
+     * @return number of records
+     * @throws IOException if the handler fails
+     */
+    public int forEachRecord(RecordHandler handler) throws IOException {
+        int[] count = new int[1];
+        if (recordsEmitter != null) {
+            recordsEmitter.emit((partition, offset, record) -> {
+                count[0]++;
+                handler.handle(partition, offset, record);
+            });
+        } else if (hasRecords()) {
+            JSONArray records = new JSONArray(value);
+            for (int i = 0; i < records.length(); i++) {
+                JSONObject record = records.getJSONObject(i);
+                count[0]++;
+                handler.handle(record.getInt("partition"), record.getLong("offset"), record.toString());
+            }
+        }
+        return count[0];
+    }
+
+    /**
+     * Get the token that acknowledges the records of a read response when the offsets are committed manually.
+     * @return commit token or null
+     */
+    public String getCommitToken() {
+        return commitToken;
+    }
+
+    /**
+     * Set commit token.
+     * @param commitToken
+     */
+    public void setCommitToken(String commitToken) {
+        this.commitToken = commitToken;
+    }
+
+    /**
+     * Get the cursor that the next read of a partition read continues from.
+     * @return cursor or null
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Set cursor.
+     * @param cursor
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * Write the value to the given output stream in the given format. A string value that contains a JSON array is
+     * converted to NDJSON if required, and other string values are written as such.
+     * @param out output stream
+     * @param format output format
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out, RecordsFormat format) throws IOException {
+        if (recordsWriter != null) {
+            recordsWriter.write(out, format);
+        } else if (value != null) {
+            if (format == RecordsFormat.NDJSON && value.trim().startsWith("[")) {
+                JsonRecordsWriter writer = new JsonRecordsWriter(out, format);
+                JSONArray records = new JSONArray(value);
+                for (int i = 0; i < records.length(); i++) {
+                    writer.write(records.getJSONObject(i));
+                }
+                writer.finish();
+            } else {
+                out.write(value.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
 }
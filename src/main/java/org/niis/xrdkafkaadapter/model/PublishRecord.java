@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.model;
+
+/**
+ * This class represents a single record of a publish request. The value contains the bytes that are sent to Kafka
+ * as such. A record that is missing the value, or is otherwise invalid, is not sent.
+ */
+public class PublishRecord {
+
+    private final byte[] key;
+
+    private final byte[] value;
+
+    /**
+     * Initialize new PublishRecord object.
+     * @param key record key or null
+     * @param value record value or null if the record is invalid
+     */
+    public PublishRecord(byte[] key, byte[] value) {
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Get key.
+     * @return
+     */
+    public byte[] getKey() {
+        return key;
+    }
+
+    /**
+     * Get value.
+     * @return
+     */
+    public byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * Check if the record is valid, i.e., it has a value.
+     * @return
+     */
+    public boolean isValid() {
+        return value != null;
+    }
+}
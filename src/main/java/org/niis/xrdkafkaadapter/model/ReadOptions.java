@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.model;
+
+/**
+ * This class represents the options of a read request. Options that haven't been defined in the request are null,
+ * and Kafka clients use their own default values for them.
+ */
+public class ReadOptions {
+
+    private Long waitMs;
+
+    private Integer minRecords;
+
+    private Integer maxRecords;
+
+    /**
+     * Initialize new ReadOptions object without any options defined.
+     */
+    public ReadOptions() { }
+
+    /**
+     * Initialize new ReadOptions object with the given values.
+     * @param waitMs the maximum time to wait for records in milliseconds
+     * @param minRecords the minimum number of records to wait for
+     * @param maxRecords the maximum number of records to return
+     */
+    public ReadOptions(Long waitMs, Integer minRecords, Integer maxRecords) {
+        this.waitMs = waitMs;
+        this.minRecords = minRecords;
+        this.maxRecords = maxRecords;
+    }
+
+    /**
+     * Check if the wait time has been defined.
+     * @return
+     */
+    public boolean hasWaitMs() {
+        return waitMs != null;
+    }
+
+    /**
+     * Get the maximum time to wait for records in milliseconds.
+     * @param defaultValue
+     * @return
+     */
+    public long getWaitMs(long defaultValue) {
+        return waitMs == null ? defaultValue : waitMs;
+    }
+
+    /**
+     * Get the minimum number of records to wait for.
+     * @param defaultValue
+     * @return
+     */
+    public int getMinRecords(int defaultValue) {
+        return minRecords == null ? defaultValue : minRecords;
+    }
+
+    /**
+     * Get the maximum number of records to return.
+     * @param defaultValue
+     * @return
+     */
+    public int getMaxRecords(int defaultValue) {
+        return maxRecords == null ? defaultValue : maxRecords;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.model;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This class represents the options of a subscription request: the format of the records, the Kafka consumer
+ * properties that override the configured consumer properties of the subscription and the commit mode.
+ */
+public class SubscriptionOptions {
+
+    private final EmbeddedFormat format;
+
+    private final Map<String, String> consumerProperties;
+
+    private final CommitMode commitMode;
+
+    /**
+     * Initialize new SubscriptionOptions object using the JSON format and the configured consumer properties.
+     */
+    public SubscriptionOptions() {
+        this(EmbeddedFormat.JSON);
+    }
+
+    /**
+     * Initialize new SubscriptionOptions object using the configured consumer properties.
+     * @param format format of the record keys and values
+     */
+    public SubscriptionOptions(EmbeddedFormat format) {
+        this(format, Collections.emptyMap());
+    }
+
+    /**
+     * Initialize new SubscriptionOptions object with the given values.
+     * @param format format of the record keys and values
+     * @param consumerProperties Kafka consumer properties by property name, e.g., "max.poll.records"
+     */
+    public SubscriptionOptions(EmbeddedFormat format, Map<String, String> consumerProperties) {
+        this(format, consumerProperties, CommitMode.AUTO);
+    }
+
+    /**
+     * Initialize new SubscriptionOptions object with the given values.
+     * @param format format of the record keys and values
+     * @param consumerProperties Kafka consumer properties by property name, e.g., "max.poll.records"
+     * @param commitMode commit mode of the offsets
+     */
+    public SubscriptionOptions(EmbeddedFormat format, Map<String, String> consumerProperties, CommitMode commitMode) {
+        this.format = format;
+        this.consumerProperties = Collections.unmodifiableMap(new HashMap<>(consumerProperties));
+        this.commitMode = commitMode;
+    }
+
+    /**
+     * Get the format of the record keys and values.
+     * @return
+     */
+    public EmbeddedFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Get the Kafka consumer properties defined in the request.
+     * @return
+     */
+    public Map<String, String> getConsumerProperties() {
+        return consumerProperties;
+    }
+
+    /**
+     * Get the commit mode of the offsets.
+     * @return
+     */
+    public CommitMode getCommitMode() {
+        return commitMode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SubscriptionOptions)) {
+            return false;
+        }
+        SubscriptionOptions other = (SubscriptionOptions) o;
+        return format == other.format && consumerProperties.equals(other.consumerProperties) && commitMode == other.commitMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(format, consumerProperties, commitMode);
+    }
+}
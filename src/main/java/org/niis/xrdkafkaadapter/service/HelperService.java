@@ -26,10 +26,19 @@ package org.niis.xrdkafkaadapter.service;
 import org.niis.xrdkafkaadapter.util.Constants;
 
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
 /**
  * This class provides helper services to other classes.
  */
@@ -40,6 +49,8 @@ public class HelperService {
 
     public static final String XRD_CLIENT_ID_REPLACEMENT = "_";
 
+    private static final Logger LOG = LoggerFactory.getLogger(HelperService.class);
+
     @Autowired
     private Environment env;
 
@@ -81,6 +92,433 @@ public class HelperService {
         return this.getIntProperty(Constants.CACHE_DURATION, defaultValue);
     }
 
+    /**
+     * Reads the consumer request timeout configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return consumer request timeout property value or the default value
+     */
+    public int getConsumerRequestTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.CONSUMER_REQUEST_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the consumer close timeout configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return consumer close timeout property value or the default value
+     */
+    public int getConsumerCloseTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.CONSUMER_CLOSE_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the interval of committing acknowledged offsets in milliseconds. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return consumer commit interval property value or the default value
+     */
+    public int getConsumerCommitInterval(int defaultValue) {
+        return this.getIntProperty(Constants.CONSUMER_COMMIT_INTERVAL, defaultValue);
+    }
+
+    /**
+     * Reads the number of the shared consumers that read partitions without a subscription. If the property is not
+     * defined, the default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return assigned consumer pool size property value or the default value
+     */
+    public int getAssignedConsumerPoolSize(int defaultValue) {
+        return this.getIntProperty(Constants.ASSIGNED_CONSUMER_POOL_SIZE, defaultValue);
+    }
+
+    /**
+     * Reads the path of the subscription registry file.
+     * @return subscription registry file path or null if the property is not defined
+     */
+    public String getSubscriptionRegistryPath() {
+        String path = env.getProperty(Constants.SUBSCRIPTION_REGISTRY_PATH);
+        return path == null || path.trim().isEmpty() ? null : path.trim();
+    }
+
+    /**
+     * Reads the prefetch enabled configuration property value. If the property is not defined, prefetching is
+     * disabled.
+     * @return true if prefetching is enabled, otherwise false
+     */
+    public boolean isPrefetchEnabled() {
+        return Boolean.parseBoolean(env.getProperty(Constants.PREFETCH_ENABLED));
+    }
+
+    /**
+     * Reads the prefetch max records configuration property value. If the property is not defined, the default
+     * value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return prefetch max records property value or the default value
+     */
+    public int getPrefetchMaxRecords(int defaultValue) {
+        return this.getIntProperty(Constants.PREFETCH_MAX_RECORDS, defaultValue);
+    }
+
+    /**
+     * Reads the prefetch max bytes configuration property value. If the property is not defined, the default
+     * value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return prefetch max bytes property value or the default value
+     */
+    public int getPrefetchMaxBytes(int defaultValue) {
+        return this.getIntProperty(Constants.PREFETCH_MAX_BYTES, defaultValue);
+    }
+
+    /**
+     * Reads the Kafka consumer fetch and poll properties of the given topic. A property that has been defined for
+     * the topic overrides the global value of the property. Properties that haven't been defined or whose value
+     * isn't a number are not included.
+     * @param topicName topic name
+     * @return consumer properties by property name
+     */
+    public Map<String, String> getConsumerProperties(String topicName) {
+        Map<String, String> properties = new HashMap<>();
+        for (String name : Constants.CONSUMER_TUNING_PROPERTIES) {
+            String value = env.getProperty(Constants.CONSUMER_TOPIC_PROPERTIES_PREFIX + topicName + "." + name);
+            if (value == null) {
+                value = env.getProperty(Constants.CONSUMER_PROPERTIES_PREFIX + name);
+            }
+            if (value != null && isLong(value.trim())) {
+                properties.put(name, value.trim());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Reads the maximum max.poll.records value of a subscription request. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return max poll records limit property value or the default value
+     */
+    public int getConsumerMaxPollRecordsLimit(int defaultValue) {
+        return this.getIntProperty(Constants.CONSUMER_LIMITS_MAX_POLL_RECORDS, defaultValue);
+    }
+
+    /**
+     * Reads the maximum fetch.min.bytes value of a subscription request. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return fetch min bytes limit property value or the default value
+     */
+    public int getConsumerFetchMinBytesLimit(int defaultValue) {
+        return this.getIntProperty(Constants.CONSUMER_LIMITS_FETCH_MIN_BYTES, defaultValue);
+    }
+
+    /**
+     * Reads the maximum fetch.max.wait.ms value of a subscription request. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return fetch max wait limit property value or the default value
+     */
+    public int getConsumerFetchMaxWaitLimit(int defaultValue) {
+        return this.getIntProperty(Constants.CONSUMER_LIMITS_FETCH_MAX_WAIT, defaultValue);
+    }
+
+    /**
+     * Reads the maximum read request wait time configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return read request max wait time property value or the default value
+     */
+    public int getReadMaxWait(int defaultValue) {
+        return this.getIntProperty(Constants.READ_MAX_WAIT, defaultValue);
+    }
+
+    /**
+     * Reads the maximum read response size configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return read response max size property value or the default value
+     */
+    public int getReadMaxBytes(int defaultValue) {
+        return this.getIntProperty(Constants.READ_MAX_BYTES, defaultValue);
+    }
+
+    /**
+     * Reads the async request timeout configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return async request timeout property value or the default value
+     */
+    public int getAsyncRequestTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.ASYNC_REQUEST_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the maximum number of concurrent record streams configuration property value. If the property is not
+     * defined, the default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return max streams property value or the default value
+     */
+    public int getStreamMaxStreams(int defaultValue) {
+        return this.getIntProperty(Constants.STREAM_MAX_STREAMS, defaultValue);
+    }
+
+    /**
+     * Reads the record stream heartbeat interval configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return stream heartbeat interval property value or the default value
+     */
+    public int getStreamHeartbeatInterval(int defaultValue) {
+        return this.getIntProperty(Constants.STREAM_HEARTBEAT_INTERVAL, defaultValue);
+    }
+
+    /**
+     * Reads the record stream timeout configuration property value. If the property is not defined, the default
+     * value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return stream timeout property value or the default value
+     */
+    public int getStreamTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.STREAM_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the name of the producer profile of the given topic. The topic patterns are regular expressions that
+     * are matched against the whole topic name in the order they're defined, and the profile of the first matching
+     * pattern is returned. If no pattern matches, the default profile is returned. If the default profile hasn't
+     * been set, null is returned.
+     * @param topicName topic name
+     * @return producer profile name or null
+     */
+    public String getProducerProfile(String topicName) {
+        for (int i = 0;; i++) {
+            String pattern = env.getProperty(String.format(Constants.PRODUCER_TOPIC_PATTERN, i));
+            if (pattern == null) {
+                break;
+            }
+            try {
+                if (Pattern.matches(pattern, topicName)) {
+                    return env.getProperty(String.format(Constants.PRODUCER_TOPIC_PROFILE, i));
+                }
+            } catch (PatternSyntaxException e) {
+                LOG.warn("Invalid producer topic pattern \"{}\"", pattern);
+            }
+        }
+        return env.getProperty(Constants.PRODUCER_DEFAULT_PROFILE);
+    }
+
+    /**
+     * Reads the regular expression of the topic names that are used as the topic tag of the metrics. If the
+     * property is not defined or it's not a valid regular expression, null is returned.
+     * @return compiled topic pattern or null
+     */
+    public Pattern getMetricsTopicPattern() {
+        String pattern = env.getProperty(Constants.METRICS_TOPICS);
+        if (pattern == null || pattern.isEmpty()) {
+            return null;
+        }
+        try {
+            return Pattern.compile(pattern);
+        } catch (PatternSyntaxException e) {
+            LOG.warn("Invalid metrics topic pattern \"{}\"", pattern);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the Kafka producer properties of the producer profile of the given topic. Properties that haven't been
+     * defined in the profile are not included.
+     * @param topicName topic name
+     * @return producer properties by property name
+     */
+    public Map<String, String> getProducerProperties(String topicName) {
+        Map<String, String> properties = new HashMap<>();
+        String profile = getProducerProfile(topicName);
+        if (profile == null) {
+            return properties;
+        }
+        for (String name : Constants.PRODUCER_TUNING_PROPERTIES) {
+            String value = env.getProperty(Constants.PRODUCER_PROFILES_PREFIX + profile + "." + name);
+            if (value != null) {
+                properties.put(name, value.trim());
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Reads the producer pool max size configuration property value. If the property is not defined, the default
+     * value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return producer pool max size property value or the default value
+     */
+    public int getProducerPoolMaxSize(int defaultValue) {
+        return this.getIntProperty(Constants.PRODUCER_POOL_MAX_SIZE, defaultValue);
+    }
+
+    /**
+     * Reads the producer pool idle timeout configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return producer pool idle timeout property value or the default value
+     */
+    public int getProducerPoolIdleTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.PRODUCER_POOL_IDLE_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the producer pool close timeout configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return producer pool close timeout property value or the default value
+     */
+    public int getProducerPoolCloseTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.PRODUCER_POOL_CLOSE_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the HTTP client max connections configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return HTTP client max connections property value or the default value
+     */
+    public int getHttpClientMaxConnections(int defaultValue) {
+        return this.getIntProperty(Constants.HTTP_CLIENT_MAX_CONNECTIONS, defaultValue);
+    }
+
+    /**
+     * Reads the HTTP client max connections per route configuration property value. If the property is not
+     * defined, the default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return HTTP client max connections per route property value or the default value
+     */
+    public int getHttpClientMaxConnectionsPerRoute(int defaultValue) {
+        return this.getIntProperty(Constants.HTTP_CLIENT_MAX_CONNECTIONS_PER_ROUTE, defaultValue);
+    }
+
+    /**
+     * Reads the HTTP client connect timeout configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return HTTP client connect timeout property value or the default value
+     */
+    public int getHttpClientConnectTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.HTTP_CLIENT_CONNECT_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the HTTP client read timeout configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return HTTP client read timeout property value or the default value
+     */
+    public int getHttpClientReadTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.HTTP_CLIENT_READ_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the HTTP client idle timeout configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return HTTP client idle timeout property value or the default value
+     */
+    public int getHttpClientIdleTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.HTTP_CLIENT_IDLE_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the cluster enabled configuration property value. Defaults to false.
+     * @return true if the adapter is run as a cluster of nodes
+     */
+    public boolean isClusterEnabled() {
+        return Boolean.parseBoolean(env.getProperty(Constants.CLUSTER_ENABLED));
+    }
+
+    /**
+     * Reads the base URL of this cluster node. A trailing slash is removed.
+     * @return base URL of this node or null if the property is not defined
+     */
+    public String getClusterNodeUrl() {
+        String url = env.getProperty(Constants.CLUSTER_NODE_URL);
+        return url == null ? null : trimUrl(url);
+    }
+
+    /**
+     * Reads the base URLs of all the cluster nodes from the comma (,) separated list of URLs. Trailing slashes are
+     * removed.
+     * @return base URLs of the cluster nodes or an empty list if the property is not defined
+     */
+    public List<String> getClusterNodes() {
+        String nodes = env.getProperty(Constants.CLUSTER_NODES);
+        List<String> urls = new ArrayList<>();
+        if (nodes != null) {
+            for (String url : nodes.split(",")) {
+                if (!url.trim().isEmpty()) {
+                    urls.add(trimUrl(url));
+                }
+            }
+        }
+        return urls;
+    }
+
+    /**
+     * Reads the number of virtual nodes per cluster node configuration property value. If the property is not
+     * defined, the default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return number of virtual nodes property value or the default value
+     */
+    public int getClusterVirtualNodes(int defaultValue) {
+        return this.getIntProperty(Constants.CLUSTER_VIRTUAL_NODES, defaultValue);
+    }
+
+    /**
+     * Reads the cluster health check timeout configuration property value. If the property is not defined, the
+     * default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return health check timeout property value or the default value
+     */
+    public int getClusterHealthCheckTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.CLUSTER_HEALTH_CHECK_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the number of consecutive failed or successful health checks that are required to change the state
+     * of a cluster node. If the property is not defined, the default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return health check threshold property value or the default value
+     */
+    public int getClusterHealthCheckThreshold(int defaultValue) {
+        return this.getIntProperty(Constants.CLUSTER_HEALTH_CHECK_THRESHOLD, defaultValue);
+    }
+
+    /**
+     * Reads the read timeout of the requests that are forwarded to other cluster nodes. If the property is not
+     * defined, the default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return forward timeout property value or the default value
+     */
+    public int getClusterForwardTimeout(int defaultValue) {
+        return this.getIntProperty(Constants.CLUSTER_FORWARD_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Reads the interval of retrying to hand over a subscription to another cluster node after handing it over
+     * has failed. If the property is not defined, the default value is used.
+     * @param defaultValue default value that is returned if the property is not defined
+     * @return handover retry interval property value or the default value
+     */
+    public int getClusterHandOverRetryInterval(int defaultValue) {
+        return this.getIntProperty(Constants.CLUSTER_HANDOVER_RETRY_INTERVAL, defaultValue);
+    }
+
+    /**
+     * Reads the shared secret that the cluster nodes use to authenticate the requests of the internal API.
+     * @return shared secret or null if the property is not defined
+     */
+    public String getClusterSecret() {
+        String secret = env.getProperty(Constants.CLUSTER_SECRET);
+        return secret == null || secret.isEmpty() ? null : secret;
+    }
+
     /**
      * Converts X-Road client identifier to Kafka consumer group name using the following pattern:
      * "<instanceIdentifier>/<memberClass>/<memberCode>/<subsystemCode>"
@@ -108,6 +546,24 @@ public class HelperService {
         return prepareXrdClientId(xrdClientId) + Constants.KAFKA_CONSUMER_INSTANCE_POSTFIX;
     }
 
+    /**
+     * Converts X-Road client identifier to the static group instance id of Kafka consumers. When the cluster is
+     * enabled, the base URL of this node is appended to the consumer instance name, so that the consumers of the
+     * same group on different nodes don't fence each other, e.g., when the nodes disagree on the owner of the group:
+     * "<instanceIdentifier>_<memberClass>_<memberCode>_<subsystemCode>_instance_<nodeHost>_<nodePort>"
+     * @param xrdClientId X-Road client identifier
+     * @return X-Road client identifier converted to Kafka consumer group instance id
+     */
+    public String getKafkaConsumerGroupInstanceId(String xrdClientId) {
+        String instanceName = getKafkaConsumerInstanceName(xrdClientId);
+        String nodeUrl = getClusterNodeUrl();
+        if (!isClusterEnabled() || nodeUrl == null) {
+            return instanceName;
+        }
+        String node = nodeUrl.replaceFirst("^[A-Za-z][A-Za-z0-9+.-]*://", "").replaceAll("[^A-Za-z0-9._-]", XRD_CLIENT_ID_REPLACEMENT);
+        return instanceName + XRD_CLIENT_ID_REPLACEMENT + node;
+    }
+
     /**
      * Converts X-Road client identifier to Kafka producer client ID using the following pattern:
      * "<instanceIdentifier>/<memberClass>/<memberCode>/<subsystemCode>"
@@ -160,4 +616,21 @@ public class HelperService {
         }
         return defaultValue;
     }
+
+    private static boolean isLong(String value) {
+        try {
+            Long.parseLong(value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String trimUrl(String url) {
+        String trimmed = url.trim();
+        while (trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
 }
@@ -0,0 +1,254 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.service;
+
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
+import org.niis.xrdkafkaadapter.exception.RequestFailedException;
+import org.niis.xrdkafkaadapter.kafka.client.KafkaClientFutures;
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.apache.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * This class records the adapter's metrics: the duration and outcome of Kafka client operations, the number and
+ * size of the records that are read and published, the latency of Kafka REST Proxy requests and the statistics of
+ * the consumer cache. The metrics are exposed by the Actuator Prometheus endpoint. Only the topics that match the
+ * configured topic pattern are used as the topic tag, so that clients can't create an unbounded number of meters.
+ */
+@Service
+public class MetricsService {
+
+    public static final String OPERATION_SUBSCRIBE = "subscribe";
+
+    public static final String OPERATION_UNSUBSCRIBE = "unsubscribe";
+
+    public static final String OPERATION_READ = "read";
+
+    public static final String OPERATION_PUBLISH = "publish";
+
+    public static final String OPERATION_SEEK = "seek";
+
+    public static final String OPERATION_COMMIT = "commit";
+
+    public static final String OPERATION_FETCH = "fetch";
+
+    private static final String OPERATIONS_METRIC = "kafka.adapter.operations";
+
+    private static final String RECORDS_METRIC = "kafka.adapter.records";
+
+    private static final String BYTES_METRIC = "kafka.adapter.bytes";
+
+    private static final String REST_PROXY_REQUESTS_METRIC = "kafka.adapter.rest.proxy.requests";
+
+    private static final String CLIENT_TAG = "client";
+
+    private static final String OPERATION_TAG = "operation";
+
+    private static final String TOPIC_TAG = "topic";
+
+    // Topic tag of failed operations. The topic of a failed operation may not exist, so the client controls its name.
+    private static final String UNKNOWN_TOPIC = "unknown";
+
+    // Topic tag of the topics that don't match the topic pattern
+    private static final String OTHER_TOPIC = "other";
+
+    private static final String OUTCOME_TAG = "outcome";
+
+    private static final String OUTCOME_SUCCESS = "success";
+
+    private static final String METHOD_TAG = "method";
+
+    private static final String STATUS_TAG = "status";
+
+    private final MeterRegistry registry;
+
+    private final Pattern topicPattern;
+
+    /**
+     * Initialize new MetricsService object.
+     * @param registry registry that the meters are registered to
+     * @param helperService helper service that provides the topic pattern
+     */
+    @Autowired
+    public MetricsService(MeterRegistry registry, HelperService helperService) {
+        this(registry, helperService.getMetricsTopicPattern());
+    }
+
+    /**
+     * Initialize new MetricsService object.
+     * @param registry registry that the meters are registered to
+     * @param topicPattern topics that are used as the topic tag, or null if all topics are tagged as "other"
+     */
+    public MetricsService(MeterRegistry registry, Pattern topicPattern) {
+        this.registry = registry;
+        this.topicPattern = topicPattern;
+    }
+
+    /**
+     * Create a MetricsService whose meters aren't published anywhere. Used when the metrics haven't been
+     * configured, e.g., in tests.
+     * @return
+     */
+    public static MetricsService noop() {
+        return new MetricsService(new CompositeMeterRegistry(), (Pattern) null);
+    }
+
+    /**
+     * Start a Kafka client operation and record its duration and outcome when the operation is completed. Failed
+     * operations are tagged with a fixed topic name so that requests to arbitrary topic names can't create an
+     * unbounded number of meters, and so are the successful operations on topics that don't match the topic pattern. An operation whose response contains a REST Proxy error is a failed operation,
+     * and its outcome is derived from the status code.
+     * @param client Kafka client name
+     * @param operation operation name
+     * @param topicName topic name
+     * @param call starts the operation and returns its result
+     * @param <T> result type
+     * @return stage that is completed when the operation is completed and the metrics have been recorded
+     */
+    public <T> CompletionStage<T> timeOperation(String client, String operation, String topicName, Supplier<CompletionStage<T>> call) {
+        Timer.Sample sample = Timer.start(registry);
+        return call.get().whenComplete((result, error) -> {
+            String outcome = error == null ? outcome(result) : outcome(error);
+            String topic = OUTCOME_SUCCESS.equals(outcome) ? topicTag(topicName) : UNKNOWN_TOPIC;
+            sample.stop(Timer.builder(OPERATIONS_METRIC)
+                    .description("Duration of Kafka client operations")
+                    .tags(CLIENT_TAG, client, OPERATION_TAG, operation, TOPIC_TAG, topic, OUTCOME_TAG, outcome)
+                    .register(registry));
+        });
+    }
+
+    /**
+     * Record the number and size of the records of a successful read or publish operation.
+     * @param client Kafka client name
+     * @param operation operation name
+     * @param topicName topic name
+     * @param records number of records
+     * @param bytes size of the records in bytes
+     */
+    public void recordRecords(String client, String operation, String topicName, int records, long bytes) {
+        DistributionSummary.builder(RECORDS_METRIC)
+                .description("Number of records per operation")
+                .baseUnit("records")
+                .tags(CLIENT_TAG, client, OPERATION_TAG, operation, TOPIC_TAG, topicTag(topicName))
+                .register(registry)
+                .record(records);
+        recordBytes(client, operation, topicName, bytes);
+    }
+
+    /**
+     * Record the size of the records of a successful read or publish operation when the number of records is not
+     * known.
+     * @param client Kafka client name
+     * @param operation operation name
+     * @param topicName topic name
+     * @param bytes size of the records in bytes
+     */
+    public void recordBytes(String client, String operation, String topicName, long bytes) {
+        DistributionSummary.builder(BYTES_METRIC)
+                .description("Size of records per operation")
+                .baseUnit("bytes")
+                .tags(CLIENT_TAG, client, OPERATION_TAG, operation, TOPIC_TAG, topicTag(topicName))
+                .register(registry)
+                .record(bytes);
+    }
+
+    /**
+     * Record the round-trip latency of a Kafka REST Proxy request.
+     * @param method HTTP method
+     * @param statusCode response status code, or null if no response was received
+     * @param durationNanos request duration in nanoseconds
+     */
+    public void recordRestProxyRequest(String method, Integer statusCode, long durationNanos) {
+        Timer.builder(REST_PROXY_REQUESTS_METRIC)
+                .description("Round-trip latency of Kafka REST Proxy requests")
+                .tags(METHOD_TAG, method, STATUS_TAG, statusCode == null ? "none" : String.valueOf(statusCode))
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Register the meters of the given binder.
+     * @param binder meter binder
+     */
+    public void bind(MeterBinder binder) {
+        binder.bindTo(registry);
+    }
+
+    /**
+     * Register the size, hit, miss and eviction metrics of a cache. The cache must record stats.
+     * @param cache cache to monitor
+     * @param cacheName cache name
+     */
+    public void monitorCache(Cache<?, ?> cache, String cacheName) {
+        CaffeineCacheMetrics.monitor(registry, cache, cacheName);
+    }
+
+    private String topicTag(String topicName) {
+        if (topicPattern != null && topicName != null && topicPattern.matcher(topicName).matches()) {
+            return topicName;
+        }
+        return OTHER_TOPIC;
+    }
+
+    private static String outcome(Object result) {
+        if (!(result instanceof KafkaClientResponse) || ((KafkaClientResponse) result).isSuccessful()) {
+            return OUTCOME_SUCCESS;
+        }
+        int statusCode = ((KafkaClientResponse) result).getStatusCode();
+        if (statusCode == HttpStatus.SC_FORBIDDEN) {
+            return "forbidden";
+        } else if (statusCode / 100 == 4) {
+            return "bad_request";
+        }
+        return "failed";
+    }
+
+    private static String outcome(Throwable error) {
+        Throwable cause = KafkaClientFutures.unwrap(error);
+        if (cause instanceof BadRequestException) {
+            return "bad_request";
+        } else if (cause instanceof ForbiddenRequestException) {
+            return "forbidden";
+        } else if (cause instanceof RequestFailedException) {
+            return "failed";
+        }
+        return "error";
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.service;
+
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.exception.ServiceUnavailableException;
+import org.niis.xrdkafkaadapter.kafka.client.AsyncKafkaClient;
+import org.niis.xrdkafkaadapter.kafka.client.KafkaClientFutures;
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.util.PartitionOffsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class streams the records of a subscription to clients as Server-Sent Events. Each stream reads records
+ * using long-polling reads and sends every record as a separate event. The id of an event contains the offsets of
+ * the last sent record of each partition, e.g., "0:15,1:27", and a client that reconnects with the Last-Event-ID
+ * header continues from the records that follow those offsets. If no records are received within the heartbeat
+ * interval, a heartbeat event is sent.
+ *
+ * The number of concurrent streams is limited, because each stream keeps a connection open.
+ */
+@Service
+public class RecordStreamService implements DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecordStreamService.class);
+
+    // Default (can be overridden in props)
+    private static final int MAX_STREAMS = 100;
+
+    // Default (can be overridden in props): 15000ms = 15s
+    private static final int HEARTBEAT_INTERVAL_MS = 15000;
+
+    // Default (can be overridden in props): 3600000ms = 1h
+    private static final int STREAM_TIMEOUT_MS = 3600000;
+
+    private static final String RECORD_EVENT = "record";
+
+    private static final String HEARTBEAT_EVENT = "heartbeat";
+
+    private static final String ERROR_EVENT = "error";
+
+    private static final String TOO_MANY_STREAMS_ERROR = "Too many concurrent streams.";
+
+    private static final String INVALID_EVENT_ID_ERROR = "Invalid Last-Event-ID header value.";
+
+    private final HelperService helperService;
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    private final ExecutorService executor;
+
+    private int maxStreams;
+
+    private int heartbeatInterval;
+
+    private int streamTimeout;
+
+    /**
+     * Initialize new RecordStreamService object.
+     *
+     * @param helperService
+     */
+    public RecordStreamService(HelperService helperService) {
+        this.helperService = helperService;
+        maxStreams = helperService.getStreamMaxStreams(MAX_STREAMS);
+        heartbeatInterval = helperService.getStreamHeartbeatInterval(HEARTBEAT_INTERVAL_MS);
+        streamTimeout = helperService.getStreamTimeout(STREAM_TIMEOUT_MS);
+        LOG.debug("Max streams is {}", maxStreams);
+        LOG.debug("Stream heartbeat interval is {}ms", heartbeatInterval);
+        LOG.debug("Stream timeout is {}ms", streamTimeout);
+
+        // Events are sent in separate threads, so that a slow client doesn't block the Kafka client's threads
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "record-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Stop sending events when the application is shut down.
+     */
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Open a new record stream for the subscription.
+     *
+     * @param kafkaClient Kafka client that is used to read records
+     * @param xrdClientId
+     * @param topicName
+     * @param lastEventId value of the Last-Event-ID header or null
+     * @return emitter that sends the events
+     * @throws BadRequestException if the last event id is invalid
+     * @throws ServiceUnavailableException if the maximum number of streams are already open
+     */
+    public SseEmitter open(AsyncKafkaClient kafkaClient, String xrdClientId, String topicName, String lastEventId)
+            throws BadRequestException, ServiceUnavailableException {
+        Map<Integer, Long> offsets = parseEventId(lastEventId);
+        if (activeStreams.incrementAndGet() > maxStreams) {
+            activeStreams.decrementAndGet();
+            LOG.warn("Unable to open record stream - max {} streams are already open", maxStreams);
+            throw new ServiceUnavailableException(TOO_MANY_STREAMS_ERROR);
+        }
+        LOG.debug("Open record stream for topic \"{}\", {} streams open", topicName, activeStreams.get());
+        RecordStream stream = new RecordStream(kafkaClient, xrdClientId, topicName, offsets, new SseEmitter((long) streamTimeout));
+        stream.start();
+        return stream.emitter;
+    }
+
+    /**
+     * Get the number of open streams.
+     * @return
+     */
+    public int getActiveStreams() {
+        return activeStreams.get();
+    }
+
+    /**
+     * Parse the offsets by partition from an event id.
+     * @param eventId event id or null
+     * @return offsets by partition, empty if the event id is null or empty
+     * @throws BadRequestException if the event id is invalid
+     */
+    static Map<Integer, Long> parseEventId(String eventId) throws BadRequestException {
+        return PartitionOffsets.parse(eventId, INVALID_EVENT_ID_ERROR);
+    }
+
+    /**
+     * Format an event id from offsets by partition.
+     * @param offsets offsets by partition
+     * @return event id
+     */
+    static String formatEventId(Map<Integer, Long> offsets) {
+        return PartitionOffsets.format(offsets);
+    }
+
+    /**
+     * A single stream. The next read is started when the events of the previous read have been sent, so at most
+     * one read per stream is in progress at a time.
+     */
+    private final class RecordStream {
+
+        private final AsyncKafkaClient kafkaClient;
+
+        private final String xrdClientId;
+
+        private final String topicName;
+
+        // Offsets of the last sent records by partition
+        private final Map<Integer, Long> offsets;
+
+        private final SseEmitter emitter;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        RecordStream(AsyncKafkaClient kafkaClient, String xrdClientId, String topicName, Map<Integer, Long> offsets,
+                     SseEmitter emitter) {
+            this.kafkaClient = kafkaClient;
+            this.xrdClientId = xrdClientId;
+            this.topicName = topicName;
+            this.offsets = offsets;
+            this.emitter = emitter;
+            emitter.onCompletion(this::close);
+            emitter.onTimeout(emitter::complete);
+            emitter.onError(error -> close());
+        }
+
+        void start() {
+            if (offsets.isEmpty()) {
+                readNext();
+                return;
+            }
+            // Continue from the records that follow the last received records
+            Map<Integer, Long> positions = new TreeMap<>();
+            offsets.forEach((partition, offset) -> positions.put(partition, offset + 1));
+            kafkaClient.seekAsync(xrdClientId, topicName, positions).whenCompleteAsync((response, error) -> {
+                if (error != null) {
+                    LOG.warn("Unable to resume record stream from \"{}\", continuing from the committed offsets: {}",
+                            formatEventId(offsets), KafkaClientFutures.unwrap(error).getMessage());
+                }
+                readNext();
+            }, executor);
+        }
+
+        private void readNext() {
+            if (closed.get()) {
+                return;
+            }
+            ReadOptions readOptions = new ReadOptions((long) heartbeatInterval, 1, null);
+            kafkaClient.readAsync(xrdClientId, topicName, readOptions).whenCompleteAsync(this::send, executor);
+        }
+
+        private void send(KafkaClientResponse response, Throwable error) {
+            if (closed.get()) {
+                return;
+            }
+            try {
+                if (error != null) {
+                    Throwable cause = KafkaClientFutures.unwrap(error);
+                    LOG.debug("Reading records failed, closing record stream: {}", cause.getMessage());
+                    sendError(helperService.wrapErrorMessageInJson(KafkaClientFutures.getErrorStatus(cause).value(), cause.getMessage()));
+                    return;
+                }
+                if (!response.hasRecords()) {
+                    // REST Proxy returns an error object instead of records
+                    LOG.debug("Reading records failed, closing record stream: {}", response.getValue());
+                    sendError(response.getValue());
+                    return;
+                }
+                int count = response.forEachRecord((partition, offset, record) -> {
+                    offsets.put(partition, offset);
+                    emitter.send(SseEmitter.event().id(formatEventId(offsets)).name(RECORD_EVENT).data(record));
+                });
+                if (count == 0) {
+                    emitter.send(SseEmitter.event().name(HEARTBEAT_EVENT).data(""));
+                }
+            } catch (IOException | RuntimeException e) {
+                // The client has disconnected
+                LOG.debug("Sending events failed, closing record stream: {}", e.getMessage());
+                emitter.completeWithError(e);
+                close();
+                return;
+            }
+            readNext();
+        }
+
+        private void sendError(String message) throws IOException {
+            emitter.send(SseEmitter.event().name(ERROR_EVENT).data(message == null ? "" : message));
+            emitter.complete();
+            close();
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                LOG.debug("Close record stream for topic \"{}\", {} streams open", topicName, activeStreams.decrementAndGet());
+            }
+        }
+    }
+}
@@ -23,6 +23,10 @@
  */
 package org.niis.xrdkafkaadapter.util;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * This class contains constants used in other classes.
  */
@@ -32,6 +36,8 @@ public final class Constants {
 
     public static final String API_BASE_PATH = "/api/v1";
 
+    public static final String CLUSTER_API_BASE_PATH = "/internal/v1/cluster";
+
     public static final String XRD_CLIENT_ID = "X-Road-Client";
 
     public static final String KAFKA_BROKER_ADDRESS_PROPERTY_KEY = "app.kafka.broker-address";
@@ -42,6 +48,108 @@ public final class Constants {
 
     public static final String CACHE_CLEAN_UP_INTERVAL = "app.cache.clean-up-interval";
 
+    public static final String CONSUMER_REQUEST_TIMEOUT = "app.consumer.request-timeout";
+
+    public static final String CONSUMER_CLOSE_TIMEOUT = "app.consumer.close-timeout";
+
+    public static final String SUBSCRIPTION_REGISTRY_PATH = "app.consumer.registry.path";
+
+    public static final String CONSUMER_COMMIT_INTERVAL = "app.consumer.commit-interval";
+
+    public static final String ASSIGNED_CONSUMER_POOL_SIZE = "app.consumer.assigned.pool-size";
+
+    public static final String PREFETCH_ENABLED = "app.consumer.prefetch.enabled";
+
+    public static final String PREFETCH_MAX_RECORDS = "app.consumer.prefetch.max-records";
+
+    public static final String PREFETCH_MAX_BYTES = "app.consumer.prefetch.max-bytes";
+
+    public static final String CONSUMER_PROPERTIES_PREFIX = "app.consumer.properties.";
+
+    public static final String CONSUMER_TOPIC_PROPERTIES_PREFIX = "app.consumer.topics.";
+
+    public static final String CONSUMER_LIMITS_MAX_POLL_RECORDS = "app.consumer.limits.max-poll-records";
+
+    public static final String CONSUMER_LIMITS_FETCH_MIN_BYTES = "app.consumer.limits.fetch-min-bytes";
+
+    public static final String CONSUMER_LIMITS_FETCH_MAX_WAIT = "app.consumer.limits.fetch-max-wait";
+
+    public static final String KAFKA_MAX_POLL_RECORDS = "max.poll.records";
+
+    public static final String KAFKA_FETCH_MIN_BYTES = "fetch.min.bytes";
+
+    public static final String KAFKA_FETCH_MAX_WAIT_MS = "fetch.max.wait.ms";
+
+    public static final String KAFKA_FETCH_MAX_BYTES = "fetch.max.bytes";
+
+    public static final String KAFKA_MAX_PARTITION_FETCH_BYTES = "max.partition.fetch.bytes";
+
+    // Kafka consumer fetch and poll properties that can be configured globally, per topic and per subscription
+    public static final List<String> CONSUMER_TUNING_PROPERTIES = Collections.unmodifiableList(Arrays.asList(
+            KAFKA_MAX_POLL_RECORDS, KAFKA_FETCH_MIN_BYTES, KAFKA_FETCH_MAX_WAIT_MS, KAFKA_FETCH_MAX_BYTES,
+            KAFKA_MAX_PARTITION_FETCH_BYTES));
+
+    public static final String READ_MAX_WAIT = "app.read.max-wait";
+
+    public static final String READ_MAX_BYTES = "app.read.max-bytes";
+
+    public static final String ASYNC_REQUEST_TIMEOUT = "app.async.request-timeout";
+
+    public static final String STREAM_MAX_STREAMS = "app.stream.max-streams";
+
+    public static final String STREAM_HEARTBEAT_INTERVAL = "app.stream.heartbeat-interval";
+
+    public static final String STREAM_TIMEOUT = "app.stream.timeout";
+
+    public static final String PRODUCER_PROFILES_PREFIX = "app.producer.profiles.";
+
+    public static final String PRODUCER_TOPIC_PATTERN = "app.producer.topics[%d].pattern";
+
+    public static final String PRODUCER_TOPIC_PROFILE = "app.producer.topics[%d].profile";
+
+    public static final String PRODUCER_DEFAULT_PROFILE = "app.producer.default-profile";
+
+    // Kafka producer batching, compression and delivery properties that can be defined in producer profiles
+    public static final List<String> PRODUCER_TUNING_PROPERTIES = Collections.unmodifiableList(Arrays.asList(
+            "acks", "linger.ms", "batch.size", "compression.type", "enable.idempotence",
+            "max.in.flight.requests.per.connection", "delivery.timeout.ms", "buffer.memory"));
+
+    public static final String PRODUCER_POOL_MAX_SIZE = "app.producer-pool.max-size";
+
+    public static final String PRODUCER_POOL_IDLE_TIMEOUT = "app.producer-pool.idle-timeout";
+
+    public static final String PRODUCER_POOL_CLOSE_TIMEOUT = "app.producer-pool.close-timeout";
+
+    public static final String HTTP_CLIENT_MAX_CONNECTIONS = "app.http-client.max-connections";
+
+    public static final String HTTP_CLIENT_MAX_CONNECTIONS_PER_ROUTE = "app.http-client.max-connections-per-route";
+
+    public static final String HTTP_CLIENT_CONNECT_TIMEOUT = "app.http-client.connect-timeout";
+
+    public static final String HTTP_CLIENT_READ_TIMEOUT = "app.http-client.read-timeout";
+
+    public static final String HTTP_CLIENT_IDLE_TIMEOUT = "app.http-client.idle-timeout";
+
+    public static final String METRICS_TOPICS = "app.metrics.topics";
+
+    public static final String CLUSTER_ENABLED = "app.cluster.enabled";
+
+    public static final String CLUSTER_NODE_URL = "app.cluster.node-url";
+
+    public static final String CLUSTER_NODES = "app.cluster.nodes";
+
+    public static final String CLUSTER_VIRTUAL_NODES = "app.cluster.virtual-nodes";
+
+    public static final String CLUSTER_SECRET = "app.cluster.secret";
+
+    public static final String CLUSTER_HEALTH_CHECK_TIMEOUT = "app.cluster.health-check-timeout";
+
+    public static final String CLUSTER_HEALTH_CHECK_THRESHOLD = "app.cluster.health-check-threshold";
+
+    public static final String CLUSTER_FORWARD_TIMEOUT = "app.cluster.forward-timeout";
+
+    public static final String CLUSTER_HANDOVER_RETRY_INTERVAL = "app.cluster.handover-retry-interval";
+
     public static final String KAFKA_CONSUMER_GROUP_POSTFIX = "_group";
 
     public static final String KAFKA_CONSUMER_INSTANCE_POSTFIX = "_instance";
@@ -52,5 +160,19 @@ public final class Constants {
 
     public static final String HTTP_HEADER_ACCEPT = "Accept";
 
+    public static final String HTTP_HEADER_LAST_EVENT_ID = "Last-Event-ID";
+
+    public static final String HTTP_HEADER_COMMIT_TOKEN = "X-Commit-Token";
+
+    public static final String HTTP_HEADER_CURSOR = "X-Cursor";
+
+    public static final String HTTP_HEADER_CLUSTER_SECRET = "X-Cluster-Secret";
+
     public static final String CONTENT_TYPE_KAFKA_JSON_V2 = "application/vnd.kafka.json.v2+json";
+
+    public static final String CONTENT_TYPE_KAFKA_BINARY_V2 = "application/vnd.kafka.binary.v2+json";
+
+    public static final String CONTENT_TYPE_KAFKA_AVRO_V2 = "application/vnd.kafka.avro.v2+json";
+
+    public static final String CONTENT_TYPE_KAFKA_PROTOBUF_V2 = "application/vnd.kafka.protobuf.v2+json";
 }
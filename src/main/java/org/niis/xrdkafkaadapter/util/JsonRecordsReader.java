@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.util;
+
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.model.PublishRecord;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class reads the records of a publish request using a streaming JSON parser. No object tree is built:
+ * JSON object and array values are sliced from the request body as such, and string keys and values are unescaped
+ * and encoded in UTF-8.
+ */
+public final class JsonRecordsReader {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final String RECORDS_FIELD = "records";
+
+    private static final String KEY_FIELD = "key";
+
+    private static final String VALUE_FIELD = "value";
+
+    private static final String INVALID_REQUEST_ERROR = "Invalid JSON object in request body";
+
+    private JsonRecordsReader() { }
+
+    /**
+     * Read the records of a publish request. The request body must be a JSON object that contains the records in
+     * the "records" array. Records that are not JSON objects or that don't have a value are returned as invalid
+     * records.
+     *
+     * @param body request body in UTF-8
+     * @return records in the same order as in the request
+     * @throws BadRequestException if the request body is not valid JSON or it doesn't contain the records
+     */
+    public static List<PublishRecord> readPublishRecords(byte[] body) throws BadRequestException {
+        List<PublishRecord> records = null;
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new BadRequestException(INVALID_REQUEST_ERROR);
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (RECORDS_FIELD.equals(field) && token == JsonToken.START_ARRAY) {
+                    records = new ArrayList<>();
+                    for (token = parser.nextToken(); token != JsonToken.END_ARRAY; token = parser.nextToken()) {
+                        if (token == null) {
+                            throw new BadRequestException(INVALID_REQUEST_ERROR);
+                        }
+                        records.add(readRecord(parser, body));
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            throw new BadRequestException(INVALID_REQUEST_ERROR);
+        }
+        if (records == null) {
+            throw new BadRequestException(INVALID_REQUEST_ERROR);
+        }
+        return records;
+    }
+
+    private static PublishRecord readRecord(JsonParser parser, byte[] body) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return new PublishRecord(null, null);
+        }
+        byte[] key = null;
+        byte[] value = null;
+        boolean valid = true;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (KEY_FIELD.equals(field)) {
+                // Key is optional, but it must be a string if it's defined
+                if (token == JsonToken.VALUE_STRING) {
+                    key = parser.getText().getBytes(StandardCharsets.UTF_8);
+                } else if (token != JsonToken.VALUE_NULL) {
+                    valid = false;
+                    parser.skipChildren();
+                }
+            } else if (VALUE_FIELD.equals(field)) {
+                value = readValue(parser, body);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new PublishRecord(key, valid ? value : null);
+    }
+
+    private static byte[] readValue(JsonParser parser, byte[] body) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+            // The value is copied from the request body without parsing it into objects
+            int start = (int) parser.getTokenLocation().getByteOffset();
+            parser.skipChildren();
+            int end = (int) parser.getCurrentLocation().getByteOffset();
+            return Arrays.copyOfRange(body, start, end);
+        }
+        // Strings are unescaped, and other scalar values are used as such
+        return parser.getText().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.util;
+
+import org.niis.xrdkafkaadapter.model.RecordsFormat;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+/**
+ * This class writes records to an output stream one at a time, either as elements of a JSON array or as newline
+ * delimited JSON. Records are written as they are serialized, so that the whole response is never held in
+ * memory at once.
+ *
+ * Record values that are JSON objects are written to the output as JSON objects without their original
+ * whitespace, and other values are written as JSON strings. A value is checked to be a JSON object only if it
+ * starts with "{" and ends with "}", so that other values are never parsed. The value is validated and its
+ * whitespace is removed in a single pass, without building any objects or exceptions.
+ */
+public class JsonRecordsWriter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final JsonGenerator generator;
+
+    private final RecordsFormat format;
+
+    /**
+     * Initialize new JsonRecordsWriter object.
+     * @param out output stream
+     * @param format output format
+     * @throws IOException if writing fails
+     */
+    public JsonRecordsWriter(OutputStream out, RecordsFormat format) throws IOException {
+        this.generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8);
+        this.generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        this.format = format;
+        if (format == RecordsFormat.JSON) {
+            generator.writeStartArray();
+        } else {
+            // Records are separated by line breaks only
+            generator.setRootValueSeparator(null);
+        }
+    }
+
+    /**
+     * Write a record.
+     * @param partition partition of the record
+     * @param offset offset of the record
+     * @param topic topic of the record
+     * @param key record key or null
+     * @param value record value or null
+     * @throws IOException if writing fails
+     */
+    public void write(int partition, long offset, String topic, String key, String value) throws IOException {
+        writeRecord(generator, partition, offset, topic, key, value);
+        endRecord();
+    }
+
+    /**
+     * Serialize a single record to a JSON string in the same form as the records are written to the output.
+     * @param partition partition of the record
+     * @param offset offset of the record
+     * @param topic topic of the record
+     * @param key record key or null
+     * @param value record value or null
+     * @return the record in JSON format
+     * @throws IOException if serializing fails
+     */
+    public static String toJson(int partition, long offset, String topic, String key, String value) throws IOException {
+        StringWriter out = new StringWriter();
+        try (JsonGenerator recordGenerator = JSON_FACTORY.createGenerator(out)) {
+            writeRecord(recordGenerator, partition, offset, topic, key, value);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Write a record.
+     * @param record record
+     * @throws IOException if writing fails
+     */
+    public void write(JSONObject record) throws IOException {
+        generator.writeRawValue(record.toString());
+        endRecord();
+    }
+
+    /**
+     * Finish writing the records and flush the output. The output stream is not closed.
+     * @throws IOException if writing fails
+     */
+    public void finish() throws IOException {
+        if (format == RecordsFormat.JSON) {
+            generator.writeEndArray();
+        }
+        generator.close();
+    }
+
+    private static void writeRecord(JsonGenerator generator, int partition, long offset, String topic, String key,
+            String value) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("partition", partition);
+        generator.writeNumberField("offset", offset);
+        generator.writeStringField("topic", topic);
+        if (key != null) {
+            generator.writeStringField("key", key);
+        }
+        generator.writeFieldName("value");
+        String jsonObject = compactJsonObject(value);
+        if (jsonObject != null) {
+            generator.writeRawValue(jsonObject);
+        } else {
+            generator.writeString(value);
+        }
+        generator.writeEndObject();
+    }
+
+    private void endRecord() throws IOException {
+        if (format == RecordsFormat.NDJSON) {
+            generator.writeRaw('\n');
+        }
+    }
+
+    /**
+     * Get a JSON object value without its whitespace, so that the line breaks of the value aren't written to the
+     * output. A line break inside a record would break newline delimited JSON. Values that don't look like a JSON
+     * object are rejected without scanning them.
+     * @param value record value or null
+     * @return the JSON object without whitespace, or null if the value is not a JSON object
+     */
+    static String compactJsonObject(String value) {
+        if (value == null) {
+            return null;
+        }
+        int start = 0;
+        int end = value.length() - 1;
+        while (start <= end && Character.isWhitespace(value.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(value.charAt(end))) {
+            end--;
+        }
+        if (start >= end || value.charAt(start) != '{' || value.charAt(end) != '}') {
+            return null;
+        }
+        return new JsonCompactor(value).compactObject();
+    }
+
+    /**
+     * This class validates a JSON value and copies it without the whitespace between its tokens. Strings and
+     * numbers are copied as such. Invalid input is reported with the return value instead of an exception.
+     */
+    private static final class JsonCompactor {
+
+        // Deeper values are written as strings instead of risking a stack overflow
+        private static final int MAX_DEPTH = 1000;
+
+        private final String value;
+
+        private final StringBuilder out;
+
+        private int pos;
+
+        private JsonCompactor(String value) {
+            this.value = value;
+            this.out = new StringBuilder(value.length());
+        }
+
+        private String compactObject() {
+            skipWhitespace();
+            if (!isNext('{') || !readValue(0)) {
+                return null;
+            }
+            skipWhitespace();
+            return pos == value.length() ? out.toString() : null;
+        }
+
+        private boolean readValue(int depth) {
+            skipWhitespace();
+            if (pos >= value.length() || depth > MAX_DEPTH) {
+                return false;
+            }
+            switch (value.charAt(pos)) {
+                case '{':
+                    return readContainer('}', true, depth);
+                case '[':
+                    return readContainer(']', false, depth);
+                case '"':
+                    return readString();
+                case 't':
+                    return readLiteral("true");
+                case 'f':
+                    return readLiteral("false");
+                case 'n':
+                    return readLiteral("null");
+                default:
+                    return readNumber();
+            }
+        }
+
+        private boolean readContainer(char endChar, boolean object, int depth) {
+            copy();
+            skipWhitespace();
+            if (isNext(endChar)) {
+                copy();
+                return true;
+            }
+            while (true) {
+                if (object) {
+                    skipWhitespace();
+                    if (!isNext('"') || !readString()) {
+                        return false;
+                    }
+                    skipWhitespace();
+                    if (!isNext(':')) {
+                        return false;
+                    }
+                    copy();
+                }
+                if (!readValue(depth + 1)) {
+                    return false;
+                }
+                skipWhitespace();
+                if (isNext(endChar)) {
+                    copy();
+                    return true;
+                } else if (!isNext(',')) {
+                    return false;
+                }
+                copy();
+            }
+        }
+
+        private boolean readString() {
+            int start = pos++;
+            while (pos < value.length()) {
+                char c = value.charAt(pos++);
+                if (c == '"') {
+                    out.append(value, start, pos);
+                    return true;
+                } else if (c < ' ') {
+                    return false;
+                } else if (c == '\\') {
+                    if (pos >= value.length()) {
+                        return false;
+                    }
+                    char escaped = value.charAt(pos++);
+                    if (escaped == 'u') {
+                        for (int i = 0; i < 4; i++) {
+                            if (pos >= value.length() || Character.digit(value.charAt(pos++), 16) < 0) {
+                                return false;
+                            }
+                        }
+                    } else if ("\"\\/bfnrt".indexOf(escaped) < 0) {
+                        return false;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean readLiteral(String literal) {
+            if (!value.startsWith(literal, pos)) {
+                return false;
+            }
+            out.append(literal);
+            pos += literal.length();
+            return true;
+        }
+
+        private boolean readNumber() {
+            int start = pos;
+            if (isNext('-')) {
+                pos++;
+            }
+            if (isNext('0')) {
+                pos++;
+            } else if (!readDigits()) {
+                return false;
+            }
+            if (isNext('.')) {
+                pos++;
+                if (!readDigits()) {
+                    return false;
+                }
+            }
+            if (isNext('e') || isNext('E')) {
+                pos++;
+                if (isNext('+') || isNext('-')) {
+                    pos++;
+                }
+                if (!readDigits()) {
+                    return false;
+                }
+            }
+            out.append(value, start, pos);
+            return true;
+        }
+
+        private boolean readDigits() {
+            int start = pos;
+            while (pos < value.length() && value.charAt(pos) >= '0' && value.charAt(pos) <= '9') {
+                pos++;
+            }
+            return pos > start;
+        }
+
+        private void skipWhitespace() {
+            while (pos < value.length()) {
+                char c = value.charAt(pos);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return;
+                }
+                pos++;
+            }
+        }
+
+        private boolean isNext(char c) {
+            return pos < value.length() && value.charAt(pos) == c;
+        }
+
+        private void copy() {
+            out.append(value.charAt(pos++));
+        }
+    }
+}
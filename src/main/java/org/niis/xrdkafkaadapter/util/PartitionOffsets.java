@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.util;
+
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+/**
+ * This class converts offsets by partition to and from the "partition:offset" list format, e.g., "0:15,1:27", that
+ * is used in record stream event ids, commit tokens and read cursors.
+ */
+public final class PartitionOffsets {
+
+    private static final String PARTITION_SEPARATOR = ",";
+
+    private static final String OFFSET_SEPARATOR = ":";
+
+    private PartitionOffsets() {
+    }
+
+    /**
+     * Parse offsets by partition.
+     * @param value offsets in the list format or null
+     * @param errorMessage message of the exception that is thrown if the value is invalid
+     * @return offsets by partition, empty if the value is null or empty
+     * @throws BadRequestException if the value is invalid
+     */
+    public static Map<Integer, Long> parse(String value, String errorMessage) throws BadRequestException {
+        Map<Integer, Long> offsets = new TreeMap<>();
+        if (value == null || value.trim().isEmpty()) {
+            return offsets;
+        }
+        try {
+            for (String position : value.trim().split(PARTITION_SEPARATOR)) {
+                String[] parts = position.split(OFFSET_SEPARATOR);
+                if (parts.length != 2) {
+                    throw new BadRequestException(errorMessage);
+                }
+                offsets.put(Integer.parseInt(parts[0].trim()), Long.parseLong(parts[1].trim()));
+            }
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(errorMessage);
+        }
+        return offsets;
+    }
+
+    /**
+     * Format offsets by partition.
+     * @param offsets offsets by partition
+     * @return offsets in the list format
+     */
+    public static String format(Map<Integer, Long> offsets) {
+        StringJoiner value = new StringJoiner(PARTITION_SEPARATOR);
+        offsets.forEach((partition, offset) -> value.add(partition + OFFSET_SEPARATOR + offset));
+        return value.toString();
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.cluster;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Test cases for ConsistentHashRing class.
+ */
+public class ConsistentHashRingTest extends TestCase {
+
+    private static final String NODE_A = "http://node-a:8080";
+
+    private static final String NODE_B = "http://node-b:8080";
+
+    private static final String NODE_C = "http://node-c:8080";
+
+    private static final int VIRTUAL_NODES = 100;
+
+    private static final int KEYS = 1000;
+
+    @Test
+    public void testOwnerDoesNotDependOnNodeOrder() {
+        ConsistentHashRing ring1 = new ConsistentHashRing(Arrays.asList(NODE_A, NODE_B, NODE_C), VIRTUAL_NODES);
+        ConsistentHashRing ring2 = new ConsistentHashRing(Arrays.asList(NODE_C, NODE_A, NODE_B), VIRTUAL_NODES);
+        for (int i = 0; i < KEYS; i++) {
+            Assert.assertEquals(ring1.getOwner("group" + i), ring2.getOwner("group" + i));
+        }
+    }
+
+    @Test
+    public void testKeysAreSpreadToAllNodes() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList(NODE_A, NODE_B, NODE_C), VIRTUAL_NODES);
+        Set<String> owners = new HashSet<>();
+        for (int i = 0; i < KEYS; i++) {
+            owners.add(ring.getOwner("group" + i));
+        }
+        Assert.assertEquals(ring.getNodes(), owners);
+    }
+
+    @Test
+    public void testOnlyKeysOfRemovedNodeMove() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList(NODE_A, NODE_B, NODE_C), VIRTUAL_NODES);
+        ConsistentHashRing updated = new ConsistentHashRing(Arrays.asList(NODE_A, NODE_C), VIRTUAL_NODES);
+        for (int i = 0; i < KEYS; i++) {
+            String owner = ring.getOwner("group" + i);
+            if (NODE_B.equals(owner)) {
+                Assert.assertNotEquals(NODE_B, updated.getOwner("group" + i));
+            } else {
+                Assert.assertEquals(owner, updated.getOwner("group" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyRing() {
+        ConsistentHashRing ring = new ConsistentHashRing(Collections.emptyList(), VIRTUAL_NODES);
+        Assert.assertNull(ring.getOwner("group"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidVirtualNodes() {
+        new ConsistentHashRing(Collections.singletonList(NODE_A), 0);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.http;
+
+import org.niis.xrdkafkaadapter.service.HelperService;
+
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for PooledHttpClient class.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class PooledHttpClientTest extends TestCase {
+
+    private HttpServer server;
+
+    private PooledHttpClient httpClient;
+
+    private Set<InetSocketAddress> remoteAddresses = ConcurrentHashMap.newKeySet();
+
+    @Mock
+    private Environment environment;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/echo", exchange -> {
+            remoteAddresses.add(exchange.getRemoteAddress());
+            byte[] requestBody = readAll(exchange.getRequestBody());
+            String body = exchange.getRequestMethod() + " " + exchange.getRequestURI().getQuery() + " "
+                    + exchange.getRequestHeaders().getFirst("Content-Type") + " " + new String(requestBody, StandardCharsets.UTF_8);
+            byte[] response = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        server.createContext("/empty", exchange -> {
+            exchange.sendResponseHeaders(204, -1);
+            exchange.close();
+        });
+        server.start();
+        httpClient = new PooledHttpClient(new HelperService(environment));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        httpClient.destroy();
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testSend() {
+        HttpClientResponse response = httpClient.send(HttpMethod.POST, getUrl("/echo"), "{\"a\":1}",
+                Collections.singletonMap("timeout", "100"), Collections.singletonMap("Content-Type", "application/json"));
+        Assert.assertEquals(200, response.getStatusCode());
+        Assert.assertEquals("POST timeout=100 application/json {\"a\":1}", response.getData());
+    }
+
+    @Test
+    public void testSendNoContent() {
+        HttpClientResponse response = httpClient.send(HttpMethod.DELETE, getUrl("/empty"), null,
+                Collections.emptyMap(), Collections.emptyMap());
+        Assert.assertEquals(204, response.getStatusCode());
+        Assert.assertNull(response.getData());
+    }
+
+    @Test
+    public void testConnectionIsReused() {
+        for (int i = 0; i < 5; i++) {
+            HttpClientResponse response = httpClient.send(HttpMethod.GET, getUrl("/echo"), null,
+                    Collections.emptyMap(), Collections.emptyMap());
+            Assert.assertEquals(200, response.getStatusCode());
+        }
+        Assert.assertEquals(1, remoteAddresses.size());
+    }
+
+    @Test
+    public void testSendAsync() throws Exception {
+        List<CompletableFuture<HttpClientResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(httpClient.sendAsync(HttpMethod.GET, getUrl("/echo"), null,
+                    Collections.singletonMap("i", String.valueOf(i)), Collections.emptyMap()));
+        }
+        for (int i = 0; i < 10; i++) {
+            HttpClientResponse response = futures.get(i).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(200, response.getStatusCode());
+            Assert.assertTrue(response.getData().startsWith("GET i=" + i + " "));
+        }
+    }
+
+    @Test
+    public void testSendFailure() {
+        String url = getUrl("/echo");
+        server.stop(0);
+        server = null;
+        HttpClientResponse response = httpClient.send(HttpMethod.GET, url, null,
+                Collections.emptyMap(), Collections.emptyMap());
+        Assert.assertNull(response);
+    }
+
+    private String getUrl(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+
+    private static byte[] readAll(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int read = is.read(buffer);
+        while (read != -1) {
+            bos.write(buffer, 0, read);
+            read = is.read(buffer);
+        }
+        return bos.toByteArray();
+    }
+}
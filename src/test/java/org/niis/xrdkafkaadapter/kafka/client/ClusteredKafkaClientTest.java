@@ -0,0 +1,289 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.cluster.ClusterService;
+import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
+import org.niis.xrdkafkaadapter.exception.RequestFailedException;
+import org.niis.xrdkafkaadapter.http.HttpClientResponse;
+import org.niis.xrdkafkaadapter.http.PooledHttpClient;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
+import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
+import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.util.Constants;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for ClusteredKafkaClient class.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ClusteredKafkaClientTest extends TestCase {
+
+    private static final String NODE_A = "http://localhost:8080";
+
+    private static final String NODE_B = "http://localhost:8081";
+
+    private static final String XRD_CLIENT_ID = "PLAYGROUND/COM/1234567-8/Client";
+
+    private static final String SECRET = "secret";
+
+    private static final long TIMEOUT = 5;
+
+    private static final int FORWARD_TIMEOUT = 55000;
+
+    @Mock
+    private Environment environment;
+
+    @Mock
+    private PooledHttpClient httpClient;
+
+    @Mock(extraInterfaces = SubscriptionOwner.class)
+    private KafkaClient delegate;
+
+    @Captor
+    private ArgumentCaptor<Map<String, String>> paramsCaptor;
+
+    @Captor
+    private ArgumentCaptor<Map<String, String>> headersCaptor;
+
+    private Map<String, String> properties;
+
+    private HelperService helperService;
+
+    private ClusterService clusterService;
+
+    private SubscriptionOwner subscriptionOwner;
+
+    private ClusteredKafkaClient client;
+
+    @Before
+    public void setup() {
+        properties = new HashMap<>();
+        properties.put(Constants.CLUSTER_ENABLED, "true");
+        properties.put(Constants.CLUSTER_NODE_URL, NODE_A);
+        properties.put(Constants.CLUSTER_NODES, NODE_A + "," + NODE_B + "/");
+        properties.put(Constants.CLUSTER_SECRET, SECRET);
+        properties.put(Constants.CLUSTER_HEALTH_CHECK_THRESHOLD, "2");
+        Mockito.when(environment.getProperty(Mockito.anyString())).thenAnswer(invocation -> properties.get(invocation.<String>getArgument(0)));
+        helperService = new HelperService(environment);
+        clusterService = new ClusterService(helperService, httpClient);
+        client = clusterService.getKafkaClient(delegate);
+        subscriptionOwner = (SubscriptionOwner) delegate;
+    }
+
+    @Test
+    public void testLocalSubscriptionIsHandledByDelegate() throws Exception {
+        String topicName = getTopicOwnedBy(NODE_A);
+        Mockito.when(delegate.subscribeAsync(Mockito.eq(XRD_CLIENT_ID), Mockito.eq(topicName), Mockito.eq(OffsetResetPolicy.EARLIEST),
+                Mockito.any(SubscriptionOptions.class))).thenReturn(CompletableFuture.completedFuture(new KafkaClientResponse()));
+
+        client.subscribeAsync(XRD_CLIENT_ID, topicName, OffsetResetPolicy.EARLIEST, new SubscriptionOptions())
+                .toCompletableFuture().get(TIMEOUT, TimeUnit.SECONDS);
+
+        Mockito.verify(delegate).subscribeAsync(Mockito.eq(XRD_CLIENT_ID), Mockito.eq(topicName), Mockito.eq(OffsetResetPolicy.EARLIEST),
+                Mockito.any(SubscriptionOptions.class));
+        Mockito.verifyNoInteractions(httpClient);
+    }
+
+    @Test
+    public void testReadIsForwardedToOwner() throws Exception {
+        String topicName = getTopicOwnedBy(NODE_B);
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.GET), Mockito.eq(NODE_B + Constants.CLUSTER_API_BASE_PATH + "/" + topicName + "/records"),
+                Mockito.isNull(), paramsCaptor.capture(), headersCaptor.capture(), Mockito.eq(FORWARD_TIMEOUT)))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(200, "[{\"offset\":0}]")));
+
+        KafkaClientResponse response = client.readAsync(XRD_CLIENT_ID, topicName, new ReadOptions(1000L, 1, 10))
+                .toCompletableFuture().get(TIMEOUT, TimeUnit.SECONDS);
+
+        Assert.assertEquals("[{\"offset\":0}]", response.getValue());
+        Assert.assertEquals("1000", paramsCaptor.getValue().get("wait_ms"));
+        Assert.assertEquals("1", paramsCaptor.getValue().get("min_records"));
+        Assert.assertEquals("10", paramsCaptor.getValue().get("max_records"));
+        Assert.assertEquals(XRD_CLIENT_ID, headersCaptor.getValue().get(Constants.XRD_CLIENT_ID));
+        Assert.assertEquals(SECRET, headersCaptor.getValue().get(Constants.HTTP_HEADER_CLUSTER_SECRET));
+        Mockito.verifyNoInteractions(delegate);
+    }
+
+    @Test
+    public void testClusterSecretIsChecked() {
+        Assert.assertTrue(clusterService.isAuthorized(SECRET));
+        Assert.assertFalse(clusterService.isAuthorized("secreT"));
+        Assert.assertFalse(clusterService.isAuthorized(""));
+        Assert.assertFalse(clusterService.isAuthorized(null));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClusterSecretIsRequired() {
+        properties.remove(Constants.CLUSTER_SECRET);
+        new ClusterService(helperService, httpClient);
+    }
+
+    @Test
+    public void testForwardedErrorIsConverted() throws Exception {
+        String topicName = getTopicOwnedBy(NODE_B);
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.DELETE), Mockito.anyString(), Mockito.isNull(), Mockito.anyMap(), Mockito.anyMap(),
+                Mockito.anyInt())).thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(403, "{\"error_code\":403,\"message\":\"Forbidden\"}")));
+
+        try {
+            client.unsubscribeAsync(XRD_CLIENT_ID, topicName).toCompletableFuture().get(TIMEOUT, TimeUnit.SECONDS);
+            fail("Expected the forwarded request to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof ForbiddenRequestException);
+            Assert.assertEquals("Forbidden", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testFailedForwardingIsConverted() throws Exception {
+        String topicName = getTopicOwnedBy(NODE_B);
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.DELETE), Mockito.anyString(), Mockito.isNull(), Mockito.anyMap(), Mockito.anyMap(),
+                Mockito.anyInt())).thenReturn(CompletableFuture.completedFuture(null));
+
+        try {
+            client.unsubscribeAsync(XRD_CLIENT_ID, topicName).toCompletableFuture().get(TIMEOUT, TimeUnit.SECONDS);
+            fail("Expected the forwarded request to fail");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RequestFailedException);
+        }
+    }
+
+    @Test
+    public void testSubscriptionsAreHandedOverWhenNodeJoins() throws Exception {
+        String topicName = getTopicOwnedBy(NODE_B);
+        String groupName = helperService.getKafkaConsumerGroupName(XRD_CLIENT_ID, topicName);
+        CompletableFuture<Void> released = new CompletableFuture<>();
+        Mockito.when(subscriptionOwner.getSubscriptions()).thenReturn(Collections.singletonMap(groupName, new SubscriptionRegistry.Subscription(
+                XRD_CLIENT_ID, topicName, OffsetResetPolicy.LATEST, new SubscriptionOptions(EmbeddedFormat.BINARY, Collections.emptyMap()))));
+        Mockito.when(subscriptionOwner.releaseAsync(groupName)).thenReturn(released);
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.GET), Mockito.eq(NODE_B + "/actuator/health"), Mockito.isNull(), Mockito.anyMap(),
+                Mockito.anyMap(), Mockito.anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(503, "")))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(503, "")))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(200, "")))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(503, "")))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(200, "")));
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.POST), Mockito.eq(NODE_B + Constants.CLUSTER_API_BASE_PATH + "/" + topicName
+                + "/subscriptions"), Mockito.anyString(), paramsCaptor.capture(), Mockito.anyMap(), Mockito.anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(204, "")));
+
+        // Node B is down after two consecutive failed checks, so this node owns all the subscriptions
+        clusterService.checkMembership();
+        Assert.assertEquals(2, clusterService.getRing().getNodes().size());
+        clusterService.checkMembership();
+        Assert.assertEquals(Collections.singleton(NODE_A), clusterService.getRing().getNodes());
+        Mockito.verify(subscriptionOwner, Mockito.never()).releaseAsync(Mockito.anyString());
+
+        // A failed check resets the count of successful checks
+        clusterService.checkMembership();
+        clusterService.checkMembership();
+        clusterService.checkMembership();
+        Assert.assertEquals(Collections.singleton(NODE_A), clusterService.getRing().getNodes());
+        Mockito.verify(subscriptionOwner, Mockito.never()).releaseAsync(Mockito.anyString());
+
+        // Node B is up again after two consecutive successful checks and the local consumer is released
+        clusterService.checkMembership();
+        Mockito.verify(subscriptionOwner).releaseAsync(groupName);
+
+        // The subscription isn't created on node B before the local consumer has left the consumer group
+        Mockito.verify(httpClient, Mockito.never()).sendAsync(Mockito.eq(HttpMethod.POST), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyMap(), Mockito.anyMap(), Mockito.anyInt());
+        released.complete(null);
+        Mockito.verify(httpClient, Mockito.timeout(TimeUnit.SECONDS.toMillis(TIMEOUT))).sendAsync(Mockito.eq(HttpMethod.POST),
+                Mockito.anyString(), Mockito.anyString(), Mockito.anyMap(), Mockito.anyMap(), Mockito.anyInt());
+        Assert.assertEquals("latest", paramsCaptor.getValue().get("offset_reset_policy"));
+        Assert.assertEquals(EmbeddedFormat.BINARY.getName(), paramsCaptor.getValue().get("format"));
+        Mockito.verify(subscriptionOwner, Mockito.timeout(TimeUnit.SECONDS.toMillis(TIMEOUT))).unregister(groupName);
+    }
+
+    @Test
+    public void testFailedHandOverIsRetried() throws Exception {
+        properties.put(Constants.CLUSTER_HANDOVER_RETRY_INTERVAL, "500");
+        clusterService = new ClusterService(helperService, httpClient);
+        client = clusterService.getKafkaClient(delegate);
+        String topicName = getTopicOwnedBy(NODE_B);
+        String groupName = helperService.getKafkaConsumerGroupName(XRD_CLIENT_ID, topicName);
+        Mockito.when(subscriptionOwner.getSubscriptions()).thenReturn(Collections.singletonMap(groupName, new SubscriptionRegistry.Subscription(
+                XRD_CLIENT_ID, topicName, OffsetResetPolicy.EARLIEST, new SubscriptionOptions())));
+        Mockito.when(subscriptionOwner.releaseAsync(groupName)).thenReturn(CompletableFuture.completedFuture(null));
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.POST), Mockito.eq(NODE_B + Constants.CLUSTER_API_BASE_PATH + "/" + topicName
+                + "/subscriptions"), Mockito.anyString(), Mockito.anyMap(), Mockito.anyMap(), Mockito.anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(503, "")))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(204, "")));
+
+        client.handOver(clusterService.getRing());
+        // A membership change during the retry interval doesn't start another handover of the same group
+        client.handOver(clusterService.getRing());
+
+        // The subscription is kept on this node until node B has accepted it
+        Mockito.verify(httpClient, Mockito.times(1)).sendAsync(Mockito.eq(HttpMethod.POST), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyMap(), Mockito.anyMap(), Mockito.anyInt());
+        Mockito.verify(subscriptionOwner, Mockito.never()).unregister(Mockito.anyString());
+
+        Mockito.verify(subscriptionOwner, Mockito.timeout(TimeUnit.SECONDS.toMillis(TIMEOUT))).unregister(groupName);
+        Mockito.verify(httpClient, Mockito.times(3)).sendAsync(Mockito.eq(HttpMethod.POST), Mockito.anyString(), Mockito.anyString(),
+                Mockito.anyMap(), Mockito.anyMap(), Mockito.anyInt());
+    }
+
+    @Test
+    public void testSubscriptionsAreNotHandedOverWithoutSubscriptionOwner() {
+        KafkaClient restProxyClient = Mockito.mock(KafkaClient.class);
+        ClusteredKafkaClient clusteredClient = new ClusteredKafkaClient(restProxyClient, clusterService, helperService);
+
+        clusteredClient.handOver(clusterService.getRing());
+
+        Mockito.verifyNoInteractions(restProxyClient);
+    }
+
+    private String getTopicOwnedBy(String node) {
+        for (int i = 0;; i++) {
+            String topicName = "TestTopic" + i;
+            if (node.equals(clusterService.getOwner(helperService.getKafkaConsumerGroupName(XRD_CLIENT_ID, topicName)))) {
+                return topicName;
+            }
+        }
+    }
+}
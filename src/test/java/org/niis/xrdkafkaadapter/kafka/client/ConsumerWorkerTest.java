@@ -0,0 +1,492 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import junit.framework.TestCase;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Test cases for ConsumerWorker class.
+ */
+@RunWith(JUnit4.class)
+public class ConsumerWorkerTest extends TestCase {
+
+    private MockConsumer<String, String> consumer;
+
+    private ConsumerWorker worker;
+
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setup() {
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        worker = new ConsumerWorker("test_group", consumer, new RecordBuffer(1000, 100000), scheduler);
+    }
+
+    @After
+    public void tearDown() {
+        worker.close();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        String threadName = worker.submit(c -> Thread.currentThread().getName()).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals("kafka-consumer-test_group", threadName);
+    }
+
+    @Test
+    public void testConcurrentTasksAreSerialized() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<CompletableFuture<Object>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(worker.submit(c -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                c.subscription();
+                running.decrementAndGet();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (CompletableFuture<Object> future : futures) {
+            future.get(1, TimeUnit.SECONDS);
+        }
+        Assert.assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        TopicPartition tp = new TopicPartition("MyTopic", 0);
+        consumer.assign(Collections.singletonList(tp));
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+        for (int i = 0; i < 3; i++) {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, i, "key", "value" + i));
+        }
+        RecordBuffer buffer = new RecordBuffer(2, 1000);
+        worker = new ConsumerWorker("test_group", consumer, buffer, scheduler);
+        worker.startPrefetching(10);
+        Assert.assertTrue(worker.isPrefetching());
+        waitFor(() -> buffer.size() == 3);
+        // The buffer is full, so the partition is paused
+        waitFor(() -> isPaused(tp));
+
+        List<ConsumerRecord<String, String>> records = buffer.drain(2);
+        Assert.assertEquals("value0", records.get(0).value());
+        Assert.assertEquals("value1", records.get(1).value());
+        // There's room in the buffer again, so the partition is resumed
+        waitFor(() -> !isPaused(tp));
+        worker.submit(c -> {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, 3, "key", "value3"));
+            return null;
+        }).get(1, TimeUnit.SECONDS);
+        waitFor(() -> buffer.size() == 2);
+        Assert.assertEquals("value3", buffer.drain(10).get(1).value());
+        worker.close();
+    }
+
+    @Test
+    public void testReadWaitsForMinRecords() throws Exception {
+        TopicPartition tp = new TopicPartition("MyTopic", 0);
+        consumer.assign(Collections.singletonList(tp));
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+        consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, 0, "key", "value0"));
+        // Add more records while the read request is waiting
+        consumer.schedulePollTask(() -> { });
+        consumer.schedulePollTask(() -> {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, 1, "key", "value1"));
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, 2, "key", "value2"));
+        });
+        List<ConsumerRecord<String, String>> records = worker.read(5000, 3, 2, 100000).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals("value0", records.get(0).value());
+        Assert.assertEquals("value1", records.get(1).value());
+
+        // The record that didn't fit in the previous response is returned first
+        records = worker.read(0, 1, 10, 100000).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals("value2", records.get(0).value());
+    }
+
+    @Test
+    public void testReadWaitsForPrefetchedRecords() throws Exception {
+        TopicPartition tp = new TopicPartition("MyTopic", 0);
+        consumer.assign(Collections.singletonList(tp));
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+        consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, 0, "key", "value0"));
+        worker.startPrefetching(10);
+        waitFor(() -> worker.getRecordBuffer().size() == 1);
+
+        // The read is completed when enough records have been prefetched
+        CompletableFuture<List<ConsumerRecord<String, String>>> future = worker.read(5000, 2, 10, 100000);
+        Assert.assertFalse(future.isDone());
+        worker.submit(c -> {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, 1, "key", "value1"));
+            return null;
+        }).get(1, TimeUnit.SECONDS);
+        List<ConsumerRecord<String, String>> records = future.get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals("value1", records.get(1).value());
+    }
+
+    @Test
+    public void testReadTimeout() throws Exception {
+        consumer.subscribe(Collections.singletonList("MyTopic"));
+        long start = System.currentTimeMillis();
+        List<ConsumerRecord<String, String>> records = worker.read(200, 1, 10, 100000).get(1, TimeUnit.SECONDS);
+        Assert.assertTrue(records.isEmpty());
+        Assert.assertTrue(System.currentTimeMillis() - start >= 200);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        worker.close();
+        Assert.assertTrue(worker.isClosed());
+        try {
+            worker.submit(c -> null).get(1, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        // Wait for the close task to complete
+        for (int i = 0; i < 100 && !consumer.closed(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(consumer.closed());
+    }
+
+    @Test
+    public void testSeek() throws Exception {
+        TopicPartition tp0 = new TopicPartition("MyTopic", 0);
+        TopicPartition tp1 = new TopicPartition("MyTopic", 1);
+        consumer.assign(Collections.singletonList(tp0));
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp0, 0L));
+        for (int i = 0; i < 3; i++) {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, i, "key", "value" + i));
+        }
+        Map<TopicPartition, Long> positions = new HashMap<>();
+        positions.put(tp0, 2L);
+        positions.put(tp1, 5L);
+        worker.seek(positions).get(1, TimeUnit.SECONDS);
+        List<ConsumerRecord<String, String>> records = worker.read(0, 1, 10, 100000).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals("value2", records.get(0).value());
+
+        // The unassigned partition is moved when it gets assigned
+        long position = worker.submit(c -> {
+            consumer.updateBeginningOffsets(Collections.singletonMap(tp1, 0L));
+            consumer.assign(Arrays.asList(tp0, tp1));
+            worker.seekPendingPositions(Collections.singletonList(tp1));
+            return c.position(tp1);
+        }).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(5L, position);
+    }
+
+    @Test
+    public void testPendingPositionsApplyToNextAssignmentOnly() throws Exception {
+        TopicPartition tp0 = new TopicPartition("MyTopic", 0);
+        TopicPartition tp1 = new TopicPartition("MyTopic", 1);
+        Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+        beginningOffsets.put(tp0, 0L);
+        beginningOffsets.put(tp1, 0L);
+        consumer.updateBeginningOffsets(beginningOffsets);
+
+        // A new seek replaces the positions requested by the previous seek
+        worker.seek(Collections.singletonMap(tp0, 3L)).get(1, TimeUnit.SECONDS);
+        worker.seek(Collections.singletonMap(tp1, 5L)).get(1, TimeUnit.SECONDS);
+        long position = worker.submit(c -> {
+            consumer.assign(Collections.singletonList(tp0));
+            worker.seekPendingPositions(Collections.singletonList(tp0));
+            return c.position(tp0);
+        }).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(0L, position);
+
+        // The position of the partition that wasn't assigned is discarded after the assignment
+        position = worker.submit(c -> {
+            consumer.assign(Arrays.asList(tp0, tp1));
+            worker.seekPendingPositions(Collections.singletonList(tp1));
+            return c.position(tp1);
+        }).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(0L, position);
+    }
+
+    @Test
+    public void testFetch() throws Exception {
+        TopicPartition tp0 = new TopicPartition("MyTopic", 0);
+        TopicPartition tp1 = new TopicPartition("MyTopic", 1);
+        consumer.assign(Collections.singletonList(tp0));
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp0, 0L));
+        for (int i = 0; i < 5; i++) {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, i, "key", "value" + i));
+        }
+        List<ConsumerRecord<String, String>> records = worker.fetch(Collections.singletonMap(tp0, 2L), 0, 1, 2, 100000)
+                .get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals("value2", records.get(0).value());
+        Assert.assertEquals("value3", records.get(1).value());
+        Assert.assertEquals(Collections.singleton(tp0), consumer.assignment());
+
+        // The records that didn't fit in the previous response aren't kept for the next fetch
+        records = worker.fetch(Collections.singletonMap(tp1, 0L), 0, 1, 10, 100000).get(1, TimeUnit.SECONDS);
+        Assert.assertTrue(records.isEmpty());
+        Assert.assertEquals(0, worker.getRecordBuffer().size());
+        Assert.assertEquals(Collections.singleton(tp1), consumer.assignment());
+    }
+
+    @Test
+    public void testFetchDoesNotHoldWorkerWhileWaiting() throws Exception {
+        TopicPartition tp0 = new TopicPartition("MyTopic", 0);
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp0, 0L));
+        CompletableFuture<List<ConsumerRecord<String, String>>> waiting = worker.fetch(Collections.singletonMap(tp0, 0L), 5000, 1, 10, 100000);
+
+        // Other tasks are executed while the fetch waits for records
+        long start = System.currentTimeMillis();
+        worker.submit(c -> {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, 0, "key", "value0"));
+            return null;
+        }).get(1, TimeUnit.SECONDS);
+        Assert.assertTrue(System.currentTimeMillis() - start < 1000);
+
+        List<ConsumerRecord<String, String>> records = waiting.get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(1, records.size());
+        Assert.assertEquals("value0", records.get(0).value());
+    }
+
+    @Test
+    public void testConcurrentFetchesSharePolls() throws Exception {
+        TopicPartition tp0 = new TopicPartition("MyTopic", 0);
+        TopicPartition tp1 = new TopicPartition("MyTopic", 1);
+        List<String> seeks = Collections.synchronizedList(new ArrayList<>());
+        consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void seek(TopicPartition partition, long offset) {
+                seeks.add(partition + "@" + offset);
+                super.seek(partition, offset);
+            }
+        };
+        worker = new ConsumerWorker("assigned_0", consumer, new RecordBuffer(1000, 100000), scheduler);
+        CompletableFuture<List<ConsumerRecord<String, String>>> first = worker.fetch(Collections.singletonMap(tp0, 0L), 5000, 3, 10, 100000);
+        CompletableFuture<List<ConsumerRecord<String, String>>> second = worker.fetch(Collections.singletonMap(tp0, 1L), 5000, 2, 10, 100000);
+        CompletableFuture<List<ConsumerRecord<String, String>>> third = worker.fetch(Collections.singletonMap(tp1, 0L), 5000, 1, 10, 100000);
+
+        // The consumer is assigned the partitions of all the waiting fetches
+        waitFor(() -> consumer.assignment().size() == 2);
+        worker.submit(c -> {
+            for (int i = 0; i < 3; i++) {
+                consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, i, "key", "value" + i));
+            }
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 1, 0, "key", "other0"));
+            return null;
+        }).get(1, TimeUnit.SECONDS);
+
+        // The records of a single poll are handed to the fetches by partition and offset
+        Assert.assertEquals(Arrays.asList("value0", "value1", "value2"), values(first.get(1, TimeUnit.SECONDS)));
+        Assert.assertEquals(Arrays.asList("value1", "value2"), values(second.get(1, TimeUnit.SECONDS)));
+        Assert.assertEquals(Collections.singletonList("other0"), values(third.get(1, TimeUnit.SECONDS)));
+
+        // Each partition is moved once to the lowest offset that the fetches wait for
+        List<String> sorted = new ArrayList<>(seeks);
+        Collections.sort(sorted);
+        Assert.assertEquals(Arrays.asList("MyTopic-0@0", "MyTopic-1@0"), sorted);
+    }
+
+    @Test
+    public void testCancelledTaskIsSkipped() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        worker.submit(c -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        AtomicInteger executed = new AtomicInteger();
+        started.await(1, TimeUnit.SECONDS);
+        CompletableFuture<Object> queued = worker.submit(c -> executed.incrementAndGet());
+        queued.cancel(false);
+        release.countDown();
+        worker.submit(c -> null).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(0, executed.get());
+    }
+
+    @Test
+    public void testCommitAcknowledged() throws Exception {
+        TopicPartition tp0 = new TopicPartition("MyTopic", 0);
+        TopicPartition tp1 = new TopicPartition("MyTopic", 1);
+        consumer.assign(Arrays.asList(tp0, tp1));
+        Map<TopicPartition, Long> offsets = new HashMap<>();
+        offsets.put(tp0, 16L);
+        offsets.put(tp1, 28L);
+        try (CommitCoordinator coordinator = new CommitCoordinator(scheduler, TimeUnit.HOURS.toMillis(1))) {
+            coordinator.acknowledge(worker, offsets);
+            // An older acknowledgement doesn't move the offset backwards
+            coordinator.acknowledge(worker, Collections.singletonMap(tp0, 10L));
+            coordinator.commit();
+        }
+        waitFor(() -> committedOffset(tp0) == 16L);
+        Assert.assertEquals(28L, committedOffset(tp1));
+    }
+
+    @Test
+    public void testCloseCommitsAcknowledgedOffsets() throws Exception {
+        TopicPartition tp = new TopicPartition("MyTopic", 0);
+        Map<TopicPartition, OffsetAndMetadata> committedOnClose = new HashMap<>();
+        consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void close(Duration timeout) {
+                committedOnClose.putAll(committed(assignment()));
+                super.close(timeout);
+            }
+        };
+        consumer.assign(Collections.singletonList(tp));
+        worker = new ConsumerWorker("test_group", consumer, new RecordBuffer(1000, 100000), scheduler);
+        worker.acknowledge(Collections.singletonMap(tp, 5L));
+        worker.close(Duration.ofSeconds(1)).get(1, TimeUnit.SECONDS);
+        Assert.assertTrue(consumer.closed());
+        Assert.assertEquals(5L, committedOnClose.get(tp).offset());
+    }
+
+    @Test
+    public void testCloseRewindsBufferedRecords() throws Exception {
+        TopicPartition tp = new TopicPartition("MyTopic", 0);
+        Map<TopicPartition, Long> positionsOnClose = new HashMap<>();
+        consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized void close(Duration timeout) {
+                // KafkaConsumer commits these positions when it's closed
+                positionsOnClose.put(tp, position(tp));
+                super.close(timeout);
+            }
+        };
+        consumer.assign(Collections.singletonList(tp));
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+        for (int i = 0; i < 5; i++) {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, i, "key", "value" + i));
+        }
+        worker = new ConsumerWorker("test_group", consumer, new RecordBuffer(1000, 100000), scheduler);
+        Assert.assertEquals(2, worker.read(0, 1, 2, 100000).get(1, TimeUnit.SECONDS).size());
+        worker.close(Duration.ofSeconds(1)).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(2L, (long) positionsOnClose.get(tp));
+
+        // A new consumer of the group continues from the committed position and gets the leftover records
+        consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.assign(Collections.singletonList(tp));
+        consumer.seek(tp, positionsOnClose.get(tp));
+        for (int i = 0; i < 5; i++) {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, i, "key", "value" + i));
+        }
+        worker = new ConsumerWorker("test_group", consumer, new RecordBuffer(1000, 100000), scheduler);
+        List<ConsumerRecord<String, String>> records = worker.read(0, 1, 10, 100000).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(3, records.size());
+        Assert.assertEquals("value2", records.get(0).value());
+    }
+
+    @Test
+    public void testReleasePartitionsCommitsFirstBufferedOffset() throws Exception {
+        TopicPartition tp = new TopicPartition("MyTopic", 0);
+        consumer.assign(Collections.singletonList(tp));
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+        for (int i = 0; i < 5; i++) {
+            consumer.addRecord(new ConsumerRecord<>("MyTopic", 0, i, "key", "value" + i));
+        }
+        Assert.assertEquals(2, worker.read(0, 1, 2, 100000).get(1, TimeUnit.SECONDS).size());
+        worker.submit(c -> {
+            // The automatic commit before revoking the partitions commits the position after the buffered records
+            c.commitSync(Collections.singletonMap(tp, new OffsetAndMetadata(c.position(tp))));
+            worker.releasePartitions(Collections.singletonList(tp), Duration.ofSeconds(1));
+            return null;
+        }).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(2L, committedOffset(tp));
+        Assert.assertEquals(0, worker.getRecordBuffer().size());
+    }
+
+    private long committedOffset(TopicPartition tp) {
+        try {
+            return worker.submit(c -> {
+                OffsetAndMetadata committed = c.committed(Collections.singleton(tp)).get(tp);
+                return committed == null ? -1L : committed.offset();
+            }).get(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean isPaused(TopicPartition tp) {
+        try {
+            return worker.submit(c -> c.paused().contains(tp)).get(1, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static List<String> values(List<ConsumerRecord<String, String>> records) {
+        List<String> values = new ArrayList<>();
+        records.forEach(record -> values.add(record.value()));
+        return values;
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 200 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(condition.getAsBoolean());
+    }
+}
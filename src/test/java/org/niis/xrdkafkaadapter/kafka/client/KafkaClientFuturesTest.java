@@ -0,0 +1,77 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
+import org.niis.xrdkafkaadapter.exception.RequestFailedException;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Test cases for KafkaClientFutures class.
+ */
+@RunWith(JUnit4.class)
+public class KafkaClientFuturesTest extends TestCase {
+
+    @Test
+    public void testAwait() throws Exception {
+        Assert.assertEquals("value", KafkaClientFutures.await(CompletableFuture.completedFuture("value")));
+    }
+
+    @Test
+    public void testAwaitKafkaClientException() throws Exception {
+        CompletableFuture<String> future = CompletableFuture.completedFuture("value")
+                .thenCompose(value -> KafkaClientFutures.failed(new ForbiddenRequestException("forbidden")));
+        try {
+            KafkaClientFutures.await(future);
+            Assert.fail("Expected ForbiddenRequestException");
+        } catch (ForbiddenRequestException e) {
+            Assert.assertEquals("forbidden", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testAwaitOtherException() throws Exception {
+        try {
+            KafkaClientFutures.await(KafkaClientFutures.failed(new IllegalStateException("error")));
+            Assert.fail("Expected RequestFailedException");
+        } catch (RequestFailedException e) {
+            Assert.assertEquals("Kafka client request failed.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testUnwrap() {
+        IllegalStateException cause = new IllegalStateException();
+        Assert.assertSame(cause, KafkaClientFutures.unwrap(new CompletionException(cause)));
+        Assert.assertSame(cause, KafkaClientFutures.unwrap(cause));
+    }
+}
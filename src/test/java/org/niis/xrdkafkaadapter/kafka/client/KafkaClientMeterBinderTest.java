@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Test cases for KafkaClientMeterBinder class.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class KafkaClientMeterBinderTest extends TestCase {
+
+    private MeterRegistry registry;
+
+    @Mock
+    private Consumer<String, String> consumer;
+
+    @Mock
+    private Producer<byte[], byte[]> producer;
+
+    @Before
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void testConsumerLag() {
+        Map<String, String> partitionTags = new HashMap<>();
+        partitionTags.put("client-id", "consumer-1");
+        partitionTags.put("topic", "MyTopic");
+        partitionTags.put("partition", "0");
+        Map<MetricName, Metric> metrics = new LinkedHashMap<>();
+        metrics.put(new MetricName("records-lag-max", "consumer-fetch-manager-metrics", "", partitionTags), metric(3.0));
+        metrics.put(new MetricName("records-lag-max", "consumer-fetch-manager-metrics", "",
+                Collections.singletonMap("client-id", "consumer-1")), metric(42.0));
+        Mockito.doReturn(metrics).when(consumer).metrics();
+
+        KafkaClientMeterBinder binder = KafkaClientMeterBinder.forConsumer(consumer, "FI_GOV_1234_SUB_MyTopic_group", "MyTopic");
+        binder.bindTo(registry);
+
+        Gauge lag = registry.find("kafka.consumer.records.lag.max").tags("group", "FI_GOV_1234_SUB_MyTopic_group", "topic", "MyTopic").gauge();
+        Assert.assertNotNull(lag);
+        Assert.assertEquals(42.0, lag.value(), 0.0);
+        Assert.assertTrue(Double.isNaN(registry.find("kafka.consumer.fetch.rate").gauge().value()));
+    }
+
+    @Test
+    public void testClose() {
+        Mockito.doReturn(Collections.emptyMap()).when(producer).metrics();
+        KafkaClientMeterBinder binder = KafkaClientMeterBinder.forProducer(producer, "FI_GOV_1234_SUB_MyTopic_producer", "MyTopic");
+        binder.bindTo(registry);
+        Assert.assertNotNull(registry.find("kafka.producer.record.send.rate").gauge());
+
+        binder.close();
+        Assert.assertNull(registry.find("kafka.producer.record.send.rate").gauge());
+    }
+
+    @Test
+    public void testCloseReplacedClient() {
+        KafkaClientMeterBinder previous = KafkaClientMeterBinder.forProducer(producer, "FI_GOV_1234_SUB_MyTopic_producer", "MyTopic");
+        previous.bindTo(registry);
+        KafkaClientMeterBinder current = KafkaClientMeterBinder.forProducer(producer, "FI_GOV_1234_SUB_MyTopic_producer", "MyTopic");
+        current.bindTo(registry);
+
+        // The gauges of the current producer must not be removed when the previous producer is closed
+        previous.close();
+        Assert.assertNotNull(registry.find("kafka.producer.record.send.rate").gauge());
+        current.close();
+        Assert.assertNull(registry.find("kafka.producer.record.send.rate").gauge());
+    }
+
+    private static Metric metric(double value) {
+        Metric metric = Mockito.mock(Metric.class);
+        Mockito.lenient().when(metric.metricValue()).thenReturn(value);
+        return metric;
+    }
+}
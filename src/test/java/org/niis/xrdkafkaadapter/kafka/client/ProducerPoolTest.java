@@ -0,0 +1,112 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import junit.framework.TestCase;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for ProducerPool class.
+ */
+@RunWith(JUnit4.class)
+public class ProducerPoolTest extends TestCase {
+
+    private ProducerPool<String, String> producerPool;
+
+    @Before
+    public void setup() {
+        producerPool = new ProducerPool<>(2, 600, 1);
+    }
+
+    @Test
+    public void testLeaseReusesProducer() throws ExecutionException {
+        MockProducer<String, String> producer = newMockProducer();
+        ProducerPool.PooledProducer<String, String> first = producerPool.lease("client1", () -> producer);
+        first.close();
+        ProducerPool.PooledProducer<String, String> second = producerPool.lease("client1", this::newMockProducer);
+        second.close();
+        Assert.assertSame(producer, second.getProducer());
+        Assert.assertEquals(1, producerPool.size());
+        Assert.assertFalse(producer.closed());
+    }
+
+    @Test
+    public void testEvictedProducerIsClosedAfterRelease() throws Exception {
+        List<Thread> closingThreads = new CopyOnWriteArrayList<>();
+        MockProducer<String, String> producer = new MockProducer<String, String>(true, new StringSerializer(), new StringSerializer()) {
+            @Override
+            public void close(Duration timeout) {
+                closingThreads.add(Thread.currentThread());
+                super.close(timeout);
+            }
+        };
+        ProducerPool.PooledProducer<String, String> leased = producerPool.lease("client1", () -> producer);
+        producerPool.lease("client2", this::newMockProducer).close();
+        producerPool.lease("client3", this::newMockProducer).close();
+        // The first producer has been evicted, but it's still in use
+        Thread.sleep(100);
+        Assert.assertFalse(producer.closed());
+        leased.close();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!producer.closed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(producer.closed());
+        // The producer isn't closed in the thread that returned the last lease
+        Assert.assertEquals(1, closingThreads.size());
+        Assert.assertNotSame(Thread.currentThread(), closingThreads.get(0));
+    }
+
+    @Test
+    public void testClose() throws ExecutionException {
+        MockProducer<String, String> producer = newMockProducer();
+        producerPool.lease("client1", () -> producer).close();
+        producerPool.close();
+        Assert.assertTrue(producer.closed());
+        Assert.assertEquals(0, producerPool.size());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void testLeaseFailure() throws ExecutionException {
+        producerPool.lease("client1", () -> {
+            throw new IllegalStateException("error");
+        });
+    }
+
+    private MockProducer<String, String> newMockProducer() {
+        return new MockProducer<>(true, new StringSerializer(), new StringSerializer());
+    }
+}
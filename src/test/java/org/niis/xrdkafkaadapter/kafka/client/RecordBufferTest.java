@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import junit.framework.TestCase;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test cases for RecordBuffer class.
+ */
+@RunWith(JUnit4.class)
+public class RecordBufferTest extends TestCase {
+
+    @Test
+    public void testMaxRecords() {
+        RecordBuffer buffer = new RecordBuffer(2, 1000);
+        buffer.addAll(Collections.singletonList(newRecord(0, 0, 10)));
+        Assert.assertFalse(buffer.isFull());
+        buffer.addAll(Collections.singletonList(newRecord(0, 1, 10)));
+        Assert.assertTrue(buffer.isFull());
+        Assert.assertEquals(20, buffer.getBytes());
+    }
+
+    @Test
+    public void testMaxBytes() {
+        RecordBuffer buffer = new RecordBuffer(100, 1000);
+        buffer.addAll(Collections.singletonList(newRecord(0, 0, 1000)));
+        Assert.assertTrue(buffer.isFull());
+        buffer.drain(1);
+        Assert.assertFalse(buffer.isFull());
+        Assert.assertEquals(0, buffer.getBytes());
+    }
+
+    @Test
+    public void testDrain() {
+        RecordBuffer buffer = new RecordBuffer(100, 1000);
+        buffer.addAll(Arrays.asList(newRecord(0, 0, 1), newRecord(0, 1, 1), newRecord(1, 0, 1)));
+        List<ConsumerRecord<String, String>> records = buffer.drain(2);
+        Assert.assertEquals(2, records.size());
+        Assert.assertEquals(0, records.get(0).offset());
+        Assert.assertEquals(1, records.get(1).offset());
+        Assert.assertEquals(1, buffer.size());
+        Assert.assertEquals(1, buffer.drain(10).get(0).partition());
+        Assert.assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void testDrainMaxSize() {
+        RecordBuffer buffer = new RecordBuffer(100, 1000);
+        buffer.addAll(Arrays.asList(newRecord(0, 0, 300), newRecord(0, 1, 300), newRecord(0, 2, 300)));
+        Assert.assertEquals(2, buffer.drain(10, 600).size());
+        // At least one record is returned even if it exceeds the limit
+        Assert.assertEquals(1, buffer.drain(10, 100).size());
+        Assert.assertEquals(0, buffer.getBytes());
+    }
+
+    @Test
+    public void testWhenAvailable() throws Exception {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            RecordBuffer buffer = new RecordBuffer(100, 1000);
+            CompletableFuture<Void> future = buffer.whenAvailable(2, 5000, scheduler);
+            buffer.addAll(Collections.singletonList(newRecord(0, 0, 1)));
+            Assert.assertFalse(future.isDone());
+            buffer.addAll(Collections.singletonList(newRecord(0, 1, 1)));
+            Assert.assertTrue(future.isDone());
+
+            // Enough records are already available
+            Assert.assertTrue(buffer.whenAvailable(2, 5000, scheduler).isDone());
+
+            // Wait time elapses
+            long start = System.currentTimeMillis();
+            buffer.whenAvailable(3, 100, scheduler).get(1, TimeUnit.SECONDS);
+            Assert.assertTrue(System.currentTimeMillis() - start >= 100);
+            Assert.assertEquals(2, buffer.size());
+        } finally {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRemoveAll() {
+        RecordBuffer buffer = new RecordBuffer(100, 1000);
+        buffer.addAll(Arrays.asList(newRecord(0, 3, 1), newRecord(1, 0, 2), newRecord(0, 4, 1)));
+        Map<TopicPartition, Long> firstOffsets = buffer.removeAll(Arrays.asList(new TopicPartition("MyTopic", 0),
+                new TopicPartition("MyTopic", 2)));
+        Assert.assertEquals(Collections.singletonMap(new TopicPartition("MyTopic", 0), 3L), firstOffsets);
+        Assert.assertEquals(1, buffer.size());
+        Assert.assertEquals(2, buffer.getBytes());
+        Assert.assertEquals(1, buffer.drain(10).get(0).partition());
+    }
+
+    private static ConsumerRecord<String, String> newRecord(int partition, long offset, int valueSize) {
+        return new ConsumerRecord<>("MyTopic", partition, offset, 0L, TimestampType.CREATE_TIME, 0L, -1, valueSize,
+                null, "value");
+    }
+}
@@ -23,20 +23,44 @@
  */
 package org.niis.xrdkafkaadapter.kafka.client;
 
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
+import org.niis.xrdkafkaadapter.http.HttpClientResponse;
+import org.niis.xrdkafkaadapter.http.PooledHttpClient;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
 import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
 import org.niis.xrdkafkaadapter.service.HelperService;
+import org.niis.xrdkafkaadapter.service.MetricsService;
 import org.niis.xrdkafkaadapter.util.Constants;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import junit.framework.TestCase;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
 /**
  * Test cases for RESTProxyClient class.
  */
@@ -52,6 +76,9 @@ public class RestProxyClientTest extends TestCase {
     @Mock
     private Environment environment;
 
+    @Captor
+    private ArgumentCaptor<Map<String, String>> paramsCaptor;
+
     @Before
     public void setup() {
         helperService = new HelperService(environment);
@@ -59,6 +86,108 @@ public class RestProxyClientTest extends TestCase {
         Mockito.when(environment.getProperty(Constants.KAFKA_REST_PROXY_URL_PROPERTY_KEY)).thenReturn(BASE_URL);
     }
 
+    @Test
+    public void testReadUntilMinRecords() throws Exception {
+        PooledHttpClient httpClient = Mockito.mock(PooledHttpClient.class);
+        restProxyClient = new RestProxyClient(helperService, httpClient);
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.GET), Mockito.anyString(), Mockito.isNull(), Mockito.anyMap(), Mockito.anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(200, "[{\"offset\":0}]")))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(200, "[{\"offset\":1},{\"offset\":2}]")));
+
+        KafkaClientResponse response = restProxyClient.read("FI/GOV/1234/SUB", "MyTopic", new ReadOptions(5000L, 3, 10));
+        JSONArray records = new JSONArray(response.getValue());
+        Assert.assertEquals(3, records.length());
+        Assert.assertEquals(2, records.getJSONObject(2).getInt("offset"));
+
+        Mockito.verify(httpClient, Mockito.times(2)).sendAsync(Mockito.eq(HttpMethod.GET), Mockito.anyString(), Mockito.isNull(),
+                paramsCaptor.capture(), Mockito.anyMap());
+        Assert.assertEquals("10485760", paramsCaptor.getValue().get("max_bytes"));
+        Assert.assertTrue(Long.parseLong(paramsCaptor.getValue().get("timeout")) <= 5000);
+    }
+
+    @Test
+    public void testReadWithoutOptions() throws Exception {
+        PooledHttpClient httpClient = Mockito.mock(PooledHttpClient.class);
+        restProxyClient = new RestProxyClient(helperService, httpClient);
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.GET), Mockito.anyString(), Mockito.isNull(), Mockito.anyMap(), Mockito.anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(200, "[]")));
+
+        KafkaClientResponse response = restProxyClient.read("FI/GOV/1234/SUB", "MyTopic");
+        Assert.assertEquals("[]", response.getValue());
+        Mockito.verify(httpClient, Mockito.times(1)).sendAsync(Mockito.eq(HttpMethod.GET), Mockito.anyString(), Mockito.isNull(),
+                Mockito.argThat(params -> !params.containsKey("timeout")), Mockito.anyMap());
+    }
+
+    @Test
+    public void testReadDetectsFormatOfConsumerInstance() throws Exception {
+        PooledHttpClient httpClient = Mockito.mock(PooledHttpClient.class);
+        restProxyClient = new RestProxyClient(helperService, httpClient);
+        // The consumer instance was created in the binary format before a restart
+        Map<String, String> binaryAccept = Collections.singletonMap(Constants.HTTP_HEADER_ACCEPT, EmbeddedFormat.BINARY.getContentType());
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.GET), Mockito.anyString(), Mockito.isNull(), Mockito.anyMap(), Mockito.anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(406, "{\"error_code\":40601}")));
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.GET), Mockito.anyString(), Mockito.isNull(), Mockito.anyMap(),
+                Mockito.eq(binaryAccept))).thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(200, "[]")));
+
+        Assert.assertEquals("[]", restProxyClient.read("FI/GOV/1234/SUB", "MyTopic").getValue());
+        Mockito.verify(httpClient, Mockito.times(2)).sendAsync(Mockito.eq(HttpMethod.GET), Mockito.anyString(), Mockito.isNull(),
+                Mockito.anyMap(), Mockito.anyMap());
+
+        // The detected format is used by the next read
+        Assert.assertEquals("[]", restProxyClient.read("FI/GOV/1234/SUB", "MyTopic").getValue());
+        Mockito.verify(httpClient, Mockito.times(3)).sendAsync(Mockito.eq(HttpMethod.GET), Mockito.anyString(), Mockito.isNull(),
+                Mockito.anyMap(), Mockito.anyMap());
+    }
+
+    @Test
+    public void testResetPositions() throws Exception {
+        PooledHttpClient httpClient = Mockito.mock(PooledHttpClient.class);
+        restProxyClient = new RestProxyClient(helperService, httpClient);
+        String instanceUrl = BASE_URL + "/consumers/FI_GOV_1234_SUB_MyTopic_group/instances/FI_GOV_1234_SUB_instance";
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.GET), Mockito.eq(instanceUrl + "/assignments"), Mockito.isNull(),
+                Mockito.anyMap(), Mockito.anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(200,
+                        "{\"partitions\":[{\"topic\":\"MyTopic\",\"partition\":0},{\"topic\":\"Other\",\"partition\":0}]}")));
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.POST), Mockito.eq(instanceUrl + "/positions/beginning"), Mockito.anyString(),
+                Mockito.anyMap(), Mockito.anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(204, "")));
+
+        restProxyClient.resetPositionsAsync("FI/GOV/1234/SUB", "MyTopic", OffsetResetPolicy.EARLIEST).get(1, TimeUnit.SECONDS);
+        // Only the partitions of the subscribed topic are moved
+        Mockito.verify(httpClient).sendAsync(Mockito.eq(HttpMethod.POST), Mockito.eq(instanceUrl + "/positions/beginning"),
+                Mockito.argThat(body -> {
+                    JSONArray partitions = new JSONObject(body).getJSONArray("partitions");
+                    return partitions.length() == 1 && "MyTopic".equals(partitions.getJSONObject(0).getString("topic"));
+                }), Mockito.anyMap(), Mockito.anyMap());
+    }
+
+    @Test
+    public void testSeekToTimestampNotSupported() throws Exception {
+        try {
+            restProxyClient.seekToTimestampAsync("FI/GOV/1234/SUB", "MyTopic", 0L).get(1, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof BadRequestException);
+        }
+    }
+
+    @Test
+    public void testUnsubscribeNotFound() throws Exception {
+        PooledHttpClient httpClient = Mockito.mock(PooledHttpClient.class);
+        restProxyClient = new RestProxyClient(helperService, httpClient);
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.DELETE), Mockito.anyString(), Mockito.isNull(), Mockito.anyMap(), Mockito.anyMap()))
+                .thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(404, "{}")));
+        try {
+            restProxyClient.unsubscribe("FI/GOV/1234/SUB", "MyTopic");
+            Assert.fail("Expected ForbiddenRequestException");
+        } catch (ForbiddenRequestException e) {
+            Assert.assertEquals("No subscription found.", e.getMessage());
+        }
+        // The consumer instance isn't destroyed
+        Mockito.verify(httpClient, Mockito.times(1)).sendAsync(Mockito.any(), Mockito.anyString(), Mockito.isNull(), Mockito.anyMap(),
+                Mockito.anyMap());
+    }
+
     @Test
     public void testBuildCreateConsumerInstanceRequest() {
         JSONObject json = restProxyClient.buildCreateConsumerInstanceRequest("instanceName", OffsetResetPolicy.LATEST);
@@ -67,6 +196,80 @@ public class RestProxyClientTest extends TestCase {
         Assert.assertEquals("latest", json.getString("auto.offset.reset"));
     }
 
+    @Test
+    public void testBuildCreateConsumerInstanceRequestBinary() {
+        JSONObject json = restProxyClient.buildCreateConsumerInstanceRequest("instanceName", OffsetResetPolicy.LATEST, EmbeddedFormat.BINARY);
+        Assert.assertEquals("binary", json.getString("format"));
+    }
+
+    @Test
+    public void testBuildCreateConsumerInstanceRequestConsumerProperties() {
+        Map<String, String> consumerProperties = new HashMap<>();
+        consumerProperties.put(Constants.KAFKA_FETCH_MIN_BYTES, "1024");
+        consumerProperties.put(Constants.KAFKA_MAX_POLL_RECORDS, "100");
+        JSONObject json = restProxyClient.buildCreateConsumerInstanceRequest("instanceName", OffsetResetPolicy.LATEST, EmbeddedFormat.JSON,
+                consumerProperties);
+        Assert.assertEquals("1024", json.getString("fetch.min.bytes"));
+        Assert.assertFalse(json.has("max.poll.records"));
+    }
+
+    @Test
+    public void testPublishAvroUsesCachedSchemaId() throws Exception {
+        PooledHttpClient httpClient = Mockito.mock(PooledHttpClient.class);
+        restProxyClient = new RestProxyClient(helperService, httpClient);
+        // In-memory stand-in for Schema Registry: REST Proxy registers new schemas and returns their ids
+        Map<String, Integer> registry = new HashMap<>();
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.POST), Mockito.anyString(), Mockito.anyString(), Mockito.anyMap(),
+                Mockito.anyMap())).thenAnswer(invocation -> {
+                    JSONObject request = new JSONObject((String) invocation.getArgument(2));
+                    JSONObject response = new JSONObject();
+                    if (request.has("value_schema")) {
+                        response.put("value_schema_id", registry.computeIfAbsent(request.getString("value_schema"), s -> registry.size() + 1));
+                    } else {
+                        response.put("value_schema_id", request.getInt("value_schema_id"));
+                    }
+                    return CompletableFuture.completedFuture(new HttpClientResponse(200, response.toString()));
+                });
+        String body = "{\"value_schema\":\"{\\\"type\\\":\\\"string\\\"}\",\"records\":[{\"value\":\"v1\"}]}";
+
+        restProxyClient.publishAsync("FI/GOV/1234/SUB", "MyTopic", body.getBytes(StandardCharsets.UTF_8), EmbeddedFormat.AVRO)
+                .get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(1, restProxyClient.getSchemaCache().size());
+        restProxyClient.publishAsync("FI/GOV/1234/SUB", "MyTopic", body.getBytes(StandardCharsets.UTF_8), EmbeddedFormat.AVRO)
+                .get(1, TimeUnit.SECONDS);
+
+        ArgumentCaptor<String> bodyCaptor = ArgumentCaptor.forClass(String.class);
+        Mockito.verify(httpClient, Mockito.times(2)).sendAsync(Mockito.eq(HttpMethod.POST), Mockito.anyString(), bodyCaptor.capture(),
+                Mockito.anyMap(), Mockito.eq(Collections.singletonMap(Constants.HTTP_HEADER_CONTENT_TYPE, Constants.CONTENT_TYPE_KAFKA_AVRO_V2)));
+        JSONObject second = new JSONObject(bodyCaptor.getAllValues().get(1));
+        Assert.assertFalse(second.has("value_schema"));
+        Assert.assertEquals(1, second.getInt("value_schema_id"));
+    }
+
+    @Test
+    public void testPublishToMissingTopicIsNotRecordedAsSuccess() throws Exception {
+        PooledHttpClient httpClient = Mockito.mock(PooledHttpClient.class);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MetricsService metricsService = new MetricsService(registry, Pattern.compile(".*"));
+        restProxyClient = new RestProxyClient(helperService, httpClient);
+        restProxyClient.setMetricsService(metricsService);
+        Mockito.when(httpClient.sendAsync(Mockito.eq(HttpMethod.POST), Mockito.anyString(), Mockito.anyString(), Mockito.anyMap(),
+                Mockito.anyMap())).thenReturn(CompletableFuture.completedFuture(new HttpClientResponse(404,
+                        "{\"error_code\":40401,\"message\":\"Topic not found.\"}")));
+        KafkaClient client = new MeteredKafkaClient(restProxyClient, "restProxyClient", metricsService);
+        String body = "{\"records\":[{\"value\":\"v1\"}]}";
+
+        KafkaClientResponse response = client.publishAsync("FI/GOV/1234/SUB", "RandomTopic", body.getBytes(StandardCharsets.UTF_8),
+                EmbeddedFormat.JSON).toCompletableFuture().get(1, TimeUnit.SECONDS);
+
+        // The REST Proxy error is returned as such, but it's tagged as a failed operation without the topic name
+        Assert.assertEquals(40401, new JSONObject(response.getValue()).getInt("error_code"));
+        Assert.assertFalse(response.isSuccessful());
+        Assert.assertEquals(1, registry.find("kafka.adapter.operations").tags("topic", "unknown", "outcome", "bad_request").timer().count());
+        Assert.assertNull(registry.find("kafka.adapter.operations").tag("topic", "RandomTopic").timer());
+        Assert.assertNull(registry.find("kafka.adapter.bytes").summary());
+    }
+
     @Test
     public void testBuildSubscribeToTopicRequest() {
         JSONObject json = restProxyClient.buildSubscribeToTopicRequest("MyTopic");
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.kafka.client;
+
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * Test cases for SubscriptionRegistry class.
+ */
+@RunWith(JUnit4.class)
+public class SubscriptionRegistryTest extends TestCase {
+
+    private static final String GROUP_NAME = "PLAYGROUND_COM_1234567-8_Client_TestTopic_group";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSubscriptionsAreLoadedFromFile() {
+        String path = temporaryFolder.getRoot().toPath().resolve("registry/subscriptions.json").toString();
+        SubscriptionRegistry.Subscription subscription = new SubscriptionRegistry.Subscription("PLAYGROUND/COM/1234567-8/Client", "TestTopic",
+                OffsetResetPolicy.LATEST, new SubscriptionOptions(EmbeddedFormat.BINARY, Collections.singletonMap("max.poll.records", "100")));
+
+        SubscriptionRegistry registry = new SubscriptionRegistry(path);
+        registry.register(GROUP_NAME, subscription);
+        registry.register("OtherGroup", subscription);
+        registry.unregister("OtherGroup");
+        registry.close();
+
+        SubscriptionRegistry loaded = new SubscriptionRegistry(path);
+        Assert.assertEquals(Collections.singleton(GROUP_NAME), loaded.getGroupNames());
+        Assert.assertEquals(subscription, loaded.get(GROUP_NAME));
+        loaded.close();
+    }
+
+    @Test
+    public void testInvalidFileIsIgnored() throws Exception {
+        Path file = temporaryFolder.newFile("subscriptions.json").toPath();
+        Files.write(file, "{invalid".getBytes(StandardCharsets.UTF_8));
+
+        SubscriptionRegistry registry = new SubscriptionRegistry(file.toString());
+        Assert.assertTrue(registry.getGroupNames().isEmpty());
+        registry.close();
+    }
+
+    @Test
+    public void testSubscriptionsAreKeptInMemoryWithoutFile() {
+        SubscriptionRegistry registry = new SubscriptionRegistry(null);
+        registry.register(GROUP_NAME, new SubscriptionRegistry.Subscription("PLAYGROUND/COM/1234567-8/Client", "TestTopic",
+                OffsetResetPolicy.EARLIEST, new SubscriptionOptions()));
+        Assert.assertNotNull(registry.get(GROUP_NAME));
+        Assert.assertTrue(registry.unregister(GROUP_NAME));
+        Assert.assertFalse(registry.unregister(GROUP_NAME));
+        registry.close();
+    }
+}
@@ -23,26 +23,66 @@
  */
 package org.niis.xrdkafkaadapter.kafka.client;
 
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
+import org.niis.xrdkafkaadapter.model.CommitMode;
+import org.niis.xrdkafkaadapter.model.EmbeddedFormat;
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
 import org.niis.xrdkafkaadapter.model.OffsetResetPolicy;
+import org.niis.xrdkafkaadapter.model.PublishRecord;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.model.SubscriptionOptions;
 import org.niis.xrdkafkaadapter.service.HelperService;
 import org.niis.xrdkafkaadapter.util.Constants;
+import org.niis.xrdkafkaadapter.util.JsonRecordsReader;
 
 import junit.framework.TestCase;
+import org.apache.kafka.clients.admin.Admin;
+import org.apache.kafka.clients.admin.RemoveMembersFromConsumerGroupOptions;
+import org.apache.kafka.clients.admin.RemoveMembersFromConsumerGroupResult;
+import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.clients.consumer.OffsetOutOfRangeException;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.KafkaFuture;
+import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.internals.KafkaFutureImpl;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.core.env.Environment;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Test cases for RESTProxyClient class.
@@ -59,6 +99,9 @@ public class TcpClientTest extends TestCase {
     @Mock
     private Environment environment;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Before
     public void setup() {
         helperService = new HelperService(environment);
@@ -87,23 +130,34 @@ public class TcpClientTest extends TestCase {
     }
 
     @Test
-    public void testGenerateReadResultsEntryString() {
-        JSONObject json = tcpClient.generateReadResultsEntry(1, 2, "TestTopic", "key", "string value");
-        Assert.assertEquals(1, json.getInt("partition"));
-        Assert.assertEquals(2, json.getInt("offset"));
-        Assert.assertEquals("TestTopic", json.getString("topic"));
-        Assert.assertEquals("key", json.getString("key"));
-        Assert.assertEquals("string value", json.getString("value"));
+    public void testPublishRecords() throws Exception {
+        MockProducer<byte[], byte[]> producer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        String body = "{\"records\":[{\"key\":\"k1\",\"value\":\"v1\"},{\"key\":\"k2\"},{\"value\":{\"field1\":\"value1\"}}]}";
+        JSONArray offsets = tcpClient.publishRecords(producer, "MyTopic",
+                JsonRecordsReader.readPublishRecords(body.getBytes(StandardCharsets.UTF_8))).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(3, offsets.length());
+        Assert.assertEquals(true, offsets.getJSONObject(0).getBoolean("success"));
+        Assert.assertEquals(0, offsets.getJSONObject(0).getLong("offset"));
+        Assert.assertEquals(false, offsets.getJSONObject(1).getBoolean("success"));
+        Assert.assertEquals("Invalid record. Value is missing.", offsets.getJSONObject(1).getString("error_message"));
+        Assert.assertEquals(true, offsets.getJSONObject(2).getBoolean("success"));
+        Assert.assertEquals(1, offsets.getJSONObject(2).getLong("offset"));
+        Assert.assertEquals(2, producer.history().size());
+        Assert.assertEquals("k1", new String(producer.history().get(0).key(), StandardCharsets.UTF_8));
+        Assert.assertEquals("v1", new String(producer.history().get(0).value(), StandardCharsets.UTF_8));
+        Assert.assertEquals("{\"field1\":\"value1\"}", new String(producer.history().get(1).value(), StandardCharsets.UTF_8));
     }
 
     @Test
-    public void testGenerateReadResultsEntryObject() {
-        JSONObject json = tcpClient.generateReadResultsEntry(5, 22, "TestTopic", "my_key", "{\"field1\":\"value1\"}");
-        Assert.assertEquals(5, json.getInt("partition"));
-        Assert.assertEquals(22, json.getInt("offset"));
-        Assert.assertEquals("TestTopic", json.getString("topic"));
-        Assert.assertEquals("my_key", json.getString("key"));
-        Assert.assertEquals("{\"field1\":\"value1\"}", json.getJSONObject("value").toString());
+    public void testPublishRecordsSendError() throws Exception {
+        MockProducer<byte[], byte[]> producer = new MockProducer<>(false, new ByteArraySerializer(), new ByteArraySerializer());
+        producer.sendException = new KafkaException("error");
+        String body = "{\"records\":[{\"value\":\"v1\"},{\"value\":\"v2\"}]}";
+        JSONArray offsets = tcpClient.publishRecords(producer, "MyTopic",
+                JsonRecordsReader.readPublishRecords(body.getBytes(StandardCharsets.UTF_8))).get(1, TimeUnit.SECONDS);
+        Assert.assertEquals(2, offsets.length());
+        Assert.assertEquals(false, offsets.getJSONObject(0).getBoolean("success"));
+        Assert.assertEquals("Error in sending record", offsets.getJSONObject(1).getString("error_message"));
     }
 
     @Test
@@ -119,12 +173,423 @@ public class TcpClientTest extends TestCase {
         Assert.assertEquals(OffsetResetPolicy.LATEST.toString().toLowerCase(), props.getProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG));
     }
 
+    @Test
+    public void testGetConsumerPropertiesBinary() {
+        Properties props = tcpClient.getConsumerProperties("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.LATEST,
+                EmbeddedFormat.BINARY);
+        Assert.assertEquals(Base64Deserializer.class.getName(), props.getProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG));
+        Assert.assertEquals(Base64Deserializer.class.getName(), props.getProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG));
+    }
+
+    @Test
+    public void testGetConsumerPropertiesOverrides() {
+        Mockito.when(environment.getProperty(Constants.CONSUMER_PROPERTIES_PREFIX + "max.poll.records")).thenReturn("500");
+        Mockito.when(environment.getProperty(Constants.CONSUMER_PROPERTIES_PREFIX + "fetch.min.bytes")).thenReturn("1024");
+        Mockito.when(environment.getProperty(Constants.CONSUMER_TOPIC_PROPERTIES_PREFIX + "TestTopic.fetch.max.wait.ms")).thenReturn("200");
+        SubscriptionOptions options = new SubscriptionOptions(EmbeddedFormat.JSON,
+                Collections.singletonMap(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "100"));
+        Properties props = tcpClient.getConsumerProperties("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.LATEST,
+                options);
+        Assert.assertEquals("100", props.getProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG));
+        Assert.assertEquals("1024", props.getProperty(ConsumerConfig.FETCH_MIN_BYTES_CONFIG));
+        Assert.assertEquals("200", props.getProperty(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG));
+        Assert.assertNull(props.getProperty(ConsumerConfig.FETCH_MAX_BYTES_CONFIG));
+    }
+
+    @Test
+    public void testGetConsumerPropertiesManualCommit() {
+        Properties props = tcpClient.getConsumerProperties("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.LATEST,
+                new SubscriptionOptions(EmbeddedFormat.JSON, Collections.emptyMap(), CommitMode.MANUAL));
+        Assert.assertEquals("false", props.getProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG));
+        Assert.assertNull(props.getProperty(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG));
+    }
+
+    @Test
+    public void testDecodeBase64() {
+        Base64.Encoder encoder = Base64.getEncoder();
+        List<PublishRecord> records = tcpClient.decodeBase64(Arrays.asList(
+                new PublishRecord(encoder.encode("key".getBytes(StandardCharsets.UTF_8)), encoder.encode(new byte[] {0, 1, 2})),
+                new PublishRecord(null, "not base64!".getBytes(StandardCharsets.UTF_8)),
+                new PublishRecord(null, null)));
+        Assert.assertEquals("key", new String(records.get(0).getKey(), StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(new byte[] {0, 1, 2}, records.get(0).getValue());
+        Assert.assertFalse(records.get(1).isValid());
+        Assert.assertFalse(records.get(2).isValid());
+    }
+
+    @Test
+    public void testUnsupportedFormat() throws Exception {
+        try {
+            tcpClient.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.LATEST, EmbeddedFormat.AVRO)
+                    .get(1, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof BadRequestException);
+        }
+    }
+
     @Test
     public void testGetProducerProperties() {
         Properties props = tcpClient.getProducerProperties("PLAYGROUND/COM/1234567-8/Client", "TestTopic");
         Assert.assertEquals(BROKER_ADDRESS, props.getProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG));
         Assert.assertEquals("PLAYGROUND_COM_1234567-8_Client_TestTopic_producer", props.getProperty(ProducerConfig.CLIENT_ID_CONFIG));
-        Assert.assertEquals("org.apache.kafka.common.serialization.StringSerializer", props.getProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG));
-        Assert.assertEquals("org.apache.kafka.common.serialization.StringSerializer", props.getProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG));
+        Assert.assertEquals("org.apache.kafka.common.serialization.ByteArraySerializer", props.getProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG));
+        Assert.assertEquals("org.apache.kafka.common.serialization.ByteArraySerializer", props.getProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG));
+    }
+
+    @Test
+    public void testGetProducerPropertiesProfile() {
+        Mockito.when(environment.getProperty(Constants.PRODUCER_DEFAULT_PROFILE)).thenReturn("durable");
+        Mockito.when(environment.getProperty(Constants.PRODUCER_PROFILES_PREFIX + "durable.acks")).thenReturn("all");
+        Mockito.when(environment.getProperty(Constants.PRODUCER_PROFILES_PREFIX + "durable.enable.idempotence")).thenReturn("true");
+        Properties props = tcpClient.getProducerProperties("PLAYGROUND/COM/1234567-8/Client", "TestTopic");
+        Assert.assertEquals("all", props.getProperty(ProducerConfig.ACKS_CONFIG));
+        Assert.assertEquals("true", props.getProperty(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG));
+        Assert.assertEquals("org.apache.kafka.common.serialization.ByteArraySerializer", props.getProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG));
+    }
+
+    @Test
+    public void testUnsubscribeClosesConsumerInBackground() throws Exception {
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        Admin admin = Mockito.mock(Admin.class);
+        RemoveMembersFromConsumerGroupResult result = Mockito.mock(RemoveMembersFromConsumerGroupResult.class);
+        Mockito.when(result.all()).thenReturn(KafkaFuture.completedFuture(null));
+        Mockito.when(admin.removeMembersFromConsumerGroup(Mockito.anyString(), Mockito.any(RemoveMembersFromConsumerGroupOptions.class)))
+                .thenReturn(result);
+        TcpClient client = new TcpClient(helperService) {
+            @Override
+            protected Consumer<String, String> createConsumer(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                              SubscriptionOptions options) {
+                return consumer;
+            }
+
+            @Override
+            protected Admin createAdmin() {
+                return admin;
+            }
+        };
+        try {
+            client.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.EARLIEST).toCompletableFuture()
+                    .get(1, TimeUnit.SECONDS);
+            client.unsubscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic").get(1, TimeUnit.SECONDS);
+
+            // The consumer is closed by the removal listener and the consumer worker
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+            while (!consumer.closed() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(consumer.closed());
+            // The consumer is a static member of the group, so it's removed from the group explicitly
+            Mockito.verify(admin, Mockito.timeout(TimeUnit.SECONDS.toMillis(5)))
+                    .removeMembersFromConsumerGroup(Mockito.eq("PLAYGROUND_COM_1234567-8_Client_TestTopic_group"),
+                            Mockito.any(RemoveMembersFromConsumerGroupOptions.class));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testReleaseCompletesAfterLeavingGroup() throws Exception {
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        Admin admin = Mockito.mock(Admin.class);
+        KafkaFutureImpl<Void> removed = new KafkaFutureImpl<>();
+        RemoveMembersFromConsumerGroupResult result = Mockito.mock(RemoveMembersFromConsumerGroupResult.class);
+        Mockito.when(result.all()).thenReturn(removed);
+        Mockito.when(admin.removeMembersFromConsumerGroup(Mockito.anyString(), Mockito.any(RemoveMembersFromConsumerGroupOptions.class)))
+                .thenReturn(result);
+        TcpClient client = createClient(consumer, admin);
+        try {
+            client.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.EARLIEST).toCompletableFuture()
+                    .get(1, TimeUnit.SECONDS);
+            Assert.assertEquals(Collections.singleton("PLAYGROUND_COM_1234567-8_Client_TestTopic_group"), client.getSubscriptions().keySet());
+
+            CompletableFuture<Void> released = client.releaseAsync("PLAYGROUND_COM_1234567-8_Client_TestTopic_group");
+            // The subscription is kept until it has been handed over
+            Assert.assertEquals(1, client.getSubscriptions().size());
+            Mockito.verify(admin, Mockito.timeout(TimeUnit.SECONDS.toMillis(5)))
+                    .removeMembersFromConsumerGroup(Mockito.eq("PLAYGROUND_COM_1234567-8_Client_TestTopic_group"),
+                            Mockito.any(RemoveMembersFromConsumerGroupOptions.class));
+            // The consumer has been closed, but the release waits until the member has been removed from the group
+            Assert.assertTrue(consumer.closed());
+            Assert.assertFalse(released.isDone());
+            removed.complete(null);
+            released.get(1, TimeUnit.SECONDS);
+            client.unregister("PLAYGROUND_COM_1234567-8_Client_TestTopic_group");
+            Assert.assertTrue(client.getSubscriptions().isEmpty());
+
+            // Releasing a group without a consumer completes immediately
+            Assert.assertTrue(client.releaseAsync("PLAYGROUND_COM_1234567-8_Client_TestTopic_group").isDone());
+            Mockito.verify(admin).removeMembersFromConsumerGroup(Mockito.anyString(), Mockito.any(RemoveMembersFromConsumerGroupOptions.class));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testChangedOptionsReplaceConsumerAfterClosingIt() throws Exception {
+        MockConsumer<String, String> oldConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        MockConsumer<String, String> newConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        List<MockConsumer<String, String>> consumers = new ArrayList<>(Arrays.asList(oldConsumer, newConsumer));
+        List<Boolean> oldClosedOnCreate = new ArrayList<>();
+        Admin admin = Mockito.mock(Admin.class);
+        KafkaFutureImpl<Void> removed = new KafkaFutureImpl<>();
+        RemoveMembersFromConsumerGroupResult result = Mockito.mock(RemoveMembersFromConsumerGroupResult.class);
+        Mockito.when(result.all()).thenReturn(removed);
+        Mockito.when(admin.removeMembersFromConsumerGroup(Mockito.anyString(), Mockito.any(RemoveMembersFromConsumerGroupOptions.class)))
+                .thenReturn(result);
+        TcpClient client = new TcpClient(helperService) {
+            @Override
+            protected Consumer<String, String> createConsumer(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                              SubscriptionOptions options) {
+                oldClosedOnCreate.add(oldConsumer.closed());
+                return consumers.remove(0);
+            }
+
+            @Override
+            protected Admin createAdmin() {
+                return admin;
+            }
+        };
+        try {
+            client.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.EARLIEST).toCompletableFuture()
+                    .get(1, TimeUnit.SECONDS);
+
+            CompletableFuture<KafkaClientResponse> resubscribed = client.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic",
+                    OffsetResetPolicy.EARLIEST, new SubscriptionOptions(EmbeddedFormat.BINARY));
+            // The old static member is removed from the group before the new consumer joins it
+            Mockito.verify(admin, Mockito.timeout(TimeUnit.SECONDS.toMillis(5)))
+                    .removeMembersFromConsumerGroup(Mockito.eq("PLAYGROUND_COM_1234567-8_Client_TestTopic_group"),
+                            Mockito.any(RemoveMembersFromConsumerGroupOptions.class));
+            Assert.assertTrue(oldConsumer.closed());
+            Assert.assertFalse(resubscribed.isDone());
+            Assert.assertEquals(1, oldClosedOnCreate.size());
+
+            removed.complete(null);
+            resubscribed.get(1, TimeUnit.SECONDS);
+            Assert.assertEquals(Arrays.asList(false, true), oldClosedOnCreate);
+            Assert.assertEquals(Collections.singleton("TestTopic"), newConsumer.subscription());
+            Assert.assertEquals(EmbeddedFormat.BINARY, client.getWorker("PLAYGROUND/COM/1234567-8/Client", "TestTopic")
+                    .get(1, TimeUnit.SECONDS).getOptions().getFormat());
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testSubscriptionIsRestoredAfterRestart() throws Exception {
+        String registryPath = temporaryFolder.getRoot().toPath().resolve("subscriptions.json").toString();
+        Mockito.when(environment.getProperty(Constants.SUBSCRIPTION_REGISTRY_PATH)).thenReturn(registryPath);
+        Admin admin = Mockito.mock(Admin.class);
+        RemoveMembersFromConsumerGroupResult result = Mockito.mock(RemoveMembersFromConsumerGroupResult.class);
+        Mockito.when(result.all()).thenReturn(KafkaFuture.completedFuture(null));
+        Mockito.when(admin.removeMembersFromConsumerGroup(Mockito.anyString(), Mockito.any(RemoveMembersFromConsumerGroupOptions.class)))
+                .thenReturn(result);
+
+        TcpClient client = createClient(new MockConsumer<>(OffsetResetStrategy.EARLIEST), admin);
+        client.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.LATEST,
+                new SubscriptionOptions(EmbeddedFormat.BINARY)).get(1, TimeUnit.SECONDS);
+        client.destroy();
+
+        // The consumer is recreated by the first read after the restart
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.LATEST);
+        TcpClient restarted = createClient(consumer, admin);
+        try {
+            restarted.readAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", new ReadOptions(0L, 0, 1)).get(1, TimeUnit.SECONDS);
+            Assert.assertEquals(Collections.singleton("TestTopic"), consumer.subscription());
+            Assert.assertEquals(EmbeddedFormat.BINARY, restarted.getWorker("PLAYGROUND/COM/1234567-8/Client", "TestTopic")
+                    .get(1, TimeUnit.SECONDS).getOptions().getFormat());
+
+            // The restored subscription is removed from the registry when the client unsubscribes
+            restarted.unsubscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic").get(1, TimeUnit.SECONDS);
+            try {
+                restarted.readAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", new ReadOptions(0L, 0, 1)).get(1, TimeUnit.SECONDS);
+                fail("Expected read to fail without a subscription");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof ForbiddenRequestException);
+            }
+        } finally {
+            restarted.destroy();
+        }
+    }
+
+    @Test
+    public void testManualCommit() throws Exception {
+        TopicPartition tp = new TopicPartition("TestTopic", 0);
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.schedulePollTask(() -> {
+            consumer.rebalance(Collections.singletonList(tp));
+            consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+            consumer.addRecord(new ConsumerRecord<>("TestTopic", 0, 0, "key", "value0"));
+            consumer.addRecord(new ConsumerRecord<>("TestTopic", 0, 1, "key", "value1"));
+        });
+        TcpClient client = createClient(consumer, Mockito.mock(Admin.class));
+        try {
+            client.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.EARLIEST,
+                    new SubscriptionOptions(EmbeddedFormat.JSON, Collections.emptyMap(), CommitMode.MANUAL)).get(1, TimeUnit.SECONDS);
+            KafkaClientResponse response = client.readAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", new ReadOptions(1000L, 2, 10))
+                    .get(1, TimeUnit.SECONDS);
+            // The token contains the offset of the last returned record
+            Assert.assertEquals("0:1", response.getCommitToken());
+
+            client.commitAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", Collections.singletonMap(0, 2L)).get(1, TimeUnit.SECONDS);
+            ConsumerWorker worker = client.getWorker("PLAYGROUND/COM/1234567-8/Client", "TestTopic").get(1, TimeUnit.SECONDS);
+            long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+            while (getCommittedOffset(worker, tp) != 2L && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertEquals(2L, getCommittedOffset(worker, tp));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testCommitWithAutoCommitMode() throws Exception {
+        TcpClient client = createClient(new MockConsumer<>(OffsetResetStrategy.EARLIEST), Mockito.mock(Admin.class));
+        try {
+            client.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.EARLIEST).get(1, TimeUnit.SECONDS);
+            client.commitAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", Collections.singletonMap(0, 2L)).get(1, TimeUnit.SECONDS);
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof BadRequestException);
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testFetchWithoutSubscription() throws Exception {
+        TopicPartition tp = new TopicPartition("TestTopic", 0);
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.NONE);
+        consumer.assign(Collections.singletonList(tp));
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp, 0L));
+        for (int i = 0; i < 3; i++) {
+            consumer.addRecord(new ConsumerRecord<>("TestTopic", 0, i, "key", "value" + i));
+        }
+        TcpClient client = new TcpClient(helperService) {
+            @Override
+            protected Consumer<String, String> createAssignedConsumer(String clientId, EmbeddedFormat format) {
+                return consumer;
+            }
+        };
+        try {
+            KafkaClientResponse response = client.fetchAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic",
+                    Collections.singletonMap(0, 1L), EmbeddedFormat.JSON, new ReadOptions(0L, 1, 10)).get(1, TimeUnit.SECONDS);
+            JSONArray records = new JSONArray(response.getValue());
+            Assert.assertEquals(2, records.length());
+            Assert.assertEquals(1, records.getJSONObject(0).getLong("offset"));
+            // The next read continues from the record that follows the last returned record
+            Assert.assertEquals("0:3", response.getCursor());
+
+            // A partition that has no records keeps its position in the cursor
+            response = client.fetchAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", Collections.singletonMap(0, 3L),
+                    EmbeddedFormat.JSON, new ReadOptions(0L, 1, 10)).get(1, TimeUnit.SECONDS);
+            Assert.assertEquals("0:3", response.getCursor());
+
+            consumer.setPollException(new OffsetOutOfRangeException(Collections.singletonMap(tp, 100L)));
+            try {
+                client.fetchAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", Collections.singletonMap(0, 100L),
+                        EmbeddedFormat.JSON, new ReadOptions(0L, 1, 10)).get(1, TimeUnit.SECONDS);
+                Assert.fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof BadRequestException);
+            }
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testSeekToTimestamp() throws Exception {
+        TopicPartition tp0 = new TopicPartition("TestTopic", 0);
+        TopicPartition tp1 = new TopicPartition("TestTopic", 1);
+        MockConsumer<String, String> consumer = new MockConsumer<String, String>(OffsetResetStrategy.EARLIEST) {
+            @Override
+            public synchronized Map<TopicPartition, OffsetAndTimestamp> offsetsForTimes(Map<TopicPartition, Long> timestamps,
+                                                                                         Duration timeout) {
+                // Partition 1 doesn't have records after the timestamp
+                Map<TopicPartition, OffsetAndTimestamp> offsets = new HashMap<>();
+                offsets.put(tp0, new OffsetAndTimestamp(7L, timestamps.get(tp0)));
+                offsets.put(tp1, null);
+                return offsets;
+            }
+        };
+        consumer.updatePartitions("TestTopic", Arrays.asList(new PartitionInfo("TestTopic", 0, null, null, null),
+                new PartitionInfo("TestTopic", 1, null, null, null)));
+        Map<TopicPartition, Long> endOffsets = new HashMap<>();
+        endOffsets.put(tp0, 10L);
+        endOffsets.put(tp1, 20L);
+        consumer.updateEndOffsets(endOffsets);
+        TcpClient client = createClient(consumer, Mockito.mock(Admin.class));
+        try {
+            client.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.EARLIEST).get(1, TimeUnit.SECONDS);
+            ConsumerWorker worker = client.getWorker("PLAYGROUND/COM/1234567-8/Client", "TestTopic").get(1, TimeUnit.SECONDS);
+            worker.submit(c -> {
+                consumer.rebalance(Arrays.asList(tp0, tp1));
+                return null;
+            }).get(1, TimeUnit.SECONDS);
+
+            client.seekToTimestampAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", 1634300000000L).get(1, TimeUnit.SECONDS);
+            Assert.assertEquals(7L, (long) worker.submit(c -> c.position(tp0)).get(1, TimeUnit.SECONDS));
+            Assert.assertEquals(20L, (long) worker.submit(c -> c.position(tp1)).get(1, TimeUnit.SECONDS));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testResetPositions() throws Exception {
+        TopicPartition tp = new TopicPartition("TestTopic", 0);
+        MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        consumer.updatePartitions("TestTopic", Collections.singletonList(new PartitionInfo("TestTopic", 0, null, null, null)));
+        consumer.updateBeginningOffsets(Collections.singletonMap(tp, 3L));
+        consumer.updateEndOffsets(Collections.singletonMap(tp, 10L));
+        TcpClient client = createClient(consumer, Mockito.mock(Admin.class));
+        try {
+            client.subscribeAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.EARLIEST).get(1, TimeUnit.SECONDS);
+            ConsumerWorker worker = client.getWorker("PLAYGROUND/COM/1234567-8/Client", "TestTopic").get(1, TimeUnit.SECONDS);
+            worker.submit(c -> {
+                consumer.rebalance(Collections.singletonList(tp));
+                return null;
+            }).get(1, TimeUnit.SECONDS);
+
+            client.resetPositionsAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.LATEST).get(1, TimeUnit.SECONDS);
+            Assert.assertEquals(10L, (long) worker.submit(c -> c.position(tp)).get(1, TimeUnit.SECONDS));
+            client.resetPositionsAsync("PLAYGROUND/COM/1234567-8/Client", "TestTopic", OffsetResetPolicy.EARLIEST).get(1, TimeUnit.SECONDS);
+            Assert.assertEquals(3L, (long) worker.submit(c -> c.position(tp)).get(1, TimeUnit.SECONDS));
+        } finally {
+            client.destroy();
+        }
+    }
+
+    @Test
+    public void testGetAssignedConsumerProperties() {
+        Properties props = tcpClient.getAssignedConsumerProperties("xrd-kafka-adapter-reader-binary-0", EmbeddedFormat.BINARY);
+        Assert.assertEquals(BROKER_ADDRESS, props.getProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG));
+        Assert.assertNull(props.getProperty(ConsumerConfig.GROUP_ID_CONFIG));
+        Assert.assertEquals("false", props.getProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG));
+        Assert.assertEquals(Base64Deserializer.class.getName(), props.getProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG));
+    }
+
+    private static long getCommittedOffset(ConsumerWorker worker, TopicPartition tp) throws Exception {
+        return worker.submit(c -> {
+            OffsetAndMetadata committed = c.committed(Collections.singleton(tp)).get(tp);
+            return committed == null ? -1L : committed.offset();
+        }).get(1, TimeUnit.SECONDS);
+    }
+
+    private TcpClient createClient(MockConsumer<String, String> consumer, Admin admin) {
+        return new TcpClient(helperService) {
+            @Override
+            protected Consumer<String, String> createConsumer(String xrdClientId, String topicName, OffsetResetPolicy offsetResetPolicy,
+                                                              SubscriptionOptions options) {
+                return consumer;
+            }
+
+            @Override
+            protected Admin createAdmin() {
+                return admin;
+            }
+        };
     }
 }
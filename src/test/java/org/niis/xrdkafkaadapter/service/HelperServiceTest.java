@@ -36,6 +36,8 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.core.env.Environment;
 import org.springframework.http.HttpStatus;
 
+import java.util.Map;
+
 /**
  * Test cases for HelperService class.
  */
@@ -91,6 +93,52 @@ public class HelperServiceTest extends TestCase {
         Assert.assertEquals(60, cacheDuration);
     }
 
+    @Test
+    public void testGetConsumerProperties() {
+        Mockito.when(environment.getProperty(Constants.CONSUMER_PROPERTIES_PREFIX + "max.poll.records")).thenReturn("500");
+        Mockito.when(environment.getProperty(Constants.CONSUMER_PROPERTIES_PREFIX + "fetch.min.bytes")).thenReturn("1024");
+        Mockito.when(environment.getProperty(Constants.CONSUMER_TOPIC_PROPERTIES_PREFIX + "MyTopic.fetch.min.bytes")).thenReturn("65536");
+        Mockito.when(environment.getProperty(Constants.CONSUMER_PROPERTIES_PREFIX + "fetch.max.bytes")).thenReturn("test");
+        Map<String, String> properties = helperService.getConsumerProperties("MyTopic");
+        Assert.assertEquals(2, properties.size());
+        Assert.assertEquals("500", properties.get("max.poll.records"));
+        Assert.assertEquals("65536", properties.get("fetch.min.bytes"));
+    }
+
+    @Test
+    public void testGetProducerProfile() {
+        Mockito.when(environment.getProperty("app.producer.topics[0].pattern")).thenReturn("bulk-.*");
+        Mockito.when(environment.getProperty("app.producer.topics[0].profile")).thenReturn("throughput");
+        Mockito.when(environment.getProperty("app.producer.topics[1].pattern")).thenReturn("payments");
+        Mockito.when(environment.getProperty("app.producer.topics[1].profile")).thenReturn("durable");
+        Mockito.when(environment.getProperty(Constants.PRODUCER_DEFAULT_PROFILE)).thenReturn("low-latency");
+        Assert.assertEquals("throughput", helperService.getProducerProfile("bulk-orders"));
+        Assert.assertEquals("durable", helperService.getProducerProfile("payments"));
+        Assert.assertEquals("low-latency", helperService.getProducerProfile("payments-archive"));
+    }
+
+    @Test
+    public void testGetMetricsTopicPattern() {
+        Assert.assertNull(helperService.getMetricsTopicPattern());
+        Mockito.when(environment.getProperty(Constants.METRICS_TOPICS)).thenReturn("orders-.*");
+        Assert.assertTrue(helperService.getMetricsTopicPattern().matcher("orders-1").matches());
+        Mockito.when(environment.getProperty(Constants.METRICS_TOPICS)).thenReturn("orders-(");
+        Assert.assertNull(helperService.getMetricsTopicPattern());
+    }
+
+    @Test
+    public void testGetProducerProperties() {
+        Mockito.when(environment.getProperty("app.producer.topics[0].pattern")).thenReturn("bulk-.*");
+        Mockito.when(environment.getProperty("app.producer.topics[0].profile")).thenReturn("throughput");
+        Mockito.when(environment.getProperty(Constants.PRODUCER_PROFILES_PREFIX + "throughput.compression.type")).thenReturn("zstd");
+        Mockito.when(environment.getProperty(Constants.PRODUCER_PROFILES_PREFIX + "throughput.linger.ms")).thenReturn("20");
+        Map<String, String> properties = helperService.getProducerProperties("bulk-orders");
+        Assert.assertEquals(2, properties.size());
+        Assert.assertEquals("zstd", properties.get("compression.type"));
+        Assert.assertEquals("20", properties.get("linger.ms"));
+        Assert.assertTrue(helperService.getProducerProperties("orders").isEmpty());
+    }
+
     @Test
     public void testGetKafkaConsumerGroupName() {
         String expected = "PLAYGROUND_ORG_2908758-4_TestClient_MyTopic" + Constants.KAFKA_CONSUMER_GROUP_POSTFIX;
@@ -108,6 +156,15 @@ public class HelperServiceTest extends TestCase {
         Assert.assertEquals(expected, consumerInstanceName);
     }
 
+    @Test
+    public void testGetKafkaConsumerGroupInstanceId() {
+        String clientId = "PLAYGROUND/COM/1234567-8/Client";
+        Mockito.when(environment.getProperty(Constants.CLUSTER_NODE_URL)).thenReturn("http://adapter-1:8080/");
+        Assert.assertEquals("PLAYGROUND_COM_1234567-8_Client_instance", helperService.getKafkaConsumerGroupInstanceId(clientId));
+        Mockito.when(environment.getProperty(Constants.CLUSTER_ENABLED)).thenReturn("true");
+        Assert.assertEquals("PLAYGROUND_COM_1234567-8_Client_instance_adapter-1_8080", helperService.getKafkaConsumerGroupInstanceId(clientId));
+    }
+
     @Test
     public void testgetKafkaProducerClientId() {
         String expected = "PLAYGROUND_ORG_2908758-4_TestClient_MyTopic" + Constants.KAFKA_PRODUCER_CLIENT_ID_POSTFIX;
@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.service;
+
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.exception.ForbiddenRequestException;
+import org.niis.xrdkafkaadapter.kafka.client.KafkaClientFutures;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * Test cases for MetricsService class.
+ */
+@RunWith(JUnit4.class)
+public class MetricsServiceTest extends TestCase {
+
+    private MeterRegistry registry;
+
+    private MetricsService metricsService;
+
+    @Before
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        metricsService = new MetricsService(registry, Pattern.compile("MyTopic|orders-.*"));
+    }
+
+    @Test
+    public void testTimeOperation() {
+        metricsService.timeOperation("tcpClient", MetricsService.OPERATION_READ, "MyTopic", () -> CompletableFuture.completedFuture("ok"));
+        metricsService.timeOperation("tcpClient", MetricsService.OPERATION_READ, "MyTopic",
+                () -> KafkaClientFutures.failed(new ForbiddenRequestException("No subscription")));
+
+        Timer success = registry.find("kafka.adapter.operations").tags("client", "tcpClient", "operation", "read", "topic", "MyTopic",
+                "outcome", "success").timer();
+        Timer forbidden = registry.find("kafka.adapter.operations").tags("topic", "unknown", "outcome", "forbidden").timer();
+        Assert.assertNotNull(success);
+        Assert.assertEquals(1, success.count());
+        Assert.assertNotNull(forbidden);
+        Assert.assertEquals(1, forbidden.count());
+    }
+
+    @Test
+    public void testTimeFailedOperationsWithoutTopic() {
+        metricsService.timeOperation("tcpClient", MetricsService.OPERATION_READ, "Topic1",
+                () -> KafkaClientFutures.failed(new BadRequestException("Invalid topic")));
+        metricsService.timeOperation("tcpClient", MetricsService.OPERATION_READ, "Topic2",
+                () -> KafkaClientFutures.failed(new BadRequestException("Invalid topic")));
+
+        Assert.assertEquals(1, registry.find("kafka.adapter.operations").timers().size());
+        Assert.assertEquals(2, registry.find("kafka.adapter.operations").tags("topic", "unknown", "outcome", "bad_request").timer().count());
+    }
+
+    @Test
+    public void testRecordRecords() {
+        metricsService.recordRecords("tcpClient", MetricsService.OPERATION_PUBLISH, "MyTopic", 10, 2048);
+        metricsService.recordRecords("tcpClient", MetricsService.OPERATION_PUBLISH, "MyTopic", 30, 4096);
+
+        DistributionSummary records = registry.find("kafka.adapter.records").tag("operation", "publish").summary();
+        DistributionSummary bytes = registry.find("kafka.adapter.bytes").tag("operation", "publish").summary();
+        Assert.assertEquals(2, records.count());
+        Assert.assertEquals(40.0, records.totalAmount(), 0.0);
+        Assert.assertEquals(6144.0, bytes.totalAmount(), 0.0);
+    }
+
+    @Test
+    public void testTopicsNotMatchingPatternAreTaggedAsOther() {
+        metricsService.timeOperation("tcpClient", MetricsService.OPERATION_PUBLISH, "orders-1", () -> CompletableFuture.completedFuture("ok"));
+        metricsService.timeOperation("tcpClient", MetricsService.OPERATION_PUBLISH, "Random1", () -> CompletableFuture.completedFuture("ok"));
+        metricsService.timeOperation("tcpClient", MetricsService.OPERATION_PUBLISH, "Random2", () -> CompletableFuture.completedFuture("ok"));
+        metricsService.recordRecords("tcpClient", MetricsService.OPERATION_PUBLISH, "Random1", 1, 100);
+        metricsService.recordBytes("tcpClient", MetricsService.OPERATION_READ, "Random2", 100);
+
+        Assert.assertEquals(1, registry.find("kafka.adapter.operations").tag("topic", "orders-1").timer().count());
+        Assert.assertEquals(2, registry.find("kafka.adapter.operations").tag("topic", "other").timer().count());
+        Assert.assertNotNull(registry.find("kafka.adapter.records").tag("topic", "other").summary());
+        Assert.assertEquals(2, registry.find("kafka.adapter.bytes").tag("topic", "other").summaries().size());
+        Assert.assertNull(registry.find("kafka.adapter.bytes").tag("topic", "Random1").summary());
+    }
+
+    @Test
+    public void testAllTopicsAreTaggedAsOtherWithoutPattern() {
+        metricsService = new MetricsService(registry, (Pattern) null);
+        metricsService.recordRecords("tcpClient", MetricsService.OPERATION_PUBLISH, "MyTopic", 1, 100);
+
+        Assert.assertNull(registry.find("kafka.adapter.records").tag("topic", "MyTopic").summary());
+        Assert.assertNotNull(registry.find("kafka.adapter.records").tag("topic", "other").summary());
+    }
+
+    @Test
+    public void testRecordRestProxyRequest() {
+        metricsService.recordRestProxyRequest("GET", 200, 1000000);
+        metricsService.recordRestProxyRequest("POST", null, 1000000);
+
+        Assert.assertEquals(1, registry.find("kafka.adapter.rest.proxy.requests").tags("method", "GET", "status", "200").timer().count());
+        Assert.assertEquals(1, registry.find("kafka.adapter.rest.proxy.requests").tags("method", "POST", "status", "none").timer().count());
+    }
+
+    @Test
+    public void testMonitorCache() {
+        Cache<String, String> cache = Caffeine.newBuilder().recordStats().build();
+        metricsService.monitorCache(cache, "consumers");
+        cache.put("key", "value");
+        cache.getIfPresent("key");
+        cache.getIfPresent("missing");
+
+        Assert.assertEquals(1.0, registry.find("cache.size").tag("cache", "consumers").gauge().value(), 0.0);
+        Assert.assertEquals(1.0, registry.find("cache.gets").tags("cache", "consumers", "result", "hit").functionCounter().count(), 0.0);
+        Assert.assertEquals(1.0, registry.find("cache.gets").tags("cache", "consumers", "result", "miss").functionCounter().count(), 0.0);
+    }
+}
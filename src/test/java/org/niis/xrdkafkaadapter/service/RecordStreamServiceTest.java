@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.service;
+
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.exception.ServiceUnavailableException;
+import org.niis.xrdkafkaadapter.kafka.client.KafkaClient;
+import org.niis.xrdkafkaadapter.model.ReadOptions;
+import org.niis.xrdkafkaadapter.util.Constants;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.core.env.Environment;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Test cases for RecordStreamService class.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class RecordStreamServiceTest extends TestCase {
+
+    private RecordStreamService recordStreamService;
+
+    @Mock
+    private Environment environment;
+
+    @Mock
+    private KafkaClient kafkaClient;
+
+    @Before
+    public void setup() {
+        Mockito.when(environment.getProperty(Constants.STREAM_MAX_STREAMS)).thenReturn("1");
+        recordStreamService = new RecordStreamService(new HelperService(environment));
+    }
+
+    @After
+    public void tearDown() {
+        recordStreamService.destroy();
+    }
+
+    @Test
+    public void testParseEventId() throws Exception {
+        Map<Integer, Long> offsets = RecordStreamService.parseEventId("0:15,1:27");
+        Assert.assertEquals(2, offsets.size());
+        Assert.assertEquals(Long.valueOf(15), offsets.get(0));
+        Assert.assertEquals(Long.valueOf(27), offsets.get(1));
+        Assert.assertTrue(RecordStreamService.parseEventId(null).isEmpty());
+        Assert.assertTrue(RecordStreamService.parseEventId("").isEmpty());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testParseInvalidEventId() throws Exception {
+        RecordStreamService.parseEventId("0-15");
+    }
+
+    @Test
+    public void testFormatEventId() {
+        Map<Integer, Long> offsets = new TreeMap<>();
+        offsets.put(1, 27L);
+        offsets.put(0, 15L);
+        Assert.assertEquals("0:15,1:27", RecordStreamService.formatEventId(offsets));
+    }
+
+    @Test
+    public void testMaxStreams() throws Exception {
+        // Reads never complete, so the stream stays open
+        Mockito.when(kafkaClient.readAsync(ArgumentMatchers.anyString(), ArgumentMatchers.anyString(),
+                ArgumentMatchers.any(ReadOptions.class))).thenReturn(new CompletableFuture<>());
+        Assert.assertNotNull(recordStreamService.open(kafkaClient, "CS/ORG/1111/TestClient", "MyTopic", null));
+        Assert.assertEquals(1, recordStreamService.getActiveStreams());
+        try {
+            recordStreamService.open(kafkaClient, "CS/ORG/1111/TestClient", "MyTopic", null);
+            Assert.fail("Expected ServiceUnavailableException");
+        } catch (ServiceUnavailableException e) {
+            Assert.assertEquals(1, recordStreamService.getActiveStreams());
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.util;
+
+import org.niis.xrdkafkaadapter.exception.BadRequestException;
+import org.niis.xrdkafkaadapter.model.PublishRecord;
+
+import junit.framework.TestCase;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Test cases for JsonRecordsReader class.
+ */
+@RunWith(JUnit4.class)
+public class JsonRecordsReaderTest extends TestCase {
+
+    @Test
+    public void testReadPublishRecords() throws Exception {
+        List<PublishRecord> records = read("{\"other\":{\"records\":1},\"records\":["
+                + "{\"key\":\"k1\",\"value\":\"line\\nbreak\"},"
+                + "{\"value\":{\"field1\":[1, 2],\"field2\":\"ä\"}},"
+                + "{\"key\":null,\"value\":42},"
+                + "{\"key\":\"k2\"},"
+                + "\"not an object\","
+                + "{\"key\":1,\"value\":\"v\"}]}");
+        Assert.assertEquals(6, records.size());
+        Assert.assertEquals("k1", new String(records.get(0).getKey(), StandardCharsets.UTF_8));
+        Assert.assertEquals("line\nbreak", value(records.get(0)));
+        Assert.assertNull(records.get(1).getKey());
+        Assert.assertEquals("{\"field1\":[1, 2],\"field2\":\"ä\"}", value(records.get(1)));
+        Assert.assertEquals("42", value(records.get(2)));
+        Assert.assertFalse(records.get(3).isValid());
+        Assert.assertFalse(records.get(4).isValid());
+        Assert.assertFalse(records.get(5).isValid());
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testReadPublishRecordsMissingRecords() throws Exception {
+        read("{\"values\":[]}");
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testReadPublishRecordsInvalidJson() throws Exception {
+        read("{\"records\":[{\"value\":\"v1\"}");
+    }
+
+    private static List<PublishRecord> read(String body) throws BadRequestException {
+        return JsonRecordsReader.readPublishRecords(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String value(PublishRecord record) {
+        return new String(record.getValue(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2021 Nordic Institute for Interoperability Solutions (NIIS)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.niis.xrdkafkaadapter.util;
+
+import org.niis.xrdkafkaadapter.model.KafkaClientResponse;
+import org.niis.xrdkafkaadapter.model.RecordsFormat;
+
+import junit.framework.TestCase;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test cases for JsonRecordsWriter class.
+ */
+@RunWith(JUnit4.class)
+public class JsonRecordsWriterTest extends TestCase {
+
+    @Test
+    public void testWriteJson() throws Exception {
+        Assert.assertEquals("[{\"a\":1},{\"b\":2}]", write(RecordsFormat.JSON));
+    }
+
+    @Test
+    public void testWriteNdjson() throws Exception {
+        Assert.assertEquals("{\"a\":1}\n{\"b\":2}\n", write(RecordsFormat.NDJSON));
+    }
+
+    @Test
+    public void testWriteEmptyJson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonRecordsWriter(out, RecordsFormat.JSON).finish();
+        Assert.assertEquals("[]", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testResponseValueToNdjson() throws Exception {
+        KafkaClientResponse response = new KafkaClientResponse("[{\"a\":1},{\"b\":2}]");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.writeTo(out, RecordsFormat.NDJSON);
+        Assert.assertEquals("{\"a\":1}\n{\"b\":2}\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testResponseForEachRecord() throws Exception {
+        KafkaClientResponse response = new KafkaClientResponse((out, format) -> { });
+        response.setRecordsEmitter(handler -> {
+            handler.handle(0, 5, JsonRecordsWriter.toJson(0, 5, "TestTopic", null, "{\"a\": 1}"));
+            handler.handle(1, 7, JsonRecordsWriter.toJson(1, 7, "TestTopic", "key", "text"));
+        });
+        List<String> records = new ArrayList<>();
+        Assert.assertTrue(response.hasRecords());
+        Assert.assertEquals(2, response.forEachRecord((partition, offset, record) -> records.add(partition + ":" + offset + " " + record)));
+        Assert.assertEquals("0:5 {\"partition\":0,\"offset\":5,\"topic\":\"TestTopic\",\"value\":{\"a\":1}}", records.get(0));
+        Assert.assertEquals("1:7 {\"partition\":1,\"offset\":7,\"topic\":\"TestTopic\",\"key\":\"key\",\"value\":\"text\"}", records.get(1));
+    }
+
+    @Test
+    public void testResponseValueForEachRecord() throws Exception {
+        KafkaClientResponse response = new KafkaClientResponse("[{\"partition\":2,\"offset\":9,\"value\":\"text\"}]");
+        List<Long> offsets = new ArrayList<>();
+        Assert.assertTrue(response.hasRecords());
+        Assert.assertEquals(1, response.forEachRecord((partition, offset, record) -> offsets.add(offset)));
+        Assert.assertEquals(Collections.singletonList(9L), offsets);
+
+        Assert.assertFalse(new KafkaClientResponse("{\"error_code\":40403}").hasRecords());
+    }
+
+    @Test
+    public void testResponseWriterToValue() throws Exception {
+        KafkaClientResponse response = new KafkaClientResponse((out, format) -> {
+            JsonRecordsWriter writer = new JsonRecordsWriter(out, format);
+            writer.write(new JSONObject("{\"a\":1}"));
+            writer.finish();
+        });
+        Assert.assertEquals("[{\"a\":1}]", response.getValue());
+    }
+
+    @Test
+    public void testWriteRecordStringValue() throws Exception {
+        JSONObject json = writeRecord("key", "string value");
+        Assert.assertEquals(1, json.getInt("partition"));
+        Assert.assertEquals(2, json.getInt("offset"));
+        Assert.assertEquals("TestTopic", json.getString("topic"));
+        Assert.assertEquals("key", json.getString("key"));
+        Assert.assertEquals("string value", json.getString("value"));
+    }
+
+    @Test
+    public void testWriteRecordObjectValue() throws Exception {
+        JSONObject json = writeRecord("my_key", "{\"field1\":\"value1\"}");
+        Assert.assertEquals("my_key", json.getString("key"));
+        Assert.assertEquals("{\"field1\":\"value1\"}", json.getJSONObject("value").toString());
+    }
+
+    @Test
+    public void testWriteRecordMultiLineObjectValueToNdjson() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonRecordsWriter writer = new JsonRecordsWriter(out, RecordsFormat.NDJSON);
+        writer.write(0, 1, "TestTopic", null, " {\n  \"a\": [1,\n    {}],\n  \"b\": \"x\\ny\"\n}\n");
+        writer.write(0, 2, "TestTopic", null, "{\r\n\"c\": 3\r\n}");
+        writer.finish();
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("{\"partition\":0,\"offset\":1,\"topic\":\"TestTopic\",\"value\":{\"a\":[1,{}],\"b\":\"x\\ny\"}}", lines[0]);
+        Assert.assertEquals("{\"partition\":0,\"offset\":2,\"topic\":\"TestTopic\",\"value\":{\"c\":3}}", lines[1]);
+    }
+
+    @Test
+    public void testWriteRecordInvalidObjectValue() throws Exception {
+        JSONObject json = writeRecord(null, "{\"field1\": \"value1\"} {");
+        Assert.assertFalse(json.has("key"));
+        Assert.assertEquals("{\"field1\": \"value1\"} {", json.getString("value"));
+    }
+
+    @Test
+    public void testCompactJsonObject() {
+        Assert.assertEquals("{\"a\":[1,{}]}", JsonRecordsWriter.compactJsonObject("{\"a\":[1,{}]}"));
+        Assert.assertEquals("{\"a\":[1.5e-3,{}],\"b c\":\"x\\n\\u00e4\"}",
+                JsonRecordsWriter.compactJsonObject(" {\n  \"a\": [1.5e-3, {}],\r\n\t\"b c\" : \"x\\n\\u00e4\"\n}\n"));
+        Assert.assertEquals("{\"a\":[true,false,null]}", JsonRecordsWriter.compactJsonObject("{\"a\": [true, false, null]}"));
+        Assert.assertNull(JsonRecordsWriter.compactJsonObject(null));
+        Assert.assertNull(JsonRecordsWriter.compactJsonObject("plain text"));
+        Assert.assertNull(JsonRecordsWriter.compactJsonObject("[1,2]"));
+        Assert.assertNull(JsonRecordsWriter.compactJsonObject("{not json}"));
+        Assert.assertNull(JsonRecordsWriter.compactJsonObject("{}{}"));
+        Assert.assertNull(JsonRecordsWriter.compactJsonObject("{\"a\":01}"));
+        Assert.assertNull(JsonRecordsWriter.compactJsonObject("{\"a\":\"\\x\"}"));
+        Assert.assertNull(JsonRecordsWriter.compactJsonObject("{\"a\":1,}"));
+    }
+
+    private JSONObject writeRecord(String key, String value) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonRecordsWriter writer = new JsonRecordsWriter(out, RecordsFormat.NDJSON);
+        writer.write(1, 2, "TestTopic", key, value);
+        writer.finish();
+        String line = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        Assert.assertTrue(line.endsWith("\n"));
+        return new JSONObject(line);
+    }
+
+    private String write(RecordsFormat format) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonRecordsWriter writer = new JsonRecordsWriter(out, format);
+        writer.write(new JSONObject("{\"a\":1}"));
+        writer.write(new JSONObject("{\"b\":2}"));
+        writer.finish();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}